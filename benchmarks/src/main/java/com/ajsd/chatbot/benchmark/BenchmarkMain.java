@@ -0,0 +1,59 @@
+package com.ajsd.chatbot.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/*
+    Entry point of benchmarks.jar. It takes the usual JMH options, with two defaults
+    which make runs comparable between releases:
+
+    1. Results are written as JSON, to benchmark-results/jmh-yyyyMMdd-HHmmss.json unless
+       -rff names another file. -rf picks another format, with the JMH default file.
+       Two result files can be compared with any JMH result viewer.
+
+    2. The gc profiler runs with every benchmark, unless -prof names other profilers,
+       so the results hold the bytes allocated per operation (gc.alloc.rate.norm)
+       next to the time. An allocation regression shows there before it shows as time.
+
+    Listing and help options (-l, -lp, -lrf, -h) go straight to JMH.
+ */
+public final class BenchmarkMain {
+
+    static final Path RESULTS_DIRECTORY = Path.of("benchmark-results");
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+                || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+            if (!commandLine.getResult().hasValue()) {
+                Files.createDirectories(RESULTS_DIRECTORY);
+                String name = "jmh-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json";
+                options.result(RESULTS_DIRECTORY.resolve(name).toString());
+            }
+        }
+        if (commandLine.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        new Runner(options.build()).run();
+    }
+}
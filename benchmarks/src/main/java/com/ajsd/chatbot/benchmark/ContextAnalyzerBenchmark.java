@@ -0,0 +1,104 @@
+package com.ajsd.chatbot.benchmark;
+
+import com.ajsd.chatbot.config.CountryDataLoader;
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.ConversationFeatures;
+import com.ajsd.chatbot.model.ConversationStep;
+import com.ajsd.chatbot.model.HistoryPolicy;
+import com.ajsd.chatbot.model.Topic;
+import com.ajsd.chatbot.service.ChatbotService;
+import com.ajsd.chatbot.service.ContextAnalyzer;
+import com.ajsd.chatbot.service.MedicalService;
+import com.ajsd.chatbot.service.ResponseRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Cost of the ContextAnalyzer as a conversation grows, from a few turns to ten
+    thousand messages kept in the history.
+
+    analyze() is what the engine runs on every turn, and summary() the most work the
+    analyzer ever does: both read the ConversationFeatures only, so they should not
+    move with the length of the history. scanHistory() works out the same summary
+    the way it would be done without the features, by going through every message,
+    and grows linearly. addMessage() is the price paid instead, on every message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextAnalyzerBenchmark {
+
+    // Messages in the history, user questions and bot replies
+    @Param({"10", "100", "1000", "10000"})
+    private int messages;
+
+    private ContextAnalyzer contextAnalyzer;
+    private ConversationContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ChatbotService chatbotService = new ChatbotService(new CountryDataLoader());
+        contextAnalyzer = new ContextAnalyzer(chatbotService, new ResponseRenderer(chatbotService, new MedicalService("")));
+
+        context = new ConversationContext(messages, HistoryPolicy.DROP, null);
+        context.setCurrentTopic(Topic.COUNTRIES);
+        context.setCurrentStep(ConversationStep.CHOOSE_OPTION);
+        for (int i = 0; i < messages / 2; i++) {
+            context.setSelectedCountryId(i % chatbotService.getCountryCount());
+            context.addMessage("USER", "a");
+            context.addMessage("BOT", "The capital is somewhere.\n\n" + ResponseRenderer.COUNTRY_OPTIONS_STRING);
+        }
+    }
+
+    @Benchmark
+    public String analyze() {
+        return contextAnalyzer.analyzeUserIntent("b", context);
+    }
+
+    @Benchmark
+    public String summary() {
+        return contextAnalyzer.analyzeUserIntent("summary", context);
+    }
+
+    @Benchmark
+    public int scanHistory() {
+        // Topic counts, failure streak and last option, as the features keep them
+        List<ConversationContext.Message> history = context.getMessages();
+        int userMessages = 0;
+        int failureStreak = 0;
+        char lastOption = 0;
+        for (ConversationContext.Message message : history) {
+            if ("USER".equals(message.getSender())) {
+                userMessages++;
+                if (message.getContent().length() == 1) {
+                    lastOption = message.getContent().charAt(0);
+                }
+            } else {
+                failureStreak = message.getContent().startsWith(ConversationFeatures.NOT_UNDERSTOOD) ? failureStreak + 1 : 0;
+            }
+        }
+        return userMessages + failureStreak + lastOption;
+    }
+
+    @Benchmark
+    public ConversationContext.Message addMessage() {
+        // The history is full, so this also drops the oldest message, as a long conversation does
+        return context.addMessage("USER", "a");
+    }
+}
@@ -0,0 +1,104 @@
+package com.ajsd.chatbot.benchmark;
+
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.HistoryPolicy;
+import com.ajsd.chatbot.service.ResponseRenderer;
+import com.ajsd.chatbot.store.ConversationCodec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Encoding and decoding a conversation with the ConversationCodec, with and without
+    its dictionary, against Jackson. The sizes of the three encodings are printed when
+    each trial starts.
+
+    Jackson cannot rebuild a ConversationContext (its history has no setters), so its
+    decode only parses the JSON into a tree: a lower bound of what a real decode costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversationCodecBenchmark {
+
+    // Turns of a country conversation, each a question and a reply ending with a menu
+    @Param({"5", "50", "500"})
+    private int turns;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConversationCodec plainCodec = new ConversationCodec();
+    private final ConversationCodec dictionaryCodec = new ConversationCodec(
+            ResponseRenderer.COUNTRY_OPTIONS_STRING,
+            ResponseRenderer.COUNTRY_LOOKUP_OPTIONS_STRING,
+            ResponseRenderer.MEDICAL_OPTIONS_STRING,
+            "What country do you want to learn about?");
+
+    private ConversationContext context;
+    private byte[] json;
+    private byte[] plain;
+    private byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = new ConversationContext(turns * 2, HistoryPolicy.SUMMARIZE, null);
+        Random random = new Random(42);
+        for (int i = 0; i < turns; i++) {
+            String country = Names.placeName(random);
+            context.addMessage("USER", country);
+            context.addMessage("BOT", "Great! I know about " + country + ".\n" + ResponseRenderer.COUNTRY_OPTIONS_STRING);
+        }
+        json = objectMapper.writeValueAsBytes(context);
+        plain = plainCodec.encode(context);
+        compressed = dictionaryCodec.encode(context);
+        System.out.printf("%nEncoded %d messages: jackson %d bytes, codec %d bytes, codec with dictionary %d bytes%n",
+                turns * 2, json.length, plain.length, compressed.length);
+    }
+
+    @Benchmark
+    public byte[] encodeJackson() throws IOException {
+        return objectMapper.writeValueAsBytes(context);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return plainCodec.encode(context);
+    }
+
+    @Benchmark
+    public byte[] encodeCodecWithDictionary() {
+        return dictionaryCodec.encode(context);
+    }
+
+    @Benchmark
+    public JsonNode decodeJackson() throws IOException {
+        return objectMapper.readTree(json);
+    }
+
+    @Benchmark
+    public ConversationContext decodeCodec() {
+        return plainCodec.decode(plain, null);
+    }
+
+    @Benchmark
+    public ConversationContext decodeCodecWithDictionary() {
+        return dictionaryCodec.decode(compressed, null);
+    }
+}
@@ -0,0 +1,79 @@
+package com.ajsd.chatbot.benchmark;
+
+import com.ajsd.chatbot.config.CountryDataImage;
+import com.ajsd.chatbot.config.CountryDataReader;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/*
+    Country data files for the benchmarks which load countries. A dataset is either
+    "bundled", the countries_data.json of the application, or a number of countries
+    with synthetic names, written to a temporary file in the format read by the
+    CountryDataReader.
+ */
+final class CountryData {
+
+    static final String BUNDLED = "bundled";
+
+    private CountryData() {
+    }
+
+    /**  Returns the location to give the CountryDataLoader for the dataset: empty for the
+     *          bundled data, otherwise a new temporary file, to be removed with delete().
+     **/
+    static String location(String dataset) throws IOException {
+        if (BUNDLED.equals(dataset)) {
+            return "";
+        }
+        int countries = Integer.parseInt(dataset);
+        Random random = new Random(42);
+        Set<String> names = new HashSet<>();
+        Path file = Files.createTempFile("countries-" + countries + "-", ".json");
+        try (JsonGenerator generator = new JsonFactory().createGenerator(Files.newOutputStream(file))) {
+            generator.writeStartObject();
+            while (names.size() < countries) {
+                String name = Names.placeName(random);
+                if (!names.add(name.toLowerCase())) {
+                    continue;
+                }
+                generator.writeObjectFieldStart(name);
+                generator.writeStringField("capital", Names.placeName(random) + " City");
+                generator.writeStringField("nationalAnimal", Names.placeName(random) + " Fox");
+                generator.writeStringField("nationalFlower", Names.placeName(random) + " Lily");
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+        return file.toString();
+    }
+
+    /**  Returns a new temporary file holding the bundled data, to be removed with delete().
+     **/
+    static String bundledCopy() throws IOException {
+        Path file = Files.createTempFile("countries-bundled-", ".json");
+        try (InputStream inputStream = CountryData.class.getClassLoader().getResourceAsStream(CountryDataReader.CLASSPATH_RESOURCE)) {
+            if (inputStream == null) {
+                throw new IOException(CountryDataReader.CLASSPATH_RESOURCE + " not found");
+            }
+            Files.write(file, inputStream.readAllBytes());
+        }
+        return file.toString();
+    }
+
+    /**  Removes the file of a dataset, and its CountryDataImage if one was compiled.
+     **/
+    static void delete(String location) throws IOException {
+        if (!location.isEmpty()) {
+            Files.deleteIfExists(Path.of(location));
+            Files.deleteIfExists(Path.of(CountryDataImage.imageLocation(location)));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.ajsd.chatbot.benchmark;
+
+import com.ajsd.chatbot.config.CountryDataImage;
+import com.ajsd.chatbot.config.CountryDataLoader;
+import com.ajsd.chatbot.config.CountrySnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*
+    What loading the country data costs at startup: reading the file, building the
+    CountryStore, its search index and the fuzzy resolver, as a new CountryDataLoader
+    does when the application starts.
+
+    Every measurement is a single load, not an average over many, since a load happens
+    once per start (or per reload). coldLoad runs in a fresh JVM with no warmup, as the
+    first load at startup does; warmLoad is the same after the JIT has compiled it, as a
+    reload runs.
+
+    With image set, the data is read from its precompiled CountryDataImage, as the first
+    load of the application does, instead of from the JSON. The images are compiled in
+    setUp, the one of the bundled data next to a copy of it in a temporary file, since
+    the benchmarks do not have the image the application build puts on its classpath.
+    setUp fails rather than let the loader fall back to the JSON unnoticed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(5)
+public class CountryDataLoadBenchmark {
+
+    @Param({CountryData.BUNDLED, "2000", "20000", "50000"})
+    private String countries;
+
+    @Param({"false", "true"})
+    private boolean image;
+
+    private String location;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        location = CountryData.location(countries);
+        if (image) {
+            if (location.isEmpty()) {
+                location = CountryData.bundledCopy();
+            }
+            CountryDataImage.compile(location, Path.of(CountryDataImage.imageLocation(location)));
+            if (CountryDataImage.load(location) == null) {
+                throw new IllegalStateException("The image of " + location + " is not used, the loader would read the JSON");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        CountryData.delete(location);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public CountrySnapshot coldLoad() {
+        return new CountryDataLoader(location, image).reloadCountryData();
+    }
+
+    @Benchmark
+    @Warmup(iterations = 10)
+    @Measurement(iterations = 10)
+    public CountrySnapshot warmLoad() {
+        return new CountryDataLoader(location, image).reloadCountryData();
+    }
+}
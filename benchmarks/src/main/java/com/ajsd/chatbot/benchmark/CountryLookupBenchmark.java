@@ -0,0 +1,106 @@
+package com.ajsd.chatbot.benchmark;
+
+import com.ajsd.chatbot.config.CountryDataLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Cost of the CountryDataLoader lookups behind every country question, for the
+    bundled countries_data.json and for synthetic datasets of thousands of countries.
+
+    findCountryId and getCountryProperty are hash lookups and should not move with the
+    size of the data. The listCountriesWhich* searches go through the name index: their
+    cost grows with the number of countries they return, and for contains, with the
+    number of names sharing a fragment.
+
+    Queries are taken from the loaded names, in the case a user would type them: mixed
+    case for the names, 2 letters for the prefixes and suffixes, 3 for the fragments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CountryLookupBenchmark {
+
+    private static final int QUERIES = 256;
+
+    @Param({CountryData.BUNDLED, "2000", "20000"})
+    private String countries;
+
+    private String location;
+    private CountryDataLoader loader;
+    private String[] names;
+    private String[] prefixes;
+    private String[] suffixes;
+    private String[] fragments;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        location = CountryData.location(countries);
+        loader = new CountryDataLoader(location);
+        loader.loadCountryData();
+
+        Random random = new Random(42);
+        String[] all = loader.listAllCountryNames();
+        names = new String[QUERIES];
+        prefixes = new String[QUERIES];
+        suffixes = new String[QUERIES];
+        fragments = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String name = all[random.nextInt(all.length)];
+            names[i] = random.nextBoolean() ? name.toLowerCase() : name;
+            prefixes[i] = name.substring(0, Math.min(2, name.length())).toLowerCase();
+            suffixes[i] = name.substring(Math.max(0, name.length() - 2)).toLowerCase();
+            int start = random.nextInt(Math.max(1, name.length() - 2));
+            fragments[i] = name.substring(start, Math.min(name.length(), start + 3)).toLowerCase();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        CountryData.delete(location);
+    }
+
+    @Benchmark
+    public int findCountryId() {
+        return loader.findCountryId(names[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public String getCountryProperty() {
+        return loader.getCountryProperty(names[next++ & (QUERIES - 1)], "capital");
+    }
+
+    @Benchmark
+    public String[] listCountriesWhichStartsWith() {
+        return loader.listCountriesWhichStartsWith(prefixes[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public String[] listCountriesWhichEndsWith() {
+        return loader.listCountriesWhichEndsWith(suffixes[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public String[] listCountriesWhichContainsString() {
+        return loader.listCountriesWhichContainsString(fragments[next++ & (QUERIES - 1)]);
+    }
+}
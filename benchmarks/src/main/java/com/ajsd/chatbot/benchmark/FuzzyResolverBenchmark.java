@@ -0,0 +1,77 @@
+package com.ajsd.chatbot.benchmark;
+
+import com.ajsd.chatbot.util.FuzzyResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Cost of resolving a misspelled name as the dictionary grows from the size of
+    countries_data.json to tens of thousands of entries.
+
+    resolveTypo (one edit) should stay flat: it is a fixed number of lookups in the
+    symmetric-delete index. resolveTwoTypos falls back to the BK-tree, its cost grows
+    with the dictionary until it hits FuzzyResolver's visit and time budget.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FuzzyResolverBenchmark {
+
+    @Param({"200", "2000", "20000", "50000"})
+    private int dictionarySize;
+
+    private FuzzyResolver resolver;
+    private String[] typos;
+    private String[] doubleTypos;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        Map<String, String> names = new HashMap<>();
+        while (names.size() < dictionarySize) {
+            String name = Names.placeName(random);
+            names.put(name.toLowerCase(), name);
+        }
+        resolver = new FuzzyResolver(names.values());
+
+        // Real names with one random edit, the common case of a typo
+        String[] keys = names.keySet().toArray(new String[0]);
+        typos = new String[1024];
+        for (int i = 0; i < typos.length; i++) {
+            typos[i] = Names.withTypo(keys[random.nextInt(keys.length)], random);
+        }
+        doubleTypos = new String[1024];
+        for (int i = 0; i < doubleTypos.length; i++) {
+            doubleTypos[i] = Names.withTypo(Names.withTypo(keys[random.nextInt(keys.length)], random), random);
+        }
+    }
+
+    @Benchmark
+    public FuzzyResolver.Resolution resolveTypo() {
+        return resolver.resolve(typos[next++ & (typos.length - 1)]);
+    }
+
+    @Benchmark
+    public FuzzyResolver.Resolution resolveTwoTypos() {
+        return resolver.resolve(doubleTypos[next++ & (doubleTypos.length - 1)]);
+    }
+}
@@ -0,0 +1,85 @@
+package com.ajsd.chatbot.benchmark;
+
+import com.ajsd.chatbot.model.MedicalStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Cost of ranking the conditions matching a description of symptoms, as the number
+    of conditions grows from the size of medical_data.json to tens of thousands. Every
+    condition has a dozen words per property, drawn from a vocabulary of a few thousand
+    made-up words and the common symptoms asked about.
+
+    A search only walks the postings of the words of the question, then picks the best
+    few out of one score per condition, so it should stay far below a millisecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MedicalSearchBenchmark {
+
+    private static final String[] COMMON_SYMPTOMS = {
+            "headaches", "nausea", "fatigue", "fever", "dizziness", "coughing", "chest pain", "rash"
+    };
+    private static final int VOCABULARY = 4000;
+    private static final int WORDS_PER_PROPERTY = 12;
+
+    @Param({"10", "1000", "10000", "50000"})
+    private int conditions;
+
+    private MedicalStore store;
+    private String[] questions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        String[] vocabulary = new String[VOCABULARY];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = Names.placeName(random).toLowerCase() + "itis";
+        }
+
+        MedicalStore.Builder builder = MedicalStore.builder();
+        for (int i = 0; i < conditions; i++) {
+            String[] values = new String[4];
+            for (int property = 0; property < values.length; property++) {
+                StringBuilder text = new StringBuilder();
+                for (int word = 0; word < WORDS_PER_PROPERTY; word++) {
+                    boolean common = random.nextInt(10) == 0;
+                    text.append(word == 0 ? "" : ", ")
+                            .append(common ? COMMON_SYMPTOMS[random.nextInt(COMMON_SYMPTOMS.length)] : vocabulary[random.nextInt(VOCABULARY)]);
+                }
+                values[property] = text.toString();
+            }
+            builder.add("condition " + i, values);
+        }
+        store = builder.build();
+
+        questions = new String[256];
+        for (int i = 0; i < questions.length; i++) {
+            questions[i] = "what causes " + COMMON_SYMPTOMS[random.nextInt(COMMON_SYMPTOMS.length)]
+                    + " and " + vocabulary[random.nextInt(VOCABULARY)];
+        }
+    }
+
+    @Benchmark
+    public int[] search() {
+        return store.search(questions[next++ & (questions.length - 1)], 3);
+    }
+}
@@ -0,0 +1,42 @@
+package com.ajsd.chatbot.benchmark;
+
+import java.util.Random;
+
+/*
+    Synthetic, pronounceable place names used to grow the benchmark datasets far
+    beyond the bundled countries_data.json.
+ */
+final class Names {
+
+    private static final String[] SYLLABLES = {
+            "ar", "ba", "ca", "da", "el", "fa", "ga", "ha", "is", "ja", "ka", "la", "ma", "na", "or",
+            "pa", "qu", "ra", "sa", "ta", "ul", "va", "wa", "xi", "ya", "za", "ia", "on", "en", "stan"
+    };
+
+    private Names() {
+    }
+
+    static String placeName(Random random) {
+        int syllables = 2 + random.nextInt(4);
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        return name.toString();
+    }
+
+    // Deletes, replaces or inserts one character
+    static String withTypo(String name, Random random) {
+        int position = random.nextInt(name.length());
+        char letter = (char) ('a' + random.nextInt(26));
+        switch (random.nextInt(3)) {
+            case 0:
+                return name.substring(0, position) + name.substring(position + 1);
+            case 1:
+                return name.substring(0, position) + letter + name.substring(position + 1);
+            default:
+                return name.substring(0, position) + letter + name.substring(position);
+        }
+    }
+}
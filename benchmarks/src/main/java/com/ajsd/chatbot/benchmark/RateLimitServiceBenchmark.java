@@ -0,0 +1,62 @@
+package com.ajsd.chatbot.benchmark;
+
+import com.ajsd.chatbot.service.RateLimitService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Cost of RateLimitService.isAllowed with 16 threads hammering it at once.
+
+    With keys = 1 every thread updates the same bucket, the worst case for the
+    compareAndSet loop. With more keys the threads mostly touch different buckets,
+    which is what many concurrent sessions look like. The refill is fast enough
+    that requests are allowed, so every call goes through a successful update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class RateLimitServiceBenchmark {
+
+    @Param({"1", "64", "10000"})
+    private int keys;
+
+    private RateLimitService rateLimitService;
+    private String[] sessionIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rateLimitService = new RateLimitService(4000, 1_000_000, false);
+        sessionIds = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            sessionIds[i] = "session-" + i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = ThreadLocalRandom.current().nextInt(1 << 16);
+    }
+
+    @Benchmark
+    public boolean isAllowed(Cursor cursor) {
+        return rateLimitService.isAllowed(sessionIds[(cursor.next++ & Integer.MAX_VALUE) % keys]);
+    }
+}
@@ -0,0 +1,126 @@
+package com.ajsd.chatbot.benchmark;
+
+import com.ajsd.chatbot.config.CountryDataLoader;
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.ConversationStep;
+import com.ajsd.chatbot.model.Topic;
+import com.ajsd.chatbot.service.ChatbotService;
+import com.ajsd.chatbot.service.ContextAnalyzer;
+import com.ajsd.chatbot.service.IntelligenceService;
+import com.ajsd.chatbot.service.MedicalService;
+import com.ajsd.chatbot.service.MetricsService;
+import com.ajsd.chatbot.service.ResponseRenderer;
+import com.ajsd.chatbot.service.RuleBasedEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Cost of RuleBasedEngine.processUserInput for one turn at every step of the
+    conversation, with the services wired as the application wires them and the
+    bundled data.
+
+    Every invocation puts the context back at the step of the turn before running it,
+    since the engine moves the conversation on. The turns are the common ones: the
+    right answer for the step, plus a typo of a country name and a description of
+    symptoms, which take the slower fuzzy and search paths. Option turns include the
+    enrichment of the answer by the IntelligenceService, from its cache after the
+    first invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleBasedEngineBenchmark {
+
+    @Param({"ASK_INTENT", "SELECT_TOPIC", "SELECT_COUNTRY", "SELECT_COUNTRY_TYPO", "SEARCH_COUNTRY_PREFIX",
+            "SEARCH_COUNTRY_SUFFIX", "SEARCH_COUNTRY_CONTAINS", "COUNTRY_OPTION", "SELECT_CONDITION",
+            "DESCRIBE_SYMPTOMS", "MEDICAL_OPTION"})
+    private String turn;
+
+    private RuleBasedEngine engine;
+    private ConversationContext context;
+    private String input;
+    private ConversationStep step;
+    private Topic topic;
+    private int countryId;
+    private String condition;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ChatbotService chatbotService = new ChatbotService(new CountryDataLoader());
+        MedicalService medicalService = new MedicalService("");
+        ResponseRenderer responseRenderer = new ResponseRenderer(chatbotService, medicalService);
+        engine = new RuleBasedEngine(chatbotService, medicalService, new IntelligenceService(chatbotService, 1 << 20),
+                new ContextAnalyzer(chatbotService, responseRenderer), responseRenderer, new MetricsService(100_000));
+        context = new ConversationContext();
+        countryId = chatbotService.findCountryId("france");
+        condition = medicalService.getConditionName("asthma");
+
+        switch (turn) {
+            case "ASK_INTENT":
+                set(ConversationStep.ASK_INTENT, null, "teach");
+                break;
+            case "SELECT_TOPIC":
+                set(ConversationStep.SELECT_TOPIC, null, "I want to learn about countries");
+                break;
+            case "SELECT_COUNTRY":
+                set(ConversationStep.SELECT_COUNTRY, Topic.COUNTRIES, "France");
+                break;
+            case "SELECT_COUNTRY_TYPO":
+                set(ConversationStep.SELECT_COUNTRY, Topic.COUNTRIES, "Frnace");
+                break;
+            case "SEARCH_COUNTRY_PREFIX":
+                set(ConversationStep.SEARCH_COUNTRY_PREFIX, Topic.COUNTRIES, "ma");
+                break;
+            case "SEARCH_COUNTRY_SUFFIX":
+                set(ConversationStep.SEARCH_COUNTRY_SUFFIX, Topic.COUNTRIES, "ia");
+                break;
+            case "SEARCH_COUNTRY_CONTAINS":
+                set(ConversationStep.SEARCH_COUNTRY_CONTAINS, Topic.COUNTRIES, "an");
+                break;
+            case "COUNTRY_OPTION":
+                set(ConversationStep.CHOOSE_OPTION, Topic.COUNTRIES, "b");
+                break;
+            case "SELECT_CONDITION":
+                set(ConversationStep.SELECT_CONDITION, Topic.MEDICINE, "Asthma");
+                break;
+            case "DESCRIBE_SYMPTOMS":
+                set(ConversationStep.SELECT_CONDITION, Topic.MEDICINE, "what causes headaches and fatigue");
+                break;
+            case "MEDICAL_OPTION":
+                set(ConversationStep.CHOOSE_OPTION, Topic.MEDICINE, "e");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown turn " + turn);
+        }
+    }
+
+    private void set(ConversationStep step, Topic topic, String input) {
+        this.step = step;
+        this.topic = topic;
+        this.input = input;
+    }
+
+    @Benchmark
+    public String processUserInput() {
+        context.setCurrentStep(step);
+        context.setCurrentTopic(topic);
+        context.setSelectedCountryId(countryId);
+        context.setSelectedCondition(condition);
+        return engine.processUserInput(input, context);
+    }
+}
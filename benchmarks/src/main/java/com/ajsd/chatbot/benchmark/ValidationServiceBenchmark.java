@@ -0,0 +1,84 @@
+package com.ajsd.chatbot.benchmark;
+
+import com.ajsd.chatbot.service.ValidationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Cost of validating a message with the default limit of 500 characters, for typical
+    and adversarial input. Every input is either at the limit, or as long as the
+    service accepts before rejecting it outright (4 times the limit), so the results
+    show the worst case of each kind of input; they should all stay within a small
+    multiple of the plain ASCII case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationServiceBenchmark {
+
+    private static final int MAX_LENGTH = 500;
+
+    @Param({"typical", "ascii", "whitespace", "html", "accented", "combining", "emoji", "fullwidth", "expanding"})
+    private String input;
+
+    private ValidationService validationService;
+    private String message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        validationService = new ValidationService(MAX_LENGTH);
+        switch (input) {
+            case "typical":
+                message = "What is the capital of Argentina?";
+                break;
+            case "ascii":
+                message = "a".repeat(MAX_LENGTH);
+                break;
+            case "whitespace":
+                message = " \t\n".repeat(MAX_LENGTH * 4 / 3);
+                break;
+            case "html":
+                message = "<a href='x'>&amp;</a>".repeat(MAX_LENGTH * 4 / 21);
+                break;
+            case "accented":
+                message = "éèñü".repeat(MAX_LENGTH / 4);
+                break;
+            case "combining":
+                // Decomposed letters, composed again by NFKC
+                message = "e\u0301".repeat(MAX_LENGTH * 2);
+                break;
+            case "emoji":
+                message = "😀".repeat(MAX_LENGTH * 2);
+                break;
+            case "fullwidth":
+                message = "ＡＢＣ".repeat(MAX_LENGTH * 4 / 3);
+                break;
+            case "expanding":
+                // One character which NFKC expands to 18
+                message = "\uFDFA".repeat(MAX_LENGTH * 4);
+                break;
+            default:
+                throw new IllegalArgumentException(input);
+        }
+    }
+
+    @Benchmark
+    public ValidationService.ValidatedInput validate() {
+        return validationService.validate(message);
+    }
+}
@@ -0,0 +1,32 @@
+package com.ajsd.chatbot.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+    The token which trusted callers (administration, scripted batches) send in the
+    X-Admin-Token header. It is set with chatbot.admin.token; while it is empty no
+    request is trusted.
+ **/
+@Component
+public class AdminToken {
+
+    public static final String HEADER = "X-Admin-Token";
+
+    private final byte[] token;
+
+    public AdminToken(@Value("${chatbot.admin.token:}") String token) {
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**  Returns true when the token sent by a caller is the admin token.
+     **/
+    public boolean isValid(String candidate) {
+        // Constant time comparison, so the token cannot be guessed from response times
+        return token.length > 0 && candidate != null
+                && MessageDigest.isEqual(token, candidate.getBytes(StandardCharsets.UTF_8));
+    }
+}
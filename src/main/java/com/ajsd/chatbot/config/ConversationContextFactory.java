@@ -0,0 +1,50 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.HistoryPolicy;
+import com.ajsd.chatbot.store.ConversationArchive;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+    Creates ConversationContext objects with the history policy configured in
+    application.properties:
+
+        chatbot.history.capacity   number of recent messages kept in memory per conversation
+        chatbot.history.policy     DROP, SUMMARIZE or SPILL, see HistoryPolicy
+
+    With SPILL the evicted messages go to the ConversationArchive of the session.
+ **/
+@Component
+public class ConversationContextFactory {
+
+    private final int historyCapacity;
+    private final HistoryPolicy historyPolicy;
+    private final ConversationArchive conversationArchive;
+
+    public ConversationContextFactory(
+            @Value("${chatbot.history.capacity:" + ConversationContext.DEFAULT_HISTORY_CAPACITY + "}") int historyCapacity,
+            @Value("${chatbot.history.policy:SUMMARIZE}") HistoryPolicy historyPolicy,
+            ConversationArchive conversationArchive) {
+        this.historyCapacity = historyCapacity;
+        this.historyPolicy = historyPolicy;
+        this.conversationArchive = conversationArchive;
+    }
+
+    public ConversationContext create(String sessionId) {
+        return new ConversationContext(historyCapacity, historyPolicy,
+                historyPolicy == HistoryPolicy.SPILL ? conversationArchive.spillFor(sessionId) : null);
+    }
+
+    /**  Creates a context which is never stored, e.g. for a scripted batch: it has the
+     *          configured capacity, but never spills to the archive.
+     **/
+    public ConversationContext createDetached() {
+        return new ConversationContext(historyCapacity,
+                historyPolicy == HistoryPolicy.SPILL ? HistoryPolicy.SUMMARIZE : historyPolicy, null);
+    }
+
+    public HistoryPolicy getHistoryPolicy() {
+        return historyPolicy;
+    }
+}
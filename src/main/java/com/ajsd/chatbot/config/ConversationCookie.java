@@ -0,0 +1,80 @@
+package com.ajsd.chatbot.config;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+    Identifies the conversation of a browser with a cookie of its own rather than the
+    servlet container's session, so the conversation can be found by any node sharing
+    the ConversationStore, and after a restart when the store keeps its files.
+
+    The id is 128 random bits, so it cannot be guessed, and the cookie is HttpOnly.
+ **/
+@Component
+public class ConversationCookie {
+
+    public static final String NAME = "chatbot_conversation";
+
+    private static final int ID_BYTES = 16;
+
+    private final SecureRandom random = new SecureRandom();
+    private final int maxAgeSeconds;
+
+    public ConversationCookie(@Value("${chatbot.conversation.ttl-minutes:30}") long ttlMinutes) {
+        this.maxAgeSeconds = (int) Math.min(Integer.MAX_VALUE, ttlMinutes * 60);
+    }
+
+    /**  Returns the conversation id carried by the request, or creates one and sets it
+     *          on the response. Every call refreshes the age of the cookie, in step with
+     *          the time-to-live of the conversation.
+     **/
+    public String resolve(HttpServletRequest request, HttpServletResponse response) {
+        String conversationId = find(request);
+        if (conversationId == null) {
+            byte[] id = new byte[ID_BYTES];
+            random.nextBytes(id);
+            conversationId = Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+        }
+        Cookie cookie = new Cookie(NAME, conversationId);
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        cookie.setMaxAge(maxAgeSeconds);
+        cookie.setAttribute("SameSite", "Lax");
+        response.addCookie(cookie);
+        return conversationId;
+    }
+
+    private static String find(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (NAME.equals(cookie.getName()) && isWellFormed(cookie.getValue())) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    // Only ids this class could have made, so nothing else ever reaches the store or a file name
+    private static boolean isWellFormed(String value) {
+        if (value == null || value.length() != 22) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(Character.isLetterOrDigit(c) && c < 0x80) && c != '-' && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
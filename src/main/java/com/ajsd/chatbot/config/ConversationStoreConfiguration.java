@@ -0,0 +1,66 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.service.ResponseRenderer;
+import com.ajsd.chatbot.store.ConversationArchive;
+import com.ajsd.chatbot.store.ConversationCodec;
+import com.ajsd.chatbot.store.ConversationLocks;
+import com.ajsd.chatbot.store.ConversationStore;
+import com.ajsd.chatbot.store.InHeapConversationStore;
+import com.ajsd.chatbot.store.OffHeapConversationStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+    Chooses the ConversationStore and what goes with it from application.properties:
+
+        chatbot.conversation.store           heap or off-heap
+        chatbot.conversation.ttl-minutes     idle time after which a conversation expires
+        chatbot.conversation.store-directory off-heap only: empty to keep conversations in
+                                             direct memory, or a directory of memory-mapped
+                                             files which survive a restart
+        chatbot.conversation.codec-dictionary off-heap only: compress the menus the bot
+                                             repeats in its replies (see ConversationCodec)
+        chatbot.conversation.lock-stripes    locks which order the turns of a conversation,
+                                             see ConversationLocks
+ **/
+@Configuration
+public class ConversationStoreConfiguration {
+
+    // Append only: stored conversations reference the entries by their position
+    private static final String[] CODEC_DICTIONARY = {
+            ResponseRenderer.COUNTRY_OPTIONS_STRING,
+            ResponseRenderer.COUNTRY_LOOKUP_OPTIONS_STRING,
+            ResponseRenderer.MEDICAL_OPTIONS_STRING,
+            "What country do you want to learn about?",
+            "I do not understand. \nPlease choose one of the following:\n"
+    };
+
+    @Bean
+    public ConversationLocks conversationLocks(@Value("${chatbot.conversation.lock-stripes:1024}") int stripes) {
+        return new ConversationLocks(stripes);
+    }
+
+    @Bean
+    public ConversationCodec conversationCodec(@Value("${chatbot.conversation.codec-dictionary:true}") boolean useDictionary) {
+        return useDictionary ? new ConversationCodec(CODEC_DICTIONARY) : new ConversationCodec();
+    }
+
+    @Bean
+    public ConversationStore conversationStore(
+            @Value("${chatbot.conversation.store:heap}") String store,
+            @Value("${chatbot.conversation.ttl-minutes:30}") long ttlMinutes,
+            @Value("${chatbot.conversation.store-directory:}") String directory,
+            ConversationArchive conversationArchive,
+            ConversationCodec conversationCodec) {
+        long ttlMillis = ttlMinutes * 60_000;
+        switch (store) {
+            case "heap":
+                return new InHeapConversationStore(ttlMillis);
+            case "off-heap":
+                return new OffHeapConversationStore(ttlMillis, directory, conversationArchive, conversationCodec);
+            default:
+                throw new IllegalArgumentException("Unknown chatbot.conversation.store: " + store);
+        }
+    }
+}
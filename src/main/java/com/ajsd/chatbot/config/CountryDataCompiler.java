@@ -0,0 +1,47 @@
+package com.ajsd.chatbot.config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+    Compiles country data into a CountryDataImage. Run by the build, in the
+    process-classes phase, for the bundled data:
+
+        CountryDataCompiler classpath:countries_data.json target/classes/countries_data.bin
+
+    and by hand for a data file set in chatbot.data.countries.location, with the image
+    written next to it unless a second argument says otherwise:
+
+        java -cp chatbot.jar -Dloader.main=com.ajsd.chatbot.config.CountryDataCompiler \
+            org.springframework.boot.loader.launch.PropertiesLauncher /data/countries.json
+ **/
+public final class CountryDataCompiler {
+
+    private static final String BUNDLED = "classpath:" + CountryDataReader.CLASSPATH_RESOURCE;
+
+    private CountryDataCompiler() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: CountryDataCompiler <countries.json | " + BUNDLED + "> [image]");
+            System.exit(2);
+        }
+        // The reader takes an empty location for the bundled data
+        String location = BUNDLED.equals(args[0]) ? "" : args[0];
+        Path output = Paths.get(args.length == 2 ? args[1] : imageFile(location));
+
+        long start = System.nanoTime();
+        CountryDataImage.compile(location, output);
+        System.out.printf("Compiled %s into %s in %d ms%n", args[0], output, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static String imageFile(String location) {
+        String image = CountryDataImage.imageLocation(location);
+        if (image == null || image.startsWith("classpath:")) {
+            throw new IllegalArgumentException("No image file for " + (location.isEmpty() ? BUNDLED : location)
+                    + ", name the image to write");
+        }
+        return image;
+    }
+}
@@ -0,0 +1,166 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.model.CountryProperty;
+import com.ajsd.chatbot.model.CountryStore;
+import com.ajsd.chatbot.util.FuzzyResolver;
+import com.ajsd.chatbot.util.NameSearchIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+/**
+    Precompiled image of the country data: the CountryStore together with its
+    NameSearchIndex and FuzzyResolver, as built from the JSON, written in a binary form
+    which is read back without parsing JSON, sorting or hashing anything.
+
+    Images are written at build time by CountryDataCompiler, next to the JSON they were
+    compiled from: countries_data.bin on the classpath for the bundled data, and for a
+    data file such as countries.json, countries.bin in the same directory. A directory of
+    shards has no image.
+
+    Layout, big endian (see BinaryImage for how values are written), after the header
+    of DataImageFile, with the key and default value of every CountryProperty as its
+    signature:
+
+        store              CountryStore.write
+        search index       NameSearchIndex.write
+        fuzzy resolver     FuzzyResolver.write, with its BK-tree
+
+    load() only uses an image which matches the data as it is now: same format version,
+    same properties, and a source which has not changed since. That is checked without
+    reading the JSON, which would cost a good part of what the image saves (see
+    DataImageFile.isUpToDate). Anything else, or an image which cannot be read, makes it
+    return null, and the data is read from the JSON. So a JSON file copied without its
+    time, or merely touched, is read as JSON until its image is compiled again.
+
+    An image file, or an image in a classpath directory, is mapped rather than read, and
+    the store reads its names and property values from the mapping as they are asked for
+    (see CountryStore), so the values never asked for are never copied onto the heap and
+    the pages holding them can be dropped by the OS. The search index and the fuzzy
+    resolver go through every name on each lookup, so they are decoded on loading. The
+    mapping lives as long as the store; on Windows the image cannot be replaced by the
+    next compile until then. An image inside a jar cannot be mapped, it is read into a
+    heap buffer, which the store reads from the same way.
+
+    The store keeps its hash table in the image too, which makes the hash function of
+    CountryStore part of the format.
+ **/
+public final class CountryDataImage {
+
+    private static final Logger logger = LoggerFactory.getLogger(CountryDataImage.class);
+
+    public static final String CLASSPATH_RESOURCE = "countries_data.bin";
+
+    static final int MAGIC = 0x414A5344; // "AJSD"
+    static final int FORMAT_VERSION = 4;
+
+    private final CountryStore store;
+    private final NameSearchIndex searchIndex;
+    private final FuzzyResolver fuzzyResolver;
+
+    private CountryDataImage(CountryStore store, NameSearchIndex searchIndex, FuzzyResolver fuzzyResolver) {
+        this.store = store;
+        this.searchIndex = searchIndex;
+        this.fuzzyResolver = fuzzyResolver;
+    }
+
+    public CountryStore getStore() {
+        return store;
+    }
+
+    public NameSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public FuzzyResolver getFuzzyResolver() {
+        return fuzzyResolver;
+    }
+
+    /**  Returns where the image of a data location is: "classpath:countries_data.bin" for
+     *          the bundled data, the path of the image file for a JSON file, or null for a
+     *          directory of shards.
+     **/
+    public static String imageLocation(String location) {
+        return DataImageFile.imageLocation(location, CLASSPATH_RESOURCE);
+    }
+
+    /**  Compiles the data of a location (see CountryDataReader) into an image file. The
+     *          image is written to a temporary file first, then moved into place.
+     **/
+    public static void compile(String location, Path output) throws IOException {
+        URL sourceUrl = sourceUrl(location, CountryDataImage.class.getClassLoader());
+        CountryStore store = new CountryDataReader().read(location);
+        DataImageFile.compile(sourceUrl, output, MAGIC, FORMAT_VERSION, propertySignature(), out -> {
+            store.write(out);
+            new NameSearchIndex(store.names()).write(out);
+            new FuzzyResolver(store.names()).write(out);
+        });
+    }
+
+    /**  Returns the image of the data of a location, or null when there is none, or it
+     *          is not usable: out of date, of another format, or damaged. Never throws,
+     *          whatever is wrong with the image, the data can still be read from the JSON.
+     **/
+    public static CountryDataImage load(String location) {
+        return load(location, CountryDataImage.class.getClassLoader());
+    }
+
+    // The class loader is where the bundled data and its image are looked up
+    static CountryDataImage load(String location, ClassLoader classLoader) {
+        String imageLocation = imageLocation(location);
+        if (imageLocation == null) {
+            return null;
+        }
+        try {
+            ByteBuffer image = DataImageFile.open(imageLocation, classLoader);
+            if (image == null) {
+                logger.info("No precompiled country data at {}, reading the JSON", imageLocation);
+                return null;
+            }
+            if (!DataImageFile.isOfFormat(image, MAGIC, FORMAT_VERSION, propertySignature())) {
+                logger.info("Precompiled country data at {} is of another format, reading the JSON", imageLocation);
+                return null;
+            }
+            if (!DataImageFile.isUpToDate(image, sourceUrl(location, classLoader))) {
+                logger.info("Precompiled country data at {} is out of date, reading the JSON", imageLocation);
+                return null;
+            }
+
+            CountryStore store = CountryStore.read(image);
+            NameSearchIndex searchIndex = NameSearchIndex.read(image);
+            FuzzyResolver fuzzyResolver = FuzzyResolver.read(image);
+            if (image.hasRemaining() || searchIndex.size() != store.countryCount()) {
+                throw new IllegalArgumentException("unexpected content");
+            }
+            return new CountryDataImage(store, searchIndex, fuzzyResolver);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot use the precompiled country data at {}, reading the JSON: {}", imageLocation, e.toString());
+            return null;
+        }
+    }
+
+    // Where the JSON source of a location which has an image is
+    private static URL sourceUrl(String location, ClassLoader classLoader) throws IOException {
+        List<String> sources = new CountryDataReader().sources(location);
+        if (sources.size() != 1) {
+            throw new IOException("Only a single data file can be precompiled, " + location + " has " + sources.size());
+        }
+        return DataImageFile.sourceUrl(sources.get(0), classLoader);
+    }
+
+    // What the values of the store depend on besides the JSON: the properties and their defaults
+    private static String[] propertySignature() {
+        CountryProperty[] properties = CountryProperty.values();
+        String[] signature = new String[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            signature[i] = properties[i].getKey() + "=" + Objects.toString(properties[i].getDefaultValue(), "");
+        }
+        return signature;
+    }
+}
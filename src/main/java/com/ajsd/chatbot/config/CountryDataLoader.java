@@ -1,17 +1,27 @@
 package com.ajsd.chatbot.config;
 
 
-import com.ajsd.chatbot.model.CountryInfo;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ajsd.chatbot.model.CountryProperty;
+import com.ajsd.chatbot.model.CountryStore;
+import com.ajsd.chatbot.util.FuzzyResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.InputStream;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
     This class is used to load the countries, capitals, national animals and national flowers
-    into a HashMap, which can be used by the chatbot later.
+    into a read-only CountryStore, which can be used by the chatbot later.
 
     It implements the singleton design pattern, which means that only one object of the class
     can be created and used throughout the application. It does this by:
@@ -21,14 +31,68 @@ import java.util.Map;
         3(a).  If the instance is null, it creates a new instance of the class and returns it.
         3(b).  If the instance is not null, it returns the existing instance of the class.
 
+    Countries are identified by the dense int ids of the CountryStore. The name based
+    methods are kept for callers which only have a name at hand.
+
+    The data is read by CountryDataReader, from the bundled countries_data.json or from
+    the file or directory of shards set in chatbot.data.countries.location. The first
+    load reads the precompiled CountryDataImage of the data instead when there is an up
+    to date one (chatbot.data.countries.image), which skips parsing the JSON and building
+    the indexes at startup. Reloads always read the JSON, since they run because it changed.
+
+    The data can be reloaded while the application runs (see CountryDataWatcher and
+    AdminController). A reload builds a complete new CountrySnapshot on the reloading
+    thread, then publishes it with a single set of an AtomicReference:
+    1. Readers never wait for a reload, and never see a half built snapshot.
+    2. Every method below reads the reference once, so it answers from one snapshot.
+    3. Country ids are kept across reloads, so the id held by a conversation still
+       refers to the same country afterwards.
+    If a reload fails the current snapshot stays in place, and so does everything the
+    snapshot listeners derived from it: the listeners first prepare what they derive
+    from the new snapshot, and only once every one of them succeeded are the prepared
+    states committed and the snapshot published.
+
  **/
 @Component
 public class CountryDataLoader {
 
+    private static final Logger logger = LoggerFactory.getLogger(CountryDataLoader.class);
+
     private static CountryDataLoader instance = null;
 
-    private final Map<String, CountryInfo> countryData = new HashMap<>();
+    private final CountryDataReader reader = new CountryDataReader();
+
+    // Empty for the bundled countries_data.json, otherwise a JSON file or a directory of shards
+    private final String location;
+
+    // Whether the first load may use the precompiled image of the data
+    private final boolean useImage;
+
+    private final AtomicReference<CountrySnapshot> snapshot =
+            new AtomicReference<>(new CountrySnapshot(0, CountryStore.builder().build()));
+
+    // Prepare what they derive from every new snapshot before it is published
+    private final List<SnapshotListener> snapshotListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failedReloads = new AtomicLong();
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private volatile long lastReloadMillis;
+
+    public CountryDataLoader() {
+        this("");
+    }
+
+    public CountryDataLoader(String location) {
+        this(location, true);
+    }
 
+    @Autowired
+    public CountryDataLoader(@Value("${chatbot.data.countries.location:}") String location,
+                             @Value("${chatbot.data.countries.image:true}") boolean useImage) {
+        this.location = location;
+        this.useImage = useImage;
+    }
 
 
     public static CountryDataLoader getInstance() {
@@ -45,35 +109,121 @@ public class CountryDataLoader {
 
 
     public void loadCountryData() {
+        reloadCountryData();
+    }
 
-        try (InputStream inputStream = CountryDataLoader.class.getClassLoader().getResourceAsStream("countries_data.json")) {
-            if (inputStream == null) {
-                throw new RuntimeException("countries_data.json not found");
+    /**  Reads the data again and publishes it as the next snapshot, which is returned.
+     *          Reloads are serialized; a failed reload throws and leaves the current
+     *          snapshot in place.
+     **/
+    public CountrySnapshot reloadCountryData() {
+        // A lock rather than synchronized: the reload reads files, which would pin a virtual thread to its carrier
+        reloadLock.lock();
+        try {
+            long start = System.nanoTime();
+            CountrySnapshot previous = snapshot.get();
+            CountrySnapshot next;
+            List<Runnable> commits = new ArrayList<>(snapshotListeners.size());
+            String source = location.isBlank() ? CountryDataReader.CLASSPATH_RESOURCE : location;
+            try {
+                // Only while there is nothing loaded yet, so there are no ids to keep
+                CountryDataImage image = useImage && previous.getStore().size() == 0 ? CountryDataImage.load(location) : null;
+                if (image != null) {
+                    next = new CountrySnapshot(previous.getGeneration() + 1, image.getStore(),
+                            image.getSearchIndex(), image.getFuzzyResolver());
+                    source = CountryDataImage.imageLocation(location);
+                } else {
+                    CountryStore store = reader.read(location, previous.getStore());
+                    next = new CountrySnapshot(previous.getGeneration() + 1, store);
+                }
+                for (SnapshotListener listener : snapshotListeners) {
+                    commits.add(listener.prepare(next));
+                }
+            } catch (Exception e) {
+                failedReloads.incrementAndGet();
+                throw new RuntimeException("Error loading country data", e);
             }
+            // Before the set, so whatever is looked up by an id of the new snapshot is there. Ids
+            // are kept across reloads, so the current snapshot is served by the new states as well
+            commits.forEach(Runnable::run);
+            snapshot.set(next);
+
+            lastReloadMillis = (System.nanoTime() - start) / 1_000_000;
+            reloads.incrementAndGet();
+            logger.info("Loaded {} countries from {} in {} ms (generation {})", next.getStore().countryCount(),
+                    source, lastReloadMillis, next.getGeneration());
+            return next;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    /**  Registers a listener which is called with every new snapshot, on the reloading
+     *          thread and before the snapshot is published, so whatever it derives from
+     *          the data is ready as soon as the snapshot can be seen. A listener which
+     *          throws fails the reload.
+     **/
+    public void addSnapshotListener(SnapshotListener listener) {
+        snapshotListeners.add(listener);
+    }
+
+    /**  Derives state from the country data in two steps: prepare builds it from a new
+     *          snapshot, and may throw to fail the reload; the Runnable it returns installs
+     *          it, and is only run once every listener prepared its state. The Runnable
+     *          must not fail, it should do no more than assign what was prepared.
+     **/
+    @FunctionalInterface
+    public interface SnapshotListener {
+        Runnable prepare(CountrySnapshot snapshot);
+    }
 
-            // Use Jackson ObjectMapper to parse the JSON file
-            ObjectMapper objectMapper = new ObjectMapper();
+    public CountrySnapshot getSnapshot() {
+        return snapshot.get();
+    }
 
-            // Map the JSON structure to a Map<String, CountryInfo>
-            Map<String, Map<String, String>> rawData = objectMapper.readValue(inputStream, Map.class);
+    /**  Returns the location the data is read from, empty for the bundled countries_data.json.
+     **/
+    public String getLocation() {
+        return location;
+    }
 
-            // Convert raw data to CountryInfo objects and populate the map
-            for (Map.Entry<String, Map<String, String>> entry : rawData.entrySet()) {
-                String country = entry.getKey();
-                Map<String, String> countryInfo = entry.getValue();
+    /**  Generation and reload counters of the country data, for the metrics endpoint.
+     **/
+    public Map<String, Object> getReloadStatistics() {
+        CountrySnapshot current = snapshot.get();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("generation", current.getGeneration());
+        statistics.put("countries", current.getStore().countryCount());
+        statistics.put("retiredCountries", current.getStore().size() - current.getStore().countryCount());
+        statistics.put("reloads", reloads.get());
+        statistics.put("failedReloads", failedReloads.get());
+        statistics.put("lastReloadMillis", lastReloadMillis);
+        return statistics;
+    }
 
-                String capital = countryInfo.get("capital");
-                String nationalAnimal = countryInfo.getOrDefault("nationalAnimal", "Unknown");
-                String nationalFlower = countryInfo.getOrDefault("nationalFlower", "Unknown");
 
-                countryData.put(country.toLowerCase(), new CountryInfo(capital, nationalAnimal, nationalFlower));
-            }
+    /**  Returns the id of a country, whatever the case of the name passed,
+     *          or CountryStore.NOT_FOUND.
+     **/
+    public int findCountryId(String country) {
+        return snapshot.get().getStore().idOf(country);
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException("Error loading country data", e);
-        }
+    /**  Returns the value of a property of the country with the given id.
+     *          Lookups by id and property do not allocate.
+     **/
+    public String getCountryProperty(int countryId, CountryProperty property) {
+        return snapshot.get().getStore().get(countryId, property);
+    }
 
+    public String getCountryName(int countryId) {
+        return snapshot.get().getStore().name(countryId);
+    }
 
+    /**  Returns the number of countries, not counting those retired by a reload.
+     **/
+    public int getCountryCount() {
+        return snapshot.get().getStore().countryCount();
     }
 
 
@@ -82,73 +232,88 @@ public class CountryDataLoader {
      *          name like "USA" and "nationalAnimal". The method should be
      *          named getCountryProperty(String country, String property) and
      *          should return the value of the property for the country. The
-     *          country name should be converted to lowercase before searching in
-     *          the HashMap.
+     *          country name is looked up case-insensitively in the CountryStore.
      *          If the country is not found, it should return "Country not found".
      *          If the property is not found, it should return "Invalid property".
      **/
     public String getCountryProperty(String country, String property) {
-        CountryInfo countryInfo = countryData.get(country.toLowerCase());
-        if (countryInfo == null) {
+        CountryStore countryStore = snapshot.get().getStore();
+        int countryId = countryStore.idOf(country);
+        if (countryId == CountryStore.NOT_FOUND) {
             return "Country not found";
         }
-        switch (property) {
-            case "capital":
-                return countryInfo.getCapital();
-            case "nationalAnimal":
-                return countryInfo.getNationalAnimal();
-            case "nationalFlower":
-                return countryInfo.getNationalFlower();
-            default:
-                return "Invalid property";
+        CountryProperty countryProperty = CountryProperty.fromKey(property);
+        if (countryProperty == null) {
+            return "Invalid property";
         }
+        return countryStore.get(countryId, countryProperty);
     }
 
 
 
     /**  Create a method to create an array of String objects with each country in the
-     *          array being the name of a country, as available in the HashMap.
+     *          array being the name of a country, as available in the CountryStore.
      *          The method should be named listAllCountries() and return the array.
-     *          The array should be created using the keySet() method of the HashMap.
+     *          The countries are returned by id, as spelled in the data file.
      **/
     public String[] listAllCountries() {
-        return countryData.keySet().toArray(new String[0]);
+        List<String> names = snapshot.get().getStore().names();
+        return names.toArray(new String[0]);
     }
 
 
     /**  Create a method to create an array of String objects with each country in the
-     *          array being the name of a country, as available in the HashMap
+     *          array being the name of a country, as available in the CountryStore
      *          which begins with the String which is passed to the method.
      *          The method should be named listCountriesWhichStartsWith(String).
-     *          The country and string passed should be converted to lowercase before searching in the HashMap.
-     *          The method should use the stream() method of the HashMap to filter the countries
-     *          and return the array.
+     *          The lookup is case-insensitive and answered by the search index of the
+     *          current snapshot, the countries are returned in alphabetical order.
      **/
     public String[] listCountriesWhichStartsWith(String startsWith) {
-        return countryData.keySet().stream().filter(country -> country.toLowerCase().startsWith(startsWith.toLowerCase())).toArray(String[]::new);
+        return snapshot.get().getSearchIndex().startingWith(startsWith);
     }
 
 
     /**  Create a method to create an array of String objects with each country in the
-     *          array being the name of a country, as available in the HashMap
+     *          array being the name of a country, as available in the CountryStore
      *          which ends with the String which is passed to the method.
      *          The method should be named listCountriesWhichEndsWith(String).
-     *          The country and string passed should be converted to lowercase before searching in the HashMap.     *
-     *          The method should use the stream() method of the HashMap to filter the countries
-     *          and return the array.
+     *          The lookup is case-insensitive and answered by the search index of the
+     *          current snapshot, the countries are returned in alphabetical order.
      **/
     public String[] listCountriesWhichEndsWith(String endsWith) {
-        return countryData.keySet().stream().filter(country -> country.toLowerCase().endsWith(endsWith.toLowerCase())).toArray(String[]::new);
+        return snapshot.get().getSearchIndex().endingWith(endsWith);
     }
 
 
 
     public String[] listCountriesWhichContainsString(String contains) {
-        return countryData.keySet().stream().filter(country -> country.toLowerCase().contains(contains.toLowerCase())).toArray(String[]::new);
+        return snapshot.get().getSearchIndex().containing(contains);
+    }
+
+    /**  Returns every country name, as spelled in the data file, in alphabetical order.
+     **/
+    public String[] listAllCountryNames() {
+        return snapshot.get().getSearchIndex().all();
+    }
+
+    /**  Returns the name of the country as spelled in the data file, whatever the case
+     *          of the name passed, or null if the country is not found.
+     **/
+    public String getCountryName(String country) {
+        CountryStore countryStore = snapshot.get().getStore();
+        int countryId = countryStore.idOf(country);
+        return countryId == CountryStore.NOT_FOUND ? null : countryStore.name(countryId);
+    }
+
+    /**  Returns the countries whose name is closest to a misspelled one, see FuzzyResolver.
+     **/
+    public FuzzyResolver.Resolution resolveCountry(String country) {
+        return snapshot.get().getFuzzyResolver().resolve(country);
     }
 
     public boolean isValidCountry(String country) {
-        boolean isFound = countryData.containsKey(country.toLowerCase()) ;
+        boolean isFound = snapshot.get().getStore().idOf(country) != CountryStore.NOT_FOUND;
         return isFound;
     }
 
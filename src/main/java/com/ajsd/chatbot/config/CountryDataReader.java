@@ -0,0 +1,155 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.model.CountryProperty;
+import com.ajsd.chatbot.model.CountryStore;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+    Reads country data files straight into a CountryStore.Builder with Jackson's
+    streaming JsonParser: one pass over the tokens, no intermediate Map, and only
+    the final store is kept in memory.
+
+    A data file is a JSON object of countries, each one an object of properties:
+
+        { "Argentina": { "capital": "Buenos Aires", "nationalAnimal": "...", ... }, ... }
+
+    Properties which are not a CountryProperty are skipped. A missing required
+    property (one without a default value), a duplicate country or a malformed file
+    fails the load with the file, line and column of the problem.
+
+    The location can be empty (the bundled countries_data.json on the classpath),
+    a JSON file, or a directory whose *.json files are read as shards in name order.
+ **/
+public class CountryDataReader {
+
+    public static final String CLASSPATH_RESOURCE = "countries_data.json";
+
+    // Thread-safe and expensive to create, so shared by every read. In a holder, so a start
+    // from a CountryDataImage, which only asks for the sources, does not load Jackson
+    private static final class Json {
+        static final JsonFactory FACTORY = new JsonFactory();
+    }
+
+    /**  Reads every source of the location into a new CountryStore.
+     **/
+    public CountryStore read(String location) throws IOException {
+        return read(location, null);
+    }
+
+    /**  Reads every source of the location into a new CountryStore which keeps the ids
+     *          of the previous one, see CountryStore.Builder.keepIdsOf.
+     **/
+    public CountryStore read(String location, CountryStore previous) throws IOException {
+        CountryStore.Builder builder = CountryStore.builder();
+        if (previous != null) {
+            builder.keepIdsOf(previous);
+        }
+        Set<String> seen = new HashSet<>();
+        for (String source : sources(location)) {
+            try (InputStream inputStream = open(source)) {
+                read(inputStream, source, builder, seen);
+            }
+        }
+        return builder.build();
+    }
+
+    /**  Returns the sources read for a location: the classpath resource, the file
+     *          itself, or the *.json files of the directory in name order.
+     **/
+    public List<String> sources(String location) throws IOException {
+        List<String> sources = new ArrayList<>();
+        if (location == null || location.isBlank()) {
+            sources.add("classpath:" + CLASSPATH_RESOURCE);
+            return sources;
+        }
+        Path path = Paths.get(location);
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                files.filter(file -> file.getFileName().toString().endsWith(".json"))
+                        .sorted()
+                        .forEach(file -> sources.add(file.toString()));
+            }
+            if (sources.isEmpty()) {
+                throw new IOException("No .json country data files in " + location);
+            }
+        } else {
+            sources.add(path.toString());
+        }
+        return sources;
+    }
+
+    private InputStream open(String source) throws IOException {
+        if (source.startsWith("classpath:")) {
+            InputStream inputStream = CountryDataReader.class.getClassLoader().getResourceAsStream(source.substring("classpath:".length()));
+            if (inputStream == null) {
+                throw new IOException(CLASSPATH_RESOURCE + " not found");
+            }
+            return inputStream;
+        }
+        return Files.newInputStream(Paths.get(source));
+    }
+
+    void read(InputStream inputStream, String source, CountryStore.Builder builder, Set<String> seen) throws IOException {
+        CountryProperty[] properties = CountryProperty.values();
+        try (JsonParser parser = Json.FACTORY.createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw error(source, parser.currentLocation(), "expected an object of countries");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String country = parser.currentName();
+                JsonLocation countryLocation = parser.currentLocation();
+                if (!seen.add(country.toLowerCase(Locale.ROOT))) {
+                    throw error(source, countryLocation, "duplicate country '" + country + "'");
+                }
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw error(source, parser.currentLocation(), "country '" + country + "' must be an object");
+                }
+
+                String[] values = new String[properties.length];
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    CountryProperty property = CountryProperty.fromKey(parser.currentName());
+                    JsonToken value = parser.nextToken();
+                    if (property == null) {
+                        parser.skipChildren();
+                    } else if (value == JsonToken.VALUE_STRING) {
+                        values[property.ordinal()] = parser.getText();
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        throw error(source, parser.currentLocation(),
+                                "'" + property.getKey() + "' of '" + country + "' must be a string");
+                    }
+                }
+
+                for (CountryProperty property : properties) {
+                    String value = values[property.ordinal()];
+                    if (property.getDefaultValue() == null && (value == null || value.isBlank())) {
+                        throw error(source, countryLocation, "country '" + country + "' has no " + property.getKey());
+                    }
+                }
+                builder.add(country, values);
+            }
+            if (token != JsonToken.END_OBJECT) {
+                throw error(source, parser.currentLocation(), "expected a country name");
+            }
+        }
+    }
+
+    private static IOException error(String source, JsonLocation location, String message) {
+        return new IOException(source + " (line " + location.getLineNr() + ", column " + location.getColumnNr() + "): " + message);
+    }
+}
@@ -0,0 +1,123 @@
+package com.ajsd.chatbot.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+    Reloads the country data when the external file (or a shard of the directory)
+    set in chatbot.data.countries.location changes. Nothing is watched when the data
+    comes from the bundled countries_data.json or chatbot.data.countries.watch is false.
+
+    Editors and copy tools often write a file in several steps, so the watcher waits
+    until no change has been seen for the quiet period before it reloads. The reload
+    runs on the watcher's own thread, never on a request thread.
+ **/
+@Component
+public class CountryDataWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(CountryDataWatcher.class);
+
+    private final CountryDataLoader countryDataLoader;
+    private final boolean enabled;
+    private final long quietMillis;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    public CountryDataWatcher(CountryDataLoader countryDataLoader,
+                              @Value("${chatbot.data.countries.watch:true}") boolean enabled,
+                              @Value("${chatbot.data.countries.watch-quiet-millis:500}") long quietMillis) {
+        this.countryDataLoader = countryDataLoader;
+        this.enabled = enabled;
+        this.quietMillis = quietMillis;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        String location = countryDataLoader.getLocation();
+        if (!enabled || location == null || location.isBlank()) {
+            return;
+        }
+        Path path = Paths.get(location).toAbsolutePath();
+        boolean directory = Files.isDirectory(path);
+        Path watched = directory ? path : path.getParent();
+        Path fileName = directory ? null : path.getFileName();
+
+        watchService = FileSystems.getDefault().newWatchService();
+        watched.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        thread = new Thread(() -> watch(fileName), "country-data-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Watching {} for country data changes", path);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch(Path fileName) {
+        try {
+            while (true) {
+                // Block until something changes, then wait for the writes to settle
+                boolean changed = drain(watchService.take(), fileName);
+                WatchKey key;
+                while ((key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key, fileName);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    // True when one of the events is about the data: the watched file, or any .json shard
+    private static boolean drain(WatchKey key, Path fileName) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (!(context instanceof Path)) {
+                relevant = true; // overflow, events were lost
+            } else if (fileName != null) {
+                relevant |= fileName.equals(context);
+            } else {
+                relevant |= context.toString().endsWith(".json");
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private void reload() {
+        try {
+            countryDataLoader.reloadCountryData();
+        } catch (RuntimeException e) {
+            // Keep serving the current snapshot, the next change will be tried again
+            logger.error("Country data reload failed, keeping generation {}",
+                    countryDataLoader.getSnapshot().getGeneration(), e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.model.CountryStore;
+import com.ajsd.chatbot.util.FuzzyResolver;
+import com.ajsd.chatbot.util.NameSearchIndex;
+
+/**
+    One version of the country data, with every structure derived from it: the
+    CountryStore, the search index and the fuzzy resolver. A snapshot is built in
+    full before it is published and never changes afterwards, so a request which
+    reads the snapshot once sees one consistent version of the data, even when a
+    reload publishes the next one in the meantime.
+
+    The generation goes up by one with every published snapshot.
+ **/
+public final class CountrySnapshot {
+
+    private final long generation;
+    private final CountryStore store;
+    private final NameSearchIndex searchIndex;
+    private final FuzzyResolver fuzzyResolver;
+
+    CountrySnapshot(long generation, CountryStore store) {
+        this(generation, store, new NameSearchIndex(store.names()), new FuzzyResolver(store.names()));
+    }
+
+    // With indexes which were already built from the store, as read from a CountryDataImage
+    CountrySnapshot(long generation, CountryStore store, NameSearchIndex searchIndex, FuzzyResolver fuzzyResolver) {
+        this.generation = generation;
+        this.store = store;
+        this.searchIndex = searchIndex;
+        this.fuzzyResolver = fuzzyResolver;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public CountryStore getStore() {
+        return store;
+    }
+
+    public NameSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public FuzzyResolver getFuzzyResolver() {
+        return fuzzyResolver;
+    }
+}
@@ -0,0 +1,179 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.util.BinaryImage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
+
+/**
+    What the precompiled data images (CountryDataImage, MedicalDataImage) have in common:
+    where the image of a JSON is, how it is opened, and its header:
+
+        magic              int
+        format version     int
+        signature          strings, what the content depends on besides the JSON
+        source             length, last modified time (millis) and CRC-32 of the JSON
+                           compiled, each a long
+
+    An image file, or an image in a classpath directory, is mapped; one inside a jar
+    is read into a heap buffer.
+ **/
+final class DataImageFile {
+
+    @FunctionalInterface
+    interface Content {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final String JSON_EXTENSION = ".json";
+    private static final String IMAGE_EXTENSION = ".bin";
+
+    private DataImageFile() {
+    }
+
+    /**  Returns where the image of a data location is: "classpath:" and the bundled image
+     *          for an empty location, the path of the image file next to a JSON file, or
+     *          null for a directory.
+     **/
+    static String imageLocation(String location, String classpathImage) {
+        if (location == null || location.isBlank()) {
+            return "classpath:" + classpathImage;
+        }
+        Path path = Paths.get(location);
+        if (Files.isDirectory(path)) {
+            return null;
+        }
+        String name = path.getFileName().toString();
+        String base = name.endsWith(JSON_EXTENSION) ? name.substring(0, name.length() - JSON_EXTENSION.length()) : name;
+        return path.resolveSibling(base + IMAGE_EXTENSION).toString();
+    }
+
+    /**  Writes the header for the source and then the content to a temporary file, which
+     *          is then moved into place.
+     **/
+    static void compile(URL sourceUrl, Path output, int magic, int formatVersion, String[] signature, Content content)
+            throws IOException {
+        long lastModified = lastModified(sourceUrl);
+        byte[] source;
+        try (InputStream inputStream = sourceUrl.openStream()) {
+            source = inputStream.readAllBytes();
+        }
+
+        Path temporary = Files.createTempFile(output.toAbsolutePath().getParent(), output.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(magic);
+                out.writeInt(formatVersion);
+                BinaryImage.writeStrings(out, signature);
+                out.writeLong(source.length);
+                out.writeLong(lastModified);
+                out.writeLong(checksum(source));
+                content.write(out);
+            }
+            Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // The whole image, mapped when it is a file, null when there is none
+    static ByteBuffer open(String imageLocation, ClassLoader classLoader) throws IOException {
+        if (!imageLocation.startsWith("classpath:")) {
+            Path path = Paths.get(imageLocation);
+            return Files.isRegularFile(path) ? map(path) : null;
+        }
+        URL url = classLoader.getResource(imageLocation.substring("classpath:".length()));
+        if (url == null) {
+            return null;
+        }
+        if ("file".equals(url.getProtocol())) {
+            return map(path(url));
+        }
+        try (InputStream inputStream = url.openStream()) {
+            return ByteBuffer.wrap(inputStream.readAllBytes());
+        }
+    }
+
+    // Reads the magic, version and signature, whether they are the ones expected
+    static boolean isOfFormat(ByteBuffer image, int magic, int formatVersion, String[] signature) {
+        return image.getInt() == magic && image.getInt() == formatVersion
+                && List.of(BinaryImage.readStrings(image)).equals(List.of(signature));
+    }
+
+    /**  Reads the source part of the header, whether the JSON is still the one compiled.
+     *          That is told from what its file or jar entry says, without reading it: a
+     *          file must have the same length and last modified time, a jar entry the same
+     *          length and CRC-32, which the jar keeps for every entry.
+     **/
+    static boolean isUpToDate(ByteBuffer image, URL sourceUrl) throws IOException {
+        long length = image.getLong();
+        long lastModified = image.getLong();
+        long checksum = image.getLong();
+        if ("file".equals(sourceUrl.getProtocol())) {
+            Path path = path(sourceUrl);
+            return Files.size(path) == length && Files.getLastModifiedTime(path).toMillis() == lastModified;
+        }
+        URLConnection connection = sourceUrl.openConnection();
+        if (connection instanceof JarURLConnection) {
+            JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+            return entry != null && entry.getSize() == length && entry.getCrc() == checksum;
+        }
+        return false;
+    }
+
+    // The URL of a "classpath:" resource or of a file
+    static URL sourceUrl(String source, ClassLoader classLoader) throws IOException {
+        if (source.startsWith("classpath:")) {
+            URL url = classLoader.getResource(source.substring("classpath:".length()));
+            if (url == null) {
+                throw new IOException(source + " not found");
+            }
+            return url;
+        }
+        return Paths.get(source).toUri().toURL();
+    }
+
+    // The mapping stays valid once the channel is closed
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static long lastModified(URL sourceUrl) throws IOException {
+        if ("file".equals(sourceUrl.getProtocol())) {
+            return Files.getLastModifiedTime(path(sourceUrl)).toMillis();
+        }
+        return sourceUrl.openConnection().getLastModified();
+    }
+
+    private static Path path(URL fileUrl) throws IOException {
+        try {
+            return Paths.get(fileUrl.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static long checksum(byte[] source) {
+        CRC32 crc = new CRC32();
+        crc.update(source);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,40 @@
+package com.ajsd.chatbot.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+    Logs whether requests are served on virtual threads or on the Tomcat thread pool.
+
+    spring.threads.virtual.enabled only takes effect on Java 21 and later; on an older
+    runtime Spring quietly keeps the thread pool, so the mismatch is reported here
+    instead of being discovered under load.
+ **/
+@Component
+public class ExecutionModeReporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionModeReporter.class);
+    private static final int VIRTUAL_THREADS_FEATURE = 21;
+
+    private final boolean virtualThreads;
+
+    public ExecutionModeReporter(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @PostConstruct
+    public void report() {
+        int feature = Runtime.version().feature();
+        if (!virtualThreads) {
+            logger.info("Serving requests on the Tomcat thread pool (Java {})", feature);
+        } else if (feature < VIRTUAL_THREADS_FEATURE) {
+            logger.warn("spring.threads.virtual.enabled is set but Java {} has no virtual threads, "
+                    + "serving requests on the Tomcat thread pool", feature);
+        } else {
+            logger.info("Serving requests on virtual threads (Java {})", feature);
+        }
+    }
+}
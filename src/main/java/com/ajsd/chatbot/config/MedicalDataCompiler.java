@@ -0,0 +1,47 @@
+package com.ajsd.chatbot.config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+    Compiles medical data into a MedicalDataImage. Run by the build, in the
+    process-classes phase, for the bundled data:
+
+        MedicalDataCompiler classpath:medical_data.json target/classes/medical_data.bin
+
+    and by hand for a data file set in chatbot.data.medical.location, with the image
+    written next to it unless a second argument says otherwise:
+
+        java -cp chatbot.jar -Dloader.main=com.ajsd.chatbot.config.MedicalDataCompiler \
+            org.springframework.boot.loader.launch.PropertiesLauncher /data/medical.json
+ **/
+public final class MedicalDataCompiler {
+
+    private static final String BUNDLED = "classpath:" + MedicalDataReader.CLASSPATH_RESOURCE;
+
+    private MedicalDataCompiler() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: MedicalDataCompiler <medical.json | " + BUNDLED + "> [image]");
+            System.exit(2);
+        }
+        // The reader takes an empty location for the bundled data
+        String location = BUNDLED.equals(args[0]) ? "" : args[0];
+        Path output = Paths.get(args.length == 2 ? args[1] : imageFile(location));
+
+        long start = System.nanoTime();
+        MedicalDataImage.compile(location, output);
+        System.out.printf("Compiled %s into %s in %d ms%n", args[0], output, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static String imageFile(String location) {
+        String image = MedicalDataImage.imageLocation(location);
+        if (image == null || image.startsWith("classpath:")) {
+            throw new IllegalArgumentException("No image file for " + (location.isEmpty() ? BUNDLED : location)
+                    + ", name the image to write");
+        }
+        return image;
+    }
+}
@@ -0,0 +1,108 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.model.MedicalProperty;
+import com.ajsd.chatbot.model.MedicalStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+    Precompiled image of the medical data: the MedicalStore with its term index, as
+    built from the JSON, so loading neither parses JSON nor cuts every text into terms.
+
+    Images are written at build time by MedicalDataCompiler, the same way as the
+    CountryDataImage: medical_data.bin on the classpath for the bundled data, and for
+    a data file such as medical.json, medical.bin in the same directory. After the
+    header of DataImageFile, with the key and weight of every MedicalProperty as its
+    signature, comes the store (MedicalStore.write).
+
+    load() only uses an image of the data as it is now, like CountryDataImage.load(),
+    and the image is mapped when it is a file, with the names and texts of the
+    conditions read from it as they are asked for.
+ **/
+public final class MedicalDataImage {
+
+    private static final Logger logger = LoggerFactory.getLogger(MedicalDataImage.class);
+
+    public static final String CLASSPATH_RESOURCE = "medical_data.bin";
+
+    static final int MAGIC = 0x414A534D; // "AJSM"
+    static final int FORMAT_VERSION = 1;
+
+    private MedicalDataImage() {
+    }
+
+    /**  Returns where the image of a data location is: "classpath:medical_data.bin" for
+     *          the bundled data, or the path of the image file for a JSON file.
+     **/
+    public static String imageLocation(String location) {
+        return DataImageFile.imageLocation(location, CLASSPATH_RESOURCE);
+    }
+
+    /**  Compiles the data of a location (see MedicalDataReader) into an image file.
+     **/
+    public static void compile(String location, Path output) throws IOException {
+        URL sourceUrl = sourceUrl(location, MedicalDataImage.class.getClassLoader());
+        MedicalStore store = new MedicalDataReader().read(location);
+        DataImageFile.compile(sourceUrl, output, MAGIC, FORMAT_VERSION, propertySignature(), store::write);
+    }
+
+    /**  Returns the store of the image of a location, or null when there is none, or it
+     *          is not usable: out of date, of another format, or damaged. Never throws,
+     *          the data can still be read from the JSON.
+     **/
+    public static MedicalStore load(String location) {
+        return load(location, MedicalDataImage.class.getClassLoader());
+    }
+
+    // The class loader is where the bundled data and its image are looked up
+    static MedicalStore load(String location, ClassLoader classLoader) {
+        String imageLocation = imageLocation(location);
+        if (imageLocation == null) {
+            return null;
+        }
+        try {
+            ByteBuffer image = DataImageFile.open(imageLocation, classLoader);
+            if (image == null) {
+                logger.info("No precompiled medical data at {}, reading the JSON", imageLocation);
+                return null;
+            }
+            if (!DataImageFile.isOfFormat(image, MAGIC, FORMAT_VERSION, propertySignature())) {
+                logger.info("Precompiled medical data at {} is of another format, reading the JSON", imageLocation);
+                return null;
+            }
+            if (!DataImageFile.isUpToDate(image, sourceUrl(location, classLoader))) {
+                logger.info("Precompiled medical data at {} is out of date, reading the JSON", imageLocation);
+                return null;
+            }
+
+            MedicalStore store = MedicalStore.read(image);
+            if (image.hasRemaining()) {
+                throw new IllegalArgumentException("unexpected content");
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot use the precompiled medical data at {}, reading the JSON: {}", imageLocation, e.toString());
+            return null;
+        }
+    }
+
+    private static URL sourceUrl(String location, ClassLoader classLoader) throws IOException {
+        String source = location == null || location.isBlank() ? "classpath:" + MedicalDataReader.CLASSPATH_RESOURCE : location;
+        return DataImageFile.sourceUrl(source, classLoader);
+    }
+
+    // What the index depends on besides the JSON: the properties and their weights
+    private static String[] propertySignature() {
+        MedicalProperty[] properties = MedicalProperty.values();
+        String[] signature = new String[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            signature[i] = properties[i].getKey() + "=" + properties[i].getWeight();
+        }
+        return signature;
+    }
+}
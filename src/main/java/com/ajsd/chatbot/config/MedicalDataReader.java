@@ -0,0 +1,108 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.model.MedicalProperty;
+import com.ajsd.chatbot.model.MedicalStore;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+    Reads the medical conditions straight into a MedicalStore.Builder with Jackson's
+    streaming JsonParser, the same way CountryDataReader reads the countries.
+
+    The data file is a JSON object of conditions, each one an object of properties:
+
+        { "asthma": { "symptoms": "...", "causes": "...", "treatment": "...", "prevention": "..." }, ... }
+
+    Every MedicalProperty is required. Other properties are skipped. A missing property,
+    a duplicate condition or a malformed file fails the load with the line and column
+    of the problem.
+
+    The location can be empty (the bundled medical_data.json on the classpath) or a
+    JSON file.
+ **/
+public class MedicalDataReader {
+
+    public static final String CLASSPATH_RESOURCE = "medical_data.json";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public MedicalStore read(String location) throws IOException {
+        String source = location == null || location.isBlank() ? "classpath:" + CLASSPATH_RESOURCE : location;
+        MedicalStore.Builder builder = MedicalStore.builder();
+        try (InputStream inputStream = open(source)) {
+            read(inputStream, source, builder);
+        }
+        return builder.build();
+    }
+
+    private InputStream open(String source) throws IOException {
+        if (source.startsWith("classpath:")) {
+            InputStream inputStream = MedicalDataReader.class.getClassLoader().getResourceAsStream(CLASSPATH_RESOURCE);
+            if (inputStream == null) {
+                throw new IOException(CLASSPATH_RESOURCE + " not found");
+            }
+            return inputStream;
+        }
+        return Files.newInputStream(Paths.get(source));
+    }
+
+    void read(InputStream inputStream, String source, MedicalStore.Builder builder) throws IOException {
+        MedicalProperty[] properties = MedicalProperty.values();
+        Set<String> seen = new HashSet<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw error(source, parser.currentLocation(), "expected an object of conditions");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String condition = parser.currentName();
+                JsonLocation conditionLocation = parser.currentLocation();
+                if (!seen.add(condition.toLowerCase(Locale.ROOT))) {
+                    throw error(source, conditionLocation, "duplicate condition '" + condition + "'");
+                }
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw error(source, parser.currentLocation(), "condition '" + condition + "' must be an object");
+                }
+
+                String[] values = new String[properties.length];
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    MedicalProperty property = MedicalProperty.fromKey(parser.currentName());
+                    JsonToken value = parser.nextToken();
+                    if (property == null) {
+                        parser.skipChildren();
+                    } else if (value == JsonToken.VALUE_STRING) {
+                        values[property.ordinal()] = parser.getText();
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        throw error(source, parser.currentLocation(),
+                                "'" + property.getKey() + "' of '" + condition + "' must be a string");
+                    }
+                }
+
+                for (MedicalProperty property : properties) {
+                    String value = values[property.ordinal()];
+                    if (value == null || value.isBlank()) {
+                        throw error(source, conditionLocation, "condition '" + condition + "' has no " + property.getKey());
+                    }
+                }
+                builder.add(condition, values);
+            }
+            if (token != JsonToken.END_OBJECT) {
+                throw error(source, parser.currentLocation(), "expected a condition name");
+            }
+        }
+    }
+
+    private static IOException error(String source, JsonLocation location, String message) {
+        return new IOException(source + " (line " + location.getLineNr() + ", column " + location.getColumnNr() + "): " + message);
+    }
+}
@@ -0,0 +1,43 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.service.MetricsService;
+import com.ajsd.chatbot.store.ConversationArchive;
+import com.ajsd.chatbot.store.ConversationStore;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+    Reports the memory held by the conversations of the ConversationStore, and cleans
+    up the spilled history and the message count of a conversation when it expires.
+ **/
+@Component
+public class SessionMemoryMetrics {
+
+    private final ConversationStore conversationStore;
+
+    public SessionMemoryMetrics(ConversationStore conversationStore, ConversationArchive conversationArchive,
+                                MetricsService metricsService) {
+        this.conversationStore = conversationStore;
+        conversationStore.addExpiryListener(conversationId -> {
+            conversationArchive.delete(conversationId);
+            metricsService.removeSession(conversationId);
+        });
+    }
+
+    /**  Returns the number of stored conversations, the total and average number of bytes
+     *          they hold, and how many conversations have expired so far.
+     **/
+    public Map<String, Object> snapshot() {
+        int conversations = conversationStore.size();
+        long storedBytes = conversationStore.getStoredBytes();
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("conversations", conversations);
+        snapshot.put("storedBytesTotal", storedBytes);
+        snapshot.put("storedBytesAverage", conversations == 0 ? 0 : storedBytes / conversations);
+        snapshot.put("expiredConversations", conversationStore.getExpiredCount());
+        return snapshot;
+    }
+}
@@ -0,0 +1,50 @@
+package com.ajsd.chatbot.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+    The executor /chat/stream runs the enrichment of its answers on, once the answer
+    itself went out from the request thread. It is bounded, so a burst of streamed turns
+    cannot pile up without end behind a few threads:
+
+        chatbot.stream.threads          enrichments run at once, 0 for one per processor
+        chatbot.stream.queue-capacity   enrichments waiting for a thread
+
+    On the thread pool an enrichment which finds the queue full is rejected, and the
+    turn finishes with the answer as it is. With spring.threads.virtual.enabled on Java 21
+    every enrichment gets a virtual thread instead, and once threads + queue-capacity are
+    running the request thread waits for one to end, which costs a virtual thread nothing.
+ **/
+@Configuration
+public class StreamExecutorConfiguration {
+
+    private static final int VIRTUAL_THREADS_FEATURE = 21;
+
+    @Bean
+    public AsyncTaskExecutor streamExecutor(
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${chatbot.stream.threads:0}") int threads,
+            @Value("${chatbot.stream.queue-capacity:1000}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (virtualThreads && Runtime.version().feature() >= VIRTUAL_THREADS_FEATURE) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("stream-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(poolSize + queueCapacity);
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("stream-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+}
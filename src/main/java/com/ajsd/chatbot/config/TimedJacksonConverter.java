@@ -0,0 +1,36 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.service.MetricsService;
+import com.ajsd.chatbot.service.PipelineStage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+    The JSON converter of the application, Spring Boot's default one with Spring Boot's
+    ObjectMapper, which also times how long writing each response takes and records it
+    as the SERIALIZATION stage of the MetricsService.
+ **/
+@Component
+public class TimedJacksonConverter extends MappingJackson2HttpMessageConverter {
+
+    private final MetricsService metricsService;
+
+    public TimedJacksonConverter(ObjectMapper objectMapper, MetricsService metricsService) {
+        super(objectMapper);
+        this.metricsService = metricsService;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        long start = System.nanoTime();
+        super.writeInternal(object, type, outputMessage);
+        metricsService.recordLatency(PipelineStage.SERIALIZATION, start);
+    }
+}
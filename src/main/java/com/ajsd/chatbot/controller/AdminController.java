@@ -0,0 +1,58 @@
+package com.ajsd.chatbot.controller;
+
+import com.ajsd.chatbot.config.AdminToken;
+import com.ajsd.chatbot.config.CountrySnapshot;
+import com.ajsd.chatbot.service.ChatbotService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+    Administration endpoints. They are only enabled when chatbot.admin.token is set,
+    and every call must carry that token in the X-Admin-Token header (see AdminToken).
+ **/
+@RestController
+public class AdminController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdminController.class);
+
+    private final ChatbotService chatbotService;
+    private final AdminToken adminToken;
+
+    public AdminController(ChatbotService chatbotService, AdminToken adminToken) {
+        this.chatbotService = chatbotService;
+        this.adminToken = adminToken;
+    }
+
+    /**  Reloads the country data and returns the generation which is now being served.
+     *          On failure the previous data keeps being served.
+     **/
+    @PostMapping("/admin/reload")
+    public ResponseEntity<Map<String, Object>> reloadCountryData(
+            @RequestHeader(name = AdminToken.HEADER, required = false) String token) {
+        Map<String, Object> body = new HashMap<>();
+        if (!adminToken.isValid(token)) {
+            body.put("error", "Not allowed.");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(body);
+        }
+
+        try {
+            CountrySnapshot snapshot = chatbotService.reloadCountryData();
+            body.put("generation", snapshot.getGeneration());
+            body.put("countries", snapshot.getStore().countryCount());
+            return ResponseEntity.ok(body);
+        } catch (RuntimeException e) {
+            logger.error("Country data reload failed", e);
+            body.put("error", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            body.put("generation", chatbotService.getCountrySnapshot().getGeneration());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(body);
+        }
+    }
+}
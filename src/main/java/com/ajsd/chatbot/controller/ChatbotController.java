@@ -1,118 +1,493 @@
 package com.ajsd.chatbot.controller;
 
+import com.ajsd.chatbot.config.AdminToken;
+import com.ajsd.chatbot.config.ConversationContextFactory;
+import com.ajsd.chatbot.config.ConversationCookie;
+import com.ajsd.chatbot.model.ChatBatch;
+import com.ajsd.chatbot.model.ChatBatchResult;
+import com.ajsd.chatbot.model.ChatDelta;
 import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.HistoryPolicy;
+import com.ajsd.chatbot.service.ConversationAuditLog;
+import com.ajsd.chatbot.service.DeferredReply;
 import com.ajsd.chatbot.service.RuleBasedEngine;
 import com.ajsd.chatbot.service.ValidationService;
 import com.ajsd.chatbot.service.RateLimitService;
 import com.ajsd.chatbot.service.MetricsService;
-import jakarta.servlet.http.HttpSession;
+import com.ajsd.chatbot.service.PipelineStage;
+import com.ajsd.chatbot.store.ConversationArchive;
+import com.ajsd.chatbot.store.ConversationLocks;
+import com.ajsd.chatbot.store.ConversationStore;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 @RestController
-@SessionAttributes("conversationContext")
 public class ChatbotController {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatbotController.class);
+    private static final String RATE_LIMITED = "Too many requests. Please wait a moment.";
+    private static final String INVALID_MESSAGE = "Invalid or too long message.";
+    private static final int MAX_MESSAGES_PAGE = 1000;
     private final RuleBasedEngine ruleBasedEngine;
     private final ValidationService validationService;
     private final RateLimitService rateLimitService;
     private final MetricsService metricsService;
+    private final ConversationContextFactory conversationContextFactory;
+    private final ConversationArchive conversationArchive;
+    private final ConversationStore conversationStore;
+    private final ConversationCookie conversationCookie;
+    private final ConversationLocks conversationLocks;
+    private final AsyncTaskExecutor streamExecutor;
+    private final long streamTimeoutMillis;
+    private final AdminToken adminToken;
+    private final ForkJoinPool batchPool;
+    private final int batchMaxMessages;
+    private final ConversationAuditLog conversationAuditLog;
 
-    public ChatbotController(RuleBasedEngine ruleBasedEngine, ValidationService validationService, RateLimitService rateLimitService, MetricsService metricsService) {
+    public ChatbotController(RuleBasedEngine ruleBasedEngine, ValidationService validationService, RateLimitService rateLimitService, MetricsService metricsService,
+                             ConversationContextFactory conversationContextFactory, ConversationArchive conversationArchive,
+                             ConversationStore conversationStore, ConversationCookie conversationCookie,
+                             ConversationLocks conversationLocks,
+                             @Qualifier("streamExecutor") AsyncTaskExecutor streamExecutor,
+                             @Value("${chatbot.stream.timeout-millis:30000}") long streamTimeoutMillis,
+                             AdminToken adminToken,
+                             @Value("${chatbot.batch.parallelism:0}") int batchParallelism,
+                             @Value("${chatbot.batch.max-messages:10000}") int batchMaxMessages,
+                             ConversationAuditLog conversationAuditLog) {
         this.ruleBasedEngine = ruleBasedEngine;
         this.validationService = validationService;
         this.rateLimitService = rateLimitService;
         this.metricsService = metricsService;
-    }
-
-    @ModelAttribute("conversationContext")
-    public ConversationContext initializeConversation() {
-        return new ConversationContext();
+        this.conversationContextFactory = conversationContextFactory;
+        this.conversationArchive = conversationArchive;
+        this.conversationStore = conversationStore;
+        this.conversationCookie = conversationCookie;
+        this.conversationLocks = conversationLocks;
+        this.streamExecutor = streamExecutor;
+        this.streamTimeoutMillis = streamTimeoutMillis;
+        this.adminToken = adminToken;
+        this.batchPool = new ForkJoinPool(batchParallelism > 0 ? batchParallelism : Runtime.getRuntime().availableProcessors());
+        this.batchMaxMessages = batchMaxMessages;
+        this.conversationAuditLog = conversationAuditLog;
     }
 
 
     @PostMapping("/chat")
     public ResponseEntity<?> chat(
             @RequestBody Map<String, String> request,
-            HttpSession session) {
+            HttpServletRequest servletRequest,
+            HttpServletResponse servletResponse) {
+        return handleTurn(request, conversationCookie.resolve(servletRequest, servletResponse), servletRequest.getRemoteAddr(), false);
+    }
+
+    /**  Same pipeline as /chat, but the response only carries the messages added
+     *          by this turn and the conversation state instead of the whole context.
+     **/
+    @PostMapping("/chat/delta")
+    public ResponseEntity<?> chatDelta(
+            @RequestBody Map<String, String> request,
+            HttpServletRequest servletRequest,
+            HttpServletResponse servletResponse) {
+        return handleTurn(request, conversationCookie.resolve(servletRequest, servletResponse), servletRequest.getRemoteAddr(), true);
+    }
+
+    /**  Same pipeline as /chat/delta, streamed as server-sent events so the answer goes out
+     *          as soon as the rule engine has it, without waiting for the IntelligenceService
+     *          to enrich it. Every event carries JSON:
+     *
+     *              answer    {"content": reply}, the reply of the rule engine
+     *              enriched  {"content": reply}, the whole reply again each time an enrichment changed it
+     *              done      the ChatDelta of the turn, as /chat/delta returns it
+     *              error     {"error": message}, when the message was rejected, with the same status as /chat
+     *
+     *          The answer is produced on the request thread, under the lock of the conversation
+     *          like a turn of /chat/delta, and saved at once. The enrichment then runs on the
+     *          bounded stream executor (see StreamExecutorConfiguration) without the lock, and
+     *          the enriched reply replaces the answer in the conversation, even when the client
+     *          went away. When the executor is full the answer is the final reply.
+     **/
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> chatStream(
+            @RequestBody Map<String, String> request,
+            HttpServletRequest servletRequest,
+            HttpServletResponse servletResponse) {
+        long requestStart = System.nanoTime();
+        String conversationId = conversationCookie.resolve(servletRequest, servletResponse);
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+
+        if (!allowTurn(conversationId, servletRequest.getRemoteAddr())) {
+            send(emitter, "error", error(RATE_LIMITED));
+            emitter.complete();
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(emitter);
+        }
+        ValidationService.ValidatedInput input = validateTurn(request, conversationId);
+        if (!input.isValid()) {
+            send(emitter, "error", error(INVALID_MESSAGE));
+            emitter.complete();
+            return ResponseEntity.badRequest().body(emitter);
+        }
+
+        // Sent events are held by the emitter until the response is returned
+        StreamedTurn turn = startStreamedTurn(emitter, input, conversationId, requestStart);
+        if (turn == null) {
+            return ResponseEntity.ok(emitter);
+        }
+        try {
+            streamExecutor.execute(() -> {
+                try {
+                    String botResponse = turn.reply.enrich(
+                            enriched -> send(emitter, "enriched", Map.of("content", enriched)));
+                    finishStreamedTurn(emitter, turn, botResponse, requestStart);
+                } catch (RuntimeException e) {
+                    logger.error("Error enriching a turn of conversation {}", conversationId, e);
+                    emitter.completeWithError(e);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            logger.warn("Stream executor is full, conversation {} gets its answer without enrichment", conversationId);
+            finishStreamedTurn(emitter, turn, turn.reply.getReply(), requestStart);
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**  Replays scripted conversations in one request, for regression and load scenarios.
+     *          Every session of the batch is a fresh conversation which is never stored: its
+     *          messages go through validation and the rule engine in order, like turns of /chat,
+     *          but skip rate limiting, so only trusted callers, with the admin token in the
+     *          X-Admin-Token header, may use it. Independent sessions run in parallel on the
+     *          batch ForkJoinPool; results come back in the order of the request.
+     **/
+    @PostMapping("/chat/batch")
+    public ResponseEntity<?> chatBatch(
+            @RequestBody ChatBatch batch,
+            @RequestHeader(name = AdminToken.HEADER, required = false) String token) {
+        if (!adminToken.isValid(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error("Not allowed."));
+        }
+        List<ChatBatch.Session> sessions = batch.allSessions();
+        long messages = 0;
+        for (ChatBatch.Session session : sessions) {
+            if (session == null) {
+                return ResponseEntity.badRequest().body(error("Every session must be an object with messages."));
+            }
+            messages += session.getMessages().size();
+        }
+        if (messages > batchMaxMessages) {
+            return ResponseEntity.badRequest().body(error("Too many messages, at most " + batchMaxMessages + " per batch."));
+        }
 
-        String sessionId = session.getId();
+        long start = System.nanoTime();
+        List<ForkJoinTask<ChatBatchResult.Session>> replays = new ArrayList<>(sessions.size());
+        for (ChatBatch.Session session : sessions) {
+            replays.add(batchPool.submit(() -> replaySession(session)));
+        }
+        List<ChatBatchResult.Session> results = new ArrayList<>(sessions.size());
+        for (ForkJoinTask<ChatBatchResult.Session> replay : replays) {
+            results.add(replay.join());
+        }
+        logger.info("Replayed {} messages of {} sessions in a batch", messages, sessions.size());
+        return ResponseEntity.ok(new ChatBatchResult(results, (System.nanoTime() - start) / 1000));
+    }
+
+    /**  Resync endpoint for delta clients which missed one or more turns. Returns the
+     *          messages with a sequence number greater than since. When older messages were
+     *          spilled out of the in-memory history they are paged from the ConversationArchive,
+     *          at most limit of them per call. A limit outside 1 to 1000 is rejected with 400.
+     **/
+    @GetMapping("/chat/messages")
+    public ResponseEntity<?> messagesSince(
+            @RequestParam(name = "since", defaultValue = "0") long since,
+            @RequestParam(name = "limit", defaultValue = "100") int limit,
+            HttpServletRequest servletRequest,
+            HttpServletResponse servletResponse) {
+        if (limit < 1 || limit > MAX_MESSAGES_PAGE) {
+            return ResponseEntity.badRequest().body(error("limit must be between 1 and " + MAX_MESSAGES_PAGE + "."));
+        }
+        String conversationId = conversationCookie.resolve(servletRequest, servletResponse);
+        // Held so the history is not read while a turn is adding to it or spilling it
+        ReentrantLock lock = conversationLocks.lockFor(conversationId);
+        lock.lock();
+        try {
+            ConversationContext context = conversationStore.load(conversationId);
+            if (context == null) {
+                context = conversationContextFactory.create(conversationId);
+            }
+            if (context.getHistoryPolicy() != HistoryPolicy.SPILL || since + 1 >= context.getOldestRetainedSequence()) {
+                return ResponseEntity.ok(ChatDelta.since(context, since));
+            }
+
+            List<ConversationContext.Message> page = conversationArchive.readSince(conversationId, since, limit);
+            if (page.size() < limit) {
+                long after = page.isEmpty() ? since : page.get(page.size() - 1).getSeq();
+                page.addAll(context.getMessagesSince(after));
+            }
+            return ResponseEntity.ok(ChatDelta.of(context, page));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**  Lets the batches being replayed finish, and stops the threads of the batch pool.
+     **/
+    @PreDestroy
+    public void shutdownBatchPool() throws InterruptedException {
+        batchPool.shutdown();
+        if (!batchPool.awaitTermination(5, TimeUnit.SECONDS)) {
+            batchPool.shutdownNow();
+        }
+    }
+
+    private ResponseEntity<?> handleTurn(Map<String, String> request, String conversationId, String clientAddress, boolean deltaResponse) {
+        long requestStart = System.nanoTime();
         
+        if (!allowTurn(conversationId, clientAddress)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error(RATE_LIMITED));
+        }
+        ValidationService.ValidatedInput input = validateTurn(request, conversationId);
+        if (!input.isValid()) {
+            return ResponseEntity.badRequest().body(error(INVALID_MESSAGE));
+        }
+
+        // Turns of one conversation are applied one at a time, in the order they arrived
+        ReentrantLock lock = conversationLocks.lockFor(conversationId);
+        lock.lock();
+        try {
+            return applyTurn(input, conversationId, deltaResponse, requestStart);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean allowTurn(String conversationId, String clientAddress) {
         // Rate limiting
-        if (!rateLimitService.isAllowed(sessionId)) {
-            logger.warn("Rate limit exceeded for session: {}", sessionId);
-            Map<String, String> error = new HashMap<>();
-            error.put("error", "Too many requests. Please wait a moment.");
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error);
+        long start = System.nanoTime();
+        boolean allowed = rateLimitService.isAllowed(conversationId, clientAddress);
+        metricsService.recordLatency(PipelineStage.RATE_LIMIT, start);
+        if (!allowed) {
+            logger.warn("Rate limit exceeded for conversation: {}", conversationId);
         }
+        return allowed;
+    }
 
-        String userMessage = request.get("message");
-        
-        // Validation
-        if (!validationService.isValidMessage(userMessage)) {
-            logger.warn("Invalid message from session: {}", sessionId);
-            Map<String, String> error = new HashMap<>();
-            error.put("error", "Invalid or too long message.");
-            return ResponseEntity.badRequest().body(error);
+    private ValidationService.ValidatedInput validateTurn(Map<String, String> request, String conversationId) {
+        // Validation, sanitizing and normalization, in one pass
+        long start = System.nanoTime();
+        ValidationService.ValidatedInput input = validationService.validate(request.get("message"));
+        metricsService.recordLatency(PipelineStage.VALIDATION, start);
+        if (!input.isValid()) {
+            logger.warn("Invalid message from conversation: {}", conversationId);
         }
-        
-        // Sanitize input
-        userMessage = validationService.sanitizeInput(userMessage);
-        
-        logger.info("Processing message from session {}: {}", sessionId, userMessage);
+        return input;
+    }
+
+    private static Map<String, String> error(String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        return error;
+    }
+
+    /**  Loads the conversation, adds the message and its response, saves it, and builds
+     *          the response to the request. Called with the lock of the conversation held,
+     *          so the response is built from the state this turn left, not a later one.
+     **/
+    private ResponseEntity<?> applyTurn(ValidationService.ValidatedInput input, String conversationId,
+                                        boolean deltaResponse, long requestStart) {
+        // Written to the audit log by its own thread, nothing is formatted here
+        conversationAuditLog.record(conversationId, "USER", input.getText());
 
         // Get or create conversation context
-        ConversationContext context = (ConversationContext)
-                session.getAttribute("conversationContext");
-        if (context == null) {
-            context = new ConversationContext();
-            session.setAttribute("conversationContext", context);
-            metricsService.recordNewSession(sessionId);
-        }
+        ConversationContext context = loadConversation(conversationId);
         
         // Record metrics
-        metricsService.recordMessage(sessionId);
+        metricsService.recordMessage(conversationId);
 
         // Add user message to conversation
-        context.addMessage("USER", userMessage);
+        long sequenceBeforeTurn = context.getLastSequence();
+        // Stored as typed, the page escapes messages when it renders them
+        context.addMessage("USER", input.getText());
 
         // Process the message and get response
-        String botResponse = processChatMessage(userMessage, context);
-        
-        logger.info("Bot response for session {}: {}", sessionId, botResponse);
+        String botResponse = processChatMessage(input, context);
+        conversationAuditLog.record(conversationId, "BOT", botResponse);
 
         // Add bot response to conversation
         context.addMessage("BOT", botResponse);
+        conversationStore.save(conversationId, context);
         
-        logger.debug("Session {} stats - Messages: {}, Total sessions: {}", 
-                    sessionId, metricsService.getSessionMessageCount(sessionId), metricsService.getTotalSessions());
+        logger.debug("Conversation {} stats - Messages: {}, Total sessions: {}", 
+                    conversationId, metricsService.getSessionMessageCount(conversationId), metricsService.getTotalSessions());
+
+        // Serialization to JSON happens after this, and is timed by TimedJacksonConverter
+        metricsService.recordLatency(PipelineStage.REQUEST, requestStart);
+        if (deltaResponse) {
+            return ResponseEntity.ok(ChatDelta.since(context, sequenceBeforeTurn));
+        }
+        // Serialized after the lock is released, when the next turn may already be changing the stored context
+        return ResponseEntity.ok(context.copy());
+    }
+
+    /**  The streamed counterpart of applyTurn, up to the answer: adds the message and the
+     *          answer to the conversation, saves it and sends the answer. The enrichment is
+     *          left in the returned turn, to be run once the lock is released; a reply with
+     *          nothing to enrich completes the stream here, and null is returned.
+     **/
+    private StreamedTurn startStreamedTurn(SseEmitter emitter, ValidationService.ValidatedInput input, String conversationId,
+                                           long requestStart) {
+        ReentrantLock lock = conversationLocks.lockFor(conversationId);
+        lock.lock();
+        try {
+            conversationAuditLog.record(conversationId, "USER", input.getText());
+            ConversationContext context = loadConversation(conversationId);
+            metricsService.recordMessage(conversationId);
+
+            long sequenceBeforeTurn = context.getLastSequence();
+            context.addMessage("USER", input.getText());
+            DeferredReply reply = processChatMessage(input, context, true);
+            String answer = reply.getReply();
+            long replySequence = context.addMessage("BOT", answer).getSeq();
+            conversationStore.save(conversationId, context);
+
+            send(emitter, "answer", Map.of("content", answer));
+            if (reply.hasEnrichments()) {
+                return new StreamedTurn(conversationId, reply, sequenceBeforeTurn, replySequence);
+            }
+
+            conversationAuditLog.record(conversationId, "BOT", reply.getReply());
+            metricsService.recordLatency(PipelineStage.REQUEST, requestStart);
+            send(emitter, "done", ChatDelta.since(context, sequenceBeforeTurn));
+            emitter.complete();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**  Puts the final reply of a streamed turn in place of its answer, unless a later turn
+     *          came in the meantime, and sends the turn as /chat/delta would return it.
+     **/
+    private void finishStreamedTurn(SseEmitter emitter, StreamedTurn turn, String botResponse, long requestStart) {
+        conversationAuditLog.record(turn.conversationId, "BOT", botResponse);
+        ReentrantLock lock = conversationLocks.lockFor(turn.conversationId);
+        lock.lock();
+        try {
+            ConversationContext context = conversationStore.load(turn.conversationId);
+            if (context == null) {
+                // Expired or removed while the reply was enriched
+                emitter.complete();
+                return;
+            }
+            if (!botResponse.equals(turn.reply.getReply())
+                    && context.replaceLastMessage(turn.replySequence, botResponse)) {
+                conversationStore.save(turn.conversationId, context);
+            }
+            metricsService.recordLatency(PipelineStage.REQUEST, requestStart);
+            send(emitter, "done", ChatDelta.since(context, turn.sequenceBeforeTurn));
+            emitter.complete();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A client which went away does not stop the turn, the rest of its events are dropped
+    private static void send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("Dropped {} event of a closed stream: {}", event, e.getMessage());
+        }
+    }
+
+    // One session of a batch, on a thread of the batch pool; its context is only seen by this thread
+    private ChatBatchResult.Session replaySession(ChatBatch.Session session) {
+        long start = System.nanoTime();
+        ConversationContext context = conversationContextFactory.createDetached();
+        List<ChatBatchResult.Turn> turns = new ArrayList<>(session.getMessages().size());
+        for (String message : session.getMessages()) {
+            ValidationService.ValidatedInput input = validationService.validate(message);
+            if (!input.isValid()) {
+                turns.add(ChatBatchResult.Turn.rejected(message, INVALID_MESSAGE, context));
+                continue;
+            }
+            context.addMessage("USER", input.getText());
+            String botResponse = processChatMessage(input, context);
+            context.addMessage("BOT", botResponse);
+            turns.add(ChatBatchResult.Turn.answered(message, botResponse, context));
+        }
+        return new ChatBatchResult.Session(session.getId(), turns, (System.nanoTime() - start) / 1000);
+    }
+
+    // What the enrichment of a streamed turn needs once the conversation is unlocked
+    private static final class StreamedTurn {
+        final String conversationId;
+        final DeferredReply reply;
+        final long sequenceBeforeTurn;
+        final long replySequence;
+
+        StreamedTurn(String conversationId, DeferredReply reply, long sequenceBeforeTurn, long replySequence) {
+            this.conversationId = conversationId;
+            this.reply = reply;
+            this.sequenceBeforeTurn = sequenceBeforeTurn;
+            this.replySequence = replySequence;
+        }
+    }
+
+    private ConversationContext loadConversation(String conversationId) {
+        ConversationContext context = conversationStore.load(conversationId);
+        if (context == null) {
+            context = conversationContextFactory.create(conversationId);
+            metricsService.recordNewSession(conversationId);
+        }
+        return context;
+    }
 
-        return ResponseEntity.ok(context);
+    private String processChatMessage(ValidationService.ValidatedInput input, ConversationContext context) {
+        return processChatMessage(input, context, false).getReply();
     }
 
-    private String processChatMessage(String message, ConversationContext context) {
+    /**  Produces the response to a message. With deferEnrichment the enrichment of the
+     *          answer is left in the returned DeferredReply instead of being run here.
+     **/
+    private DeferredReply processChatMessage(ValidationService.ValidatedInput input, ConversationContext context, boolean deferEnrichment) {
         String response =  "";
 
-        if (message.equalsIgnoreCase("start")) {
-            return "Hello! How can I help you today?";
-        } else if (message.equalsIgnoreCase("clear")) {
+        if (input.getNormalized().equals("start")) {
+            return DeferredReply.of("Hello! How can I help you today?");
+        } else if (input.getNormalized().equals("clear")) {
             context.clear();
-            return "Conversation has been reset. \nHow can I help you today?";
+            return DeferredReply.of("Conversation has been reset. \nHow can I help you today?");
+        } else if (deferEnrichment) {
+            return ruleBasedEngine.processUserInputDeferred(input.getText(), input.getNormalized(), context);
         } else {
             /**  Set the value of the variable "response"
              *          to the value returned by the processUserInput method of the RuleBasedEngine class.
              *          The method should be called with the message and context as arguments.
+             *          The normalized form is passed along so the engine does not lowercase again.
              **/
-            response = ruleBasedEngine.processUserInput(message, context);
+            response = ruleBasedEngine.processUserInput(input.getText(), input.getNormalized(), context);
 
-            return  response;
+            return  DeferredReply.of(response);
         }
 
     }
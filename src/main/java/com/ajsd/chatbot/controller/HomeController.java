@@ -1,21 +1,48 @@
 package com.ajsd.chatbot.controller;
 
+import com.ajsd.chatbot.config.ConversationContextFactory;
+import com.ajsd.chatbot.config.ConversationCookie;
 import com.ajsd.chatbot.model.ConversationContext;
-import jakarta.servlet.http.HttpSession;
+import com.ajsd.chatbot.store.ConversationLocks;
+import com.ajsd.chatbot.store.ConversationStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 @Controller
 public class HomeController {
 
+    private final ConversationContextFactory conversationContextFactory;
+    private final ConversationStore conversationStore;
+    private final ConversationCookie conversationCookie;
+    private final ConversationLocks conversationLocks;
+
+    public HomeController(ConversationContextFactory conversationContextFactory, ConversationStore conversationStore,
+                          ConversationCookie conversationCookie, ConversationLocks conversationLocks) {
+        this.conversationContextFactory = conversationContextFactory;
+        this.conversationStore = conversationStore;
+        this.conversationCookie = conversationCookie;
+        this.conversationLocks = conversationLocks;
+    }
+
     @RequestMapping("/")
-    public String home(Model model, HttpSession session) {
-        ConversationContext context = (ConversationContext) session.getAttribute("conversationContext");
-        if (context == null) {
-            context = new ConversationContext();
-            session.setAttribute("conversationContext", context);
+    public String home(Model model, HttpServletRequest request, HttpServletResponse response) {
+        String conversationId = conversationCookie.resolve(request, response);
+        ConversationContext context;
+        ReentrantLock lock = conversationLocks.lockFor(conversationId);
+        lock.lock();
+        try {
+            context = conversationStore.load(conversationId);
+            // The page is rendered after the lock is released, from a copy no turn can change
+            context = context == null ? conversationContextFactory.create(conversationId) : context.copy();
+        } finally {
+            lock.unlock();
         }
+        // Only stored once the first message is sent
         model.addAttribute("conversationContext", context);
         return "index";
     }
@@ -0,0 +1,134 @@
+package com.ajsd.chatbot.controller;
+
+import com.ajsd.chatbot.config.CountryDataLoader;
+import com.ajsd.chatbot.config.SessionMemoryMetrics;
+import com.ajsd.chatbot.service.ConversationAuditLog;
+import com.ajsd.chatbot.service.IntelligenceService;
+import com.ajsd.chatbot.service.MetricsService;
+import com.ajsd.chatbot.service.PipelineStage;
+import com.ajsd.chatbot.service.RateLimitService;
+import com.ajsd.chatbot.util.LatencyHistogram;
+import com.ajsd.chatbot.util.TinyLfuCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+public class MetricsController {
+
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final SessionMemoryMetrics sessionMemoryMetrics;
+    private final CountryDataLoader countryDataLoader;
+    private final MetricsService metricsService;
+    private final RateLimitService rateLimitService;
+    private final ConversationAuditLog conversationAuditLog;
+    private final IntelligenceService intelligenceService;
+
+    public MetricsController(SessionMemoryMetrics sessionMemoryMetrics, CountryDataLoader countryDataLoader,
+                             MetricsService metricsService, RateLimitService rateLimitService,
+                             ConversationAuditLog conversationAuditLog, IntelligenceService intelligenceService) {
+        this.sessionMemoryMetrics = sessionMemoryMetrics;
+        this.countryDataLoader = countryDataLoader;
+        this.metricsService = metricsService;
+        this.rateLimitService = rateLimitService;
+        this.conversationAuditLog = conversationAuditLog;
+        this.intelligenceService = intelligenceService;
+    }
+
+    /**  Every metric of the application in the Prometheus text format, to be scraped.
+     *          Stage latencies are summaries with the 50th to 99.9th percentiles, in seconds.
+     **/
+    @GetMapping(value = "/metrics", produces = PROMETHEUS_TEXT)
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        metric(out, "chatbot_sessions_total", "counter", "Conversations started.", metricsService.getTotalSessions());
+        metric(out, "chatbot_messages_total", "counter", "Chat messages received.", metricsService.getTotalMessages());
+        metric(out, "chatbot_tracked_sessions", "gauge", "Live sessions with a message count.", metricsService.getTrackedSessions());
+        metric(out, "chatbot_untracked_sessions_total", "counter", "Sessions started while the tracked sessions were at their bound.",
+                metricsService.getUntrackedSessions());
+
+        out.append("# HELP chatbot_stage_latency_seconds Time spent in each stage of the chat pipeline.\n");
+        out.append("# TYPE chatbot_stage_latency_seconds summary\n");
+        for (PipelineStage stage : PipelineStage.values()) {
+            LatencyHistogram.Snapshot latency = metricsService.getLatency(stage);
+            for (double quantile : QUANTILES) {
+                out.append("chatbot_stage_latency_seconds{stage=\"").append(stage.getLabel())
+                        .append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(latency.getValueAtQuantile(quantile) / NANOS_PER_SECOND).append('\n');
+            }
+            out.append("chatbot_stage_latency_seconds_sum{stage=\"").append(stage.getLabel()).append("\"} ")
+                    .append(latency.getSum() / NANOS_PER_SECOND).append('\n');
+            out.append("chatbot_stage_latency_seconds_count{stage=\"").append(stage.getLabel()).append("\"} ")
+                    .append(latency.getCount()).append('\n');
+        }
+        out.append("# HELP chatbot_stage_latency_max_seconds Longest time spent in each stage.\n");
+        out.append("# TYPE chatbot_stage_latency_max_seconds gauge\n");
+        for (PipelineStage stage : PipelineStage.values()) {
+            out.append("chatbot_stage_latency_max_seconds{stage=\"").append(stage.getLabel()).append("\"} ")
+                    .append(metricsService.getLatency(stage).getMax() / NANOS_PER_SECOND).append('\n');
+        }
+
+        Map<String, Object> sessions = sessionMemoryMetrics.snapshot();
+        metric(out, "chatbot_store_conversations", "gauge", "Conversations in the conversation store.", sessions.get("conversations"));
+        metric(out, "chatbot_store_bytes", "gauge", "Estimated size of the stored conversations.", sessions.get("storedBytesTotal"));
+        metric(out, "chatbot_store_expired_total", "counter", "Conversations which expired.", sessions.get("expiredConversations"));
+
+        Map<String, Object> countries = countryDataLoader.getReloadStatistics();
+        metric(out, "chatbot_country_data_generation", "gauge", "Generation of the country data snapshot being served.", countries.get("generation"));
+        metric(out, "chatbot_country_data_countries", "gauge", "Countries in the snapshot being served.", countries.get("countries"));
+        metric(out, "chatbot_country_data_reloads_total", "counter", "Country data loads.", countries.get("reloads"));
+        metric(out, "chatbot_country_data_failed_reloads_total", "counter", "Country data loads which failed.", countries.get("failedReloads"));
+        metric(out, "chatbot_country_data_last_reload_seconds", "gauge", "Duration of the last country data load.",
+                ((Number) countries.get("lastReloadMillis")).longValue() / 1000.0);
+
+        metric(out, "chatbot_rate_limit_buckets", "gauge", "Rate limit buckets kept.", rateLimitService.getBucketCount());
+
+        metric(out, "chatbot_audit_recorded_total", "counter", "Messages queued for the audit log.", conversationAuditLog.getRecorded());
+        metric(out, "chatbot_audit_dropped_total", "counter", "Messages not audited because the audit buffer was full.",
+                conversationAuditLog.getDropped());
+        metric(out, "chatbot_audit_sampled_out_total", "counter", "Messages of conversations left out of the audit sample.",
+                conversationAuditLog.getSampledOut());
+        metric(out, "chatbot_audit_written_total", "counter", "Messages written to the audit log.", conversationAuditLog.getWritten());
+        metric(out, "chatbot_audit_lost_total", "counter", "Messages which could not be written to the audit log.",
+                conversationAuditLog.getLost());
+        metric(out, "chatbot_audit_rotations_total", "counter", "Audit log files rotated.", conversationAuditLog.getRotations());
+        metric(out, "chatbot_audit_buffered", "gauge", "Messages waiting in the audit buffer.", conversationAuditLog.getBuffered());
+        metric(out, "chatbot_audit_buffer_capacity", "gauge", "Size of the audit buffer.", conversationAuditLog.getBufferCapacity());
+
+        TinyLfuCache<?, ?> enrichments = intelligenceService.getEnrichmentCache();
+        metric(out, "chatbot_enrichment_cache_hits_total", "counter", "Enrichments found in the cache.", enrichments.getHits());
+        metric(out, "chatbot_enrichment_cache_misses_total", "counter", "Enrichments computed as they were not cached.", enrichments.getMisses());
+        metric(out, "chatbot_enrichment_cache_evictions_total", "counter", "Enrichments evicted for more frequent ones.", enrichments.getEvictions());
+        metric(out, "chatbot_enrichment_cache_rejections_total", "counter", "Computed enrichments which were not admitted to the cache.",
+                enrichments.getRejections());
+        metric(out, "chatbot_enrichment_cache_entries", "gauge", "Enrichments in the cache.", enrichments.size());
+        metric(out, "chatbot_enrichment_cache_bytes", "gauge", "Estimated size of the cached enrichments.", enrichments.getWeight());
+        return out.toString();
+    }
+
+    /**  Memory held by the stored conversations, used to size the heap
+     *          or the off-heap store.
+     **/
+    @GetMapping("/metrics/sessions")
+    public ResponseEntity<Map<String, Object>> sessionMemory() {
+        return ResponseEntity.ok(sessionMemoryMetrics.snapshot());
+    }
+
+    /**  Snapshot generation of the country data and duration of the last reload.
+     **/
+    @GetMapping("/metrics/countries")
+    public ResponseEntity<Map<String, Object>> countryData() {
+        return ResponseEntity.ok(countryDataLoader.getReloadStatistics());
+    }
+
+    private static void metric(StringBuilder out, String name, String type, String help, Object value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
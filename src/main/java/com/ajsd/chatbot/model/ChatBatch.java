@@ -0,0 +1,55 @@
+package com.ajsd.chatbot.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    This class is the request body of the batch chat endpoint: scripted conversations,
+    each an ordered list of messages. A single conversation can be given directly as
+    messages, many independent ones as sessions.
+ */
+public class ChatBatch {
+
+    private List<String> messages = new ArrayList<>();
+    private List<Session> sessions = new ArrayList<>();
+
+    public static class Session {
+        private String id; // Chosen by the caller, echoed in the result
+        private List<String> messages = new ArrayList<>();
+
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+        public List<String> getMessages() { return messages; }
+        public void setMessages(List<String> messages) { this.messages = messages == null ? new ArrayList<>() : messages; }
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<String> messages) {
+        this.messages = messages == null ? new ArrayList<>() : messages;
+    }
+
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(List<Session> sessions) {
+        this.sessions = sessions == null ? new ArrayList<>() : sessions;
+    }
+
+    /**  Every conversation of the batch: the one given as messages, if any, first.
+     **/
+    public List<Session> allSessions() {
+        if (messages.isEmpty()) {
+            return sessions;
+        }
+        Session single = new Session();
+        single.setMessages(messages);
+        List<Session> all = new ArrayList<>(sessions.size() + 1);
+        all.add(single);
+        all.addAll(sessions);
+        return all;
+    }
+}
@@ -0,0 +1,73 @@
+package com.ajsd.chatbot.model;
+
+import java.util.List;
+
+/*
+    This class is the response body of the batch chat endpoint: for every session of
+    the ChatBatch, in the same order, the response to each of its messages and the
+    conversation state that turn left behind.
+ */
+public class ChatBatchResult {
+
+    private final List<Session> sessions;
+    private final long elapsedMicros;
+
+    public ChatBatchResult(List<Session> sessions, long elapsedMicros) {
+        this.sessions = sessions;
+        this.elapsedMicros = elapsedMicros;
+    }
+
+    public static class Session {
+        private final String id;
+        private final List<Turn> turns;
+        private final long elapsedMicros;
+
+        public Session(String id, List<Turn> turns, long elapsedMicros) {
+            this.id = id;
+            this.turns = turns;
+            this.elapsedMicros = elapsedMicros;
+        }
+
+        public String getId() { return id; }
+        public List<Turn> getTurns() { return turns; }
+        public long getElapsedMicros() { return elapsedMicros; }
+    }
+
+    public static class Turn {
+        private final String message;
+        private final String response; // null when the message was rejected
+        private final String error;    // null when the message was answered
+        private final ConversationStep currentStep;
+        private final Topic currentTopic;
+
+        private Turn(String message, String response, String error, ConversationStep currentStep, Topic currentTopic) {
+            this.message = message;
+            this.response = response;
+            this.error = error;
+            this.currentStep = currentStep;
+            this.currentTopic = currentTopic;
+        }
+
+        public static Turn answered(String message, String response, ConversationContext context) {
+            return new Turn(message, response, null, context.getCurrentStep(), context.getCurrentTopic());
+        }
+
+        public static Turn rejected(String message, String error, ConversationContext context) {
+            return new Turn(message, null, error, context.getCurrentStep(), context.getCurrentTopic());
+        }
+
+        public String getMessage() { return message; }
+        public String getResponse() { return response; }
+        public String getError() { return error; }
+        public ConversationStep getCurrentStep() { return currentStep; }
+        public Topic getCurrentTopic() { return currentTopic; }
+    }
+
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    public long getElapsedMicros() {
+        return elapsedMicros;
+    }
+}
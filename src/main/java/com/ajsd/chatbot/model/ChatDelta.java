@@ -0,0 +1,72 @@
+package com.ajsd.chatbot.model;
+
+import java.util.List;
+
+/*
+    This class is the response body of the delta chat endpoints.
+    Instead of the whole ConversationContext it only carries the messages
+    added after a given sequence number plus the current conversation state,
+    so the payload of a turn does not grow with the length of the conversation.
+ */
+public class ChatDelta {
+
+    private final long sequence;
+    private final long firstSequence;
+    private final List<ConversationContext.Message> messages;
+    private final ConversationStep currentStep;
+    private final Topic currentTopic;
+    private final int selectedCountryId;
+    private final String selectedCondition;
+
+    private ChatDelta(ConversationContext context, List<ConversationContext.Message> messages) {
+        this.sequence = context.getLastSequence();
+        this.firstSequence = context.getFirstSequence();
+        this.messages = messages;
+        this.currentStep = context.getCurrentStep();
+        this.currentTopic = context.getCurrentTopic();
+        this.selectedCountryId = context.getSelectedCountryId();
+        this.selectedCondition = context.getSelectedCondition();
+    }
+
+    /**  Builds a delta with every message of the context whose sequence number
+     *          is greater than since.
+     **/
+    public static ChatDelta since(ConversationContext context, long since) {
+        return new ChatDelta(context, context.getMessagesSince(since));
+    }
+
+    /**  Builds a delta carrying the given messages, used when part of the page
+     *          comes from outside the in-memory history (e.g. spilled messages).
+     **/
+    public static ChatDelta of(ConversationContext context, List<ConversationContext.Message> messages) {
+        return new ChatDelta(context, messages);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getFirstSequence() {
+        return firstSequence;
+    }
+
+    public List<ConversationContext.Message> getMessages() {
+        return messages;
+    }
+
+    public ConversationStep getCurrentStep() {
+        return currentStep;
+    }
+
+    public Topic getCurrentTopic() {
+        return currentTopic;
+    }
+
+    public int getSelectedCountryId() {
+        return selectedCountryId;
+    }
+
+    public String getSelectedCondition() {
+        return selectedCondition;
+    }
+}
@@ -1,50 +1,85 @@
 package com.ajsd.chatbot.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 public class ConversationContext {
-    private String currentStep; // e.g., "ASK_INTENT", "SELECT_TOPIC", "SELECT_COUNTRY", "SELECT_CONDITION", "CHOOSE_OPTION"
-    private String selectedCountry; // Country currently being discussed
+
+    public static final int DEFAULT_HISTORY_CAPACITY = 50;
+    public static final int NO_COUNTRY = -1;
+
+    // Rough per-message footprint: Message object, its String and the String's byte array headers
+    private static final int MESSAGE_OVERHEAD_BYTES = 96;
+
+    private ConversationStep currentStep; // State of the conversation state machine
+    private int selectedCountryId = NO_COUNTRY; // CountryStore id of the country currently being discussed
     private String selectedCondition; // Medical condition currently being discussed
-    private String currentTopic; // "COUNTRIES" or "MEDICINE"
+    private Topic currentTopic; // Topic being taught, null until one is selected
     private List<String> availableOptions; // Options available for the current step
-    private List<Message> messages; // Conversation history
+    private final ArrayDeque<Message> messages; // Conversation history, bounded ring buffer of recent turns
+    private long lastSequence; // Sequence number of the most recent message, never reset
+    private long firstSequence; // Sequence number the current conversation started at, moves on clear()
+
+    private final int historyCapacity;
+    private final HistoryPolicy historyPolicy;
+    private final HistorySpill historySpill; // Only used with HistoryPolicy.SPILL
+    private final HistorySummary historySummary = new HistorySummary(); // Only filled with HistoryPolicy.SUMMARIZE
+    private final ConversationFeatures features = new ConversationFeatures(); // Read by the ContextAnalyzer
+    private long evictedMessages;
+    private long retainedBytes;
 
     public static class Message {
+        private long seq; // Monotonically increasing per conversation
         private String sender; // "USER" or "BOT"
         private String content;
 
-        public Message(String sender, String content) {
+        public Message(long seq, String sender, String content) {
+            this.seq = seq;
             this.sender = sender;
             this.content = content;
         }
 
+        public long getSeq() { return seq; }
         public String getSender() { return sender; }
         public String getContent() { return content; }
     }
 
     public ConversationContext() {
-        this.currentStep = "ASK_INTENT";
+        this(DEFAULT_HISTORY_CAPACITY, HistoryPolicy.SUMMARIZE, null);
+    }
+
+    public ConversationContext(int historyCapacity, HistoryPolicy historyPolicy, HistorySpill historySpill) {
+        if (historyCapacity < 2) {
+            throw new IllegalArgumentException("History capacity must hold at least one USER/BOT pair");
+        }
+        this.currentStep = ConversationStep.ASK_INTENT;
         this.availableOptions = new ArrayList<>();
-        this.messages = new ArrayList<>();
+        this.historyCapacity = historyCapacity;
+        this.historyPolicy = historyPolicy;
+        this.historySpill = historySpill;
+        this.messages = new ArrayDeque<>(historyCapacity);
+        this.firstSequence = 1;
     }
 
     // Getters and Setters
-    public String getCurrentStep() {
+    public ConversationStep getCurrentStep() {
         return currentStep;
     }
 
-    public void setCurrentStep(String currentStep) {
+    public void setCurrentStep(ConversationStep currentStep) {
         this.currentStep = currentStep;
     }
 
-    public String getSelectedCountry() {
-        return selectedCountry;
+    public int getSelectedCountryId() {
+        return selectedCountryId;
     }
 
-    public void setSelectedCountry(String selectedCountry) {
-        this.selectedCountry = selectedCountry;
+    public void setSelectedCountryId(int selectedCountryId) {
+        this.selectedCountryId = selectedCountryId;
     }
 
     public List<String> getAvailableOptions() {
@@ -64,11 +99,134 @@ public class ConversationContext {
     }
 
     public List<Message> getMessages() {
-        return messages;
+        return new ArrayList<>(messages);
+    }
+
+    /**  Appends a message to the history. Once the history is full the oldest message
+     *          is evicted and handled according to the history policy, so the memory held
+     *          by a conversation stays bounded however long it runs. The features are
+     *          updated with the message, in constant time.
+     **/
+    public Message addMessage(String sender, String content) {
+        Message message = new Message(++lastSequence, sender, content);
+        if (messages.size() == historyCapacity) {
+            evict(messages.pollFirst());
+        }
+        messages.addLast(message);
+        retainedBytes += estimateBytes(message);
+        features.record(message, this);
+        return message;
+    }
+
+    /**  Replaces the content of the last message, when it is still the one with the given
+     *          sequence number, as a streamed turn does once the enrichment of its reply has
+     *          run. Returns false and changes nothing when another message came after it.
+     *          The features are left as they are: an enrichment only adds to a reply.
+     **/
+    public boolean replaceLastMessage(long seq, String content) {
+        Message last = messages.peekLast();
+        if (last == null || last.getSeq() != seq) {
+            return false;
+        }
+        Message replacement = new Message(seq, last.getSender(), content);
+        messages.pollLast();
+        messages.addLast(replacement);
+        retainedBytes += estimateBytes(replacement) - estimateBytes(last);
+        return true;
+    }
+
+    private void evict(Message message) {
+        retainedBytes -= estimateBytes(message);
+        evictedMessages++;
+        switch (historyPolicy) {
+            case SUMMARIZE:
+                historySummary.record(message);
+                break;
+            case SPILL:
+                if (historySpill != null) {
+                    historySpill.spill(message);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static long estimateBytes(Message message) {
+        return MESSAGE_OVERHEAD_BYTES + message.getContent().length();
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**  Returns the sequence number the current conversation started at. It only moves
+     *          when the conversation is cleared, so clients drop anything they rendered below it.
+     *          Messages evicted from the bounded history do not move it.
+     **/
+    public long getFirstSequence() {
+        return firstSequence;
     }
 
-    public void addMessage(String sender, String content) {
-        this.messages.add(new Message(sender, content));
+    /**  Returns the sequence number of the oldest message still held in memory,
+     *          or lastSequence + 1 when the history is empty.
+     **/
+    @JsonIgnore
+    public long getOldestRetainedSequence() {
+        Message oldest = messages.peekFirst();
+        return oldest == null ? lastSequence + 1 : oldest.getSeq();
+    }
+
+    /**  Returns the messages held in memory whose sequence number is greater than the
+     *          one passed. Messages are kept in sequence order, so the scan walks back from
+     *          the end of the history and stops at the first older message.
+     **/
+    public List<Message> getMessagesSince(long since) {
+        ArrayDeque<Message> newer = new ArrayDeque<>();
+        Iterator<Message> iterator = messages.descendingIterator();
+        while (iterator.hasNext()) {
+            Message message = iterator.next();
+            if (message.getSeq() <= since) {
+                break;
+            }
+            newer.addFirst(message);
+        }
+        return new ArrayList<>(newer);
+    }
+
+    @JsonIgnore
+    public HistoryPolicy getHistoryPolicy() {
+        return historyPolicy;
+    }
+
+    @JsonIgnore
+    public int getHistoryCapacity() {
+        return historyCapacity;
+    }
+
+    /**  Counters of the messages evicted under HistoryPolicy.SUMMARIZE.
+     **/
+    public HistorySummary getHistorySummary() {
+        return historySummary;
+    }
+
+    /**  Features of the conversation so far, see ConversationFeatures.
+     **/
+    @JsonIgnore
+    public ConversationFeatures getFeatures() {
+        return features;
+    }
+
+    @JsonIgnore
+    public long getEvictedMessages() {
+        return evictedMessages;
+    }
+
+    /**  Estimated number of heap bytes held by the message history of this conversation.
+     **/
+    @JsonIgnore
+    public long getRetainedBytes() {
+        return retainedBytes;
     }
 
     public String getSelectedCondition() {
@@ -79,20 +237,71 @@ public class ConversationContext {
         this.selectedCondition = selectedCondition;
     }
 
-    public String getCurrentTopic() {
+    public Topic getCurrentTopic() {
         return currentTopic;
     }
 
-    public void setCurrentTopic(String currentTopic) {
+    public void setCurrentTopic(Topic currentTopic) {
         this.currentTopic = currentTopic;
     }
 
+    /**  Puts back the history of a conversation which was stored by a ConversationStore:
+     *          the sequence numbers and eviction count it had, and the messages it held, oldest first.
+     *          Only meant to be called on a freshly created context.
+     **/
+    public void restoreHistory(long firstSequence, long lastSequence, long evictedMessages, List<Message> retained) {
+        this.messages.clear();
+        this.retainedBytes = 0;
+        for (Message message : retained) {
+            if (messages.size() == historyCapacity) {
+                messages.pollFirst();
+            }
+            messages.addLast(message);
+        }
+        for (Message message : messages) {
+            retainedBytes += estimateBytes(message);
+        }
+        this.firstSequence = firstSequence;
+        this.lastSequence = lastSequence;
+        this.evictedMessages = evictedMessages;
+    }
+
+    /**  Returns a copy of the conversation state and of the messages held in memory, for a
+     *          response which is rendered after the turn that produced it has let go of the
+     *          conversation. Messages never change, so they are shared with the copy, which
+     *          does not spill.
+     **/
+    public ConversationContext copy() {
+        ConversationContext copy = new ConversationContext(historyCapacity, historyPolicy, null);
+        copy.currentStep = currentStep;
+        copy.selectedCountryId = selectedCountryId;
+        copy.selectedCondition = selectedCondition;
+        copy.currentTopic = currentTopic;
+        copy.availableOptions = new ArrayList<>(availableOptions);
+        copy.historySummary.restore(historySummary.getUserMessages(), historySummary.getBotMessages(),
+                historySummary.getCharacters(), historySummary.getFirstSequence(), historySummary.getLastSequence());
+        copy.features.copyFrom(features);
+        copy.restoreHistory(firstSequence, lastSequence, evictedMessages, getMessages());
+        return copy;
+    }
+
+    /**  Resets the conversation. The sequence counter is deliberately kept so that
+     *          numbers already handed out to the client are never reused.
+     **/
     public void clear() {
-        this.currentStep = "ASK_INTENT";
-        this.selectedCountry = null;
+        this.currentStep = ConversationStep.ASK_INTENT;
+        this.selectedCountryId = NO_COUNTRY;
         this.selectedCondition = null;
         this.currentTopic = null;
         this.availableOptions.clear();
         this.messages.clear();
+        this.firstSequence = lastSequence + 1;
+        this.historySummary.reset();
+        this.features.reset();
+        this.evictedMessages = 0;
+        this.retainedBytes = 0;
+        if (historySpill != null) {
+            historySpill.discard();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,151 @@
+package com.ajsd.chatbot.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    What the ContextAnalyzer knows about a conversation, kept up to date by
+    ConversationContext.addMessage() so it never has to read the history:
+
+    1. The last few countries and conditions talked about, oldest first.
+    2. How many messages the user sent in each topic.
+    3. How many bot replies in a row did not understand the user.
+    4. The last option the user chose from an options menu, and in which topic.
+
+    Every message updates a few fields, whatever the length of the conversation.
+    The state of the context when the message is added is what counts: a user message
+    is added before the engine handles it, a bot reply after.
+ */
+public class ConversationFeatures {
+
+    public static final int RECENT_ENTITIES = 4;
+
+    // How every reply of the engine which did not understand the user begins
+    public static final String NOT_UNDERSTOOD = "I do not understand";
+
+    // Rings of the most recent entities, count is the number ever recorded
+    private final int[] recentCountries = new int[RECENT_ENTITIES];
+    private int countryCount;
+    private final String[] recentConditions = new String[RECENT_ENTITIES];
+    private int conditionCount;
+
+    private final int[] topicMessages = new int[Topic.values().length];
+    private int failureStreak;
+    private char lastOption;
+    private Topic lastOptionTopic;
+
+    void record(ConversationContext.Message message, ConversationContext context) {
+        Topic topic = context.getCurrentTopic();
+        if ("USER".equals(message.getSender())) {
+            if (topic != null) {
+                topicMessages[topic.ordinal()]++;
+            }
+            String content = message.getContent();
+            if (context.getCurrentStep() == ConversationStep.CHOOSE_OPTION && content.length() == 1
+                    && Character.isLetter(content.charAt(0))) {
+                lastOption = Character.toLowerCase(content.charAt(0));
+                lastOptionTopic = topic;
+            }
+            return;
+        }
+
+        failureStreak = message.getContent().startsWith(NOT_UNDERSTOOD) ? failureStreak + 1 : 0;
+        if (topic == Topic.COUNTRIES && context.getSelectedCountryId() != ConversationContext.NO_COUNTRY
+                && (countryCount == 0 || recentCountries[(countryCount - 1) % RECENT_ENTITIES] != context.getSelectedCountryId())) {
+            recentCountries[countryCount++ % RECENT_ENTITIES] = context.getSelectedCountryId();
+        } else if (topic == Topic.MEDICINE && context.getSelectedCondition() != null
+                && (conditionCount == 0 || !context.getSelectedCondition().equals(recentConditions[(conditionCount - 1) % RECENT_ENTITIES]))) {
+            recentConditions[conditionCount++ % RECENT_ENTITIES] = context.getSelectedCondition();
+        }
+    }
+
+    /**  Ids of the last countries talked about, oldest first.
+     **/
+    public int[] getRecentCountries() {
+        int size = Math.min(countryCount, RECENT_ENTITIES);
+        int[] countries = new int[size];
+        for (int i = 0; i < size; i++) {
+            countries[i] = recentCountries[(countryCount - size + i) % RECENT_ENTITIES];
+        }
+        return countries;
+    }
+
+    /**  Names of the last conditions talked about, oldest first.
+     **/
+    public List<String> getRecentConditions() {
+        int size = Math.min(conditionCount, RECENT_ENTITIES);
+        List<String> conditions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            conditions.add(recentConditions[(conditionCount - size + i) % RECENT_ENTITIES]);
+        }
+        return conditions;
+    }
+
+    /**  The country talked about before the current one, or NO_COUNTRY.
+     **/
+    public int getPreviousCountry() {
+        return countryCount < 2 ? ConversationContext.NO_COUNTRY : recentCountries[(countryCount - 2) % RECENT_ENTITIES];
+    }
+
+    /**  The condition talked about before the current one, or null.
+     **/
+    public String getPreviousCondition() {
+        return conditionCount < 2 ? null : recentConditions[(conditionCount - 2) % RECENT_ENTITIES];
+    }
+
+    public int getTopicMessages(Topic topic) {
+        return topicMessages[topic.ordinal()];
+    }
+
+    public int getFailureStreak() {
+        return failureStreak;
+    }
+
+    /**  The letter of the last option chosen, lower case, or 0 when none was.
+     **/
+    public char getLastOption() {
+        return lastOption;
+    }
+
+    public Topic getLastOptionTopic() {
+        return lastOptionTopic;
+    }
+
+    /**  Puts back features which were stored by a ConversationStore. Entities are given
+     *          oldest first, as the getters return them.
+     **/
+    public void restore(int[] countries, List<String> conditions, int[] topicMessages, int failureStreak,
+                        char lastOption, Topic lastOptionTopic) {
+        reset();
+        for (int country : countries) {
+            recentCountries[countryCount++ % RECENT_ENTITIES] = country;
+        }
+        for (String condition : conditions) {
+            recentConditions[conditionCount++ % RECENT_ENTITIES] = condition;
+        }
+        System.arraycopy(topicMessages, 0, this.topicMessages, 0, Math.min(topicMessages.length, this.topicMessages.length));
+        this.failureStreak = failureStreak;
+        this.lastOption = lastOption;
+        this.lastOptionTopic = lastOptionTopic;
+    }
+
+    public void reset() {
+        countryCount = 0;
+        conditionCount = 0;
+        Arrays.fill(recentConditions, null);
+        Arrays.fill(topicMessages, 0);
+        failureStreak = 0;
+        lastOption = 0;
+        lastOptionTopic = null;
+    }
+
+    void copyFrom(ConversationFeatures other) {
+        int[] topics = new int[Topic.values().length];
+        for (Topic topic : Topic.values()) {
+            topics[topic.ordinal()] = other.getTopicMessages(topic);
+        }
+        restore(other.getRecentCountries(), other.getRecentConditions(), topics, other.failureStreak,
+                other.lastOption, other.lastOptionTopic);
+    }
+}
@@ -0,0 +1,15 @@
+package com.ajsd.chatbot.model;
+
+/*
+    The states of the conversation state machine run by the RuleBasedEngine.
+ */
+public enum ConversationStep {
+    ASK_INTENT,
+    SELECT_TOPIC,
+    SELECT_COUNTRY,
+    SEARCH_COUNTRY_PREFIX,   // waiting for the beginning of a country name
+    SEARCH_COUNTRY_SUFFIX,   // waiting for the ending of a country name
+    SEARCH_COUNTRY_CONTAINS, // waiting for part of a country name
+    SELECT_CONDITION,
+    CHOOSE_OPTION
+}
@@ -0,0 +1,40 @@
+package com.ajsd.chatbot.model;
+
+/*
+    The properties known for every country, in the column order of the CountryStore.
+    The key is the field name used in countries_data.json.
+ */
+public enum CountryProperty {
+
+    CAPITAL("capital", null),
+    NATIONAL_ANIMAL("nationalAnimal", "Unknown"),
+    NATIONAL_FLOWER("nationalFlower", "Unknown");
+
+    private final String key;
+    private final String defaultValue;
+
+    CountryProperty(String key, String defaultValue) {
+        this.key = key;
+        this.defaultValue = defaultValue;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    // Value used when the data file has no (or an empty) value, null when the property is required
+    public String getDefaultValue() {
+        return defaultValue;
+    }
+
+    /**  Returns the property with the given key, or null if there is none.
+     **/
+    public static CountryProperty fromKey(String key) {
+        for (CountryProperty property : values()) {
+            if (property.key.equals(key)) {
+                return property;
+            }
+        }
+        return null;
+    }
+}
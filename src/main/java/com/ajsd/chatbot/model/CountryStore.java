@@ -0,0 +1,345 @@
+package com.ajsd.chatbot.model;
+
+import com.ajsd.chatbot.util.BinaryImage;
+import com.ajsd.chatbot.util.BinaryImage.StringTable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Read-only store of the country data.
+
+    Every country gets a dense int id, in the order the countries were added. The
+    properties are held column by column: one String[] per CountryProperty, indexed
+    by id, so there is no per-country object at all. Names are found through an
+    open-addressing hash table of ids which hashes and compares case-insensitively,
+    so looking up a name as typed by the user does not allocate.
+
+    Stores are built with a CountryStore.Builder and never change afterwards, which
+    makes them safe to read from any number of threads once published.
+
+    When the data is reloaded the new store is built with keepIdsOf(previous store):
+    countries keep the id they had, new countries get the next free ids, and countries
+    which are gone are retired rather than dropped. A retired country can no longer be
+    looked up by name or listed, but its id still answers name() and get(), so a
+    conversation holding that id is not broken by the reload.
+
+    A store read from a precompiled image (see CountryDataImage) keeps its strings in
+    the image, as StringTables: a name is decoded the first time it is needed and kept,
+    as the name lookups compare names all the time, and a property value is decoded
+    whenever it is asked for and not kept, as it is only read to render the answers.
+ */
+public final class CountryStore {
+
+    public static final int NOT_FOUND = -1;
+
+    private final String[] names;     // by id; from an image, filled in as they are decoded
+    private final String[][] columns; // [property ordinal][id], null when read from an image
+    private final StringTable nameTable;      // null unless read from an image
+    private final StringTable[] columnTables; // [property ordinal], null unless read from an image
+    private final boolean[] retired;  // by id
+    private final int countryCount;   // countries which are not retired
+    private final int[] table;        // id + 1 per slot, 0 = empty
+    private final int mask;
+
+    private CountryStore(String[] names, String[][] columns, boolean[] retired) {
+        this.names = names;
+        this.columns = columns;
+        this.nameTable = null;
+        this.columnTables = null;
+        this.retired = retired;
+        int capacity = Integer.highestOneBit(Math.max(2, names.length * 2 - 1)) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        int count = 0;
+        for (int id = 0; id < names.length; id++) {
+            if (retired[id]) {
+                continue;
+            }
+            count++;
+            int slot = hash(names[id]) & mask;
+            while (table[slot] != 0) {
+                if (names[table[slot] - 1].equalsIgnoreCase(names[id])) {
+                    throw new IllegalArgumentException("Duplicate country: " + names[id]);
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+        this.countryCount = count;
+    }
+
+    // The hash table comes from the image too, so no name is decoded to build it
+    private CountryStore(StringTable nameTable, StringTable[] columnTables, boolean[] retired, int[] table, int countryCount) {
+        this.names = new String[nameTable.size()];
+        this.columns = null;
+        this.nameTable = nameTable;
+        this.columnTables = columnTables;
+        this.retired = retired;
+        this.table = table;
+        this.mask = table.length - 1;
+        this.countryCount = countryCount;
+    }
+
+    /**  Returns the number of ids, retired countries included. Ids go from 0 to size() - 1.
+     **/
+    public int size() {
+        return names.length;
+    }
+
+    /**  Returns the number of countries which can be looked up, retired ones excluded.
+     **/
+    public int countryCount() {
+        return countryCount;
+    }
+
+    public boolean isRetired(int id) {
+        return retired[id];
+    }
+
+    /**  Returns the id of the country with the given name, whatever its case,
+     *          or NOT_FOUND.
+     **/
+    public int idOf(String name) {
+        int slot = hash(name) & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (name(id).equalsIgnoreCase(name)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**  Returns the name of the country as spelled in the data.
+     **/
+    public String name(int id) {
+        String name = names[id];
+        if (name == null) {
+            // Threads decoding the same name at once store equal Strings, either one will do
+            name = nameTable.get(id);
+            names[id] = name;
+        }
+        return name;
+    }
+
+    public String get(int id, CountryProperty property) {
+        return columns != null ? columns[property.ordinal()][id] : columnTables[property.ordinal()].get(id);
+    }
+
+    /**  Returns every country name by id, retired countries excluded.
+     **/
+    public List<String> names() {
+        if (nameTable == null && countryCount == names.length) {
+            return Arrays.asList(names.clone());
+        }
+        List<String> current = new ArrayList<>(countryCount);
+        for (int id = 0; id < names.length; id++) {
+            if (!retired[id]) {
+                current.add(name(id));
+            }
+        }
+        return current;
+    }
+
+    /**  Writes the store to a precompiled data image, see CountryDataImage:
+     *
+     *              size            int
+     *              retired         one byte per id
+     *              hash table      ints, id + 1 per slot
+     *              names           StringTable, by id
+     *              properties      StringTable per CountryProperty, by id
+     *
+     *          The hash table is only valid with the hash() it was built with, a change to
+     *          hash() must come with a new image format version.
+     **/
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(names.length);
+        for (boolean isRetired : retired) {
+            out.writeBoolean(isRetired);
+        }
+        BinaryImage.writeInts(out, table);
+        BinaryImage.writeStringTable(out, allNames());
+        out.writeInt(CountryProperty.values().length);
+        for (CountryProperty property : CountryProperty.values()) {
+            String[] values = new String[names.length];
+            for (int id = 0; id < values.length; id++) {
+                values[id] = get(id, property);
+            }
+            BinaryImage.writeStringTable(out, values);
+        }
+    }
+
+    /**  Reads back a store written by write(), decoding none of its strings: they stay
+     *          in the buffer, which the store keeps reading from. The image must have been
+     *          written with the same CountryProperty values, which CountryDataImage checks.
+     **/
+    public static CountryStore read(ByteBuffer in) {
+        int size = in.getInt();
+        if (size < 0 || size > in.remaining()) {
+            throw new IllegalArgumentException("Image has " + size + " countries");
+        }
+        boolean[] retired = new boolean[size];
+        int countryCount = 0;
+        for (int id = 0; id < size; id++) {
+            retired[id] = in.get() != 0;
+            countryCount += retired[id] ? 0 : 1;
+        }
+        int[] table = BinaryImage.readInts(in);
+        int entries = 0;
+        for (int entry : table) {
+            if (entry < 0 || entry > size || (entry > 0 && retired[entry - 1])) {
+                throw new IllegalArgumentException("Image has an invalid name table");
+            }
+            entries += entry > 0 ? 1 : 0;
+        }
+        // A power of two with at least one empty slot, or a lookup would never end
+        if (table.length < 2 || Integer.bitCount(table.length) != 1 || entries != countryCount || entries == table.length) {
+            throw new IllegalArgumentException("Image has an invalid name table");
+        }
+        StringTable nameTable = BinaryImage.readStringTable(in);
+        StringTable[] columnTables = new StringTable[in.getInt()];
+        if (columnTables.length != CountryProperty.values().length) {
+            throw new IllegalArgumentException("Image has " + columnTables.length + " country properties");
+        }
+        for (int column = 0; column < columnTables.length; column++) {
+            columnTables[column] = BinaryImage.readStringTable(in);
+        }
+        for (StringTable strings : columnTables) {
+            if (strings.size() != size) {
+                throw new IllegalArgumentException("Image has " + strings.size() + " values for " + size + " countries");
+            }
+        }
+        if (nameTable.size() != size) {
+            throw new IllegalArgumentException("Image has " + nameTable.size() + " names for " + size + " countries");
+        }
+        return new CountryStore(nameTable, columnTables, retired, table, countryCount);
+    }
+
+    private String[] allNames() {
+        String[] all = new String[names.length];
+        for (int id = 0; id < all.length; id++) {
+            all[id] = name(id);
+        }
+        return all;
+    }
+
+    // Case-insensitive hash, consistent with equalsIgnoreCase for the names we store
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+
+        private final List<String> names = new ArrayList<>();
+        private final List<String[]> rows = new ArrayList<>();
+        private CountryStore previous;
+
+        private Builder() {
+        }
+
+        /**  Gives every country which is also in the previous store the id it had there,
+         *          and retires the ones which are not added again, see the class comment.
+         **/
+        public Builder keepIdsOf(CountryStore previous) {
+            this.previous = previous;
+            return this;
+        }
+
+        /**  Adds a country. The values are given in CountryProperty order, missing or
+         *          empty values are replaced with the property's default value.
+         **/
+        public Builder add(String name, String... values) {
+            String[] row = new String[CountryProperty.values().length];
+            for (CountryProperty property : CountryProperty.values()) {
+                String value = property.ordinal() < values.length ? values[property.ordinal()] : null;
+                row[property.ordinal()] = (value == null || value.isEmpty()) ? property.getDefaultValue() : value;
+            }
+            names.add(name);
+            rows.add(row);
+            return this;
+        }
+
+        public int size() {
+            return names.size();
+        }
+
+        public CountryStore build() {
+            List<String> orderedNames = names;
+            List<String[]> orderedRows = rows;
+            boolean[] retired;
+            if (previous == null) {
+                retired = new boolean[names.size()];
+            } else {
+                // Previous ids first, in the same order, then the countries which are new
+                int[] previousIds = new int[names.size()];
+                int[] byPreviousId = new int[previous.size()];
+                Arrays.fill(byPreviousId, -1);
+                for (int i = 0; i < names.size(); i++) {
+                    previousIds[i] = previous.idOf(names.get(i));
+                    if (previousIds[i] != NOT_FOUND) {
+                        // Two names for one id would leave one of them out, the first load fails on them too
+                        if (byPreviousId[previousIds[i]] >= 0) {
+                            throw new IllegalArgumentException("Duplicate country: " + names.get(i));
+                        }
+                        byPreviousId[previousIds[i]] = i;
+                    }
+                }
+                orderedNames = new ArrayList<>(previous.size() + names.size());
+                orderedRows = new ArrayList<>(previous.size() + names.size());
+                List<Boolean> retiredIds = new ArrayList<>();
+                for (int id = 0; id < previous.size(); id++) {
+                    int added = byPreviousId[id];
+                    if (added >= 0) {
+                        orderedNames.add(names.get(added));
+                        orderedRows.add(rows.get(added));
+                    } else {
+                        orderedNames.add(previous.name(id));
+                        orderedRows.add(previous.row(id));
+                    }
+                    retiredIds.add(added < 0);
+                }
+                for (int i = 0; i < names.size(); i++) {
+                    if (previousIds[i] == NOT_FOUND) {
+                        orderedNames.add(names.get(i));
+                        orderedRows.add(rows.get(i));
+                        retiredIds.add(false);
+                    }
+                }
+                retired = new boolean[retiredIds.size()];
+                for (int id = 0; id < retired.length; id++) {
+                    retired[id] = retiredIds.get(id);
+                }
+            }
+
+            String[][] columns = new String[CountryProperty.values().length][orderedNames.size()];
+            for (int id = 0; id < orderedRows.size(); id++) {
+                for (int column = 0; column < columns.length; column++) {
+                    columns[column][id] = orderedRows.get(id)[column];
+                }
+            }
+            return new CountryStore(orderedNames.toArray(new String[0]), columns, retired);
+        }
+    }
+
+    private String[] row(int id) {
+        String[] row = new String[CountryProperty.values().length];
+        for (CountryProperty property : CountryProperty.values()) {
+            row[property.ordinal()] = get(id, property);
+        }
+        return row;
+    }
+}
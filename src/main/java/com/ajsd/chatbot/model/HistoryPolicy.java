@@ -0,0 +1,11 @@
+package com.ajsd.chatbot.model;
+
+/*
+    What a ConversationContext does with a message that no longer fits
+    in its bounded history.
+ */
+public enum HistoryPolicy {
+    DROP,       // forget it, only the eviction counter is kept
+    SUMMARIZE,  // fold it into the HistorySummary counters
+    SPILL       // hand it to a HistorySpill (e.g. an append-only file) so it can still be paged through
+}
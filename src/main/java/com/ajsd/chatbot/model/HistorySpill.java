@@ -0,0 +1,13 @@
+package com.ajsd.chatbot.model;
+
+/*
+    Receives the messages a ConversationContext evicts from its history
+    when it runs with HistoryPolicy.SPILL.
+ */
+public interface HistorySpill {
+
+    void spill(ConversationContext.Message message);
+
+    // Called when the conversation is cleared, anything spilled so far is discarded
+    void discard();
+}
@@ -0,0 +1,65 @@
+package com.ajsd.chatbot.model;
+
+/*
+    Compact record of the messages evicted from a conversation under
+    HistoryPolicy.SUMMARIZE. Only counters are kept, never the content.
+ */
+public class HistorySummary {
+
+    private long userMessages;
+    private long botMessages;
+    private long characters;
+    private long firstSequence;
+    private long lastSequence;
+
+    public void record(ConversationContext.Message message) {
+        if ("USER".equals(message.getSender())) {
+            userMessages++;
+        } else {
+            botMessages++;
+        }
+        characters += message.getContent().length();
+        if (firstSequence == 0) {
+            firstSequence = message.getSeq();
+        }
+        lastSequence = message.getSeq();
+    }
+
+    /**  Puts back the counters of a summary which was stored by a ConversationStore.
+     **/
+    public void restore(long userMessages, long botMessages, long characters, long firstSequence, long lastSequence) {
+        this.userMessages = userMessages;
+        this.botMessages = botMessages;
+        this.characters = characters;
+        this.firstSequence = firstSequence;
+        this.lastSequence = lastSequence;
+    }
+
+    public void reset() {
+        userMessages = 0;
+        botMessages = 0;
+        characters = 0;
+        firstSequence = 0;
+        lastSequence = 0;
+    }
+
+    public long getUserMessages() {
+        return userMessages;
+    }
+
+    public long getBotMessages() {
+        return botMessages;
+    }
+
+    public long getCharacters() {
+        return characters;
+    }
+
+    public long getFirstSequence() {
+        return firstSequence;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+}
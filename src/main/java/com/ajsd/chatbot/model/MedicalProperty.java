@@ -0,0 +1,42 @@
+package com.ajsd.chatbot.model;
+
+/*
+    The properties known for every medical condition, in the column order of the
+    MedicalStore. The key is the field name used in medical_data.json, and the weight
+    is how much a word of the question found in that property counts when conditions
+    are ranked: a question names symptoms far more often than treatments.
+ */
+public enum MedicalProperty {
+
+    SYMPTOMS("symptoms", 1.0f),
+    CAUSES("causes", 0.6f),
+    TREATMENT("treatment", 0.3f),
+    PREVENTION("prevention", 0.3f);
+
+    private final String key;
+    private final float weight;
+
+    MedicalProperty(String key, float weight) {
+        this.key = key;
+        this.weight = weight;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public float getWeight() {
+        return weight;
+    }
+
+    /**  Returns the property with the given key, or null if there is none.
+     **/
+    public static MedicalProperty fromKey(String key) {
+        for (MedicalProperty property : values()) {
+            if (property.key.equals(key)) {
+                return property;
+            }
+        }
+        return null;
+    }
+}
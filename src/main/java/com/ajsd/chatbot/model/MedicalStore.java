@@ -0,0 +1,527 @@
+package com.ajsd.chatbot.model;
+
+import com.ajsd.chatbot.util.BinaryImage;
+import com.ajsd.chatbot.util.BinaryImage.StringTable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    Read-only store of the medical conditions, laid out like the CountryStore: dense
+    int ids, one String[] column per MedicalProperty, and an open-addressing table of
+    ids to find a condition by name whatever its case.
+
+    On top of that an inverted index answers questions such as "what causes headaches"
+    with the conditions they describe, best first. The text of every property is cut
+    into terms (lower case words, without the plural s and the words every question
+    has, see terms()), and for every term the index holds the conditions which have
+    it and how much it counts for them:
+
+        terms           sorted, found by binary search
+        postingStart    where the conditions of terms[t] begin in the two arrays below
+        postingIds      condition ids
+        postingWeights  weight of the best property the term is in (MedicalProperty.getWeight)
+        idf             per term, log(1 + conditions / conditions with the term)
+
+    A search adds up idf * weight per condition over the terms of the question, so a
+    condition matching more of the question, or rarer words of it, or in its symptoms
+    rather than its treatment, comes first. It touches only the postings of the words
+    asked about, rarest first, and stops walking the long postings of common words
+    once they can no longer bring a new condition into the results (MaxScore): from
+    then on it only looks up the conditions it has, by binary search.
+
+    Stores are built with a MedicalStore.Builder and never change afterwards. They can
+    also be read from a precompiled image (see MedicalDataImage), index and all, which
+    keeps names and property values in the image like the CountryStore does: a name is
+    decoded the first time it is needed, a value whenever it is asked for.
+ */
+public final class MedicalStore {
+
+    public static final int NOT_FOUND = -1;
+
+    private static final int MIN_TERM_LENGTH = 3;
+
+    // Question words and fillers, as terms() leaves them
+    private static final Set<String> STOP_WORDS = Set.of(
+            "what", "which", "who", "why", "how", "when", "the", "and", "are", "can", "could", "does", "have", "has",
+            "having", "get", "got", "for", "from", "with", "about", "that", "this", "there", "their", "your", "you",
+            "some", "any", "such", "other", "like", "feel", "feeling", "cause", "caused", "causing", "symptom", "sign",
+            "condition", "disease", "illness", "lot", "often", "been", "being", "too", "very", "not");
+
+    private final String[] names;      // by id; from an image, filled in as they are decoded
+    private final String[][] columns;  // [property ordinal][id], null when read from an image
+    private final StringTable nameTable;      // null unless read from an image
+    private final StringTable[] columnTables; // [property ordinal], null unless read from an image
+    private final int[] table;         // id + 1 per slot, 0 = empty
+    private final int mask;
+
+    private final String[] terms;
+    private final int[] postingStart;
+    private final int[] postingIds;
+    private final float[] postingWeights;
+    private final float[] idf;
+
+    private MedicalStore(String[] names, String[][] columns) {
+        this.names = names;
+        this.columns = columns;
+        this.nameTable = null;
+        this.columnTables = null;
+        int capacity = Integer.highestOneBit(Math.max(2, names.length * 2 - 1)) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int id = 0; id < names.length; id++) {
+            int slot = hash(names[id]) & mask;
+            while (table[slot] != 0) {
+                if (names[table[slot] - 1].equalsIgnoreCase(names[id])) {
+                    throw new IllegalArgumentException("Duplicate condition: " + names[id]);
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+
+        // Every (term, condition, weight) in condition order, then grouped by term with a counting sort
+        Map<String, Integer> termNumbers = new HashMap<>();
+        IntList entryTerms = new IntList();
+        IntList entryIds = new IntList();
+        IntList entryProperties = new IntList();
+        for (int id = 0; id < names.length; id++) {
+            for (MedicalProperty property : MedicalProperty.values()) {
+                for (String term : terms(columns[property.ordinal()][id])) {
+                    Integer number = termNumbers.get(term);
+                    if (number == null) {
+                        number = termNumbers.size();
+                        termNumbers.put(term, number);
+                    }
+                    entryTerms.add(number);
+                    entryIds.add(id);
+                    entryProperties.add(property.ordinal());
+                }
+            }
+        }
+
+        this.terms = termNumbers.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[] rank = new int[terms.length];  // term number -> position in terms
+        for (int t = 0; t < terms.length; t++) {
+            rank[termNumbers.get(terms[t])] = t;
+        }
+        int[] start = new int[terms.length + 1];
+        for (int entry = 0; entry < entryTerms.size; entry++) {
+            start[rank[entryTerms.values[entry]] + 1]++;
+        }
+        for (int t = 0; t < terms.length; t++) {
+            start[t + 1] += start[t];
+        }
+        int[] grouped = new int[entryTerms.size];
+        int[] fill = Arrays.copyOf(start, terms.length);
+        for (int entry = 0; entry < entryTerms.size; entry++) {
+            grouped[fill[rank[entryTerms.values[entry]]]++] = entry;
+        }
+
+        // Entries of a term are in condition order: one posting per condition, with its best weight
+        MedicalProperty[] properties = MedicalProperty.values();
+        this.postingStart = new int[terms.length + 1];
+        IntList ids = new IntList();
+        float[] weights = new float[grouped.length];
+        this.idf = new float[terms.length];
+        for (int t = 0; t < terms.length; t++) {
+            postingStart[t] = ids.size;
+            for (int i = start[t]; i < start[t + 1]; i++) {
+                int entry = grouped[i];
+                float weight = properties[entryProperties.values[entry]].getWeight();
+                if (ids.size > postingStart[t] && ids.values[ids.size - 1] == entryIds.values[entry]) {
+                    weights[ids.size - 1] = Math.max(weights[ids.size - 1], weight);
+                } else {
+                    weights[ids.size] = weight;
+                    ids.add(entryIds.values[entry]);
+                }
+            }
+            idf[t] = (float) Math.log(1 + (double) names.length / (ids.size - postingStart[t]));
+        }
+        postingStart[terms.length] = ids.size;
+        this.postingIds = Arrays.copyOf(ids.values, ids.size);
+        this.postingWeights = Arrays.copyOf(weights, ids.size);
+    }
+
+    private MedicalStore(StringTable nameTable, StringTable[] columnTables, int[] table, String[] terms,
+                         int[] postingStart, int[] postingIds, float[] postingWeights, float[] idf) {
+        this.names = new String[nameTable.size()];
+        this.columns = null;
+        this.nameTable = nameTable;
+        this.columnTables = columnTables;
+        this.table = table;
+        this.mask = table.length - 1;
+        this.terms = terms;
+        this.postingStart = postingStart;
+        this.postingIds = postingIds;
+        this.postingWeights = postingWeights;
+        this.idf = idf;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**  Returns the id of the condition with the given name, whatever its case,
+     *          or NOT_FOUND.
+     **/
+    public int idOf(String name) {
+        int slot = hash(name) & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (name(id).equalsIgnoreCase(name)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**  Returns the name of the condition as spelled in the data.
+     **/
+    public String name(int id) {
+        String name = names[id];
+        if (name == null) {
+            // Threads decoding the same name at once store equal Strings, either one will do
+            name = nameTable.get(id);
+            names[id] = name;
+        }
+        return name;
+    }
+
+    public String get(int id, MedicalProperty property) {
+        return columns != null ? columns[property.ordinal()][id] : columnTables[property.ordinal()].get(id);
+    }
+
+    /**  Returns every condition name by id.
+     **/
+    public List<String> names() {
+        if (nameTable == null) {
+            return Collections.unmodifiableList(Arrays.asList(names));
+        }
+        String[] all = new String[names.length];
+        for (int id = 0; id < all.length; id++) {
+            all[id] = name(id);
+        }
+        return Collections.unmodifiableList(Arrays.asList(all));
+    }
+
+    /**  Returns the number of distinct terms in the index.
+     **/
+    public int termCount() {
+        return terms.length;
+    }
+
+    /**  Returns the ids of at most limit conditions described by the text, best match
+     *          first, or an empty array when none of its terms is known.
+     **/
+    public int[] search(String text, int limit) {
+        // The terms of the question which are in the index, rarest first
+        IntList found = new IntList();
+        for (String term : terms(text)) {
+            int t = Arrays.binarySearch(terms, term);
+            if (t >= 0) {
+                found.add(t);
+            }
+        }
+        if (found.size == 0 || limit <= 0) {
+            return new int[0];
+        }
+        int[] queryTerms = Arrays.copyOf(found.values, found.size);
+        sortByPostings(queryTerms);
+
+        // Most the terms from the i-th on can add to a score: once that is less than the
+        // limit-th best score so far, conditions not matched yet cannot make it to the top.
+        // Not when it is equal, as a tie goes to the lower id. Summed in the order the scores
+        // are, so rounding cannot leave a score above its bound
+        float[] remainingMax = new float[queryTerms.length + 1];
+        for (int i = 0; i < queryTerms.length; i++) {
+            for (int j = i; j < queryTerms.length; j++) {
+                remainingMax[i] += idf[queryTerms[j]] * MedicalProperty.SYMPTOMS.getWeight();
+            }
+        }
+
+        float[] scores = new float[names.length];
+        IntList matched = new IntList();
+        int i = 0;
+        for (; i < queryTerms.length; i++) {
+            if (matched.size >= limit && kthScore(scores, matched, limit) > remainingMax[i]) {
+                break;
+            }
+            int t = queryTerms[i];
+            for (int posting = postingStart[t]; posting < postingStart[t + 1]; posting++) {
+                int id = postingIds[posting];
+                if (scores[id] == 0) {
+                    matched.add(id);
+                }
+                scores[id] += idf[t] * postingWeights[posting];
+            }
+        }
+        // The common terms left only add to the conditions already matched, found by binary search
+        for (; i < queryTerms.length; i++) {
+            int t = queryTerms[i];
+            for (int m = 0; m < matched.size; m++) {
+                int id = matched.values[m];
+                int posting = Arrays.binarySearch(postingIds, postingStart[t], postingStart[t + 1], id);
+                if (posting >= 0) {
+                    scores[id] += idf[t] * postingWeights[posting];
+                }
+            }
+        }
+
+        // Selection of the best few among the conditions matched, limit is small
+        int[] best = new int[Math.min(limit, matched.size)];
+        for (int rank = 0; rank < best.length; rank++) {
+            int top = rank;
+            for (int m = rank + 1; m < matched.size; m++) {
+                int id = matched.values[m];
+                int topId = matched.values[top];
+                if (scores[id] > scores[topId] || (scores[id] == scores[topId] && id < topId)) {
+                    top = m;
+                }
+            }
+            best[rank] = matched.values[top];
+            matched.values[top] = matched.values[rank];
+            matched.values[rank] = best[rank];
+        }
+        return best;
+    }
+
+    // Insertion sort, a question has a handful of terms
+    private void sortByPostings(int[] queryTerms) {
+        for (int i = 1; i < queryTerms.length; i++) {
+            int t = queryTerms[i];
+            int postings = postingStart[t + 1] - postingStart[t];
+            int j = i - 1;
+            while (j >= 0 && postingStart[queryTerms[j] + 1] - postingStart[queryTerms[j]] > postings) {
+                queryTerms[j + 1] = queryTerms[j];
+                j--;
+            }
+            queryTerms[j + 1] = t;
+        }
+    }
+
+    // The k-th best score of the matched conditions, found by counting: scores only go up
+    private static float kthScore(float[] scores, IntList matched, int k) {
+        float[] top = new float[k];  // descending
+        for (int m = 0; m < matched.size; m++) {
+            float score = scores[matched.values[m]];
+            if (score > top[k - 1]) {
+                int j = k - 1;
+                while (j > 0 && top[j - 1] < score) {
+                    top[j] = top[j - 1];
+                    j--;
+                }
+                top[j] = score;
+            }
+        }
+        return top[k - 1];
+    }
+
+    /**  Cuts text into the terms of the index: lower case runs of letters and digits of
+     *          at least three characters, with the plural s taken off ("headaches" and
+     *          "headache" are the same term), stop words left out, each term once.
+     **/
+    public static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                String term = stem(text.substring(start, i).toLowerCase(Locale.ROOT));
+                if (term.length() >= MIN_TERM_LENGTH && !STOP_WORDS.contains(term)) {
+                    terms.add(term);
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    // Plurals only: stemming any harder merges words which mean different things
+    private static String stem(String word) {
+        if (word.length() > 4 && word.endsWith("ies")) {
+            return word.substring(0, word.length() - 3) + "y";
+        }
+        if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us")) {
+            return word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+
+    /**  Writes the store to a precompiled data image, see MedicalDataImage:
+     *
+     *              size            int
+     *              hash table      ints, id + 1 per slot
+     *              names           StringTable, by id
+     *              properties      StringTable per MedicalProperty, by id
+     *              terms           strings, sorted
+     *              postingStart    ints
+     *              postingIds      ints
+     *              postingWeights  floats
+     *              idf             floats
+     *
+     *          The hash table is only valid with the hash() it was built with, and the
+     *          index with the terms() it was built with: a change to either must come with
+     *          a new image format version.
+     **/
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(names.length);
+        BinaryImage.writeInts(out, table);
+        String[] values = new String[names.length];
+        for (int id = 0; id < values.length; id++) {
+            values[id] = name(id);
+        }
+        BinaryImage.writeStringTable(out, values);
+        out.writeInt(MedicalProperty.values().length);
+        for (MedicalProperty property : MedicalProperty.values()) {
+            for (int id = 0; id < values.length; id++) {
+                values[id] = get(id, property);
+            }
+            BinaryImage.writeStringTable(out, values);
+        }
+        BinaryImage.writeStrings(out, terms);
+        BinaryImage.writeInts(out, postingStart);
+        BinaryImage.writeInts(out, postingIds);
+        BinaryImage.writeFloats(out, postingWeights);
+        BinaryImage.writeFloats(out, idf);
+    }
+
+    /**  Reads back a store written by write(), leaving its names and property values in
+     *          the buffer, which the store keeps reading from. The image must have been
+     *          written with the same MedicalProperty values, which MedicalDataImage checks.
+     *          Everything a lookup or a search relies on is checked here, so a damaged
+     *          image fails now rather than on some later question.
+     **/
+    public static MedicalStore read(ByteBuffer in) {
+        int size = in.getInt();
+        int[] table = BinaryImage.readInts(in);
+        int entries = 0;
+        for (int entry : table) {
+            if (entry < 0 || entry > size) {
+                throw new IllegalArgumentException("Image has an invalid name table");
+            }
+            entries += entry > 0 ? 1 : 0;
+        }
+        // A power of two with at least one empty slot, or a lookup would never end
+        if (table.length < 2 || Integer.bitCount(table.length) != 1 || entries != size || entries == table.length) {
+            throw new IllegalArgumentException("Image has an invalid name table");
+        }
+        StringTable nameTable = BinaryImage.readStringTable(in);
+        StringTable[] columnTables = new StringTable[in.getInt()];
+        if (columnTables.length != MedicalProperty.values().length) {
+            throw new IllegalArgumentException("Image has " + columnTables.length + " medical properties");
+        }
+        for (int column = 0; column < columnTables.length; column++) {
+            columnTables[column] = BinaryImage.readStringTable(in);
+        }
+        if (nameTable.size() != size) {
+            throw new IllegalArgumentException("Image has " + nameTable.size() + " names for " + size + " conditions");
+        }
+        for (StringTable strings : columnTables) {
+            if (strings.size() != size) {
+                throw new IllegalArgumentException("Image has " + strings.size() + " values for " + size + " conditions");
+            }
+        }
+
+        String[] terms = BinaryImage.readStrings(in);
+        int[] postingStart = BinaryImage.readInts(in);
+        int[] postingIds = BinaryImage.readInts(in);
+        float[] postingWeights = BinaryImage.readFloats(in);
+        float[] idf = BinaryImage.readFloats(in);
+        if (postingStart.length != terms.length + 1 || postingWeights.length != postingIds.length || idf.length != terms.length
+                || postingStart[0] != 0 || postingStart[terms.length] != postingIds.length) {
+            throw new IllegalArgumentException("Image has an invalid term index");
+        }
+        for (int t = 0; t < terms.length; t++) {
+            // Terms sorted and ids ascending per term, both are binary searched
+            if ((t > 0 && terms[t - 1].compareTo(terms[t]) >= 0) || postingStart[t] > postingStart[t + 1]) {
+                throw new IllegalArgumentException("Image has an invalid term index");
+            }
+            for (int posting = postingStart[t]; posting < postingStart[t + 1]; posting++) {
+                int id = postingIds[posting];
+                if (id < 0 || id >= size || (posting > postingStart[t] && postingIds[posting - 1] >= id)) {
+                    throw new IllegalArgumentException("Image has an invalid term index");
+                }
+            }
+        }
+        return new MedicalStore(nameTable, columnTables, table, terms, postingStart, postingIds, postingWeights, idf);
+    }
+
+    // Case-insensitive hash, consistent with equalsIgnoreCase for the names we store
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    // Growable int array, to build the postings without boxing
+    private static final class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+
+        private final List<String> names = new ArrayList<>();
+        private final List<String[]> rows = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**  Adds a condition. The values are given in MedicalProperty order.
+         **/
+        public Builder add(String name, String... values) {
+            String[] row = new String[MedicalProperty.values().length];
+            for (MedicalProperty property : MedicalProperty.values()) {
+                row[property.ordinal()] = property.ordinal() < values.length ? values[property.ordinal()] : null;
+            }
+            names.add(name);
+            rows.add(row);
+            return this;
+        }
+
+        public int size() {
+            return names.size();
+        }
+
+        public MedicalStore build() {
+            String[][] columns = new String[MedicalProperty.values().length][names.size()];
+            for (int id = 0; id < rows.size(); id++) {
+                for (int column = 0; column < columns.length; column++) {
+                    columns[column][id] = rows.get(id)[column];
+                }
+            }
+            return new MedicalStore(names.toArray(new String[0]), columns);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.ajsd.chatbot.model;
+
+/*
+    The topics the chatbot can teach about. Everything the engine needs to offer and
+    recognise a topic lives here: the letter it has in the topic menu, its menu label,
+    the keywords which select it, and the step the conversation moves to once selected.
+    Adding a topic means adding a constant here and its handlers in the RuleBasedEngine.
+ */
+public enum Topic {
+
+    COUNTRIES("A", "Countries (capitals, animals, flowers)", ConversationStep.SELECT_COUNTRY,
+            "countries", "country"),
+    MEDICINE("B", "Medicine (conditions, symptoms, treatments)", ConversationStep.SELECT_CONDITION,
+            "medicine", "medical");
+
+    private final String menuOption;
+    private final String menuLabel;
+    private final ConversationStep selectionStep;
+    private final String[] keywords;
+
+    Topic(String menuOption, String menuLabel, ConversationStep selectionStep, String... keywords) {
+        this.menuOption = menuOption;
+        this.menuLabel = menuLabel;
+        this.selectionStep = selectionStep;
+        this.keywords = keywords;
+    }
+
+    public String getMenuOption() {
+        return menuOption;
+    }
+
+    public String getMenuLabel() {
+        return menuLabel;
+    }
+
+    public ConversationStep getSelectionStep() {
+        return selectionStep;
+    }
+
+    public String[] getKeywords() {
+        return keywords.clone();
+    }
+}
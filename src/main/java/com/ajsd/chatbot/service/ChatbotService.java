@@ -1,6 +1,9 @@
 package com.ajsd.chatbot.service;
 
 import com.ajsd.chatbot.config.CountryDataLoader;
+import com.ajsd.chatbot.config.CountrySnapshot;
+import com.ajsd.chatbot.model.CountryProperty;
+import com.ajsd.chatbot.util.FuzzyResolver;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -13,6 +16,23 @@ public class ChatbotService {
         this.countryDataLoader.loadCountryData();
     }
 
+    /**  Reloads the country data, see CountryDataLoader.reloadCountryData.
+     **/
+    public CountrySnapshot reloadCountryData() {
+        return countryDataLoader.reloadCountryData();
+    }
+
+    public CountrySnapshot getCountrySnapshot() {
+        return countryDataLoader.getSnapshot();
+    }
+
+    /**  Registers a listener called with every reloaded snapshot before it is published,
+     *          see CountryDataLoader.SnapshotListener.
+     **/
+    public void addCountryDataListener(CountryDataLoader.SnapshotListener listener) {
+        countryDataLoader.addSnapshotListener(listener);
+    }
+
     /**  Create equivalent service methods to call the
      *          following method of the CountryLoader class:
      *          1. getCountryProperty(String, String)
@@ -30,6 +50,56 @@ public class ChatbotService {
         return countryDataLoader.isValidCountry(country);
     }
 
+    public FuzzyResolver.Resolution resolveCountry(String country) {
+        return countryDataLoader.resolveCountry(country);
+    }
+
+    public String getCountryName(String country) {
+        return countryDataLoader.getCountryName(country);
+    }
+
+    /**  Id based lookups, used by the RuleBasedEngine which keeps the id of the
+     *          selected country in the ConversationContext.
+     **/
+    public int findCountryId(String country) {
+        return countryDataLoader.findCountryId(country);
+    }
+
+    public String getCountryName(int countryId) {
+        return countryDataLoader.getCountryName(countryId);
+    }
+
+    public String getCountryProperty(int countryId, CountryProperty property) {
+        return countryDataLoader.getCountryProperty(countryId, property);
+    }
+
+    public int getCountryCount() {
+        return countryDataLoader.getCountryCount();
+    }
+
+    public String[] listAllCountries() {
+        return countryDataLoader.listAllCountries();
+    }
+
+    /**  Search methods used by the SELECT_COUNTRY lookup options B to E. They return
+     *          the country names as spelled in the data, in alphabetical order.
+     **/
+    public String[] listAllCountryNames() {
+        return countryDataLoader.listAllCountryNames();
+    }
+
+    public String[] listCountriesWhichStartsWith(String startsWith) {
+        return countryDataLoader.listCountriesWhichStartsWith(startsWith);
+    }
+
+    public String[] listCountriesWhichEndsWith(String endsWith) {
+        return countryDataLoader.listCountriesWhichEndsWith(endsWith);
+    }
+
+    public String[] listCountriesWhichContainsString(String contains) {
+        return countryDataLoader.listCountriesWhichContainsString(contains);
+    }
+
     /** TODO 7: Uncomment the three methods below namely:
      *          1. getCapital(String)
      *          2. getNationalAnimal(String)
@@ -0,0 +1,133 @@
+package com.ajsd.chatbot.service;
+
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.ConversationFeatures;
+import com.ajsd.chatbot.model.ConversationStep;
+import com.ajsd.chatbot.model.CountryStore;
+import com.ajsd.chatbot.model.Topic;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+    Answers the requests which depend on what was said before rather than on the
+    current step:
+
+    1. "back" goes back to the country or condition talked about before the current one.
+    2. "again" repeats the answer to the last option chosen.
+    3. "summary" tells what the conversation was about so far.
+    4. After several replies in a row which did not understand the user, a hint on
+       how to choose an option is given instead of yet another "I do not understand".
+
+    Everything is read from the ConversationFeatures of the context, which are updated
+    as every message is added, so the cost of a turn does not grow with the length of
+    the conversation: the message history is never read here.
+ **/
+@Service
+public class ContextAnalyzer {
+
+    // Replies in a row which did not understand the user before the hint is given
+    static final int STUCK_FAILURES = 3;
+
+    private final ChatbotService chatbotService;
+    private final ResponseRenderer responseRenderer;
+
+    public ContextAnalyzer(ChatbotService chatbotService, ResponseRenderer responseRenderer) {
+        this.chatbotService = chatbotService;
+        this.responseRenderer = responseRenderer;
+    }
+
+    /**  Returns the reply to a request about the conversation itself, or null when the
+     *          input is for the rule engine. "back" updates the context like a selection would.
+     *          normalized is the input as the ValidationService normalized it, trimmed and in
+     *          lower case.
+     **/
+    public String analyzeUserIntent(String normalized, ConversationContext context) {
+        ConversationFeatures features = context.getFeatures();
+        switch (normalized) {
+            case "back":
+                return back(features, context);
+            case "again":
+                return again(features, context);
+            case "summary":
+                return summary(features);
+            default:
+                break;
+        }
+
+        if (features.getFailureStreak() >= STUCK_FAILURES && context.getCurrentStep() == ConversationStep.CHOOSE_OPTION
+                && normalized.length() != 1) {
+            return "It looks like we are stuck. Please answer with the letter of one of the options, " +
+                    "type 'back' to go back to what we talked about before, or 'clear' to start over.\n" +
+                    (context.getCurrentTopic() == Topic.MEDICINE ? ResponseRenderer.MEDICAL_OPTIONS_STRING : ResponseRenderer.COUNTRY_OPTIONS_STRING);
+        }
+        return null;
+    }
+
+    private String back(ConversationFeatures features, ConversationContext context) {
+        if (context.getCurrentTopic() == Topic.COUNTRIES) {
+            CountryStore store = chatbotService.getCountrySnapshot().getStore();
+            int countryId = features.getPreviousCountry();
+            if (isLive(store, countryId)) {
+                context.setSelectedCountryId(countryId);
+                context.setCurrentStep(ConversationStep.CHOOSE_OPTION);
+                return "Back to " + store.name(countryId) + ".\n" + ResponseRenderer.COUNTRY_OPTIONS_STRING;
+            }
+        } else if (context.getCurrentTopic() == Topic.MEDICINE) {
+            String condition = features.getPreviousCondition();
+            if (condition != null) {
+                context.setSelectedCondition(condition);
+                context.setCurrentStep(ConversationStep.CHOOSE_OPTION);
+                return "Back to " + condition + ".\n" + ResponseRenderer.MEDICAL_OPTIONS_STRING;
+            }
+        }
+        return "There is nothing to go back to yet. What would you like to learn about?";
+    }
+
+    private String again(ConversationFeatures features, ConversationContext context) {
+        int option = features.getLastOption() - 'a';
+        if (context.getCurrentStep() == ConversationStep.CHOOSE_OPTION && features.getLastOptionTopic() == context.getCurrentTopic()
+                && option >= 0) {
+            if (context.getCurrentTopic() == Topic.COUNTRIES && option < ResponseRenderer.COUNTRY_ANSWERS) {
+                return responseRenderer.countryReply(context.getSelectedCountryId(), option);
+            }
+            if (context.getCurrentTopic() == Topic.MEDICINE && option < ResponseRenderer.MEDICAL_ANSWERS) {
+                return responseRenderer.medicalReply(context.getSelectedCondition(), option);
+            }
+        }
+        return "There is nothing to repeat yet. Please choose one of the options first.";
+    }
+
+    private String summary(ConversationFeatures features) {
+        StringBuilder summary = new StringBuilder("So far we talked about:");
+        boolean empty = true;
+        for (Topic topic : Topic.values()) {
+            int messages = features.getTopicMessages(topic);
+            if (messages > 0) {
+                summary.append("\n• ").append(topic.getMenuLabel()).append(": ").append(messages)
+                        .append(messages == 1 ? " message" : " messages");
+                empty = false;
+            }
+        }
+        CountryStore store = chatbotService.getCountrySnapshot().getStore();
+        StringBuilder countries = new StringBuilder();
+        for (int countryId : features.getRecentCountries()) {
+            if (isLive(store, countryId)) {
+                countries.append(countries.length() == 0 ? "" : ", ").append(store.name(countryId));
+            }
+        }
+        if (countries.length() > 0) {
+            summary.append("\nRecent countries: ").append(countries);
+        }
+        List<String> conditions = features.getRecentConditions();
+        if (!conditions.isEmpty()) {
+            summary.append("\nRecent conditions: ").append(String.join(", ", conditions));
+        }
+        return empty ? "We have not talked about anything yet. Type 'teach' to begin." : summary.toString();
+    }
+
+    // Ids stay valid across reloads, but a reload may have retired the country since
+    private static boolean isLive(CountryStore store, int countryId) {
+        return countryId >= 0 && countryId < store.size() && !store.isRetired(countryId);
+    }
+}
@@ -0,0 +1,362 @@
+package com.ajsd.chatbot.service;
+
+import com.ajsd.chatbot.util.RingBuffer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+    Audit log of the chat messages and bot replies, written off the request thread.
+
+    record() is all a request thread does: it decides whether the conversation is
+    sampled, and puts the message in a RingBuffer, which costs one small Entry object per
+    message. It never blocks, formats or writes; when the writer has fallen so far behind
+    that the buffer is full, the message is dropped and counted instead of slowing the
+    request down.
+
+    A single writer thread drains the buffer in batches, formats each batch as JSON
+    lines, and appends it to a gzipped file in the audit directory. Once the buffer is
+    empty it checks again after 50 microseconds, then after twice as long each time,
+    and past 10 ms it sleeps until record() wakes it, so an idle log costs no CPU and a
+    busy one does not wake the writer once per message. The file is rotated
+    once it holds maxFileBytes (before compression) or is rotateMinutes old, and only
+    the newest maxFiles files are kept. Sampling is per conversation, so a conversation
+    is audited in full or not at all.
+ **/
+@Service
+public class ConversationAuditLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationAuditLog.class);
+    private static final String FILE_PREFIX = "conversations-";
+    private static final String FILE_SUFFIX = ".jsonl.gz";
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+    private static final int SAMPLE_BUCKETS = 10_000;
+    private static final int BATCH_SIZE = 512;
+    private static final long MIN_IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long DROP_WARNING_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int sampleThreshold;
+    private final long maxFileBytes;
+    private final long rotateNanos;
+    private final int maxFiles;
+    private final RingBuffer<Entry> buffer;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile Thread writer;
+    private final AtomicBoolean writerWaiting = new AtomicBoolean();
+
+    // Only used by the writer thread
+    private final ByteArrayOutputStream batchBytes = new ByteArrayOutputStream(64 * 1024);
+    private OutputStream file;
+    private long fileBytes;
+    private long fileOpenedNanos;
+    private boolean unflushed;
+    private long lastFlushNanos;
+    private long droppedReported;
+    private long lastDropWarningNanos;
+
+    public ConversationAuditLog(@Value("${chatbot.audit.enabled:false}") boolean enabled,
+                                @Value("${chatbot.audit.directory:logs/chatbot-audit}") String directory,
+                                @Value("${chatbot.audit.buffer-size:8192}") int bufferSize,
+                                @Value("${chatbot.audit.sample-rate:1.0}") double sampleRate,
+                                @Value("${chatbot.audit.max-file-bytes:67108864}") long maxFileBytes,
+                                @Value("${chatbot.audit.rotate-minutes:60}") long rotateMinutes,
+                                @Value("${chatbot.audit.max-files:24}") int maxFiles) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("chatbot.audit.sample-rate must be between 0 and 1: " + sampleRate);
+        }
+        this.enabled = enabled && sampleRate > 0;
+        this.directory = Paths.get(directory);
+        this.sampleThreshold = (int) Math.round(sampleRate * SAMPLE_BUCKETS);
+        this.maxFileBytes = maxFileBytes;
+        this.rotateNanos = TimeUnit.MINUTES.toNanos(rotateMinutes);
+        this.maxFiles = Math.max(1, maxFiles);
+        this.buffer = new RingBuffer<>(bufferSize);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        running = true;
+        writer = new Thread(this::writeLoop, "conversation-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Auditing {}% of conversations to {}", sampleThreshold * 100.0 / SAMPLE_BUCKETS, directory.toAbsolutePath());
+    }
+
+    /**  Stops the writer once it has written what is left in the buffer, and closes the
+     *          current file so it is a complete gzip file.
+     **/
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**  Queues a message of a conversation for the audit log. sender is USER or BOT, and
+     *          content is the text as it was typed or produced, not escaped for HTML.
+     **/
+    public void record(String conversationId, String sender, String content) {
+        if (!enabled) {
+            return;
+        }
+        if (!isSampled(conversationId)) {
+            sampledOut.increment();
+            return;
+        }
+        if (buffer.offer(new Entry(System.currentTimeMillis(), conversationId, sender, content))) {
+            recorded.increment();
+            // Only the first message after the writer went to sleep pays for waking it
+            if (writerWaiting.get() && writerWaiting.compareAndSet(true, false)) {
+                LockSupport.unpark(writer);
+            }
+        } else {
+            dropped.increment();
+        }
+    }
+
+    // Spreads the ids over the buckets, so the sampled ones do not depend on how ids are made
+    private boolean isSampled(String conversationId) {
+        if (sampleThreshold >= SAMPLE_BUCKETS) {
+            return true;
+        }
+        int hash = (conversationId == null ? 0 : conversationId.hashCode()) * 0x9E3779B9;
+        return (hash >>> 1) % SAMPLE_BUCKETS < sampleThreshold;
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        long idleParkNanos = MIN_IDLE_PARK_NANOS;
+        while (true) {
+            // Read before draining, so whatever was queued before stop() is still written
+            boolean stopping = !running;
+            buffer.drain(batch::add, BATCH_SIZE);
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+                idleParkNanos = MIN_IDLE_PARK_NANOS;
+                continue;
+            }
+            if (stopping) {
+                break;
+            }
+            long now = System.nanoTime();
+            if (unflushed && now - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+                flush(now);
+            }
+            reportDrops(now);
+            if (idleParkNanos <= MAX_IDLE_PARK_NANOS) {
+                // More messages usually follow soon after the last ones
+                LockSupport.parkNanos(idleParkNanos);
+                idleParkNanos <<= 1;
+            } else {
+                waitForRecords(now);
+            }
+        }
+        closeFile();
+    }
+
+    // Sleeps until record() queues a message, stop() is called, or the file is due a flush.
+    // The flag is raised before the buffer is checked, and record() checks it after queueing,
+    // so a message queued in between is either seen here or wakes the writer.
+    private void waitForRecords(long now) {
+        writerWaiting.set(true);
+        if (buffer.size() == 0 && running) {
+            if (unflushed) {
+                LockSupport.parkNanos(lastFlushNanos + FLUSH_INTERVAL_NANOS - now);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        writerWaiting.set(false);
+    }
+
+    private void write(List<Entry> batch) {
+        try {
+            batchBytes.reset();
+            try (JsonGenerator generator = jsonFactory.createGenerator(batchBytes)) {
+                generator.setRootValueSeparator(null);  // each record ends its own line
+                for (Entry entry : batch) {
+                    generator.writeStartObject();
+                    generator.writeStringField("time", Instant.ofEpochMilli(entry.timestampMillis).toString());
+                    generator.writeStringField("conversation", entry.conversationId);
+                    generator.writeStringField("sender", entry.sender);
+                    generator.writeStringField("content", entry.content);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                }
+            }
+            long now = System.nanoTime();
+            if (file != null && (fileBytes >= maxFileBytes || now - fileOpenedNanos >= rotateNanos)) {
+                closeFile();
+                rotations.incrementAndGet();
+            }
+            if (file == null) {
+                openFile(now);
+            }
+            batchBytes.writeTo(file);
+            fileBytes += batchBytes.size();
+            unflushed = true;
+            written.addAndGet(batch.size());
+        } catch (IOException e) {
+            lost.addAndGet(batch.size());
+            logger.warn("Could not write {} audit records to {}: {}", batch.size(), directory, e.getMessage());
+            closeFile();
+        }
+    }
+
+    // Sync flush, so what was written so far can be read while the file is still open
+    private void flush(long now) {
+        try {
+            file.flush();
+        } catch (IOException e) {
+            logger.warn("Could not flush the audit log: {}", e.getMessage());
+            closeFile();
+        }
+        unflushed = false;
+        lastFlushNanos = now;
+    }
+
+    private void reportDrops(long now) {
+        long droppedNow = dropped.sum();
+        if (droppedNow > droppedReported && now - lastDropWarningNanos >= DROP_WARNING_INTERVAL_NANOS) {
+            logger.warn("Dropped {} audit records as the buffer of {} was full", droppedNow - droppedReported, buffer.capacity());
+            droppedReported = droppedNow;
+            lastDropWarningNanos = now;
+        }
+    }
+
+    private void openFile(long now) throws IOException {
+        Path path = directory.resolve(FILE_PREFIX + FILE_TIMESTAMP.format(Instant.now()) + FILE_SUFFIX);
+        file = new GZIPOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024), 64 * 1024, true);
+        fileBytes = 0;
+        fileOpenedNanos = now;
+        lastFlushNanos = now;
+        deleteOldFiles();
+    }
+
+    private void closeFile() {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the audit log: {}", e.getMessage());
+        }
+        file = null;
+        unflushed = false;
+    }
+
+    // The timestamp in the names sorts them by age
+    private void deleteOldFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**  Messages queued for the audit log.
+     **/
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    /**  Messages not queued because the buffer was full.
+     **/
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**  Messages of conversations which were not sampled.
+     **/
+    public long getSampledOut() {
+        return sampledOut.sum();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**  Messages taken from the buffer which could not be written to the file.
+     **/
+    public long getLost() {
+        return lost.get();
+    }
+
+    public long getRotations() {
+        return rotations.get();
+    }
+
+    public int getBuffered() {
+        return buffer.size();
+    }
+
+    public int getBufferCapacity() {
+        return buffer.capacity();
+    }
+
+    private static final class Entry {
+        final long timestampMillis;
+        final String conversationId;
+        final String sender;
+        final String content;
+
+        Entry(long timestampMillis, String conversationId, String sender, String content) {
+            this.timestampMillis = timestampMillis;
+            this.conversationId = conversationId;
+            this.sender = sender;
+            this.content = content;
+        }
+    }
+}
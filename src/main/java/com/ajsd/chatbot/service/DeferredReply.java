@@ -0,0 +1,54 @@
+package com.ajsd.chatbot.service;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+    A bot reply whose enrichment has not run yet, returned by
+    RuleBasedEngine.processUserInputDeferred() for the streaming endpoint.
+
+    getReply() is the reply as the rule engine produced it, which can be sent at once.
+    enrich() then runs the enrichments one after the other; each one takes the reply as
+    it stands and returns it enriched, or the very same String when it has nothing to
+    add, so the caller is only told about the enrichments which changed something.
+ **/
+public final class DeferredReply {
+
+    private final String reply;
+    private final List<UnaryOperator<String>> enrichments;
+
+    DeferredReply(String reply, List<UnaryOperator<String>> enrichments) {
+        this.reply = reply;
+        this.enrichments = enrichments;
+    }
+
+    /**  A reply with nothing left to enrich.
+     **/
+    public static DeferredReply of(String reply) {
+        return new DeferredReply(reply, List.of());
+    }
+
+    public String getReply() {
+        return reply;
+    }
+
+    public boolean hasEnrichments() {
+        return !enrichments.isEmpty();
+    }
+
+    /**  Runs the enrichments, passes every reply an enrichment changed to onEnriched,
+     *          and returns the final reply.
+     **/
+    public String enrich(Consumer<String> onEnriched) {
+        String current = reply;
+        for (UnaryOperator<String> enrichment : enrichments) {
+            String enriched = enrichment.apply(current);
+            if (enriched != current) {
+                current = enriched;
+                onEnriched.accept(current);
+            }
+        }
+        return current;
+    }
+}
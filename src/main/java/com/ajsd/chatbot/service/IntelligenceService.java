@@ -0,0 +1,187 @@
+package com.ajsd.chatbot.service;
+
+import com.ajsd.chatbot.config.CountrySnapshot;
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.CountryProperty;
+import com.ajsd.chatbot.model.CountryStore;
+import com.ajsd.chatbot.util.TinyLfuCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+    Adds what the rule engine does not know about to its replies:
+
+    1. generateSmartResponse() answers greetings, thanks and goodbyes at any step, and
+       leaves everything else to the rule engine.
+
+    2. enhanceResponse() adds related facts to a country or medical answer: the other
+       countries which share the national animal or flower, and a reminder that medical
+       answers are no advice. Finding the countries means going through all of them,
+       so the addition is computed once per (topic, entity, option) and kept in a
+       TinyLfuCache bounded by chatbot.intelligence.cache-max-bytes.
+
+    Nothing in the conversation changes what is added, so the context is not part of
+    the cache key. The country snapshot is: the generation of the snapshot the addition
+    was computed from is in the key, and the cache is emptied whenever a reload
+    publishes a new one, so a reload is seen by the very next request.
+ **/
+@Service
+public class IntelligenceService {
+
+    public static final String TOPIC_COUNTRIES = "COUNTRIES";
+    public static final String TOPIC_MEDICINE = "MEDICINE";
+
+    // Countries sharing a national symbol named in an addition, the rest are counted
+    private static final int MAX_RELATED_COUNTRIES = 5;
+    private static final int EXPECTED_ENTRIES = 1024;
+    private static final String NOTHING_TO_ADD = "";
+
+    private static final Map<String, String> SMALL_TALK = Map.of(
+            "hi", "Hello! Type 'teach' to see what I can help you with.",
+            "hello", "Hello! Type 'teach' to see what I can help you with.",
+            "hey", "Hello! Type 'teach' to see what I can help you with.",
+            "thanks", "You're welcome! What else would you like to learn about?",
+            "thank you", "You're welcome! What else would you like to learn about?",
+            "bye", "Goodbye! Type 'teach' whenever you want to learn something new.",
+            "goodbye", "Goodbye! Type 'teach' whenever you want to learn something new.");
+
+    private final ChatbotService chatbotService;
+    private final TinyLfuCache<EnrichmentKey, String> enrichments;
+
+    public IntelligenceService(ChatbotService chatbotService,
+                               @Value("${chatbot.intelligence.cache-max-bytes:1048576}") long cacheMaxBytes) {
+        this.chatbotService = chatbotService;
+        this.enrichments = new TinyLfuCache<>(cacheMaxBytes, EXPECTED_ENTRIES, EnrichmentKey::weigh);
+        chatbotService.addCountryDataListener(snapshot -> enrichments::invalidateAll);
+    }
+
+    /**  Returns the reply to a greeting, thanks or goodbye, or null when the input is none
+     *          of those and the rule engine should handle it. normalized is the input as the
+     *          ValidationService normalized it, trimmed and in lower case.
+     **/
+    public String generateSmartResponse(String normalized, ConversationContext context) {
+        if (normalized == null || normalized.length() > 16) {
+            return null;
+        }
+        int end = normalized.length();
+        while (end > 0 && (normalized.charAt(end - 1) == '!' || normalized.charAt(end - 1) == '.')) {
+            end--;
+        }
+        return SMALL_TALK.get(normalized.substring(0, end));
+    }
+
+    /**  Returns the answer to option (A is 0) about the entity followed by related facts, or
+     *          the answer itself, the very same String, when there is nothing to add.
+     **/
+    public String enhanceResponse(String answer, String topic, String entity, int option, ConversationContext context) {
+        if (entity == null) {
+            return answer;
+        }
+        CountrySnapshot snapshot = chatbotService.getCountrySnapshot();
+        long generation = TOPIC_COUNTRIES.equals(topic) ? snapshot.getGeneration() : 0;
+        String addition = enrichments.get(new EnrichmentKey(generation, topic, entity, option),
+                key -> computeAddition(key, snapshot));
+        return addition.isEmpty() ? answer : answer + "\n" + addition;
+    }
+
+    private static String computeAddition(EnrichmentKey key, CountrySnapshot snapshot) {
+        if (TOPIC_MEDICINE.equals(key.topic)) {
+            return "Remember that this is general information, not medical advice: "
+                    + "please see a doctor about " + key.entity + ".";
+        }
+        if (!TOPIC_COUNTRIES.equals(key.topic)) {
+            return NOTHING_TO_ADD;
+        }
+        CountryStore store = snapshot.getStore();
+        int countryId = store.idOf(key.entity);
+        if (countryId == CountryStore.NOT_FOUND) {
+            return NOTHING_TO_ADD;
+        }
+        switch (key.option) {
+            case 1:
+                return sharedSymbol(store, countryId, CountryProperty.NATIONAL_ANIMAL, "national animal");
+            case 2:
+                return sharedSymbol(store, countryId, CountryProperty.NATIONAL_FLOWER, "national flower");
+            case 3:
+                String animal = sharedSymbol(store, countryId, CountryProperty.NATIONAL_ANIMAL, "national animal");
+                String flower = sharedSymbol(store, countryId, CountryProperty.NATIONAL_FLOWER, "national flower");
+                return animal.isEmpty() || flower.isEmpty() ? animal + flower : animal + "\n" + flower;
+            default:
+                return NOTHING_TO_ADD;  // capitals are not shared
+        }
+    }
+
+    // "The Bald Eagle is also the national animal of ...", or nothing when no other country has it
+    private static String sharedSymbol(CountryStore store, int countryId, CountryProperty property, String label) {
+        String symbol = store.get(countryId, property);
+        if (symbol == null || symbol.equals(property.getDefaultValue())) {
+            return NOTHING_TO_ADD;
+        }
+        List<String> others = new ArrayList<>();
+        int count = 0;
+        for (int id = 0; id < store.size(); id++) {
+            if (id != countryId && !store.isRetired(id) && symbol.equalsIgnoreCase(store.get(id, property))) {
+                if (others.size() < MAX_RELATED_COUNTRIES) {
+                    others.add(store.name(id));
+                }
+                count++;
+            }
+        }
+        if (count == 0) {
+            return NOTHING_TO_ADD;
+        }
+        String list;
+        if (count > others.size()) {
+            list = String.join(", ", others) + " and " + (count - others.size()) + " more";
+        } else {
+            String last = others.remove(others.size() - 1);
+            list = others.isEmpty() ? last : String.join(", ", others) + " and " + last;
+        }
+        return "The " + symbol + " is also the " + label + " of " + list + ".";
+    }
+
+    public TinyLfuCache<?, ?> getEnrichmentCache() {
+        return enrichments;
+    }
+
+    private static final class EnrichmentKey {
+        private final long generation;
+        private final String topic;
+        private final String entity;
+        private final int option;
+        private final int hash;
+
+        private EnrichmentKey(long generation, String topic, String entity, int option) {
+            this.generation = generation;
+            this.topic = topic;
+            this.entity = entity;
+            this.option = option;
+            this.hash = Objects.hash(generation, topic, entity, option);
+        }
+
+        // Rough bytes held by an entry: the key, the node and the two Strings
+        private static int weigh(EnrichmentKey key, String addition) {
+            return 96 + 2 * (key.entity.length() + addition.length());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof EnrichmentKey)) {
+                return false;
+            }
+            EnrichmentKey key = (EnrichmentKey) other;
+            return generation == key.generation && option == key.option
+                    && Objects.equals(topic, key.topic) && entity.equals(key.entity);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.ajsd.chatbot.service;
+
+import com.ajsd.chatbot.config.MedicalDataImage;
+import com.ajsd.chatbot.config.MedicalDataReader;
+import com.ajsd.chatbot.model.MedicalProperty;
+import com.ajsd.chatbot.model.MedicalStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+    The medical conditions the chatbot can teach about, read once from the bundled
+    medical_data.json, or the file set in chatbot.data.medical.location, into a
+    MedicalStore. The precompiled image of the data is used instead when it is up to
+    date (see MedicalDataImage).
+
+    Conditions are looked up by name whatever its case; findConditions() goes the
+    other way, from a description such as "what causes headaches" to the conditions
+    it matches, best first (see MedicalStore.search).
+ **/
+@Service
+public class MedicalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MedicalService.class);
+
+    private final MedicalStore store;
+    private final String conditionList;
+
+    public MedicalService(String location) {
+        this(location, true);
+    }
+
+    @Autowired
+    public MedicalService(@Value("${chatbot.data.medical.location:}") String location,
+                          @Value("${chatbot.data.medical.image:true}") boolean useImage) {
+        try {
+            long start = System.nanoTime();
+            MedicalStore image = useImage ? MedicalDataImage.load(location) : null;
+            this.store = image != null ? image : new MedicalDataReader().read(location);
+            String source = image != null ? MedicalDataImage.imageLocation(location)
+                    : location.isBlank() ? MedicalDataReader.CLASSPATH_RESOURCE : location;
+            logger.info("Loaded {} medical conditions ({} indexed terms) from {} in {} ms", store.size(), store.termCount(),
+                    source, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error loading medical data", e);
+        }
+        this.conditionList = String.join(", ", store.names());
+    }
+
+    public boolean isValidCondition(String condition) {
+        return store.idOf(condition) != MedicalStore.NOT_FOUND;
+    }
+
+    /**  Returns the name of the condition as spelled in the data, or null when there is none.
+     **/
+    public String getConditionName(String condition) {
+        int id = store.idOf(condition);
+        return id == MedicalStore.NOT_FOUND ? null : store.name(id);
+    }
+
+    /**  Returns the names of the conditions, comma separated, as shown to the user.
+     **/
+    public String getConditionList() {
+        return conditionList;
+    }
+
+    /**  Returns the names of at most limit conditions matching the description, best first.
+     **/
+    public List<String> findConditions(String description, int limit) {
+        int[] ids = store.search(description, limit);
+        List<String> conditions = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            conditions.add(store.name(id));
+        }
+        return conditions;
+    }
+
+    public String getSymptoms(String condition) {
+        return get(condition, MedicalProperty.SYMPTOMS);
+    }
+
+    public String getCauses(String condition) {
+        return get(condition, MedicalProperty.CAUSES);
+    }
+
+    public String getTreatment(String condition) {
+        return get(condition, MedicalProperty.TREATMENT);
+    }
+
+    public String getPrevention(String condition) {
+        return get(condition, MedicalProperty.PREVENTION);
+    }
+
+    // Null for a condition which is not in the data
+    private String get(String condition, MedicalProperty property) {
+        int id = store.idOf(condition);
+        return id == MedicalStore.NOT_FOUND ? null : store.get(id, property);
+    }
+}
@@ -0,0 +1,110 @@
+package com.ajsd.chatbot.service;
+
+import com.ajsd.chatbot.util.LatencyHistogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+    Counters and latency histograms of the chat pipeline, read by the metrics endpoint.
+
+    Everything recorded on the request path is lock-free and allocation-free:
+    1. Totals are LongAdders, which spread concurrent increments over several cells.
+    2. Every PipelineStage has a LatencyHistogram, found by the stage's ordinal.
+    3. The message count of a session is an AtomicLong created once, when the session
+       starts. At most maxTrackedSessions sessions are tracked at a time; sessions
+       beyond that are counted in the totals only. The count of a session is removed
+       when the session ends (see SessionMemoryMetrics).
+ **/
+@Service
+public class MetricsService {
+
+    private final int maxTrackedSessions;
+
+    private final LongAdder totalSessions = new LongAdder();
+    private final LongAdder totalMessages = new LongAdder();
+    private final LongAdder untrackedSessions = new LongAdder();
+    private final Map<String, AtomicLong> sessionMessageCounts = new ConcurrentHashMap<>();
+    private final LatencyHistogram[] stageLatencies = new LatencyHistogram[PipelineStage.values().length];
+
+    public MetricsService(@Value("${chatbot.metrics.max-tracked-sessions:100000}") int maxTrackedSessions) {
+        this.maxTrackedSessions = maxTrackedSessions;
+        for (int i = 0; i < stageLatencies.length; i++) {
+            stageLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public void recordNewSession(String sessionId) {
+        totalSessions.increment();
+        if (track(sessionId) == null) {
+            untrackedSessions.increment();
+        }
+    }
+
+    public void recordMessage(String sessionId) {
+        totalMessages.increment();
+        AtomicLong count = sessionMessageCounts.get(sessionId);
+        if (count == null) {
+            // A session which started before a restart, or was not tracked when it started
+            count = track(sessionId);
+        }
+        if (count != null) {
+            count.incrementAndGet();
+        }
+    }
+
+    /**  Records how long a stage took, from a System.nanoTime() taken when it started.
+     **/
+    public void recordLatency(PipelineStage stage, long startNanos) {
+        stageLatencies[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**  Forgets the message count of a session which has ended.
+     **/
+    public void removeSession(String sessionId) {
+        sessionMessageCounts.remove(sessionId);
+    }
+
+    /**  Returns the number of messages of the session, 0 when it is not tracked.
+     **/
+    public long getSessionMessageCount(String sessionId) {
+        AtomicLong count = sessionMessageCounts.get(sessionId);
+        return count == null ? 0 : count.get();
+    }
+
+    public long getTotalSessions() {
+        return totalSessions.sum();
+    }
+
+    public long getTotalMessages() {
+        return totalMessages.sum();
+    }
+
+    public int getTrackedSessions() {
+        return sessionMessageCounts.size();
+    }
+
+    public long getUntrackedSessions() {
+        return untrackedSessions.sum();
+    }
+
+    public LatencyHistogram.Snapshot getLatency(PipelineStage stage) {
+        return stageLatencies[stage.ordinal()].snapshot();
+    }
+
+    private AtomicLong track(String sessionId) {
+        AtomicLong count = sessionMessageCounts.get(sessionId);
+        if (count != null) {
+            return count;
+        }
+        // The bound is checked before inserting, so it can be exceeded by a few concurrent sessions
+        if (sessionMessageCounts.size() >= maxTrackedSessions) {
+            return null;
+        }
+        return sessionMessageCounts.computeIfAbsent(sessionId, id -> new AtomicLong());
+    }
+}
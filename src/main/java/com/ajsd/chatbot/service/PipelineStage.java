@@ -0,0 +1,25 @@
+package com.ajsd.chatbot.service;
+
+/*
+    The stages a chat message goes through, each one timed by the MetricsService.
+    The label is the value of the stage label on the metrics endpoint.
+ */
+public enum PipelineStage {
+    RATE_LIMIT("rate_limit"),
+    VALIDATION("validation"),
+    INTELLIGENCE("intelligence"),
+    CONTEXT_ANALYSIS("context_analysis"),
+    RULE_ENGINE("rule_engine"),
+    SERIALIZATION("serialization"),
+    REQUEST("request");         // the whole turn, from rate limiting to the response being built
+
+    private final String label;
+
+    PipelineStage(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
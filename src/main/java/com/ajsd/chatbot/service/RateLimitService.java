@@ -0,0 +1,153 @@
+package com.ajsd.chatbot.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+    Token bucket rate limiter, one bucket per session id (and per client address when
+    chatbot.rate-limit.per-client-address is set).
+
+    A bucket holds up to capacity tokens, every request takes one and they come back
+    at refillPerSecond. There is no scheduler thread: the tokens a bucket has earned
+    are worked out from the time of its last update whenever it is used.
+
+    The whole state of a bucket is one long, updated with compareAndSet:
+
+        | 42 bits: time of the last refill, in ms | 22 bits: tokens, in thousandths |
+
+    so a request never takes a lock, and requests for different keys never touch
+    the same memory. Buckets which have been idle long enough to be full again are
+    indistinguishable from new ones, so they are evicted by a sweep which runs at
+    most once per sweep interval, on the thread of whichever request is due for it.
+ **/
+@Service
+public class RateLimitService {
+
+    private static final int TOKEN_BITS = 22;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLI = 1000; // tokens are counted in thousandths
+    private static final int MAX_CAPACITY = (int) (TOKEN_MASK / MILLI);
+    private static final String ADDRESS_PREFIX = "address:";
+
+    private final long capacity;          // in thousandths of a token
+    private final long refillPerSecond;   // in thousandths of a token
+    private final long millisToFull;
+    private final boolean perClientAddress;
+    private final LongSupplier clock;     // milliseconds, never going back
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+
+    @Autowired
+    public RateLimitService(@Value("${chatbot.rate-limit.capacity:20}") int capacity,
+                            @Value("${chatbot.rate-limit.refill-per-second:2}") double refillPerSecond,
+                            @Value("${chatbot.rate-limit.per-client-address:false}") boolean perClientAddress) {
+        this(capacity, refillPerSecond, perClientAddress, monotonicMillis());
+    }
+
+    RateLimitService(int capacity, double refillPerSecond, boolean perClientAddress, LongSupplier clock) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Rate limit capacity must be between 1 and " + MAX_CAPACITY);
+        }
+        if (refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate limit refill must be positive");
+        }
+        this.capacity = capacity * MILLI;
+        this.refillPerSecond = Math.max(1, Math.round(refillPerSecond * MILLI));
+        this.millisToFull = (this.capacity * 1000 + this.refillPerSecond - 1) / this.refillPerSecond;
+        this.perClientAddress = perClientAddress;
+        this.clock = clock;
+        this.nextSweep = new AtomicLong(clock.getAsLong() + millisToFull);
+    }
+
+    /**  Takes a token from the bucket of the session, returns false when it is empty.
+     **/
+    public boolean isAllowed(String sessionId) {
+        long now = clock.getAsLong();
+        sweepIfDue(now);
+        return tryAcquire(sessionId, now);
+    }
+
+    /**  Same as isAllowed(sessionId), and also takes a token from the bucket of the
+     *          client address when limiting per address is enabled.
+     **/
+    public boolean isAllowed(String sessionId, String clientAddress) {
+        if (!perClientAddress || clientAddress == null) {
+            return isAllowed(sessionId);
+        }
+        long now = clock.getAsLong();
+        sweepIfDue(now);
+        return tryAcquire(ADDRESS_PREFIX + clientAddress, now) && tryAcquire(sessionId, now);
+    }
+
+    /**  Number of buckets currently kept, for the metrics.
+     **/
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    private boolean tryAcquire(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            // A new bucket starts full, minus the token taken right away
+            bucket = buckets.putIfAbsent(key, new AtomicLong(pack(now, capacity - MILLI)));
+            if (bucket == null) {
+                return true;
+            }
+        }
+
+        while (true) {
+            long state = bucket.get();
+            long stamp = state >>> TOKEN_BITS;
+            long tokens = state & TOKEN_MASK;
+            long elapsed = now - stamp;
+            if (elapsed > 0) {
+                long earned = elapsed >= millisToFull ? capacity : elapsed * refillPerSecond / 1000;
+                if (tokens + earned >= capacity) {
+                    tokens = capacity;
+                    stamp = now;
+                } else if (earned > 0) {
+                    // Only move the stamp by the time the earned tokens took, so fractions are not lost
+                    tokens += earned;
+                    stamp += earned * 1000 / refillPerSecond;
+                }
+            }
+            if (tokens < MILLI) {
+                return false;
+            }
+            if (bucket.compareAndSet(state, pack(stamp, tokens - MILLI))) {
+                return true;
+            }
+        }
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now < due || !nextSweep.compareAndSet(due, now + millisToFull)) {
+            return;
+        }
+        Iterator<Map.Entry<String, AtomicLong>> iterator = buckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            long stamp = iterator.next().getValue().get() >>> TOKEN_BITS;
+            if (now - stamp >= millisToFull) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long pack(long stamp, long tokens) {
+        return (stamp << TOKEN_BITS) | tokens;
+    }
+
+    private static LongSupplier monotonicMillis() {
+        long origin = System.nanoTime();
+        return () -> (System.nanoTime() - origin) / 1_000_000;
+    }
+}
@@ -0,0 +1,145 @@
+package com.ajsd.chatbot.service;
+
+import com.ajsd.chatbot.config.CountrySnapshot;
+import com.ajsd.chatbot.model.CountryProperty;
+import com.ajsd.chatbot.model.CountryStore;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    This class renders the answers the chatbot gives for the country and medical
+    options. Every answer is built once and then served as the same immutable String:
+
+    1. Country answers (options A to D) are rendered for every country when the
+       renderer is created, right after the country data has been loaded, and again
+       for every reloaded snapshot before it is published. Country ids are stable
+       across reloads, so an id taken from any snapshot finds its answers.
+
+    2. Medical answers (options A to E) are rendered the first time they are asked
+       for and memoized per condition.
+
+    For every answer two strings are kept: the bare answer, which is what the
+    IntelligenceService enhances, and the full reply with the options menu appended,
+    which is served as is when the enhancement leaves the answer unchanged.
+ */
+@Component
+public class ResponseRenderer {
+
+    public static final String COUNTRY_OPTIONS_STRING = "What do you want to learn about it?\n" +
+            "A. learn about the capital\n" +
+            "B. learn about the national animal\n" +
+            "C. learn about the national flower\n" +
+            "D. learn about all of the above\n" +
+            "E. Choose another country";
+
+    public static final String COUNTRY_LOOKUP_OPTIONS_STRING = "What do you want to do?\n" +
+            "A. give the name of a country in full\n" +
+            "B. give the beginning of the name of a country\n" +
+            "C. give the ending of the name of a country\n" +
+            "D. give me part of the name of a country\n" +
+            "E. Have me list all the countries which are available";
+
+    public static final String MEDICAL_OPTIONS_STRING = "What do you want to learn about it?\n" +
+            "A. learn about symptoms\n" +
+            "B. learn about causes\n" +
+            "C. learn about treatment\n" +
+            "D. learn about prevention\n" +
+            "E. learn about all of the above\n" +
+            "F. Choose another condition";
+
+    public static final int COUNTRY_ANSWERS = 4;  // options A to D
+    public static final int MEDICAL_ANSWERS = 5;  // options A to E
+
+    private static final String MENU_SEPARATOR = "\n\n";
+
+    private final MedicalService medicalService;
+
+    // Country id -> answers [0, COUNTRY_ANSWERS) then full replies [COUNTRY_ANSWERS, 2 * COUNTRY_ANSWERS)
+    private volatile String[][] countryResponses;
+
+    // Condition -> answers [0, MEDICAL_ANSWERS) then full replies [MEDICAL_ANSWERS, 2 * MEDICAL_ANSWERS)
+    private final Map<String, String[]> medicalResponses = new ConcurrentHashMap<>();
+
+    public ResponseRenderer(ChatbotService chatbotService, MedicalService medicalService) {
+        this.medicalService = medicalService;
+        this.countryResponses = renderCountries(chatbotService.getCountrySnapshot());
+        chatbotService.addCountryDataListener(snapshot -> {
+            String[][] rendered = renderCountries(snapshot);
+            return () -> countryResponses = rendered;
+        });
+    }
+
+    /**  Returns the answer to option A (0) to D (3) for the country with the given id.
+     **/
+    public String countryAnswer(int countryId, int option) {
+        return countryResponses[countryId][option];
+    }
+
+    /**  Returns the same answer as countryAnswer followed by the country options menu.
+     **/
+    public String countryReply(int countryId, int option) {
+        return countryResponses[countryId][COUNTRY_ANSWERS + option];
+    }
+
+    /**  Returns the answer to option A (0) to E (4) for a medical condition.
+     **/
+    public String medicalAnswer(String condition, int option) {
+        return medicalResponses.computeIfAbsent(condition, this::renderMedical)[option];
+    }
+
+    /**  Returns the same answer as medicalAnswer followed by the medical options menu.
+     **/
+    public String medicalReply(String condition, int option) {
+        return medicalResponses.computeIfAbsent(condition, this::renderMedical)[MEDICAL_ANSWERS + option];
+    }
+
+    /**  Appends the options menu to an answer which was changed by the IntelligenceService,
+     *          or returns the pre-rendered reply when the answer came back unchanged.
+     **/
+    public static String reply(String enhancedAnswer, String answer, String renderedReply, String optionsMenu) {
+        // Identity, not equality: an untouched answer is the very String handed out by the renderer
+        return enhancedAnswer == answer ? renderedReply : enhancedAnswer + MENU_SEPARATOR + optionsMenu;
+    }
+
+    private static String[][] renderCountries(CountrySnapshot snapshot) {
+        CountryStore store = snapshot.getStore();
+        String[][] responses = new String[store.size()][];
+        for (int id = 0; id < responses.length; id++) {
+            String country = store.name(id);
+            String capital = "The capital of " + country + " is " + store.get(id, CountryProperty.CAPITAL) + ".";
+            String animal = "The national animal of " + country + " is " + store.get(id, CountryProperty.NATIONAL_ANIMAL) + ".";
+            String flower = "The national flower of " + country + " is " + store.get(id, CountryProperty.NATIONAL_FLOWER) + ".";
+            responses[id] = withReplies(COUNTRY_OPTIONS_STRING,
+                    capital, animal, flower, capital + "\n" + animal + "\n" + flower);
+        }
+        return responses;
+    }
+
+    private String[] renderMedical(String condition) {
+        String symptoms = medicalService.getSymptoms(condition);
+        String causes = medicalService.getCauses(condition);
+        String treatment = medicalService.getTreatment(condition);
+        String prevention = medicalService.getPrevention(condition);
+        return withReplies(MEDICAL_OPTIONS_STRING,
+                "Symptoms of " + condition + ": " + symptoms + ".",
+                "Causes of " + condition + ": " + causes + ".",
+                "Treatment for " + condition + ": " + treatment + ".",
+                "Prevention of " + condition + ": " + prevention + ".",
+                "Complete information about " + condition + ":\n" +
+                        "Symptoms: " + symptoms + ".\n" +
+                        "Causes: " + causes + ".\n" +
+                        "Treatment: " + treatment + ".\n" +
+                        "Prevention: " + prevention + ".");
+    }
+
+    private static String[] withReplies(String optionsMenu, String... answers) {
+        String[] responses = new String[answers.length * 2];
+        for (int i = 0; i < answers.length; i++) {
+            responses[i] = answers[i];
+            responses[answers.length + i] = answers[i] + MENU_SEPARATOR + optionsMenu;
+        }
+        return responses;
+    }
+}
@@ -2,11 +2,25 @@ package com.ajsd.chatbot.service;
 
 import com.ajsd.chatbot.config.CountryDataLoader;
 import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.ConversationStep;
+import com.ajsd.chatbot.model.CountryStore;
+import com.ajsd.chatbot.model.Topic;
 import com.ajsd.chatbot.service.MedicalService;
 import com.ajsd.chatbot.service.IntelligenceService;
 import com.ajsd.chatbot.service.ContextAnalyzer;
+import com.ajsd.chatbot.util.FuzzyResolver;
+import com.ajsd.chatbot.util.KeywordMatcher;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
 /*
     This class implements the Rule based engine to
     answer questions about countries and communicate
@@ -78,193 +92,370 @@ public class RuleBasedEngine {
     private final MedicalService medicalService;
     private final IntelligenceService intelligenceService;
     private final ContextAnalyzer contextAnalyzer;
+    private final ResponseRenderer responseRenderer;
+    private final MetricsService metricsService;
     
-    private static final String COUNTRY_OPTIONS_STRING = "What do you want to learn about it?\n" +
-            "A. learn about the capital\n" +
-            "B. learn about the national animal\n" +
-            "C. learn about the national flower\n" +
-            "D. learn about all of the above\n" +
-            "E. Choose another country";
-            
-    private static final String MEDICAL_OPTIONS_STRING = "What do you want to learn about it?\n" +
-            "A. learn about symptoms\n" +
-            "B. learn about causes\n" +
-            "C. learn about treatment\n" +
-            "D. learn about prevention\n" +
-            "E. learn about all of the above\n" +
-            "F. Choose another condition";
-
-    public RuleBasedEngine(ChatbotService chatbotService, MedicalService medicalService, IntelligenceService intelligenceService, ContextAnalyzer contextAnalyzer) {
+    private static final String COUNTRY_OPTIONS_STRING = ResponseRenderer.COUNTRY_OPTIONS_STRING;
+    private static final String MEDICAL_OPTIONS_STRING = ResponseRenderer.MEDICAL_OPTIONS_STRING;
+    private static final String COUNTRY_LOOKUP_OPTIONS_STRING = ResponseRenderer.COUNTRY_LOOKUP_OPTIONS_STRING;
+
+    // Longest list of countries put in a single reply, the rest is summarized as "... and N more"
+    private static final int MAX_LISTED_COUNTRIES = 50;
+
+    // Conditions suggested for a description of symptoms or causes
+    private static final int MAX_SUGGESTED_CONDITIONS = 3;
+
+    // Keyword triggers, bits of the mask returned by the KeywordMatcher. Topic triggers follow the fixed ones.
+    private static final int TRIGGER_HELP = 0;
+    private static final int TRIGGER_TEACH = 1;
+    private static final int TRIGGER_FIRST_TOPIC = 2;
+    private static final long TOPIC_TRIGGERS_MASK = ((1L << Topic.values().length) - 1) << TRIGGER_FIRST_TOPIC;
+
+    /**  One step of the state machine: takes the turn and the context, updates the
+     *          context and returns the bot response.
+     **/
+    @FunctionalInterface
+    private interface StepHandler {
+        String handle(Turn turn, ConversationContext context);
+    }
+
+    /**  A user message as seen by the step handlers: the raw text, its normalized
+     *          (trimmed, lowercased) form computed exactly once, and the keyword triggers
+     *          found in it by the single scan of the KeywordMatcher.
+     **/
+    private static final class Turn {
+        private final String input;
+        private final String normalized;
+        private final long triggers;
+        // Where enrichments are left for later, null when they run as part of the turn
+        private final List<UnaryOperator<String>> deferredEnrichments;
+
+        private Turn(String input, String normalized, long triggers, List<UnaryOperator<String>> deferredEnrichments) {
+            this.input = input;
+            this.normalized = normalized;
+            this.triggers = triggers;
+            this.deferredEnrichments = deferredEnrichments;
+        }
+
+        private boolean has(int trigger) {
+            return (triggers & (1L << trigger)) != 0;
+        }
+
+        // Menu options are single letters, returns the letter or 0 when the input is not one
+        private char option() {
+            return normalized.length() == 1 ? normalized.charAt(0) : 0;
+        }
+    }
+
+    private final KeywordMatcher keywordMatcher;
+    private final Map<ConversationStep, StepHandler> stepHandlers = new EnumMap<>(ConversationStep.class);
+    private final Map<Topic, StepHandler> optionHandlers = new EnumMap<>(Topic.class);
+    private final Map<String, Topic> topicsByMenuOption = new HashMap<>();
+    private final String topicMenu;
+    private final String helpMessage;
+
+    public RuleBasedEngine(ChatbotService chatbotService, MedicalService medicalService, IntelligenceService intelligenceService, ContextAnalyzer contextAnalyzer,
+                           ResponseRenderer responseRenderer, MetricsService metricsService) {
         this.chatbotService = chatbotService;
         this.medicalService = medicalService;
         this.intelligenceService = intelligenceService;
         this.contextAnalyzer = contextAnalyzer;
+        this.responseRenderer = responseRenderer;
+        this.metricsService = metricsService;
+
+        // Compile every keyword the engine reacts to into a single matcher
+        Map<String, Integer> keywordTriggers = new HashMap<>();
+        keywordTriggers.put("help", TRIGGER_HELP);
+        keywordTriggers.put("teach", TRIGGER_TEACH);
+        StringBuilder menu = new StringBuilder();
+        for (Topic topic : Topic.values()) {
+            for (String keyword : topic.getKeywords()) {
+                keywordTriggers.put(keyword, TRIGGER_FIRST_TOPIC + topic.ordinal());
+            }
+            topicsByMenuOption.put(topic.getMenuOption().toLowerCase(Locale.ROOT), topic);
+            menu.append(menu.length() == 0 ? "" : "\n").append(topic.getMenuOption()).append(". ").append(topic.getMenuLabel());
+        }
+        this.keywordMatcher = new KeywordMatcher(keywordTriggers);
+        this.topicMenu = menu.toString();
+
+        // The state machine: one handler per step, and per topic for the option step
+        stepHandlers.put(ConversationStep.ASK_INTENT, this::handleAskIntent);
+        stepHandlers.put(ConversationStep.SELECT_TOPIC, this::handleSelectTopic);
+        stepHandlers.put(ConversationStep.SELECT_COUNTRY, this::handleSelectCountry);
+        stepHandlers.put(ConversationStep.SEARCH_COUNTRY_PREFIX, this::handleSearchCountry);
+        stepHandlers.put(ConversationStep.SEARCH_COUNTRY_SUFFIX, this::handleSearchCountry);
+        stepHandlers.put(ConversationStep.SEARCH_COUNTRY_CONTAINS, this::handleSearchCountry);
+        stepHandlers.put(ConversationStep.SELECT_CONDITION, this::handleSelectCondition);
+        stepHandlers.put(ConversationStep.CHOOSE_OPTION, this::handleChooseOption);
+        optionHandlers.put(Topic.COUNTRIES, this::handleCountryOptions);
+        optionHandlers.put(Topic.MEDICINE, this::handleMedicalOptions);
+        this.helpMessage = renderHelpMessage(medicalService.getConditionList());
     }
 
     public String processUserInput(String userInput, ConversationContext context) {
+        return processUserInput(userInput, userInput.trim().toLowerCase(Locale.ROOT), context);
+    }
+
+    /**  Same as processUserInput(String, ConversationContext), for input which was already
+     *          normalized by the ValidationService: normalized is the lower case form of userInput.
+     **/
+    public String processUserInput(String userInput, String normalized, ConversationContext context) {
+        return process(new Turn(userInput, normalized, keywordMatcher.match(normalized), null), context);
+    }
+
+    /**  Same as processUserInput(String, String, ConversationContext), except that the
+     *          IntelligenceService enrichment of an answer is not run: the reply holds the
+     *          answer as rendered, and the enrichment is left in the DeferredReply, to be run
+     *          once the answer has been sent. The context is updated as usual.
+     **/
+    public DeferredReply processUserInputDeferred(String userInput, String normalized, ConversationContext context) {
+        List<UnaryOperator<String>> enrichments = new ArrayList<>(1);
+        String reply = process(new Turn(userInput, normalized, keywordMatcher.match(normalized), enrichments), context);
+        return new DeferredReply(reply, enrichments);
+    }
+
+    private String process(Turn turn, ConversationContext context) {
         // Handle help command at any step
-        if (userInput.toLowerCase().contains("help")) {
-            return getHelpMessage();
+        if (turn.has(TRIGGER_HELP)) {
+            return helpMessage;
         }
         
         // Check for intelligent responses first
-        String smartResponse = intelligenceService.generateSmartResponse(userInput, context);
+        long start = System.nanoTime();
+        String smartResponse = intelligenceService.generateSmartResponse(turn.normalized, context);
+        metricsService.recordLatency(PipelineStage.INTELLIGENCE, start);
         if (smartResponse != null) {
             return smartResponse;
         }
         
         // Analyze context for deeper understanding
-        String contextualResponse = contextAnalyzer.analyzeUserIntent(userInput, context);
+        start = System.nanoTime();
+        String contextualResponse = contextAnalyzer.analyzeUserIntent(turn.normalized, context);
+        metricsService.recordLatency(PipelineStage.CONTEXT_ANALYSIS, start);
         if (contextualResponse != null) {
             return contextualResponse;
         }
         
-        switch (context.getCurrentStep()) {
-            case "ASK_INTENT":
-                return handleAskIntent(userInput, context);
-            case "SELECT_TOPIC":
-                return handleSelectTopic(userInput, context);
-            case "SELECT_COUNTRY":
-                return handleSelectCountry(userInput, context);
-            case "SELECT_CONDITION":
-                return handleSelectCondition(userInput, context);
-            case "CHOOSE_OPTION":
-                return handleChooseOption(userInput, context);
-            default:
-                context.setCurrentStep("ASK_INTENT");
-                return "I do not understand. \nLet's start again. \nWhat would you like to learn about?";
+        start = System.nanoTime();
+        StepHandler handler = context.getCurrentStep() == null ? null : stepHandlers.get(context.getCurrentStep());
+        String response;
+        if (handler == null) {
+            context.setCurrentStep(ConversationStep.ASK_INTENT);
+            response = "I do not understand. \nLet's start again. \nWhat would you like to learn about?";
+        } else {
+            response = handler.handle(turn, context);
         }
+        metricsService.recordLatency(PipelineStage.RULE_ENGINE, start);
+        return response;
     }
 
-    private String handleAskIntent(String userInput, ConversationContext context) {
-        if (userInput.toLowerCase().contains("teach")) {
-            context.setCurrentStep("SELECT_TOPIC");
-            return "I can teach you about different topics. What would you like to learn about?\n" +
-                   "A. Countries (capitals, animals, flowers)\n" +
-                   "B. Medicine (conditions, symptoms, treatments)";
-        } else if (userInput.toLowerCase().contains("help")) {
-            return getHelpMessage();
+    private String handleAskIntent(Turn turn, ConversationContext context) {
+        if (turn.has(TRIGGER_TEACH)) {
+            context.setCurrentStep(ConversationStep.SELECT_TOPIC);
+            return "I can teach you about different topics. What would you like to learn about?\n" + topicMenu;
         }
         return "I do not understand. \nPlease ask me something else. \nType 'teach' to see what I can help you with.";
     }
 
-    private String handleSelectCountry(String countryNameInput, ConversationContext context) {
-        boolean countryExists = chatbotService.isValidCountry(countryNameInput);
-        if (countryExists) {
-            context.setSelectedCountry(countryNameInput);
-            context.setCurrentStep("CHOOSE_OPTION");
-            return "Great! I know about that country.\n" + COUNTRY_OPTIONS_STRING;
+    private String handleSelectCountry(Turn turn, ConversationContext context) {
+        int countryId = chatbotService.findCountryId(turn.normalized);
+        if (countryId != CountryStore.NOT_FOUND) {
+            return selectCountry(countryId, context);
         }
-        return "I do not understand. \nPlease provide a valid country.";
+
+        // Not a country: one of the lookup options of step 4 of the rules above
+        switch (turn.option()) {
+            case 'a':
+                return "Please type the full name of the country.";
+            case 'b':
+                context.setCurrentStep(ConversationStep.SEARCH_COUNTRY_PREFIX);
+                return "What does the name of the country begin with?";
+            case 'c':
+                context.setCurrentStep(ConversationStep.SEARCH_COUNTRY_SUFFIX);
+                return "What does the name of the country end with?";
+            case 'd':
+                context.setCurrentStep(ConversationStep.SEARCH_COUNTRY_CONTAINS);
+                return "What part of the name of the country do you know?";
+            case 'e':
+                return "These are the countries I know about:\n" + listCountries(chatbotService.listAllCountryNames()) +
+                        "\nWhat country do you want to learn about?";
+            default:
+                break;
+        }
+
+        // Maybe a typo: take the closest country when there is a clear winner, otherwise ask
+        FuzzyResolver.Resolution resolution = chatbotService.resolveCountry(turn.normalized);
+        if (resolution.isConfident()) {
+            return "I assumed you meant " + resolution.getBest() + ".\n" +
+                    selectCountry(chatbotService.findCountryId(resolution.getBest()), context);
+        }
+        if (!resolution.getCandidates().isEmpty()) {
+            return "I do not know that country. Did you mean " + String.join(" or ", resolution.getCandidates()) + "?";
+        }
+        return "I do not understand. \nPlease provide a valid country.\n" + COUNTRY_LOOKUP_OPTIONS_STRING;
+    }
+
+    private String handleSearchCountry(Turn turn, ConversationContext context) {
+        String[] countries;
+        switch (context.getCurrentStep()) {
+            case SEARCH_COUNTRY_PREFIX:
+                countries = chatbotService.listCountriesWhichStartsWith(turn.normalized);
+                break;
+            case SEARCH_COUNTRY_SUFFIX:
+                countries = chatbotService.listCountriesWhichEndsWith(turn.normalized);
+                break;
+            default:
+                countries = chatbotService.listCountriesWhichContainsString(turn.normalized);
+                break;
+        }
+
+        if (countries.length == 1) {
+            return selectCountry(chatbotService.findCountryId(countries[0]), context);
+        }
+        context.setCurrentStep(ConversationStep.SELECT_COUNTRY);
+        if (countries.length == 0) {
+            return "I do not know any country like that.\n" + COUNTRY_LOOKUP_OPTIONS_STRING;
+        }
+        return "These countries match:\n" + listCountries(countries) + "\nWhat country do you want to learn about?";
+    }
+
+    private String selectCountry(int countryId, ConversationContext context) {
+        context.setSelectedCountryId(countryId);
+        context.setCurrentStep(ConversationStep.CHOOSE_OPTION);
+        return "Great! I know about " + chatbotService.getCountryName(countryId) + ".\n" + COUNTRY_OPTIONS_STRING;
     }
 
-    private String handleChooseOption(String userInput, ConversationContext context) {
-        if ("COUNTRIES".equals(context.getCurrentTopic())) {
-            return handleCountryOptions(userInput, context);
-        } else if ("MEDICINE".equals(context.getCurrentTopic())) {
-            return handleMedicalOptions(userInput, context);
+    private static String listCountries(String[] countries) {
+        int listed = Math.min(countries.length, MAX_LISTED_COUNTRIES);
+        String list = String.join(", ", Arrays.asList(countries).subList(0, listed));
+        return countries.length > listed ? list + " ... and " + (countries.length - listed) + " more" : list;
+    }
+
+    private String handleChooseOption(Turn turn, ConversationContext context) {
+        StepHandler handler = context.getCurrentTopic() == null ? null : optionHandlers.get(context.getCurrentTopic());
+        if (handler == null) {
+            return "Something went wrong. Please start over.";
         }
-        return "Something went wrong. Please start over.";
+        return handler.handle(turn, context);
     }
     
-    private String handleCountryOptions(String userInput, ConversationContext context) {
-        String country = context.getSelectedCountry();
-        String baseResponse;
-        
-        if (userInput.equalsIgnoreCase("A")) {
-            baseResponse = "The capital of " + country + " is " + chatbotService.getCapital(country) + ".";
-            return intelligenceService.enhanceResponse(baseResponse, "COUNTRIES", country, context) + "\n\n" + COUNTRY_OPTIONS_STRING;
-        } else if (userInput.equalsIgnoreCase("B")) {
-            baseResponse = "The national animal of " + country + " is " + chatbotService.getNationalAnimal(country) + ".";
-            return intelligenceService.enhanceResponse(baseResponse, "COUNTRIES", country, context) + "\n\n" + COUNTRY_OPTIONS_STRING;
-        } else if (userInput.equalsIgnoreCase("C")) {
-            baseResponse = "The national flower of " + country + " is " + chatbotService.getNationalFlower(country) + ".";
-            return intelligenceService.enhanceResponse(baseResponse, "COUNTRIES", country, context) + "\n\n" + COUNTRY_OPTIONS_STRING;
-        } else if (userInput.equalsIgnoreCase("D")) {
-            baseResponse = "The capital of " + country + " is " + chatbotService.getCapital(country) + ".\n" +
-                    "The national animal of " + country + " is " + chatbotService.getNationalAnimal(country) + ".\n" +
-                    "The national flower of " + country + " is " + chatbotService.getNationalFlower(country) + ".";
-            return intelligenceService.enhanceResponse(baseResponse, "COUNTRIES", country, context) + "\n\n" + COUNTRY_OPTIONS_STRING;
-        } else if (userInput.equalsIgnoreCase("E")) {
-            context.setCurrentStep("SELECT_COUNTRY");
-            return "What country do you want to learn about?";
-        } else {
-            return "I do not understand. \nPlease choose one of the following:\n" + COUNTRY_OPTIONS_STRING;
+    private String handleCountryOptions(Turn turn, ConversationContext context) {
+        int countryId = context.getSelectedCountryId();
+
+        switch (turn.option()) {
+            case 'a':
+            case 'b':
+            case 'c':
+            case 'd':
+                int option = turn.option() - 'a';
+                return enrich(turn, context, responseRenderer.countryAnswer(countryId, option), responseRenderer.countryReply(countryId, option),
+                        IntelligenceService.TOPIC_COUNTRIES, chatbotService.getCountryName(countryId), option, COUNTRY_OPTIONS_STRING);
+            case 'e':
+                context.setCurrentStep(ConversationStep.SELECT_COUNTRY);
+                return "What country do you want to learn about?\n" + COUNTRY_LOOKUP_OPTIONS_STRING;
+            default:
+                return "I do not understand. \nPlease choose one of the following:\n" + COUNTRY_OPTIONS_STRING;
         }
     }
     
-    private String handleMedicalOptions(String userInput, ConversationContext context) {
+    private String handleMedicalOptions(Turn turn, ConversationContext context) {
         String condition = context.getSelectedCondition();
-        String baseResponse;
-        
-        if (userInput.equalsIgnoreCase("A")) {
-            baseResponse = "Symptoms of " + condition + ": " + medicalService.getSymptoms(condition) + ".";
-            return intelligenceService.enhanceResponse(baseResponse, "MEDICINE", condition, context) + "\n\n" + MEDICAL_OPTIONS_STRING;
-        } else if (userInput.equalsIgnoreCase("B")) {
-            baseResponse = "Causes of " + condition + ": " + medicalService.getCauses(condition) + ".";
-            return intelligenceService.enhanceResponse(baseResponse, "MEDICINE", condition, context) + "\n\n" + MEDICAL_OPTIONS_STRING;
-        } else if (userInput.equalsIgnoreCase("C")) {
-            baseResponse = "Treatment for " + condition + ": " + medicalService.getTreatment(condition) + ".";
-            return intelligenceService.enhanceResponse(baseResponse, "MEDICINE", condition, context) + "\n\n" + MEDICAL_OPTIONS_STRING;
-        } else if (userInput.equalsIgnoreCase("D")) {
-            baseResponse = "Prevention of " + condition + ": " + medicalService.getPrevention(condition) + ".";
-            return intelligenceService.enhanceResponse(baseResponse, "MEDICINE", condition, context) + "\n\n" + MEDICAL_OPTIONS_STRING;
-        } else if (userInput.equalsIgnoreCase("E")) {
-            baseResponse = "Complete information about " + condition + ":\n" +
-                    "Symptoms: " + medicalService.getSymptoms(condition) + ".\n" +
-                    "Causes: " + medicalService.getCauses(condition) + ".\n" +
-                    "Treatment: " + medicalService.getTreatment(condition) + ".\n" +
-                    "Prevention: " + medicalService.getPrevention(condition) + ".";
-            return intelligenceService.enhanceResponse(baseResponse, "MEDICINE", condition, context) + "\n\n" + MEDICAL_OPTIONS_STRING;
-        } else if (userInput.equalsIgnoreCase("F")) {
-            context.setCurrentStep("SELECT_CONDITION");
-            return "Available conditions: diabetes, hypertension, asthma, migraine, depression.\nWhat condition do you want to learn about?";
-        } else {
-            return "I do not understand. \nPlease choose one of the following:\n" + MEDICAL_OPTIONS_STRING;
+
+        switch (turn.option()) {
+            case 'a':
+            case 'b':
+            case 'c':
+            case 'd':
+            case 'e':
+                int option = turn.option() - 'a';
+                return enrich(turn, context, responseRenderer.medicalAnswer(condition, option), responseRenderer.medicalReply(condition, option),
+                        IntelligenceService.TOPIC_MEDICINE, condition, option, MEDICAL_OPTIONS_STRING);
+            case 'f':
+                context.setCurrentStep(ConversationStep.SELECT_CONDITION);
+                return "Available conditions: " + medicalService.getConditionList() + ".\nWhat condition do you want to learn about?";
+            default:
+                return "I do not understand. \nPlease choose one of the following:\n" + MEDICAL_OPTIONS_STRING;
         }
     }
     
-    private String handleSelectTopic(String userInput, ConversationContext context) {
-        if (userInput.equalsIgnoreCase("A") || userInput.toLowerCase().contains("countries") || userInput.toLowerCase().contains("country")) {
-            context.setCurrentTopic("COUNTRIES");
-            context.setCurrentStep("SELECT_COUNTRY");
-            return "Great! I can teach you about countries, their capitals, national animals, and national flowers.\n What country do you want to learn about?";
-        } else if (userInput.equalsIgnoreCase("B") || userInput.toLowerCase().contains("medicine") || userInput.toLowerCase().contains("medical")) {
-            context.setCurrentTopic("MEDICINE");
-            context.setCurrentStep("SELECT_CONDITION");
-            return "Great! I can teach you about medical conditions.\n Available conditions: diabetes, hypertension, asthma, migraine, depression.\n What condition do you want to learn about?";
+    /**  Returns the reply to an answer enhanced by the IntelligenceService, or, when the turn
+     *          defers enrichment, the rendered reply as it is with the enhancement left for later.
+     **/
+    private String enrich(Turn turn, ConversationContext context, String answer, String renderedReply,
+                          String topic, String entity, int option, String optionsMenu) {
+        if (turn.deferredEnrichments == null) {
+            return ResponseRenderer.reply(intelligenceService.enhanceResponse(answer, topic, entity, option, context),
+                    answer, renderedReply, optionsMenu);
+        }
+        turn.deferredEnrichments.add(reply -> {
+            String enhanced = intelligenceService.enhanceResponse(answer, topic, entity, option, context);
+            // An untouched answer leaves the reply as it stands, see DeferredReply
+            return enhanced == answer ? reply : ResponseRenderer.reply(enhanced, answer, renderedReply, optionsMenu);
+        });
+        return renderedReply;
+    }
+
+    private String handleSelectTopic(Turn turn, ConversationContext context) {
+        // A menu letter wins, otherwise the first topic whose keywords occur in the input
+        Topic topic = topicsByMenuOption.get(turn.normalized);
+        long topicTriggers = turn.triggers & TOPIC_TRIGGERS_MASK;
+        if (topic == null && topicTriggers != 0) {
+            topic = Topic.values()[Long.numberOfTrailingZeros(topicTriggers) - TRIGGER_FIRST_TOPIC];
+        }
+        if (topic == null) {
+            return "I do not understand. Please choose:\n" + topicMenu;
+        }
+
+        context.setCurrentTopic(topic);
+        context.setCurrentStep(topic.getSelectionStep());
+        switch (topic) {
+            case COUNTRIES:
+                return "Great! I can teach you about countries, their capitals, national animals, and national flowers.\n What country do you want to learn about?\n" +
+                        COUNTRY_LOOKUP_OPTIONS_STRING;
+            case MEDICINE:
+                return "Great! I can teach you about medical conditions.\n Available conditions: " + medicalService.getConditionList() +
+                        ".\n What condition do you want to learn about?";
+            default:
+                return "Great! What would you like to learn about?";
         }
-        return "I do not understand. Please choose:\n" +
-               "A. Countries (capitals, animals, flowers)\n" +
-               "B. Medicine (conditions, symptoms, treatments)";
     }
     
-    private String handleSelectCondition(String conditionInput, ConversationContext context) {
-        boolean conditionExists = medicalService.isValidCondition(conditionInput);
-        if (conditionExists) {
-            context.setSelectedCondition(conditionInput.toLowerCase());
-            context.setCurrentStep("CHOOSE_OPTION");
-            return "Great! I know about " + conditionInput + ".\n" + MEDICAL_OPTIONS_STRING;
+    private String handleSelectCondition(Turn turn, ConversationContext context) {
+        String condition = medicalService.getConditionName(turn.normalized);
+        if (condition != null) {
+            context.setSelectedCondition(condition);
+            context.setCurrentStep(ConversationStep.CHOOSE_OPTION);
+            return "Great! I know about " + turn.input.trim() + ".\n" + MEDICAL_OPTIONS_STRING;
+        }
+
+        // Not a condition, maybe a description such as "what causes headaches"
+        List<String> matches = medicalService.findConditions(turn.normalized, MAX_SUGGESTED_CONDITIONS);
+        if (!matches.isEmpty()) {
+            return "These conditions match what you describe, best match first: " + String.join(", ", matches) +
+                    ".\nWhat condition do you want to learn about?";
         }
-        return "I do not understand that condition. \nAvailable conditions: diabetes, hypertension, asthma, migraine, depression.\nPlease provide a valid condition.";
+        return "I do not understand that condition. \nAvailable conditions: " + medicalService.getConditionList() +
+                ".\nPlease provide a valid condition, or describe a symptom.";
     }
     
-    private String getHelpMessage() {
+    private static String renderHelpMessage(String conditionList) {
         return "🤖 **AJSD Chatbot Help**\n\n" +
                "**How to use the chatbot:**\n" +
                "1. Type 'teach' to begin\n" +
                "2. Type 'clear' to reset the conversation\n" +
-               "3. Type 'help' to see this message\n\n" +
+               "3. Type 'help' to see this message\n" +
+               "4. Type 'back' to return to the previous country or condition, 'again' to repeat the last answer, " +
+               "or 'summary' to see what we talked about\n\n" +
                "**What I can teach you:**\n" +
                "• Countries: capitals, national animals, national flowers\n" +
                "• Medicine: symptoms, causes, treatments, prevention\n\n" +
                "**Available Topics:**\n" +
                "• Countries: Any country name\n" +
-               "• Medical: diabetes, hypertension, asthma, migraine, depression\n\n" +
+               "• Medical: " + conditionList + "\n\n" +
                "**Tips:**\n" +
                "• Choose A or B for topic selection\n" +
                "• Use A-F options during conversations\n" +
-               "• Type exact condition names for medical topics\n\n" +
+               "• Type a condition name, or describe a symptom, for medical topics\n\n" +
                "Ready to start? Type 'teach' to begin.";
     }
 
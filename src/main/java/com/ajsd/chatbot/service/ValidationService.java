@@ -0,0 +1,128 @@
+package com.ajsd.chatbot.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+
+/**
+    Validates and sanitizes a chat message in a single pass over its characters, and
+    produces every form of the message the rest of the pipeline needs:
+    1. text: the message with Unicode normalized (NFKC), control and invisible format
+       characters removed, and runs of whitespace collapsed into one space. This is
+       what is stored in the conversation and returned by the API; the page escapes
+       it when it renders it, as it does the bot responses.
+    2. normalized: the text in lower case, which is what the engine matches against,
+       so nothing downstream has to lowercase it again.
+
+    The cost is linear in the length of the message and bounded: input longer than
+    RAW_LENGTH_FACTOR times the limit is rejected before anything is done with it,
+    NFKC normalization is skipped for pure ASCII input (where it changes nothing),
+    and the limit is enforced again on the normalized text while it is scanned.
+ **/
+@Service
+public class ValidationService {
+
+    // Leaves room for whitespace and combining marks which are collapsed or composed away
+    private static final int RAW_LENGTH_FACTOR = 4;
+
+    private final int maxLength;
+
+    @Autowired
+    public ValidationService(@Value("${chatbot.validation.max-length:500}") int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    /**  Validates and sanitizes a message, see the class comment. Never returns null,
+     *          check isValid() on the result.
+     **/
+    public ValidatedInput validate(String message) {
+        if (message == null || message.isEmpty()) {
+            return ValidatedInput.invalid("Empty message.");
+        }
+        if (message.length() > maxLength * RAW_LENGTH_FACTOR) {
+            return ValidatedInput.invalid("Message too long.");
+        }
+
+        String input = isAscii(message) ? message : Normalizer.normalize(message, Normalizer.Form.NFKC);
+
+        StringBuilder text = new StringBuilder(Math.min(input.length(), maxLength));
+        StringBuilder normalized = new StringBuilder(Math.min(input.length(), maxLength));
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < input.length(); ) {
+            int codePoint = input.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)) {
+                pendingSpace = text.length() > 0;
+                continue;
+            }
+            int type = Character.getType(codePoint);
+            if (type == Character.CONTROL || type == Character.FORMAT || type == Character.SURROGATE
+                    || type == Character.UNASSIGNED || type == Character.PRIVATE_USE) {
+                continue;
+            }
+
+            if (text.length() + (pendingSpace ? 1 : 0) + Character.charCount(codePoint) > maxLength) {
+                return ValidatedInput.invalid("Message too long.");
+            }
+            if (pendingSpace) {
+                text.append(' ');
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            text.appendCodePoint(codePoint);
+            normalized.appendCodePoint(Character.toLowerCase(codePoint));
+        }
+
+        if (text.length() == 0) {
+            return ValidatedInput.invalid("Empty message.");
+        }
+        return new ValidatedInput(null, text.toString(), normalized.toString());
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**  The outcome of validate(): either an error, or the two forms of a valid message.
+     **/
+    public static final class ValidatedInput {
+        private final String error;
+        private final String text;
+        private final String normalized;
+
+        private ValidatedInput(String error, String text, String normalized) {
+            this.error = error;
+            this.text = text;
+            this.normalized = normalized;
+        }
+
+        private static ValidatedInput invalid(String error) {
+            return new ValidatedInput(error, null, null);
+        }
+
+        public boolean isValid() {
+            return error == null;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getNormalized() {
+            return normalized;
+        }
+    }
+}
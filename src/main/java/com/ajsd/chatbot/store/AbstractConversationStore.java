@@ -0,0 +1,83 @@
+package com.ajsd.chatbot.store;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+    Time-to-live handling shared by the ConversationStore implementations.
+
+    Expired conversations are found two ways, neither of which needs a scheduler thread:
+    1. load() of an expired conversation removes it on the spot.
+    2. A sweep over every conversation runs at most once per sweep interval, on the
+       thread of whichever load or save is due for it.
+ **/
+public abstract class AbstractConversationStore implements ConversationStore {
+
+    private final long ttlMillis;
+    private final long sweepIntervalMillis;
+    private final LongSupplier clock; // epoch milliseconds, also stored by the file backed store
+    private final AtomicLong nextSweep;
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final List<Consumer<String>> expiryListeners = new CopyOnWriteArrayList<>();
+
+    protected AbstractConversationStore(long ttlMillis, LongSupplier clock) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Conversation time-to-live must be positive");
+        }
+        this.ttlMillis = ttlMillis;
+        this.sweepIntervalMillis = Math.max(1000, ttlMillis / 10);
+        this.clock = clock;
+        this.nextSweep = new AtomicLong(clock.getAsLong() + sweepIntervalMillis);
+    }
+
+    @Override
+    public void addExpiryListener(Consumer<String> listener) {
+        expiryListeners.add(listener);
+    }
+
+    @Override
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**  Removes every conversation whose expiry time is before now.
+     **/
+    protected abstract void sweep(long now);
+
+    protected long now() {
+        return clock.getAsLong();
+    }
+
+    /**  Returns the expiry time of a conversation used at the given time.
+     **/
+    protected long expiresAt(long now) {
+        return now + ttlMillis;
+    }
+
+    /**  Makes the next load or save run a sweep, however long ago the last one ran.
+     **/
+    protected void sweepNow() {
+        nextSweep.set(Long.MIN_VALUE);
+    }
+
+    protected void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now >= due && nextSweep.compareAndSet(due, now + sweepIntervalMillis)) {
+            sweep(now);
+        }
+    }
+
+    protected void expired(String conversationId) {
+        expiredCount.incrementAndGet();
+        removed(conversationId);
+    }
+
+    protected void removed(String conversationId) {
+        for (Consumer<String> listener : expiryListeners) {
+            listener.accept(conversationId);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.ajsd.chatbot.store;
+
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.HistorySpill;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+    Local append-only store for the messages evicted from a conversation running
+    with HistoryPolicy.SPILL. Each session gets one file with one line per message:
+
+        seq <TAB> sender <TAB> content
+
+    where backslashes, tabs and line breaks in the content are escaped, and next to it
+    an index with one record per message, its seq and the offset of its line (two longs),
+    so a page starts with a binary search of the index and a seek rather than a scan of
+    every line before it. Sequence numbers only go up within a conversation.
+
+    Messages are spilled on the request thread, under the lock of the conversation, so
+    appending is kept to two writes into files which stay open: the files of the
+    sessions which spilled last are kept open, up to MAX_OPEN_SESSIONS of them, and the
+    ones used least recently are closed to make room. Files are deleted when the
+    conversation is cleared or the session ends.
+ **/
+@Component
+public class ConversationArchive {
+
+    static final int MAX_OPEN_SESSIONS = 256;
+
+    private static final String LOG_EXTENSION = ".log";
+    private static final String INDEX_EXTENSION = ".idx";
+    private static final int INDEX_RECORD_BYTES = 2 * Long.BYTES;
+
+    private final Path directory;
+
+    // Access ordered, so the eldest entry is the session which spilled least recently
+    private final Map<String, Appender> appenders = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Appender> eldest) {
+            if (size() <= MAX_OPEN_SESSIONS) {
+                return false;
+            }
+            eldest.getValue().close();
+            return true;
+        }
+    };
+
+    public ConversationArchive(@Value("${chatbot.history.spill-directory:${java.io.tmpdir}/chatbot-history}") String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**  Returns the HistorySpill a ConversationContext of the given session writes its
+     *          evicted messages to.
+     **/
+    public HistorySpill spillFor(String sessionId) {
+        return new HistorySpill() {
+            @Override
+            public void spill(ConversationContext.Message message) {
+                append(sessionId, message);
+            }
+
+            @Override
+            public void discard() {
+                delete(sessionId);
+            }
+        };
+    }
+
+    public void append(String sessionId, ConversationContext.Message message) {
+        byte[] line = (message.getSeq() + "\t" + message.getSender() + "\t" + escape(message.getContent()) + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+        try {
+            // An appender closed by another session making room since it was taken is opened again
+            while (!appender(sessionId).append(message.getSeq(), line)) {
+                // the closed appender is out of the map, the next one taken is new
+            }
+        } catch (IOException e) {
+            close(sessionId);
+            throw new UncheckedIOException("Error archiving message for session " + sessionId, e);
+        }
+    }
+
+    private Appender appender(String sessionId) {
+        synchronized (appenders) {
+            return appenders.computeIfAbsent(sessionId, id -> new Appender(fileFor(id, LOG_EXTENSION), fileFor(id, INDEX_EXTENSION)));
+        }
+    }
+
+    /**  Reads up to limit archived messages of a session whose sequence number is greater
+     *          than since, in sequence order.
+     **/
+    public List<ConversationContext.Message> readSince(String sessionId, long since, int limit) {
+        List<ConversationContext.Message> page = new ArrayList<>();
+        Path logFile = fileFor(sessionId, LOG_EXTENSION);
+        Path indexFile = fileFor(sessionId, INDEX_EXTENSION);
+        if (!Files.exists(logFile) || !Files.exists(indexFile)) {
+            return page;
+        }
+        try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ);
+             FileChannel log = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long offset = firstOffsetAfter(index, since);
+            if (offset < 0) {
+                return page;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(log.position(offset)),
+                    StandardCharsets.UTF_8));
+            String line;
+            while (page.size() < limit && (line = reader.readLine()) != null) {
+                int firstTab = line.indexOf('\t');
+                int secondTab = line.indexOf('\t', firstTab + 1);
+                page.add(new ConversationContext.Message(Long.parseLong(line.substring(0, firstTab)),
+                        line.substring(firstTab + 1, secondTab), unescape(line.substring(secondTab + 1))));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading archive of session " + sessionId, e);
+        }
+        return page;
+    }
+
+    // Offset of the line of the first message with a seq greater than since, or -1 when there is none
+    private static long firstOffsetAfter(FileChannel index, long since) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_BYTES);
+        long low = 0;
+        long high = index.size() / INDEX_RECORD_BYTES;  // a record cut short by a crash is left out
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (readRecord(index, middle, record).getLong(0) <= since) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low < index.size() / INDEX_RECORD_BYTES ? readRecord(index, low, record).getLong(Long.BYTES) : -1;
+    }
+
+    private static ByteBuffer readRecord(FileChannel index, long number, ByteBuffer record) throws IOException {
+        record.clear();
+        while (record.hasRemaining()) {
+            if (index.read(record, number * INDEX_RECORD_BYTES + record.position()) < 0) {
+                throw new EOFException("Archive index ends within record " + number);
+            }
+        }
+        return record;
+    }
+
+    public void delete(String sessionId) {
+        close(sessionId);
+        try {
+            Files.deleteIfExists(fileFor(sessionId, LOG_EXTENSION));
+            Files.deleteIfExists(fileFor(sessionId, INDEX_EXTENSION));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error deleting archive of session " + sessionId, e);
+        }
+    }
+
+    /**  Closes the files kept open for appending.
+     **/
+    @PreDestroy
+    public void close() {
+        synchronized (appenders) {
+            appenders.values().forEach(Appender::close);
+            appenders.clear();
+        }
+    }
+
+    int getOpenSessions() {
+        synchronized (appenders) {
+            return appenders.size();
+        }
+    }
+
+    private void close(String sessionId) {
+        Appender appender;
+        synchronized (appenders) {
+            appender = appenders.remove(sessionId);
+        }
+        if (appender != null) {
+            appender.close();
+        }
+    }
+
+    private Path fileFor(String sessionId, String extension) {
+        return directory.resolve(sessionId.replaceAll("[^A-Za-z0-9_-]", "_") + extension);
+    }
+
+    // The open log and index of one session, opened on the first append
+    private final class Appender {
+        private final Path logFile;
+        private final Path indexFile;
+        private final ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_BYTES);
+        private FileChannel log;
+        private FileChannel index;
+        private long logSize;
+        private boolean closed;
+
+        Appender(Path logFile, Path indexFile) {
+            this.logFile = logFile;
+            this.indexFile = indexFile;
+        }
+
+        // Returns false when the appender was closed, and the message was not written
+        synchronized boolean append(long seq, byte[] line) throws IOException {
+            if (closed) {
+                return false;
+            }
+            if (log == null) {
+                Files.createDirectories(directory);
+                log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                logSize = log.size();
+            }
+            writeFully(log, ByteBuffer.wrap(line));
+            record.clear();
+            record.putLong(seq).putLong(logSize).flip();
+            writeFully(index, record);
+            logSize += line.length;
+            return true;
+        }
+
+        synchronized void close() {
+            closed = true;
+            for (FileChannel channel : new FileChannel[] {log, index}) {
+                try {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                } catch (IOException e) {
+                    // Nothing is buffered, what was written is in the file
+                }
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String escape(String content) {
+        StringBuilder escaped = new StringBuilder(content.length() + 8);
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                case '\t': escaped.append("\\t"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String escaped) {
+        StringBuilder content = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c == '\\' && i + 1 < escaped.length()) {
+                char next = escaped.charAt(++i);
+                switch (next) {
+                    case 'n': content.append('\n'); break;
+                    case 'r': content.append('\r'); break;
+                    case 't': content.append('\t'); break;
+                    default: content.append(next);
+                }
+            } else {
+                content.append(c);
+            }
+        }
+        return content.toString();
+    }
+}
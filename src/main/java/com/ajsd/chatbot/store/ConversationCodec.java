@@ -0,0 +1,516 @@
+package com.ajsd.chatbot.store;
+
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.ConversationFeatures;
+import com.ajsd.chatbot.model.ConversationStep;
+import com.ajsd.chatbot.model.HistoryPolicy;
+import com.ajsd.chatbot.model.HistorySpill;
+import com.ajsd.chatbot.model.HistorySummary;
+import com.ajsd.chatbot.model.Topic;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+    Binary form of a ConversationContext, used by the stores which keep conversations
+    outside the heap. The first byte is the format version; encode() writes version 3,
+    decode() also reads versions 1 and 2, so conversations written by an older build
+    survive an upgrade (with empty ConversationFeatures, which fill up again as the
+    conversation goes on).
+
+    Versions 2 and 3 are built to be small:
+    1. Numbers are varints (7 bits per byte), signed ones zigzag encoded first so -1
+       takes one byte. Sequence numbers of the messages are written as the difference
+       to the previous one, which is almost always 1.
+    2. Enums are their ordinal plus one (0 for null), the country is its id in the
+       CountryStore, and the sender of a message is a code for USER and BOT.
+    3. Strings are a list of segments: UTF-8 bytes preceded by their length, or the
+       index of an entry of the dictionary. The dictionary is the text the bot repeats
+       in nearly every reply, such as the options menus, so most bot messages shrink
+       to the few words in front of the menu.
+
+    The dictionary is optional, and is not written with the data: a hash of it is, and
+    decode() refuses data written with another dictionary. Entries can therefore only
+    be changed together with the version of the stored data (or by clearing the store).
+
+    Layout of version 3, which is version 2 with the features at the end:
+
+        version            byte (3)
+        flags              byte, FLAG_DICTIONARY when strings may reference the dictionary
+        dictionary hash    4 bytes, only with FLAG_DICTIONARY
+        history capacity   varint
+        history policy     byte, ordinal
+        step, topic        byte each, ordinal + 1
+        country id         zigzag varint
+        condition          string
+        options            varint count, strings
+        first, last seq    varint each
+        evicted messages   varint
+        history summary    5 varints, see HistorySummary
+        messages           varint count, then per message:
+                           sequence delta varint, sender byte (+ string for SENDER_OTHER), content string
+        features           recent countries: varint count, zigzag varint ids, oldest first
+                           recent conditions: varint count, strings, oldest first
+                           topic messages: varint count, varints by Topic ordinal
+                           failure streak varint, last option byte (0 for none),
+                           last option topic byte, ordinal + 1
+
+        string             varint: 0 for null, otherwise the number of segments + 1
+        segment            varint: length << 1 followed by the UTF-8 bytes,
+                           or entry << 1 | 1 for an entry of the dictionary
+
+    The HistorySpill of a context is not part of its state: it is handed to decode()
+    by the store, which knows the conversation it is reading.
+ **/
+public final class ConversationCodec {
+
+    static final int VERSION_1 = 1;
+    static final int VERSION_2 = 2;
+    static final int VERSION = 3;
+
+    private static final int FLAG_DICTIONARY = 1;
+
+    private static final int SENDER_USER = 0;
+    private static final int SENDER_BOT = 1;
+    private static final int SENDER_OTHER = 2;
+
+    // Shorter text is cheaper to write as it is than to search for
+    private static final int MIN_ENTRY_LENGTH = 8;
+
+    private final String[] dictionary;
+    private final int dictionaryHash;
+
+    /**  A codec which compresses strings with the given dictionary, or writes them as
+     *          they are when there is none.
+     **/
+    public ConversationCodec(String... dictionary) {
+        for (String entry : dictionary) {
+            if (entry == null || entry.length() < MIN_ENTRY_LENGTH) {
+                throw new IllegalArgumentException("Dictionary entries must have at least " + MIN_ENTRY_LENGTH + " characters");
+            }
+        }
+        this.dictionary = dictionary.clone();
+        // String.hashCode() is specified, so the hash is the same on every JVM
+        this.dictionaryHash = Arrays.hashCode(this.dictionary);
+    }
+
+    public byte[] encode(ConversationContext context) {
+        Output out = new Output(256);
+        out.writeByte(VERSION);
+        if (dictionary.length > 0) {
+            out.writeByte(FLAG_DICTIONARY);
+            out.writeInt(dictionaryHash);
+        } else {
+            out.writeByte(0);
+        }
+
+        out.writeVarint(context.getHistoryCapacity());
+        out.writeByte(context.getHistoryPolicy().ordinal());
+        out.writeByte(ordinal(context.getCurrentStep()) + 1);
+        out.writeByte(ordinal(context.getCurrentTopic()) + 1);
+        out.writeVarint(zigzag(context.getSelectedCountryId()));
+        writeString(out, context.getSelectedCondition());
+
+        List<String> options = context.getAvailableOptions();
+        out.writeVarint(options.size());
+        for (String option : options) {
+            writeString(out, option);
+        }
+
+        out.writeVarint(context.getFirstSequence());
+        out.writeVarint(context.getLastSequence());
+        out.writeVarint(context.getEvictedMessages());
+        HistorySummary summary = context.getHistorySummary();
+        out.writeVarint(summary.getUserMessages());
+        out.writeVarint(summary.getBotMessages());
+        out.writeVarint(summary.getCharacters());
+        out.writeVarint(summary.getFirstSequence());
+        out.writeVarint(summary.getLastSequence());
+
+        List<ConversationContext.Message> messages = context.getMessages();
+        out.writeVarint(messages.size());
+        long previousSeq = 0;
+        for (ConversationContext.Message message : messages) {
+            out.writeVarint(zigzag(message.getSeq() - previousSeq));
+            previousSeq = message.getSeq();
+            String sender = message.getSender();
+            if ("USER".equals(sender)) {
+                out.writeByte(SENDER_USER);
+            } else if ("BOT".equals(sender)) {
+                out.writeByte(SENDER_BOT);
+            } else {
+                out.writeByte(SENDER_OTHER);
+                writeString(out, sender);
+            }
+            writeString(out, message.getContent());
+        }
+
+        ConversationFeatures features = context.getFeatures();
+        int[] countries = features.getRecentCountries();
+        out.writeVarint(countries.length);
+        for (int country : countries) {
+            out.writeVarint(zigzag(country));
+        }
+        List<String> conditions = features.getRecentConditions();
+        out.writeVarint(conditions.size());
+        for (String condition : conditions) {
+            writeString(out, condition);
+        }
+        out.writeVarint(Topic.values().length);
+        for (Topic topic : Topic.values()) {
+            out.writeVarint(features.getTopicMessages(topic));
+        }
+        out.writeVarint(features.getFailureStreak());
+        out.writeByte(features.getLastOption());
+        out.writeByte(ordinal(features.getLastOptionTopic()) + 1);
+        return out.toByteArray();
+    }
+
+    /**  Decodes data written by encode() of this or an older build. Data which cannot be
+     *          read, truncated, damaged or written with another dictionary, throws an
+     *          IllegalArgumentException and nothing else, so the store can drop it.
+     **/
+    public ConversationContext decode(byte[] data, HistorySpill historySpill) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Empty conversation data");
+        }
+        int version = data[0] & 0xFF;
+        if (version == VERSION_1) {
+            return decodeVersion1(data, historySpill);
+        }
+        if (version != VERSION_2 && version != VERSION) {
+            throw new IllegalArgumentException("Unknown conversation format version " + version);
+        }
+
+        Input in = new Input(data, 1);
+        int flags = in.readByte();
+        if ((flags & FLAG_DICTIONARY) != 0) {
+            int hash = in.readInt();
+            if (dictionary.length == 0 || hash != dictionaryHash) {
+                throw new IllegalArgumentException("Conversation was encoded with another dictionary");
+            }
+        }
+
+        int capacity = (int) in.readVarint();
+        HistoryPolicy policy = fromOrdinal(HistoryPolicy.values(), in.readByte());
+        ConversationContext context = new ConversationContext(capacity, policy,
+                policy == HistoryPolicy.SPILL ? historySpill : null);
+        context.setCurrentStep(fromOrdinal(ConversationStep.values(), in.readByte() - 1));
+        context.setCurrentTopic(fromOrdinal(Topic.values(), in.readByte() - 1));
+        context.setSelectedCountryId((int) unzigzag(in.readVarint()));
+        context.setSelectedCondition(readString(in));
+
+        int optionCount = (int) in.readVarint();
+        List<String> options = new ArrayList<>(Math.min(optionCount, 16));
+        for (int i = 0; i < optionCount; i++) {
+            options.add(readString(in));
+        }
+        context.setAvailableOptions(options);
+
+        long firstSequence = in.readVarint();
+        long lastSequence = in.readVarint();
+        long evictedMessages = in.readVarint();
+        context.getHistorySummary().restore(in.readVarint(), in.readVarint(), in.readVarint(), in.readVarint(), in.readVarint());
+
+        int messageCount = (int) in.readVarint();
+        List<ConversationContext.Message> messages = new ArrayList<>(Math.min(messageCount, 256));
+        long seq = 0;
+        for (int i = 0; i < messageCount; i++) {
+            seq += unzigzag(in.readVarint());
+            int senderCode = in.readByte();
+            String sender = senderCode == SENDER_USER ? "USER" : senderCode == SENDER_BOT ? "BOT" : readString(in);
+            messages.add(new ConversationContext.Message(seq, sender, readString(in)));
+        }
+        context.restoreHistory(firstSequence, lastSequence, evictedMessages, messages);
+        if (version == VERSION) {
+            readFeatures(in, context.getFeatures());
+        }
+        return context;
+    }
+
+    private void readFeatures(Input in, ConversationFeatures features) {
+        int[] countries = new int[Math.min((int) in.readVarint(), ConversationFeatures.RECENT_ENTITIES)];
+        for (int i = 0; i < countries.length; i++) {
+            countries[i] = (int) unzigzag(in.readVarint());
+        }
+        int conditionCount = Math.min((int) in.readVarint(), ConversationFeatures.RECENT_ENTITIES);
+        List<String> conditions = new ArrayList<>(conditionCount);
+        for (int i = 0; i < conditionCount; i++) {
+            conditions.add(readString(in));
+        }
+        // Topics added since the data was written start at 0, removed ones are skipped
+        int topicCount = (int) in.readVarint();
+        int[] topicMessages = new int[Topic.values().length];
+        for (int i = 0; i < topicCount; i++) {
+            int messages = (int) in.readVarint();
+            if (i < topicMessages.length) {
+                topicMessages[i] = messages;
+            }
+        }
+        int failureStreak = (int) in.readVarint();
+        char lastOption = (char) in.readByte();
+        Topic lastOptionTopic = fromOrdinal(Topic.values(), in.readByte() - 1);
+        features.restore(countries, conditions, topicMessages, failureStreak, lastOption, lastOptionTopic);
+    }
+
+    /*  Strings are cut at every occurrence of an entry of the dictionary, the earliest
+        first and the longest when several start at the same place.
+     */
+    private void writeString(Output out, String value) {
+        if (value == null) {
+            out.writeVarint(0);
+            return;
+        }
+        if (dictionary.length == 0) {
+            out.writeVarint(2);
+            writeLiteral(out, value, 0, value.length());
+            return;
+        }
+
+        // Segments are buffered because their count comes first
+        Output segments = out.scratch();
+        int count = 0;
+        int from = 0;
+        while (from < value.length()) {
+            int entry = -1;
+            int at = value.length();
+            for (int i = 0; i < dictionary.length; i++) {
+                int found = value.indexOf(dictionary[i], from);
+                if (found >= 0 && (found < at || found == at && dictionary[i].length() > dictionary[entry].length())) {
+                    entry = i;
+                    at = found;
+                }
+            }
+            if (at > from) {
+                writeLiteral(segments, value, from, at);
+                count++;
+            }
+            if (entry < 0) {
+                break;
+            }
+            segments.writeVarint((long) entry << 1 | 1);
+            count++;
+            from = at + dictionary[entry].length();
+        }
+        out.writeVarint(count + 1);
+        out.writeBytes(segments.buffer, 0, segments.size);
+    }
+
+    private static void writeLiteral(Output out, String value, int from, int to) {
+        byte[] bytes = value.substring(from, to).getBytes(StandardCharsets.UTF_8);
+        out.writeVarint((long) bytes.length << 1);
+        out.writeBytes(bytes, 0, bytes.length);
+    }
+
+    private String readString(Input in) {
+        int segments = (int) in.readVarint() - 1;
+        if (segments < 0) {
+            return null;
+        }
+        if (segments == 1) {
+            return readSegment(in);
+        }
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < segments; i++) {
+            value.append(readSegment(in));
+        }
+        return value.toString();
+    }
+
+    private String readSegment(Input in) {
+        long segment = in.readVarint();
+        if ((segment & 1) != 0) {
+            long entry = segment >>> 1;
+            if (entry >= dictionary.length) {
+                throw new IllegalArgumentException("Unknown dictionary entry " + entry);
+            }
+            return dictionary[(int) entry];
+        }
+        return in.readUtf8((int) (segment >>> 1));
+    }
+
+    /*  Version 1: fixed width numbers, ordinals with -1 for null and strings as an int
+        length (-1 for null) followed by their UTF-8 bytes.
+     */
+    private static ConversationContext decodeVersion1(byte[] data, HistorySpill historySpill) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1))) {
+            int capacity = in.readInt();
+            HistoryPolicy policy = fromOrdinal(HistoryPolicy.values(), in.readUnsignedByte());
+            ConversationContext context = new ConversationContext(capacity, policy,
+                    policy == HistoryPolicy.SPILL ? historySpill : null);
+            context.setCurrentStep(fromOrdinal(ConversationStep.values(), in.readByte()));
+            context.setSelectedCountryId(in.readInt());
+            context.setSelectedCondition(readVersion1String(in));
+            context.setCurrentTopic(fromOrdinal(Topic.values(), in.readByte()));
+
+            int optionCount = in.readInt();
+            List<String> options = new ArrayList<>(Math.min(Math.max(optionCount, 0), 16));
+            for (int i = 0; i < optionCount; i++) {
+                options.add(readVersion1String(in));
+            }
+            context.setAvailableOptions(options);
+
+            long firstSequence = in.readLong();
+            long lastSequence = in.readLong();
+            long evictedMessages = in.readLong();
+            context.getHistorySummary().restore(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+
+            int messageCount = in.readInt();
+            List<ConversationContext.Message> messages = new ArrayList<>(Math.min(Math.max(messageCount, 0), 256));
+            for (int i = 0; i < messageCount; i++) {
+                messages.add(new ConversationContext.Message(in.readLong(), readVersion1String(in), readVersion1String(in)));
+            }
+            context.restoreHistory(firstSequence, lastSequence, evictedMessages, messages);
+            return context;
+        } catch (IOException e) {
+            // Only an EOFException can come from a byte array
+            throw new IllegalArgumentException("Truncated conversation data", e);
+        }
+    }
+
+    private static String readVersion1String(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IllegalArgumentException("Truncated conversation data");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int ordinal(Enum<?> value) {
+        return value == null ? -1 : value.ordinal();
+    }
+
+    private static <E extends Enum<E>> E fromOrdinal(E[] values, int ordinal) {
+        if (ordinal >= values.length) {
+            throw new IllegalArgumentException("Unknown " + values.getClass().getComponentType().getSimpleName()
+                    + " ordinal " + ordinal + " in conversation data");
+        }
+        return ordinal < 0 ? null : values[ordinal];
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /*  A growable byte array, cheaper than a DataOutputStream over a ByteArrayOutputStream
+        for the many small writes of an encoding.
+     */
+    private static final class Output {
+        private byte[] buffer;
+        private int size;
+        private Output scratch;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        // Reused for the segments of every string of one encoding
+        Output scratch() {
+            if (scratch == null) {
+                scratch = new Output(128);
+            }
+            scratch.size = 0;
+            return scratch;
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int length) {
+            if (size + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] data;
+        private int position;
+
+        Input(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        int readByte() {
+            require(1);
+            return data[position++] & 0xFF;
+        }
+
+        int readInt() {
+            require(4);
+            int value = (data[position] & 0xFF) << 24 | (data[position + 1] & 0xFF) << 16
+                    | (data[position + 2] & 0xFF) << 8 | data[position + 3] & 0xFF;
+            position += 4;
+            return value;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in conversation data");
+        }
+
+        String readUtf8(int length) {
+            require(length);
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private void require(int length) {
+            if (length < 0 || length > data.length - position) {
+                throw new IllegalArgumentException("Truncated conversation data");
+            }
+        }
+    }
+}
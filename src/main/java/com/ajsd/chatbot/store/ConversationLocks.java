@@ -0,0 +1,51 @@
+package com.ajsd.chatbot.store;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+    Orders the turns of each conversation. A turn loads the conversation, changes it and
+    saves it; two turns of the same conversation running at once (a double click, two
+    tabs) would both start from the same state and one of them would be lost, or worse,
+    change the same ConversationContext together.
+
+    Every conversation id maps to one of a fixed number of fair locks, so turns of one
+    conversation run one at a time, in the order they arrived, while turns of different
+    conversations only wait for each other in the rare case their ids share a stripe.
+    Nothing is created or removed per conversation, and no lock is ever shared by all.
+
+    These are j.u.c locks rather than monitors, so a turn blocked on I/O while holding
+    one does not pin a virtual thread to its carrier.
+ **/
+public class ConversationLocks {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /**  Creates the given number of stripes, rounded up to a power of two.
+     **/
+    public ConversationLocks(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("At least one lock stripe is needed");
+        }
+        int size = Integer.highestOneBit(stripes);
+        size = size < stripes ? size << 1 : size;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock(true);
+        }
+        this.mask = size - 1;
+    }
+
+    /**  The lock of a conversation, to be held from loading the conversation to building
+     *          the response of the turn.
+     **/
+    public ReentrantLock lockFor(String conversationId) {
+        int hash = conversationId.hashCode();
+        // Spreads the high bits into the low ones the mask keeps
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    public int getStripes() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,51 @@
+package com.ajsd.chatbot.store;
+
+import com.ajsd.chatbot.model.ConversationContext;
+
+import java.util.function.Consumer;
+
+/**
+    Where the conversations live between two requests, keyed by conversation id.
+
+    A conversation which is neither loaded nor saved for the time-to-live of the store
+    expires: it is removed and the expiry listeners are told its id, so whatever else
+    was kept for it (spilled history, metrics) can be cleaned up as well.
+
+    Implementations:
+    1. InHeapConversationStore keeps the ConversationContext objects themselves.
+    2. OffHeapConversationStore keeps them encoded by the ConversationCodec in direct
+       or memory-mapped buffers, which the garbage collector never has to scan, and
+       optionally in files which survive a restart.
+ **/
+public interface ConversationStore {
+
+    /**  Returns the conversation with the given id, or null when there is none or it
+     *          has expired. Loading a conversation restarts its time-to-live.
+     **/
+    ConversationContext load(String conversationId);
+
+    /**  Stores the conversation, replacing the previous state of the same id.
+     **/
+    void save(String conversationId, ConversationContext context);
+
+    /**  Removes the conversation, the expiry listeners are told as for an expired one.
+     **/
+    void remove(String conversationId);
+
+    /**  Registers a listener called with the id of every conversation which expires
+     *          or is removed.
+     **/
+    void addExpiryListener(Consumer<String> listener);
+
+    /**  Number of conversations stored.
+     **/
+    int size();
+
+    /**  Estimated number of bytes held by the stored conversations.
+     **/
+    long getStoredBytes();
+
+    /**  Number of conversations which have expired since the store was created.
+     **/
+    long getExpiredCount();
+}
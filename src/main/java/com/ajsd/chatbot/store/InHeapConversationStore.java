@@ -0,0 +1,95 @@
+package com.ajsd.chatbot.store;
+
+import com.ajsd.chatbot.model.ConversationContext;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+    ConversationStore which keeps the ConversationContext objects on the heap, the way
+    the HttpSession used to. Nothing is encoded, so it is the fastest store, but every
+    conversation is a graph of objects the garbage collector has to walk, and nothing
+    survives a restart.
+ **/
+public class InHeapConversationStore extends AbstractConversationStore {
+
+    private final Map<String, Held> conversations = new ConcurrentHashMap<>();
+
+    public InHeapConversationStore(long ttlMillis) {
+        this(ttlMillis, System::currentTimeMillis);
+    }
+
+    InHeapConversationStore(long ttlMillis, LongSupplier clock) {
+        super(ttlMillis, clock);
+    }
+
+    @Override
+    public ConversationContext load(String conversationId) {
+        long now = now();
+        sweepIfDue(now);
+        Held held = conversations.get(conversationId);
+        if (held == null) {
+            return null;
+        }
+        if (held.expiresAt <= now) {
+            if (conversations.remove(conversationId, held)) {
+                expired(conversationId);
+            }
+            return null;
+        }
+        held.expiresAt = expiresAt(now);
+        return held.context;
+    }
+
+    @Override
+    public void save(String conversationId, ConversationContext context) {
+        long now = now();
+        sweepIfDue(now);
+        conversations.put(conversationId, new Held(context, expiresAt(now)));
+    }
+
+    @Override
+    public void remove(String conversationId) {
+        if (conversations.remove(conversationId) != null) {
+            removed(conversationId);
+        }
+    }
+
+    @Override
+    public int size() {
+        return conversations.size();
+    }
+
+    @Override
+    public long getStoredBytes() {
+        long bytes = 0;
+        for (Held held : conversations.values()) {
+            bytes += held.context.getRetainedBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    protected void sweep(long now) {
+        Iterator<Map.Entry<String, Held>> iterator = conversations.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Held> entry = iterator.next();
+            if (entry.getValue().expiresAt <= now) {
+                iterator.remove();
+                expired(entry.getKey());
+            }
+        }
+    }
+
+    private static final class Held {
+        private final ConversationContext context;
+        private volatile long expiresAt;
+
+        private Held(ConversationContext context, long expiresAt) {
+            this.context = context;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
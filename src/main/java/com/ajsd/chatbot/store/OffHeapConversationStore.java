@@ -0,0 +1,428 @@
+package com.ajsd.chatbot.store;
+
+import com.ajsd.chatbot.model.ConversationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+    ConversationStore which keeps every conversation encoded by the ConversationCodec
+    outside the heap. Only a small index entry per conversation stays on the heap, so
+    the number of conversations a node holds barely affects garbage collection.
+
+    Memory is handed out in chunks of fixed size classes (512 bytes to 1 MB, doubling),
+    each size class growing by segments of SEGMENT_BYTES. A conversation is written to
+    a free chunk of the smallest class which fits it, and its previous chunk is only
+    freed once the index points to the new one. Every chunk starts with a header:
+
+        | stamp (8) | expires at (8) | key length (4) | data length (4) | key | data |
+
+    where the stamp is unique to each write, and 0 for a free chunk.
+
+    Without a directory the segments are direct buffers. With one, each size class is a
+    file mapped in memory, and on start the index is rebuilt from the chunk headers, so
+    conversations which had not expired survive a restart. The ones which expired while
+    the node was down are freed, and reported to the expiry listeners by the sweep of
+    the first load or save, since no listener is registered yet while the store starts.
+
+    Reads take the read lock of the chunk's stripe and writes its write lock, so a chunk
+    is never reused while it is being read; the stamp tells a reader whose index entry
+    went stale that it has to look again.
+ **/
+public class OffHeapConversationStore extends AbstractConversationStore implements AutoCloseable {
+
+    private static final int HEADER_BYTES = 24;
+    private static final int MIN_CHUNK_BYTES = 512;
+    private static final int SIZE_CLASSES = 12;  // 512 bytes to 1 MB
+    private static final int SEGMENT_BYTES = 4 << 20;
+    private static final int STRIPES = 64;       // power of two
+
+    private final SizeClass[] sizeClasses = new SizeClass[SIZE_CLASSES];
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final AtomicLong stamps = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final ConversationArchive conversationArchive;
+    private final ConversationCodec conversationCodec;
+
+    // Conversations recover found expired, for the first sweep to report
+    private final Queue<String> expiredWhileDown = new ConcurrentLinkedQueue<>();
+
+    /**  Creates a store in direct memory when directory is null or empty, otherwise
+     *          backed by files in that directory, and recovers what they hold.
+     **/
+    public OffHeapConversationStore(long ttlMillis, String directory, ConversationArchive conversationArchive,
+                                    ConversationCodec conversationCodec) {
+        this(ttlMillis, directory, conversationArchive, conversationCodec, System::currentTimeMillis);
+    }
+
+    OffHeapConversationStore(long ttlMillis, String directory, ConversationArchive conversationArchive,
+                             ConversationCodec conversationCodec, LongSupplier clock) {
+        super(ttlMillis, clock);
+        this.conversationArchive = conversationArchive;
+        this.conversationCodec = conversationCodec;
+        Path path = directory == null || directory.isBlank() ? null : Path.of(directory);
+        try {
+            if (path != null) {
+                Files.createDirectories(path);
+            }
+            for (int i = 0; i < SIZE_CLASSES; i++) {
+                sizeClasses[i] = new SizeClass(MIN_CHUNK_BYTES << i,
+                        path == null ? null : path.resolve("conversations-" + (MIN_CHUNK_BYTES << i) + ".slab"));
+            }
+            if (path != null) {
+                recover();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening conversation store in " + directory, e);
+        }
+    }
+
+    @Override
+    public ConversationContext load(String conversationId) {
+        long now = now();
+        sweepIfDue(now);
+        while (true) {
+            Location location = index.get(conversationId);
+            if (location == null) {
+                return null;
+            }
+            if (location.expiresAt <= now) {
+                if (index.remove(conversationId, location)) {
+                    release(location);
+                    expired(conversationId);
+                }
+                return null;
+            }
+            byte[] data = read(location, expiresAt(now));
+            if (data != null) {
+                try {
+                    return conversationCodec.decode(data, conversationArchive.spillFor(conversationId));
+                } catch (RuntimeException e) {
+                    // Written by a build with another format or dictionary, or damaged: the conversation
+                    // starts over. Anything decode throws, so a bad chunk cannot fail every request of it
+                    remove(conversationId);
+                    return null;
+                }
+            }
+            // The chunk was rewritten by a newer save, look the conversation up again
+        }
+    }
+
+    @Override
+    public void save(String conversationId, ConversationContext context) {
+        long now = now();
+        sweepIfDue(now);
+        byte[] key = conversationId.getBytes(StandardCharsets.UTF_8);
+        byte[] data = conversationCodec.encode(context);
+        Location location = write(key, data, expiresAt(now));
+        storedBytes.addAndGet(location.length);
+        Location previous = index.put(conversationId, location);
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    @Override
+    public void remove(String conversationId) {
+        Location location = index.remove(conversationId);
+        if (location != null) {
+            release(location);
+            removed(conversationId);
+        }
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    /**  Bytes reserved by the segments of every size class, used or not.
+     **/
+    public long getReservedBytes() {
+        long bytes = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            bytes += (long) sizeClass.segments.length * SEGMENT_BYTES;
+        }
+        return bytes;
+    }
+
+    @Override
+    protected void sweep(long now) {
+        String conversationId;
+        while ((conversationId = expiredWhileDown.poll()) != null) {
+            expired(conversationId);
+        }
+        Iterator<Map.Entry<String, Location>> iterator = index.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Location> entry = iterator.next();
+            if (entry.getValue().expiresAt <= now && index.remove(entry.getKey(), entry.getValue())) {
+                release(entry.getValue());
+                expired(entry.getKey());
+            }
+        }
+    }
+
+    /**  Flushes the mapped files and closes them. Direct memory is left to the garbage collector.
+     **/
+    @Override
+    public void close() throws IOException {
+        for (SizeClass sizeClass : sizeClasses) {
+            sizeClass.close();
+        }
+    }
+
+    private Location write(byte[] key, byte[] data, long expiresAt) {
+        int length = HEADER_BYTES + key.length + data.length;
+        SizeClass sizeClass = sizeClassFor(length);
+        int chunk = sizeClass.allocate();
+        long stamp = stamps.incrementAndGet();
+
+        ReentrantReadWriteLock.WriteLock lock = sizeClass.stripe(chunk).writeLock();
+        lock.lock();
+        try {
+            ByteBuffer segment = sizeClass.segment(chunk);
+            int offset = sizeClass.offset(chunk);
+            segment.putLong(offset + 8, expiresAt);
+            segment.putInt(offset + 16, key.length);
+            segment.putInt(offset + 20, data.length);
+            segment.put(offset + HEADER_BYTES, key);
+            segment.put(offset + HEADER_BYTES + key.length, data);
+            // Last, so a chunk found with a stamp after a crash was written in full
+            segment.putLong(offset, stamp);
+        } finally {
+            lock.unlock();
+        }
+        return new Location(sizeClass, chunk, stamp, key.length, data.length, expiresAt);
+    }
+
+    // Returns the data of the conversation, or null when the chunk no longer holds this write
+    private byte[] read(Location location, long newExpiresAt) {
+        SizeClass sizeClass = location.sizeClass;
+        ReentrantReadWriteLock.ReadLock lock = sizeClass.stripe(location.chunk).readLock();
+        lock.lock();
+        try {
+            ByteBuffer segment = sizeClass.segment(location.chunk);
+            int offset = sizeClass.offset(location.chunk);
+            if (segment.getLong(offset) != location.stamp) {
+                return null;
+            }
+            byte[] data = new byte[location.dataLength];
+            segment.get(offset + HEADER_BYTES + location.keyLength, data);
+            location.expiresAt = newExpiresAt;
+            // Only read after a restart, so concurrent readers writing the same field is harmless
+            segment.putLong(offset + 8, newExpiresAt);
+            return data;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Location location) {
+        SizeClass sizeClass = location.sizeClass;
+        ReentrantReadWriteLock.WriteLock lock = sizeClass.stripe(location.chunk).writeLock();
+        lock.lock();
+        try {
+            ByteBuffer segment = sizeClass.segment(location.chunk);
+            int offset = sizeClass.offset(location.chunk);
+            if (segment.getLong(offset) != location.stamp) {
+                return;
+            }
+            segment.putLong(offset, 0);
+        } finally {
+            lock.unlock();
+        }
+        storedBytes.addAndGet(-location.length);
+        sizeClass.free(location.chunk);
+    }
+
+    private SizeClass sizeClassFor(int length) {
+        for (SizeClass sizeClass : sizeClasses) {
+            if (length <= sizeClass.chunkBytes) {
+                return sizeClass;
+            }
+        }
+        throw new IllegalArgumentException("Conversation too large to store: " + length + " bytes");
+    }
+
+    // Rebuilds the index from the chunk headers of the mapped files
+    private void recover() {
+        long now = now();
+        long maxStamp = 0;
+        Set<String> expiredIds = new LinkedHashSet<>();
+        for (SizeClass sizeClass : sizeClasses) {
+            for (int chunk = 0; chunk < sizeClass.nextUnused; chunk++) {
+                ByteBuffer segment = sizeClass.segment(chunk);
+                int offset = sizeClass.offset(chunk);
+                long stamp = segment.getLong(offset);
+                long expiresAt = segment.getLong(offset + 8);
+                if (stamp == 0) {
+                    sizeClass.free(chunk);
+                    continue;
+                }
+                byte[] key = new byte[segment.getInt(offset + 16)];
+                segment.get(offset + HEADER_BYTES, key);
+                if (expiresAt <= now) {
+                    expiredIds.add(new String(key, StandardCharsets.UTF_8));
+                    segment.putLong(offset, 0);
+                    sizeClass.free(chunk);
+                    continue;
+                }
+                Location location = new Location(sizeClass, chunk, stamp, key.length, segment.getInt(offset + 20), expiresAt);
+                Location previous = index.get(new String(key, StandardCharsets.UTF_8));
+                // A crash between writing a new chunk and freeing the old one leaves both, keep the newest
+                if (previous == null || previous.stamp < stamp) {
+                    index.put(new String(key, StandardCharsets.UTF_8), location);
+                    storedBytes.addAndGet(location.length);
+                    if (previous != null) {
+                        release(previous);
+                    }
+                } else {
+                    segment.putLong(offset, 0);
+                    sizeClass.free(chunk);
+                }
+                maxStamp = Math.max(maxStamp, stamp);
+            }
+        }
+        stamps.set(maxStamp);
+        // An expired chunk may be an older copy of a conversation which is still live
+        expiredIds.removeAll(index.keySet());
+        if (!expiredIds.isEmpty()) {
+            expiredWhileDown.addAll(expiredIds);
+            sweepNow();
+        }
+    }
+
+    private static final class Location {
+        private final SizeClass sizeClass;
+        private final int chunk;
+        private final long stamp;
+        private final int keyLength;
+        private final int dataLength;
+        private final int length;
+        private volatile long expiresAt;
+
+        private Location(SizeClass sizeClass, int chunk, long stamp, int keyLength, int dataLength, long expiresAt) {
+            this.sizeClass = sizeClass;
+            this.chunk = chunk;
+            this.stamp = stamp;
+            this.keyLength = keyLength;
+            this.dataLength = dataLength;
+            this.length = HEADER_BYTES + keyLength + dataLength;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class SizeClass {
+        private final int chunkBytes;
+        private final int chunksPerSegment;
+        private final FileChannel channel; // null for direct memory
+        private final ReentrantLock allocationLock = new ReentrantLock();
+        private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[STRIPES];
+        private volatile ByteBuffer[] segments = new ByteBuffer[0];
+        private int[] freeChunks = new int[16];
+        private int freeCount;
+        private int nextUnused;
+
+        private SizeClass(int chunkBytes, Path file) throws IOException {
+            this.chunkBytes = chunkBytes;
+            this.chunksPerSegment = SEGMENT_BYTES / chunkBytes;
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new ReentrantReadWriteLock();
+            }
+            if (file == null) {
+                this.channel = null;
+                return;
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long existingSegments = channel.size() / SEGMENT_BYTES;
+            for (long i = 0; i < existingSegments; i++) {
+                addSegment();
+            }
+            nextUnused = segments.length * chunksPerSegment;
+        }
+
+        private ReentrantReadWriteLock stripe(int chunk) {
+            return stripes[chunk & (STRIPES - 1)];
+        }
+
+        private ByteBuffer segment(int chunk) {
+            return segments[chunk / chunksPerSegment];
+        }
+
+        private int offset(int chunk) {
+            return (chunk % chunksPerSegment) * chunkBytes;
+        }
+
+        private int allocate() {
+            allocationLock.lock();
+            try {
+                if (freeCount > 0) {
+                    return freeChunks[--freeCount];
+                }
+                if (nextUnused == segments.length * chunksPerSegment) {
+                    addSegment();
+                }
+                return nextUnused++;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error growing the conversation store", e);
+            } finally {
+                allocationLock.unlock();
+            }
+        }
+
+        private void free(int chunk) {
+            allocationLock.lock();
+            try {
+                if (freeCount == freeChunks.length) {
+                    freeChunks = Arrays.copyOf(freeChunks, freeCount * 2);
+                }
+                freeChunks[freeCount++] = chunk;
+            } finally {
+                allocationLock.unlock();
+            }
+        }
+
+        private void addSegment() throws IOException {
+            ByteBuffer segment = channel == null
+                    ? ByteBuffer.allocateDirect(SEGMENT_BYTES)
+                    : channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.length * SEGMENT_BYTES, SEGMENT_BYTES);
+            ByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+            grown[segments.length] = segment;
+            segments = grown;
+        }
+
+        private void close() throws IOException {
+            if (channel == null) {
+                return;
+            }
+            for (ByteBuffer segment : segments) {
+                ((MappedByteBuffer) segment).force();
+            }
+            channel.close();
+        }
+    }
+}
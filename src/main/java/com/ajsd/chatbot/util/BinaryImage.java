@@ -0,0 +1,178 @@
+package com.ajsd.chatbot.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+    Reading and writing of the values a precompiled data image is made of. Images are
+    written once, at build time, with a DataOutputStream, and read back from a
+    ByteBuffer holding the whole image. Both sides are big endian.
+
+    Arrays are written as their length followed by the values; a String as the length
+    of its UTF-8 encoding followed by the bytes. A buffer which ends early throws a
+    BufferUnderflowException, a length longer than what is left of the buffer an
+    IllegalArgumentException.
+
+    Strings which are only needed now and then are written as a StringTable instead:
+    the offset of every string, then the strings, so a single one is decoded straight
+    from the buffer when it is asked for, and the others stay bytes in the image.
+ **/
+public final class BinaryImage {
+
+    private BinaryImage() {
+    }
+
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[length(in, 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    public static String[] readStrings(ByteBuffer in) {
+        String[] values = new String[length(in, Integer.BYTES)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(in);
+        }
+        return values;
+    }
+
+    public static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    public static int[] readInts(ByteBuffer in) {
+        int[] values = new int[length(in, Integer.BYTES)];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    public static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    public static long[] readLongs(ByteBuffer in) {
+        long[] values = new long[length(in, Long.BYTES)];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + values.length * Long.BYTES);
+        return values;
+    }
+
+    public static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        out.writeInt(values.length);
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+
+    public static float[] readFloats(ByteBuffer in) {
+        float[] values = new float[length(in, Float.BYTES)];
+        in.asFloatBuffer().get(values);
+        in.position(in.position() + values.length * Float.BYTES);
+        return values;
+    }
+
+    /**  Writes the values as a StringTable:
+     *
+     *              count               int
+     *              offsets             int per value, from the start of the strings
+     *              strings length      int
+     *              strings             the values, each written as by writeString
+     **/
+    public static void writeStringTable(DataOutputStream out, String[] values) throws IOException {
+        byte[][] encoded = new byte[values.length][];
+        out.writeInt(values.length);
+        int offset = 0;
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+            out.writeInt(offset);
+            offset += Integer.BYTES + encoded[i].length;
+        }
+        out.writeInt(offset);
+        for (byte[] value : encoded) {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    /**  Reads a table written by writeStringTable, without decoding any of its strings.
+     *          The table keeps reading from the buffer, which must not change afterwards.
+     *          Every offset and length is checked here, so a damaged table fails now
+     *          rather than when one of its strings is asked for.
+     **/
+    public static StringTable readStringTable(ByteBuffer in) {
+        int count = length(in, Integer.BYTES);
+        ByteBuffer offsets = in.slice(in.position(), count * Integer.BYTES);
+        in.position(in.position() + count * Integer.BYTES);
+        int stringsLength = length(in, 1);
+        ByteBuffer strings = in.slice(in.position(), stringsLength);
+        in.position(in.position() + stringsLength);
+        for (int i = 0; i < count; i++) {
+            int offset = offsets.getInt(i * Integer.BYTES);
+            if (offset < 0 || offset > strings.capacity() - Integer.BYTES
+                    || strings.getInt(offset) < 0 || strings.getInt(offset) > strings.capacity() - offset - Integer.BYTES) {
+                throw new IllegalArgumentException("Invalid string " + i + " in image");
+            }
+        }
+        return new StringTable(count, offsets, strings);
+    }
+
+    /**  Strings of an image, decoded one at a time when they are asked for. Reads are
+     *          absolute, so any number of threads may read a table at once.
+     **/
+    public static final class StringTable {
+        private final int size;
+        private final ByteBuffer offsets;
+        private final ByteBuffer strings;
+
+        private StringTable(int size, ByteBuffer offsets, ByteBuffer strings) {
+            this.size = size;
+            this.offsets = offsets;
+            this.strings = strings;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**  Decodes the string at the index, a new String every time.
+         **/
+        public String get(int index) {
+            int offset = offsets.getInt(Objects.checkIndex(index, size) * Integer.BYTES);
+            byte[] bytes = new byte[strings.getInt(offset)];
+            strings.get(offset + Integer.BYTES, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Checked against what is left, so a damaged image cannot ask for a huge array
+    private static int length(ByteBuffer in, int elementBytes) {
+        int length = in.getInt();
+        if (length < 0 || (long) length * elementBytes > in.remaining()) {
+            throw new IllegalArgumentException("Invalid length " + length + " in image");
+        }
+        return length;
+    }
+}
@@ -0,0 +1,260 @@
+package com.ajsd.chatbot.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+    Burkhard–Keller tree over the Levenshtein distance between lowercase terms.
+
+    Every child of a node is filed under its distance to that node, so a search for
+    the terms within distance d of a query only descends into the children filed
+    between distance(query, node) - d and distance(query, node) + d. With the small
+    distances used for typo correction this visits a small, slowly growing part of
+    the tree however many terms it holds.
+
+    A search is bounded three ways: distances are computed with an early exit as soon
+    as they exceed what could still matter, at most maxVisits nodes are examined, and
+    the search stops once its time budget is spent. The cost of a single lookup thus
+    has a hard upper bound whatever the dictionary size.
+
+    Building the tree computes a distance per level for every term, so a tree can be
+    written to a precompiled data image and read back in linear time (see
+    FuzzyResolver.write).
+ **/
+public final class BkTree {
+
+    private final Node root;
+    private final int size;
+
+    public BkTree(List<String> terms) {
+        Node first = null;
+        int count = 0;
+        for (int index = 0; index < terms.size(); index++) {
+            if (first == null) {
+                first = new Node(terms.get(index), index);
+                count++;
+            } else if (first.add(terms.get(index), index)) {
+                count++;
+            }
+        }
+        this.root = first;
+        this.size = count;
+    }
+
+    private BkTree(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**  Writes the tree, with every term as its index in the list the tree was built
+     *          from: the nodes in depth-first order, each one as its term, the position of
+     *          its parent (-1 for the root) and its distance to the parent.
+     **/
+    public void write(DataOutputStream out) throws IOException {
+        int[] terms = new int[size];
+        int[] parentPositions = new int[size];
+        int[] distances = new int[size];
+        // Depth first, with the children of a node in the order they were added
+        List<Node> stack = new ArrayList<>();
+        List<Integer> stackParents = new ArrayList<>();
+        List<Integer> stackDistances = new ArrayList<>();
+        if (root != null) {
+            stack.add(root);
+            stackParents.add(-1);
+            stackDistances.add(0);
+        }
+        int position = 0;
+        while (!stack.isEmpty()) {
+            int last = stack.size() - 1;
+            Node node = stack.remove(last);
+            terms[position] = node.index;
+            parentPositions[position] = stackParents.remove(last);
+            distances[position] = stackDistances.remove(last);
+            for (int i = node.childCount - 1; i >= 0; i--) {
+                stack.add(node.children[i]);
+                stackParents.add(position);
+                stackDistances.add(node.childDistances[i]);
+            }
+            position++;
+        }
+        BinaryImage.writeInts(out, terms);
+        BinaryImage.writeInts(out, parentPositions);
+        BinaryImage.writeInts(out, distances);
+    }
+
+    /**  Reads back a tree written by write(), over the same list of terms.
+     **/
+    public static BkTree read(ByteBuffer in, String[] terms) {
+        int[] termIndexes = BinaryImage.readInts(in);
+        int[] parentPositions = BinaryImage.readInts(in);
+        int[] distances = BinaryImage.readInts(in);
+        if (parentPositions.length != termIndexes.length || distances.length != termIndexes.length) {
+            throw new IllegalArgumentException("Inconsistent BK-tree in image");
+        }
+        Node[] nodes = new Node[termIndexes.length];
+        for (int position = 0; position < nodes.length; position++) {
+            int index = termIndexes[position];
+            int parent = parentPositions[position];
+            if (index < 0 || index >= terms.length || (position == 0) != (parent == -1) || parent >= position
+                    || (parent >= 0 && distances[position] <= 0)) {
+                throw new IllegalArgumentException("Inconsistent BK-tree in image");
+            }
+            nodes[position] = new Node(terms[index], index);
+            if (parent >= 0) {
+                nodes[parent].addChild(distances[position], nodes[position]);
+            }
+        }
+        return new BkTree(nodes.length == 0 ? null : nodes[0], nodes.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**  Returns the terms within maxDistance of the query, closest first, ties in
+     *          alphabetical order, at most maxResults of them. The search gives up after
+     *          examining maxVisits nodes or spending budgetNanos, and returns what it has
+     *          found so far.
+     **/
+    public List<Match> search(String query, int maxDistance, int maxResults, int maxVisits, long budgetNanos) {
+        List<Match> matches = new ArrayList<>();
+        if (root == null) {
+            return matches;
+        }
+        int[] previous = new int[query.length() + 1];
+        int[] current = new int[query.length() + 1];
+
+        Node[] stack = new Node[64];
+        int top = 0;
+        stack[top++] = root;
+        int visits = 0;
+        long deadline = System.nanoTime() + budgetNanos;
+        while (top > 0 && visits < maxVisits) {
+            // Reading the clock costs about as much as a short distance, so only do it every 32 nodes
+            if ((visits & 31) == 31 && System.nanoTime() > deadline) {
+                break;
+            }
+            Node node = stack[--top];
+            visits++;
+            // Children can only be pruned with the exact distance, so compute it up to the widest child bucket
+            int distance = distance(query, node.term, maxDistance + node.maxChildDistance, previous, current);
+            if (distance <= maxDistance) {
+                matches.add(new Match(node.term, distance));
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                if (Math.abs(node.childDistances[i] - distance) <= maxDistance) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = node.children[i];
+                }
+            }
+        }
+
+        matches.sort((a, b) -> a.distance != b.distance ? Integer.compare(a.distance, b.distance) : a.term.compareTo(b.term));
+        return matches.size() > maxResults ? new ArrayList<>(matches.subList(0, maxResults)) : matches;
+    }
+
+    /**  Levenshtein distance, or limit + 1 as soon as it is known to exceed limit.
+     **/
+    static int distance(String a, String b, int limit, int[] previous, int[] current) {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return limit + 1;
+        }
+        for (int i = 0; i <= a.length(); i++) {
+            previous[i] = i;
+        }
+        for (int j = 1; j <= b.length(); j++) {
+            current[0] = j;
+            int rowMinimum = j;
+            char bc = b.charAt(j - 1);
+            for (int i = 1; i <= a.length(); i++) {
+                int cost = a.charAt(i - 1) == bc ? 0 : 1;
+                int value = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                current[i] = value;
+                rowMinimum = Math.min(rowMinimum, value);
+            }
+            if (rowMinimum > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[a.length()], limit + 1);
+    }
+
+    public static final class Match {
+        private final String term;
+        private final int distance;
+
+        Match(String term, int distance) {
+            this.term = term;
+            this.distance = distance;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    private static final class Node {
+        private final String term;
+        private final int index;  // in the list of terms the tree was built from
+        private int[] childDistances = new int[0];
+        private Node[] children = new Node[0];
+        private int childCount;
+        private int maxChildDistance;
+
+        private Node(String term, int index) {
+            this.term = term;
+            this.index = index;
+        }
+
+        // Returns false when the term is already in the tree
+        private boolean add(String term, int index) {
+            Node node = this;
+            while (true) {
+                int length = Math.max(term.length(), node.term.length());
+                int distance = distance(term, node.term, length, new int[term.length() + 1], new int[term.length() + 1]);
+                if (distance == 0) {
+                    return false;
+                }
+                Node child = node.child(distance);
+                if (child == null) {
+                    node.addChild(distance, new Node(term, index));
+                    return true;
+                }
+                node = child;
+            }
+        }
+
+        private Node child(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (childDistances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private void addChild(int distance, Node child) {
+            if (childCount == children.length) {
+                int capacity = Math.max(2, childCount * 2);
+                childDistances = Arrays.copyOf(childDistances, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            childDistances[childCount] = distance;
+            children[childCount++] = child;
+            maxChildDistance = Math.max(maxChildDistance, distance);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.ajsd.chatbot.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+    Resolves a misspelled name to the names it was most likely meant to be. Both
+    structures below are built with the resolver, which is built with the CountrySnapshot
+    on the loading thread, so no lookup ever waits for one of them:
+
+    1. One typo (the common case): a symmetric-delete index. Every name is filed under
+       a hash of itself and of each variant with one character deleted. Two strings
+       within one edit of each other share such a variant, so a lookup is the
+       length-of-the-input hash lookups into a sorted array, plus verification of the
+       few candidates, whatever the number of names.
+
+    2. Two typos, for inputs longer than 5 characters when nothing is one edit away:
+       a BkTree search, capped at MAX_VISITS nodes and BUDGET_NANOS, so a lookup never
+       costs more than a fixed, small amount of time.
+
+    A resolver can be written to a precompiled data image and read back (see
+    CountryDataImage), which skips hashing and sorting the deletion variants and
+    computing the distances the tree is built from.
+ **/
+public final class FuzzyResolver {
+
+    private static final int MAX_VISITS = 5_000;
+    private static final long BUDGET_NANOS = 2_000_000L; // 2 ms
+    private static final int MAX_CANDIDATES = 3;
+
+    // Packed deletion entries: 40 bits of variant hash, 24 bits of name id
+    private static final int ID_BITS = 24;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final int MAX_NAMES = 1 << ID_BITS;
+
+    private final String[] keys;  // lowercase names, by id
+    private final Map<String, String> namesByKey; // lowercase name -> name as it should be shown
+    private final long[] deletions; // sorted
+    private final BkTree tree;
+
+    public FuzzyResolver(Collection<String> names) {
+        if (names.size() > MAX_NAMES) {
+            throw new IllegalArgumentException("Too many names for the fuzzy index: " + names.size());
+        }
+        this.namesByKey = new HashMap<>(names.size() * 2);
+        for (String name : names) {
+            namesByKey.put(name.toLowerCase(Locale.ROOT), name);
+        }
+        this.keys = namesByKey.keySet().toArray(new String[0]);
+
+        int entries = 0;
+        for (String key : keys) {
+            entries += key.length() + 1;
+        }
+        long[] packed = new long[entries];
+        int next = 0;
+        for (int id = 0; id < keys.length; id++) {
+            for (int skip = -1; skip < keys[id].length(); skip++) {
+                packed[next++] = (hashWithout(keys[id], skip) << ID_BITS) | id;
+            }
+        }
+        Arrays.sort(packed);
+        this.deletions = packed;
+        this.tree = new BkTree(Arrays.asList(keys));
+    }
+
+    private FuzzyResolver(String[] keys, String[] names, long[] deletions, BkTree tree) {
+        this.keys = keys;
+        this.namesByKey = new HashMap<>(keys.length * 2);
+        for (int id = 0; id < keys.length; id++) {
+            namesByKey.put(keys[id], names[id]);
+        }
+        this.deletions = deletions;
+        this.tree = tree;
+    }
+
+    /**  Writes the resolver to a precompiled data image.
+     **/
+    public void write(DataOutputStream out) throws IOException {
+        String[] names = new String[keys.length];
+        for (int id = 0; id < keys.length; id++) {
+            names[id] = namesByKey.get(keys[id]);
+        }
+        BinaryImage.writeStrings(out, keys);
+        BinaryImage.writeStrings(out, names);
+        BinaryImage.writeLongs(out, deletions);
+        tree.write(out);
+    }
+
+    /**  Reads back a resolver written by write().
+     **/
+    public static FuzzyResolver read(ByteBuffer in) {
+        String[] keys = BinaryImage.readStrings(in);
+        String[] names = BinaryImage.readStrings(in);
+        long[] deletions = BinaryImage.readLongs(in);
+        if (names.length != keys.length) {
+            throw new IllegalArgumentException("Inconsistent fuzzy index in image");
+        }
+        for (int i = 0; i < deletions.length; i++) {
+            if ((deletions[i] & ID_MASK) >= keys.length || (i > 0 && deletions[i] < deletions[i - 1])) {
+                throw new IllegalArgumentException("Inconsistent fuzzy index in image");
+            }
+        }
+        BkTree tree = BkTree.read(in, keys);
+        if (tree.size() != keys.length) {
+            throw new IllegalArgumentException("Inconsistent fuzzy index in image");
+        }
+        return new FuzzyResolver(keys, names, deletions, tree);
+    }
+
+    public Resolution resolve(String input) {
+        String query = input.trim().toLowerCase(Locale.ROOT);
+        List<BkTree.Match> matches = withinOneEdit(query);
+        if (matches.isEmpty() && query.length() > 5) {
+            matches = tree.search(query, 2, MAX_CANDIDATES, MAX_VISITS, BUDGET_NANOS);
+        }
+
+        List<String> candidates = new ArrayList<>(matches.size());
+        for (BkTree.Match match : matches) {
+            candidates.add(namesByKey.get(match.getTerm()));
+        }
+        // Only take a guess when a single name is closer than every other one
+        boolean confident = matches.size() == 1
+                || (matches.size() > 1 && matches.get(0).getDistance() < matches.get(1).getDistance());
+        return new Resolution(candidates, confident);
+    }
+
+    private List<BkTree.Match> withinOneEdit(String query) {
+        List<BkTree.Match> matches = new ArrayList<>();
+        int[] seen = new int[8];
+        int seenCount = 0;
+        int[] previous = new int[query.length() + 1];
+        int[] current = new int[query.length() + 1];
+
+        for (int skip = -1; skip < query.length(); skip++) {
+            long hash = hashWithout(query, skip);
+            for (int i = lowerBound(hash << ID_BITS); i < deletions.length && (deletions[i] >>> ID_BITS) == hash; i++) {
+                int id = (int) (deletions[i] & ID_MASK);
+                if (contains(seen, seenCount, id)) {
+                    continue;
+                }
+                if (seenCount == seen.length) {
+                    seen = Arrays.copyOf(seen, seenCount * 2);
+                }
+                seen[seenCount++] = id;
+                // Shared variants also come from two-edit pairs and hash collisions, verify
+                int distance = BkTree.distance(query, keys[id], 1, previous, current);
+                if (distance <= 1) {
+                    matches.add(new BkTree.Match(keys[id], distance));
+                }
+            }
+        }
+
+        matches.sort((a, b) -> a.getDistance() != b.getDistance()
+                ? Integer.compare(a.getDistance(), b.getDistance()) : a.getTerm().compareTo(b.getTerm()));
+        return matches.size() > MAX_CANDIDATES ? new ArrayList<>(matches.subList(0, MAX_CANDIDATES)) : matches;
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = deletions.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (deletions[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 40-bit FNV-1a hash of the string with the character at skip left out (-1 keeps them all)
+    private static long hashWithout(String value, int skip) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            if (i != skip) {
+                hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        return (hash ^ (hash >>> 40)) & 0xFFFFFFFFFFL;
+    }
+
+    public static final class Resolution {
+        private final List<String> candidates;
+        private final boolean confident;
+
+        private Resolution(List<String> candidates, boolean confident) {
+            this.candidates = Collections.unmodifiableList(candidates);
+            this.confident = confident;
+        }
+
+        /**  The best match, or null when nothing is close enough.
+         **/
+        public String getBest() {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+
+        /**  The "did you mean" candidates, closest first.
+         **/
+        public List<String> getCandidates() {
+            return candidates;
+        }
+
+        /**  True when the best match is closer than any other candidate.
+         **/
+        public boolean isConfident() {
+            return confident;
+        }
+    }
+}
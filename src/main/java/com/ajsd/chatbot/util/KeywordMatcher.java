@@ -0,0 +1,114 @@
+package com.ajsd.chatbot.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+    Aho–Corasick matcher which finds every keyword contained in a text in a single
+    left-to-right scan, however many keywords there are.
+
+    Each keyword is tagged with a trigger id between 0 and 63. match() returns a bit
+    mask with bit n set when a keyword tagged n occurs anywhere in the text, so the
+    result of a scan is a single long and matching never allocates.
+
+    The automaton is compiled into a dense transition table at construction time.
+    Keywords must be lowercase ASCII; any other character in the text simply sends
+    the automaton back to its root.
+ **/
+public final class KeywordMatcher {
+
+    private static final int ASCII = 128;
+
+    private final int[] symbolOf = new int[ASCII]; // char -> column in the transition table, 0 = not in any keyword
+    private final int alphabetSize;
+    private final int[] transitions; // state * alphabetSize + symbol -> next state
+    private final long[] outputs; // state -> triggers of every keyword ending in that state
+
+    public KeywordMatcher(Map<String, Integer> keywordTriggers) {
+        int symbols = 1;
+        for (String keyword : keywordTriggers.keySet()) {
+            if (keyword.isEmpty()) {
+                throw new IllegalArgumentException("Keywords must not be empty");
+            }
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                if (c >= ASCII || Character.isUpperCase(c)) {
+                    throw new IllegalArgumentException("Keyword must be lowercase ASCII: " + keyword);
+                }
+                if (symbolOf[c] == 0) {
+                    symbolOf[c] = symbols++;
+                }
+            }
+        }
+        this.alphabetSize = symbols;
+
+        // 1. Build the trie
+        List<int[]> trie = new ArrayList<>();
+        List<Long> trieOutputs = new ArrayList<>();
+        trie.add(new int[alphabetSize]);
+        trieOutputs.add(0L);
+        for (Map.Entry<String, Integer> entry : keywordTriggers.entrySet()) {
+            int trigger = entry.getValue();
+            if (trigger < 0 || trigger > 63) {
+                throw new IllegalArgumentException("Trigger id must be between 0 and 63: " + trigger);
+            }
+            int state = 0;
+            for (int i = 0; i < entry.getKey().length(); i++) {
+                int symbol = symbolOf[entry.getKey().charAt(i)];
+                if (trie.get(state)[symbol] == 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    trie.add(new int[alphabetSize]);
+                    trieOutputs.add(0L);
+                }
+                state = trie.get(state)[symbol];
+            }
+            trieOutputs.set(state, trieOutputs.get(state) | (1L << trigger));
+        }
+
+        // 2. Breadth-first pass turning the trie into a DFA: missing edges follow the failure links
+        int states = trie.size();
+        this.transitions = new int[states * alphabetSize];
+        this.outputs = new long[states];
+        int[] failure = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 1; symbol < alphabetSize; symbol++) {
+            int next = trie.get(0)[symbol];
+            transitions[symbol] = next;
+            if (next != 0) {
+                queue.add(next);
+            }
+        }
+        outputs[0] = trieOutputs.get(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = trieOutputs.get(state) | outputs[failure[state]];
+            for (int symbol = 1; symbol < alphabetSize; symbol++) {
+                int next = trie.get(state)[symbol];
+                if (next != 0) {
+                    failure[next] = transitions[failure[state] * alphabetSize + symbol];
+                    transitions[state * alphabetSize + symbol] = next;
+                    queue.add(next);
+                } else {
+                    transitions[state * alphabetSize + symbol] = transitions[failure[state] * alphabetSize + symbol];
+                }
+            }
+        }
+    }
+
+    /**  Scans the text once and returns the bit mask of the triggers of every keyword
+     *          it contains. The text is expected to be lowercased already.
+     **/
+    public long match(CharSequence text) {
+        long found = 0L;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int symbol = c < ASCII ? symbolOf[c] : 0;
+            state = transitions[state * alphabetSize + symbol];
+            found |= outputs[state];
+        }
+        return found;
+    }
+}
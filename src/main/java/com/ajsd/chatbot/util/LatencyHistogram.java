@@ -0,0 +1,132 @@
+package com.ajsd.chatbot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+    Histogram of durations in nanoseconds, in the style of an HdrHistogram: values
+    below 16 get a bucket each, above that every power of two is split into 8 equal
+    buckets, so any recorded value is known to within 12.5%. Values are capped at
+    2^40 ns (about 18 minutes).
+
+    Recording is a few arithmetic operations and one atomic increment, and never
+    allocates. To keep threads from fighting over the same counter the buckets are
+    striped: a thread increments the copy of the stripe its id hashes to, and the
+    stripes are only added up when the histogram is read. The stripe is worked out from
+    the id on every record, with no per-thread state, since with virtual threads every
+    request runs on a new thread. The id is mixed by a multiplication first, so ids
+    which follow a pattern, such as every 8th one, still spread over all the stripes.
+ **/
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final int STRIPE_BITS = 3;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+        int stripe = stripeOf(Thread.currentThread());
+        counts.incrementAndGet(stripe * BUCKETS + bucketOf(value));
+        sum.add(value);
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            // retry, another thread raised the max
+        }
+    }
+
+    /**  Adds up the stripes into a Snapshot. Values recorded while the snapshot is
+     *          taken may or may not be in it.
+     **/
+    public Snapshot snapshot() {
+        long[] merged = new long[BUCKETS];
+        long count = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                long bucketCount = counts.get(stripe * BUCKETS + bucket);
+                merged[bucket] += bucketCount;
+                count += bucketCount;
+            }
+        }
+        return new Snapshot(merged, count, sum.sum(), max.get());
+    }
+
+    // The top bits of the id times 2^64 / golden ratio. getId() as threadId() is Java 19 and later
+    @SuppressWarnings("deprecation")
+    static int stripeOf(Thread thread) {
+        return (int) (thread.getId() * 0x9E3779B97F4A7C15L >>> (64 - STRIPE_BITS));
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    // Largest value which falls into the bucket
+    static long highestValueOf(int bucket) {
+        int group = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        if (group == 0) {
+            return sub;
+        }
+        int shift = group - 1;
+        return (((long) (SUB_BUCKETS + sub + 1)) << shift) - 1;
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**  Sum of all recorded values, in nanoseconds.
+         **/
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**  Returns the value, in nanoseconds, below which the given fraction (0 to 1)
+         *          of the recorded values fall, rounded up to the end of its bucket.
+         **/
+        public long getValueAtQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(bucket), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.ajsd.chatbot.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+    Read-only index answering "starts with", "ends with" and "contains" queries over a
+    set of names. Everything is lowercased and sorted once when the index is built:
+
+    1. Prefix lookup: binary search in the sorted lowercase names, then a scan of the
+       matching run.  O(log n + k)
+    2. Suffix lookup: the same over the reversed names, the matches are mapped back to
+       their position in the sorted names.  O(log n + k log k)
+    3. Substring lookup: posting lists of every 1, 2 and 3 character gram of the names.
+       Queries of up to 3 characters are a single posting list, longer queries scan the
+       shortest posting list of their trigrams and verify each candidate. The grams are
+       kept sorted, with all the posting lists end to end in a single int[], and found
+       by binary search.
+
+    All queries return the names as they were given to the index, in case-insensitive
+    alphabetical order, without lowercasing any name again.
+
+    An index can be written to a precompiled data image and read back (see
+    CountryDataImage), which skips the sorting and the building of the posting lists.
+ **/
+public final class NameSearchIndex {
+
+    private static final int MAX_GRAM = 3;
+
+    private final String[] names;        // original names, sorted by their lowercase form
+    private final String[] lowerNames;   // lowercase names, sorted
+    private final String[] reversedNames; // lowercase names reversed, sorted
+    private final int[] reversedToSorted; // position in reversedNames -> position in names
+    private final String[] grams;        // every gram, sorted
+    private final int[] gramStarts;      // gram -> start of its positions, one more entry for the end
+    private final int[] gramPositions;   // ascending positions in names, gram after gram
+
+    public NameSearchIndex(Collection<String> names) {
+        int size = names.size();
+        String[][] pairs = new String[size][];
+        int i = 0;
+        for (String name : names) {
+            pairs[i++] = new String[]{name.toLowerCase(Locale.ROOT), name};
+        }
+        Arrays.sort(pairs, (a, b) -> a[0].compareTo(b[0]));
+
+        this.names = new String[size];
+        this.lowerNames = new String[size];
+        for (i = 0; i < size; i++) {
+            this.lowerNames[i] = pairs[i][0];
+            this.names[i] = pairs[i][1];
+        }
+
+        Integer[] byReversed = new Integer[size];
+        String[] reversed = new String[size];
+        for (i = 0; i < size; i++) {
+            byReversed[i] = i;
+            reversed[i] = new StringBuilder(lowerNames[i]).reverse().toString();
+        }
+        Arrays.sort(byReversed, (a, b) -> reversed[a].compareTo(reversed[b]));
+        this.reversedNames = new String[size];
+        this.reversedToSorted = new int[size];
+        for (i = 0; i < size; i++) {
+            reversedNames[i] = reversed[byReversed[i]];
+            reversedToSorted[i] = byReversed[i];
+        }
+
+        // Positions are added in ascending order, so every posting list comes out sorted
+        Map<String, IntList> postings = new HashMap<>();
+        for (i = 0; i < size; i++) {
+            String name = lowerNames[i];
+            for (int length = 1; length <= MAX_GRAM; length++) {
+                for (int start = 0; start + length <= name.length(); start++) {
+                    postings.computeIfAbsent(name.substring(start, start + length), gram -> new IntList()).addOnce(i);
+                }
+            }
+        }
+        this.grams = postings.keySet().toArray(new String[0]);
+        Arrays.sort(grams);
+        this.gramStarts = new int[grams.length + 1];
+        for (i = 0; i < grams.length; i++) {
+            gramStarts[i + 1] = gramStarts[i] + postings.get(grams[i]).size;
+        }
+        this.gramPositions = new int[gramStarts[grams.length]];
+        for (i = 0; i < grams.length; i++) {
+            IntList positions = postings.get(grams[i]);
+            System.arraycopy(positions.values, 0, gramPositions, gramStarts[i], positions.size);
+        }
+    }
+
+    private NameSearchIndex(String[] names, int[] reversedToSorted, String[] grams, int[] gramStarts, int[] gramPositions) {
+        this.names = names;
+        this.reversedToSorted = reversedToSorted;
+        this.grams = grams;
+        this.gramStarts = gramStarts;
+        this.gramPositions = gramPositions;
+        this.lowerNames = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            lowerNames[i] = names[i].toLowerCase(Locale.ROOT);
+        }
+        this.reversedNames = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            reversedNames[i] = new StringBuilder(lowerNames[reversedToSorted[i]]).reverse().toString();
+        }
+    }
+
+    /**  Writes the index to a precompiled data image.
+     **/
+    public void write(DataOutputStream out) throws IOException {
+        BinaryImage.writeStrings(out, names);
+        BinaryImage.writeInts(out, reversedToSorted);
+        BinaryImage.writeStrings(out, grams);
+        BinaryImage.writeInts(out, gramStarts);
+        BinaryImage.writeInts(out, gramPositions);
+    }
+
+    /**  Reads back an index written by write().
+     **/
+    public static NameSearchIndex read(ByteBuffer in) {
+        String[] names = BinaryImage.readStrings(in);
+        int[] reversedToSorted = BinaryImage.readInts(in);
+        String[] grams = BinaryImage.readStrings(in);
+        int[] gramStarts = BinaryImage.readInts(in);
+        int[] gramPositions = BinaryImage.readInts(in);
+        if (reversedToSorted.length != names.length || gramStarts.length != grams.length + 1
+                || gramStarts[grams.length] != gramPositions.length) {
+            throw new IllegalArgumentException("Inconsistent name search index in image");
+        }
+        for (int position : reversedToSorted) {
+            checkPosition(position, names.length);
+        }
+        for (int position : gramPositions) {
+            checkPosition(position, names.length);
+        }
+        return new NameSearchIndex(names, reversedToSorted, grams, gramStarts, gramPositions);
+    }
+
+    private static void checkPosition(int position, int size) {
+        if (position < 0 || position >= size) {
+            throw new IllegalArgumentException("Position " + position + " out of range in image");
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**  Returns every name in case-insensitive alphabetical order.
+     **/
+    public String[] all() {
+        return names.clone();
+    }
+
+    public String[] startingWith(String prefix) {
+        String query = prefix.toLowerCase(Locale.ROOT);
+        int from = lowerBound(lowerNames, query);
+        int to = from;
+        while (to < lowerNames.length && lowerNames[to].startsWith(query)) {
+            to++;
+        }
+        return Arrays.copyOfRange(names, from, to);
+    }
+
+    public String[] endingWith(String suffix) {
+        String query = new StringBuilder(suffix.toLowerCase(Locale.ROOT)).reverse().toString();
+        int from = lowerBound(reversedNames, query);
+        int to = from;
+        while (to < reversedNames.length && reversedNames[to].startsWith(query)) {
+            to++;
+        }
+        int[] positions = new int[to - from];
+        for (int i = from; i < to; i++) {
+            positions[i - from] = reversedToSorted[i];
+        }
+        Arrays.sort(positions);
+        return namesAt(positions, 0, positions.length);
+    }
+
+    public String[] containing(String part) {
+        String query = part.toLowerCase(Locale.ROOT);
+        if (query.isEmpty()) {
+            return all();
+        }
+        if (query.length() <= MAX_GRAM) {
+            int gram = Arrays.binarySearch(grams, query);
+            return gram < 0 ? new String[0] : namesAt(gramPositions, gramStarts[gram], gramStarts[gram + 1]);
+        }
+
+        // Candidates come from the rarest trigram of the query, each one is then verified
+        int candidates = -1;
+        for (int start = 0; start + MAX_GRAM <= query.length(); start++) {
+            int gram = Arrays.binarySearch(grams, query.substring(start, start + MAX_GRAM));
+            if (gram < 0) {
+                return new String[0];
+            }
+            if (candidates < 0 || postingCount(gram) < postingCount(candidates)) {
+                candidates = gram;
+            }
+        }
+        int[] matches = new int[postingCount(candidates)];
+        int count = 0;
+        for (int i = gramStarts[candidates]; i < gramStarts[candidates + 1]; i++) {
+            if (lowerNames[gramPositions[i]].contains(query)) {
+                matches[count++] = gramPositions[i];
+            }
+        }
+        return namesAt(matches, 0, count);
+    }
+
+    private int postingCount(int gram) {
+        return gramStarts[gram + 1] - gramStarts[gram];
+    }
+
+    private String[] namesAt(int[] positions, int from, int to) {
+        String[] result = new String[to - from];
+        for (int i = from; i < to; i++) {
+            result[i - from] = names[positions[i]];
+        }
+        return result;
+    }
+
+    // First position whose value is not less than the key
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Growable int array used while building the posting lists
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+    }
+}
@@ -0,0 +1,109 @@
+package com.ajsd.chatbot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+    Bounded queue for many producer threads and a single consumer thread, which never
+    locks (the array queue of Dmitry Vyukov). Once it is built, offer and poll allocate
+    nothing of their own; the elements are whatever the producers made.
+
+    Every slot carries a sequence number telling whose turn it is: a producer claims the
+    next position with one compare-and-set of the tail, stores its element, and then
+    publishes it by advancing the sequence of the slot; the consumer takes the element
+    once it sees that sequence, and advances it once more to hand the slot back to the
+    producers of the next lap. A producer which finds the slot of its position still
+    taken knows the queue is full, and offer() returns false rather than waiting.
+ **/
+public final class RingBuffer<E> {
+
+    private final int mask;
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;  // only written by the consumer
+
+    /**  capacity is rounded up to a power of two.
+     **/
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        elements = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**  Adds the element, or returns false when the queue is full. Safe to call from
+     *          any number of threads.
+     **/
+    public boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    sequences.set(index, position + 1);  // publishes the element
+                    return true;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                return false;  // the consumer has not taken the element of the last lap yet
+            } else {
+                position = tail.get();  // another producer claimed this position
+            }
+        }
+    }
+
+    /**  Removes the oldest element, or returns null when there is none. Only to be called
+     *          from the consumer thread.
+     **/
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;  // empty, or claimed by a producer which has not stored it yet
+        }
+        E element = (E) elements[index];
+        elements[index] = null;
+        sequences.set(index, position + elements.length);  // hands the slot to the next lap
+        head = position + 1;
+        return element;
+    }
+
+    /**  Passes up to limit of the oldest elements to consumer, and returns how many it
+     *          passed. Only to be called from the consumer thread.
+     **/
+    public int drain(Consumer<? super E> consumer, int limit) {
+        int drained = 0;
+        E element;
+        while (drained < limit && (element = poll()) != null) {
+            consumer.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**  Elements in the queue, including those claimed but not yet stored. Only an
+     *          estimate while producers are adding.
+     **/
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, elements.length));
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+}
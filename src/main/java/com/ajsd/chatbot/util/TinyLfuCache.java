@@ -0,0 +1,273 @@
+package com.ajsd.chatbot.util;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+    Cache bounded by the weight of its entries, with the W-TinyLFU policy of Caffeine:
+
+    1. A read is a ConcurrentHashMap lookup, which marks the entry as referenced and
+       counts the key in a FrequencySketch. Reads never lock.
+    2. New entries go to a small window, about 1% of the weight, ordered by insertion.
+       The window lets a burst of new keys in without it pushing out the popular ones.
+    3. An entry pushed out of the window becomes a candidate for the main space, which
+       is swept by a CLOCK: referenced entries get a second chance, the first one not
+       referenced since the last sweep is the victim. The candidate only gets in when
+       its key was asked for more often than the victim's, according to the sketch;
+       otherwise the candidate is dropped. Keys seen once, which are most keys in a
+       scan, never displace the entries which are asked for again and again.
+
+    Writes and evictions take a lock. Two threads missing the same key at once may
+    both compute the value; the first one stored is kept.
+ **/
+public final class TinyLfuCache<K, V> {
+
+    private static final int WINDOW_PERCENT = 1;
+
+    private final Map<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    private final ToIntBiFunction<K, V> weigher;
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final FrequencySketch sketch;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock
+    private final ArrayDeque<Node<K, V>> window = new ArrayDeque<>();
+    private final ArrayDeque<Node<K, V>> main = new ArrayDeque<>();
+    private long windowWeight;
+    private long mainWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**  maxWeight bounds the sum of the weights given by the weigher, expectedEntries
+     *          sizes the frequency sketch.
+     **/
+    public TinyLfuCache(long maxWeight, int expectedEntries, ToIntBiFunction<K, V> weigher) {
+        this.maxWeight = maxWeight;
+        this.windowMaxWeight = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    /**  Returns the value of the key, or null when it is not cached.
+     **/
+    public V getIfPresent(K key) {
+        int hash = key.hashCode();
+        sketch.increment(hash);
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        node.referenced = true;
+        hits.increment();
+        return node.value;
+    }
+
+    /**  Returns the value of the key, computed by loader and cached when it is missing.
+     *          loader must not return null.
+     **/
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        return put(key, loader.apply(key));
+    }
+
+    // Returns the value cached for the key, which is not the given one when another thread stored it first
+    private V put(K key, V value) {
+        int weight = weigher.applyAsInt(key, value);
+        lock.lock();
+        try {
+            Node<K, V> existing = map.get(key);
+            if (existing != null) {
+                return existing.value;
+            }
+            if (weight > maxWeight - windowMaxWeight) {
+                rejections.increment();  // would never fit in the main space
+                return value;
+            }
+            Node<K, V> node = new Node<>(key, value, weight);
+            map.put(key, node);
+            window.addLast(node);
+            windowWeight += weight;
+            while (windowWeight > windowMaxWeight) {
+                Node<K, V> candidate = window.pollFirst();
+                windowWeight -= candidate.weight;
+                admit(candidate);
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Moves an entry from the window to the main space, if it beats the victims it displaces
+    private void admit(Node<K, V> candidate) {
+        long mainMaxWeight = maxWeight - windowMaxWeight;
+        int candidateFrequency = sketch.frequency(candidate.key.hashCode());
+        while (mainWeight + candidate.weight > mainMaxWeight) {
+            Node<K, V> victim = nextVictim();
+            if (candidateFrequency <= sketch.frequency(victim.key.hashCode())) {
+                main.addFirst(victim);  // stays the next victim
+                map.remove(candidate.key, candidate);
+                rejections.increment();
+                return;
+            }
+            map.remove(victim.key, victim);
+            mainWeight -= victim.weight;
+            evictions.increment();
+        }
+        main.addLast(candidate);
+        mainWeight += candidate.weight;
+    }
+
+    // The CLOCK sweep: the first entry not referenced since it was last passed
+    private Node<K, V> nextVictim() {
+        while (true) {
+            Node<K, V> node = main.pollFirst();
+            if (!node.referenced) {
+                return node;
+            }
+            node.referenced = false;
+            main.addLast(node);
+        }
+    }
+
+    /**  Drops every entry. The frequencies are kept, they are about keys, not values.
+     **/
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            map.clear();
+            window.clear();
+            main.clear();
+            windowWeight = 0;
+            mainWeight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long getWeight() {
+        lock.lock();
+        try {
+            return windowWeight + mainWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**  Entries dropped from the main space to make room for a more frequent one.
+     **/
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**  Values not kept, because their key was less frequent than the victim's or the
+     *          value was too heavy to ever fit.
+     **/
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        volatile boolean referenced;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**  Count-min sketch of how often keys were asked for: four counters per key, in four
+     *          rows, and the smallest of the four is the estimate. Counters stop at 15, and
+     *          all of them are halved once as many keys have been counted as ten times the
+     *          width, so the frequencies follow what is popular now.
+     *
+     *          Increments are not atomic: an increment lost to a concurrent one makes the
+     *          estimate a little low, which costs far less than making every read contend.
+     **/
+    static final class FrequencySketch {
+
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97CB3127, 0xB492B66F, 0x9AE16A3B, 0xC2B2AE35};
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(16, expectedEntries - 1) << 1);
+            counters = new byte[ROWS * width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int row = 0; row < ROWS; row++) {
+                int index = index(hash, row);
+                if (counters[index] < MAX_COUNT) {
+                    counters[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < ROWS; row++) {
+                frequency = Math.min(frequency, counters[index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] >>= 1;
+            }
+            additions = 0;
+        }
+
+        private int index(int hash, int row) {
+            int spread = hash * SEEDS[row];
+            spread ^= spread >>> 16;
+            return row * (mask + 1) + (spread & mask);
+        }
+    }
+}
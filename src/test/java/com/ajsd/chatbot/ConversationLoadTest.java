@@ -0,0 +1,278 @@
+package com.ajsd.chatbot;
+
+import com.ajsd.chatbot.config.ConversationCookie;
+import com.ajsd.chatbot.model.ConversationFeatures;
+import com.ajsd.chatbot.util.LatencyHistogram;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+	Load test of /chat: boots the application on a random local port and drives
+	thousands of concurrent scripted conversations through ChatbotController, the way
+	the page does. Every conversation starts without a cookie, keeps the conversation
+	cookie it is given, and goes teach -> topic -> country or condition -> options.
+
+	Each scenario is run on its own, after a warmup which is not reported, and prints
+	its throughput, latency percentiles, errors (failed requests, and replies which did
+	not understand a scripted message) and the GC work and peak heap of the JVM. The
+	clients run in the same JVM as the server, so the heap and GC figures include them.
+
+	Nothing leaves the machine. Run with:
+
+		mvn -Pload-test test
+
+	and change the load with -Dchatbot.load-test.clients=2000 (concurrent conversations)
+	and -Dchatbot.load-test.conversations=5 (conversations per client, one after another).
+ */
+@EnabledIfSystemProperty(named = "chatbot.load-test", matches = "true")
+class ConversationLoadTest {
+
+	private static final int CLIENTS = Integer.getInteger("chatbot.load-test.clients", 1000);
+	private static final int CONVERSATIONS = Integer.getInteger("chatbot.load-test.conversations", 5);
+	private static final int WARMUP_CONVERSATIONS = 1;
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+	// The scripted conversations, one user message per turn
+	private static final Scenario[] SCENARIOS = {
+			new Scenario("countries", "teach", "A", "France", "a", "b", "c", "d", "e", "Japan", "d", "e", "Germny", "a"),
+			new Scenario("country search", "teach", "A", "b", "ma", "Malta", "c", "e", "d", "land", "Finland", "a", "summary"),
+			new Scenario("medicine", "teach", "B", "asthma", "a", "b", "c", "d", "f", "what causes headaches",
+					"diabetes", "e", "back", "again")
+	};
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void conversationsUnderLoad() throws Exception {
+		ConfigurableApplicationContext application = new SpringApplicationBuilder(ChatbotApplication.class)
+				.properties("server.port=0",
+						"server.tomcat.max-connections=" + CLIENTS * 2,
+						"server.tomcat.accept-count=" + CLIENTS,
+						"chatbot.rate-limit.capacity=4000",
+						"chatbot.data.countries.watch=false",
+						"logging.level.com.ajsd.chatbot=WARN")
+				.run();
+		ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+		try {
+			URI chat = URI.create("http://localhost:"
+					+ application.getEnvironment().getRequiredProperty("local.server.port", Integer.class) + "/chat");
+			HttpClient httpClient = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_1_1)
+					.connectTimeout(REQUEST_TIMEOUT)
+					.build();
+
+			List<Result> results = new ArrayList<>();
+			for (Scenario scenario : SCENARIOS) {
+				run(scenario, WARMUP_CONVERSATIONS, httpClient, chat, clients);
+				results.add(run(scenario, CONVERSATIONS, httpClient, chat, clients));
+			}
+
+			System.out.printf("%n%d concurrent clients, %d conversations each%n", CLIENTS, CONVERSATIONS);
+			System.out.println(Result.HEADER);
+			for (Result result : results) {
+				System.out.println(result);
+			}
+			for (Result result : results) {
+				assertEquals(0, result.errors, "failed requests in " + result.scenario);
+				assertEquals(0, result.notUnderstood, "replies which did not understand the script in " + result.scenario);
+			}
+		} finally {
+			clients.shutdownNow();
+			application.close();
+		}
+	}
+
+	private Result run(Scenario scenario, int conversations, HttpClient httpClient, URI chat, ExecutorService clients)
+			throws InterruptedException {
+		LatencyHistogram latencies = new LatencyHistogram();
+		AtomicLong errors = new AtomicLong();
+		AtomicLong notUnderstood = new AtomicLong();
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(CLIENTS);
+		for (int client = 0; client < CLIENTS; client++) {
+			clients.execute(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < conversations; i++) {
+						converse(scenario, httpClient, chat, latencies, errors, notUnderstood);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+
+		HeapStatistics heap = new HeapStatistics();
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		return new Result(scenario.name, latencies.snapshot(), elapsed, errors.get(), notUnderstood.get(), heap.since());
+	}
+
+	// One conversation of the scenario, from its first message without a cookie to its last
+	private void converse(Scenario scenario, HttpClient httpClient, URI chat, LatencyHistogram latencies,
+						  AtomicLong errors, AtomicLong notUnderstood) throws InterruptedException {
+		String cookie = null;
+		for (String message : scenario.messages) {
+			HttpRequest.Builder request = HttpRequest.newBuilder(chat)
+					.timeout(REQUEST_TIMEOUT)
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(objectMapper.createObjectNode().put("message", message).toString()));
+			if (cookie != null) {
+				request.header("Cookie", cookie);
+			}
+
+			long begin = System.nanoTime();
+			HttpResponse<String> response;
+			try {
+				response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				latencies.record(System.nanoTime() - begin);
+				errors.incrementAndGet();
+				return;
+			}
+			latencies.record(System.nanoTime() - begin);
+			if (response.statusCode() != 200) {
+				errors.incrementAndGet();
+				return;
+			}
+
+			if (cookie == null) {
+				cookie = conversationCookie(response);
+				if (cookie == null) {
+					errors.incrementAndGet();
+					return;
+				}
+			}
+			if (lastReply(response.body()).startsWith(ConversationFeatures.NOT_UNDERSTOOD)) {
+				notUnderstood.incrementAndGet();
+			}
+		}
+	}
+
+	private static String conversationCookie(HttpResponse<?> response) {
+		for (String setCookie : response.headers().allValues("Set-Cookie")) {
+			if (setCookie.startsWith(ConversationCookie.NAME + "=")) {
+				int end = setCookie.indexOf(';');
+				return end < 0 ? setCookie : setCookie.substring(0, end);
+			}
+		}
+		return null;
+	}
+
+	private String lastReply(String body) {
+		try {
+			JsonNode messages = objectMapper.readTree(body).path("messages");
+			return messages.size() == 0 ? "" : messages.get(messages.size() - 1).path("content").asText();
+		} catch (Exception e) {
+			return "";
+		}
+	}
+
+	private static final class Scenario {
+		final String name;
+		final String[] messages;
+
+		Scenario(String name, String... messages) {
+			this.name = name;
+			this.messages = messages;
+		}
+	}
+
+	/**  Collections and collection time of every collector, and the peak use of every
+	 *          heap pool, from when it was created. The sum of the pool peaks is an upper
+	 *          bound of the peak heap, since the pools do not peak at the same time.
+	 **/
+	private static final class HeapStatistics {
+		private final long collections;
+		private final long collectionMillis;
+
+		HeapStatistics() {
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) {
+					pool.resetPeakUsage();
+				}
+			}
+			long count = 0;
+			long millis = 0;
+			for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+				count += Math.max(0, collector.getCollectionCount());
+				millis += Math.max(0, collector.getCollectionTime());
+			}
+			this.collections = count;
+			this.collectionMillis = millis;
+		}
+
+		String since() {
+			HeapStatistics now = new HeapStatistics();
+			long peakBytes = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) {
+					peakBytes += pool.getPeakUsage().getUsed();
+				}
+			}
+			return String.format("%d GCs, %d ms in GC, peak heap %d MB",
+					now.collections - collections, now.collectionMillis - collectionMillis, peakBytes >> 20);
+		}
+	}
+
+	private static final class Result {
+		static final String HEADER = String.format("%-16s %9s %10s %8s %8s %8s %8s %8s %7s %7s  %s",
+				"scenario", "requests", "req/s", "p50 ms", "p95 ms", "p99 ms", "p999 ms", "max ms", "errors", "not und", "heap");
+
+		final String scenario;
+		final LatencyHistogram.Snapshot latencies;
+		final double throughput;
+		final long errors;
+		final long notUnderstood;
+		final String heap;
+
+		Result(String scenario, LatencyHistogram.Snapshot latencies, long elapsedNanos, long errors, long notUnderstood, String heap) {
+			this.scenario = scenario;
+			this.latencies = latencies;
+			this.throughput = latencies.getCount() * 1e9 / elapsedNanos;
+			this.errors = errors;
+			this.notUnderstood = notUnderstood;
+			this.heap = heap;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-16s %9d %10.0f %8.2f %8.2f %8.2f %8.2f %8.2f %7d %7d  %s",
+					scenario, latencies.getCount(), throughput, millis(0.50), millis(0.95), millis(0.99), millis(0.999),
+					latencies.getMax() / 1e6, errors, notUnderstood, heap);
+		}
+
+		private double millis(double quantile) {
+			return latencies.getValueAtQuantile(quantile) / 1e6;
+		}
+	}
+}
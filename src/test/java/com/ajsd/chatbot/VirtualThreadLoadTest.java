@@ -0,0 +1,153 @@
+package com.ajsd.chatbot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+	Serves thousands of concurrent slow clients, once on the Tomcat thread pool and once
+	on virtual threads, and compares throughput and p99 latency. Each client trickles
+	its request body, so the request thread blocks reading it just as it would on slow
+	I/O in the pipeline: the pool can only serve as many of those at a time as it has
+	threads, while virtual threads are parked and cost almost nothing while they wait.
+
+	Run with a Java 21 build and runtime:
+
+		mvn -Pjava21 test -Dtest=VirtualThreadLoadTest -Dchatbot.load-test=true
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+@EnabledIfSystemProperty(named = "chatbot.load-test", matches = "true")
+class VirtualThreadLoadTest {
+
+	private static final int CLIENTS = 2000;
+	private static final int REQUESTS_PER_CLIENT = 3;
+	private static final int BODY_CHUNKS = 4;
+	private static final long CHUNK_DELAY_MILLIS = 50;
+	private static final int POOL_THREADS = 200;  // the Tomcat default
+
+	@Test
+	void virtualThreadsServeSlowClientsBetterThanThePool() throws Exception {
+		Result pool = run(false);
+		Result virtual = run(true);
+
+		System.out.printf("thread pool:     %s%nvirtual threads: %s%n", pool, virtual);
+		assertEquals(0, pool.failures, "failed requests on the thread pool");
+		assertEquals(0, virtual.failures, "failed requests on virtual threads");
+		assertTrue(virtual.throughput > pool.throughput, "throughput should be higher on virtual threads");
+		assertTrue(virtual.p99Millis < pool.p99Millis, "p99 latency should be lower on virtual threads");
+	}
+
+	private static Result run(boolean virtualThreads) throws Exception {
+		ConfigurableApplicationContext application = new SpringApplicationBuilder(ChatbotApplication.class)
+				.properties("server.port=0",
+						"spring.threads.virtual.enabled=" + virtualThreads,
+						"server.tomcat.threads.max=" + POOL_THREADS,
+						"server.tomcat.max-connections=" + CLIENTS * 2,
+						"server.tomcat.accept-count=" + CLIENTS,
+						"chatbot.data.countries.watch=false",
+						"logging.level.com.ajsd.chatbot=WARN")
+				.run();
+		try {
+			int port = application.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+			return load(port);
+		} finally {
+			application.close();
+		}
+	}
+
+	private static Result load(int port) throws InterruptedException {
+		long[] latencies = new long[CLIENTS * REQUESTS_PER_CLIENT];
+		AtomicInteger failures = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(CLIENTS);
+		ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+
+		for (int client = 0; client < CLIENTS; client++) {
+			int first = client * REQUESTS_PER_CLIENT;
+			clients.execute(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+						long begin = System.nanoTime();
+						if (!slowRequest(port)) {
+							failures.incrementAndGet();
+						}
+						latencies[first + i] = System.nanoTime() - begin;
+					}
+				} catch (Exception e) {
+					failures.incrementAndGet();
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		clients.shutdown();
+		clients.awaitTermination(10, TimeUnit.SECONDS);
+
+		Arrays.sort(latencies);
+		long p99 = latencies[(int) (latencies.length * 0.99) - 1];
+		return new Result(latencies.length * 1e9 / elapsed, p99 / 1e6, failures.get());
+	}
+
+	// Sends one chat message with its body split in chunks, and reads the status of the response
+	private static boolean slowRequest(int port) throws Exception {
+		byte[] body = "{\"message\":\"teach\"}".getBytes(StandardCharsets.UTF_8);
+		try (Socket socket = new Socket("localhost", port)) {
+			OutputStream out = socket.getOutputStream();
+			out.write(("POST /chat HTTP/1.1\r\n"
+					+ "Host: localhost\r\n"
+					+ "Content-Type: application/json\r\n"
+					+ "Content-Length: " + body.length + "\r\n"
+					+ "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			int chunk = (body.length + BODY_CHUNKS - 1) / BODY_CHUNKS;
+			for (int offset = 0; offset < body.length; offset += chunk) {
+				out.write(body, offset, Math.min(chunk, body.length - offset));
+				out.flush();
+				Thread.sleep(CHUNK_DELAY_MILLIS);
+			}
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			String status = in.readLine();
+			return status != null && status.startsWith("HTTP/1.1 200");
+		}
+	}
+
+	private static final class Result {
+		final double throughput;
+		final double p99Millis;
+		final int failures;
+
+		Result(double throughput, double p99Millis, int failures) {
+			this.throughput = throughput;
+			this.p99Millis = p99Millis;
+			this.failures = failures;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.0f requests/s, p99 %.0f ms, %d failed", throughput, p99Millis, failures);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.model.CountryProperty;
+import com.ajsd.chatbot.model.CountryStore;
+import com.ajsd.chatbot.util.FuzzyResolver;
+import com.ajsd.chatbot.util.NameSearchIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CountryDataImageTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void imageAnswersLikeTheJson() throws IOException {
+		Path json = bundledDataIn("countries.json");
+		CountryDataImage.compile(json.toString(), directory.resolve("countries.bin"));
+
+		CountryDataImage image = CountryDataImage.load(json.toString());
+		assertNotNull(image);
+
+		CountryStore store = new CountryDataReader().read(json.toString());
+		NameSearchIndex searchIndex = new NameSearchIndex(store.names());
+		FuzzyResolver fuzzyResolver = new FuzzyResolver(store.names());
+
+		assertEquals(store.names(), image.getStore().names());
+		for (int id = 0; id < store.size(); id++) {
+			for (CountryProperty property : CountryProperty.values()) {
+				assertEquals(store.get(id, property), image.getStore().get(id, property));
+			}
+		}
+		for (String part : new String[] {"", "a", "ma", "an", "land", "ia", "united", "zz"}) {
+			assertArrayEquals(searchIndex.startingWith(part), image.getSearchIndex().startingWith(part), part);
+			assertArrayEquals(searchIndex.endingWith(part), image.getSearchIndex().endingWith(part), part);
+			assertArrayEquals(searchIndex.containing(part), image.getSearchIndex().containing(part), part);
+		}
+		for (String typo : new String[] {"Frnace", "germny", "Japn", "untied states", "xyz", "Argntna", "Swtzerlnd", "Portgul"}) {
+			FuzzyResolver.Resolution expected = fuzzyResolver.resolve(typo);
+			FuzzyResolver.Resolution actual = image.getFuzzyResolver().resolve(typo);
+			assertEquals(expected.getBest(), actual.getBest(), typo);
+			assertEquals(expected.getCandidates(), actual.getCandidates(), typo);
+			assertEquals(expected.isConfident(), actual.isConfident(), typo);
+		}
+	}
+
+	@Test
+	void imageOfChangedJsonIsNotUsed() throws IOException {
+		Path json = bundledDataIn("countries.json");
+		CountryDataImage.compile(json.toString(), directory.resolve("countries.bin"));
+
+		Files.writeString(json, " " + Files.readString(json));
+
+		assertNull(CountryDataImage.load(json.toString()));
+	}
+
+	@Test
+	void imageOfJsonChangedInPlaceIsNotUsed() throws IOException {
+		Path json = bundledDataIn("countries.json");
+		CountryDataImage.compile(json.toString(), directory.resolve("countries.bin"));
+		FileTime compiled = Files.getLastModifiedTime(json);
+
+		// Same length, so only the time tells it changed
+		Files.writeString(json, Files.readString(json).replaceFirst("Paris", "Lyons"));
+		Files.setLastModifiedTime(json, FileTime.fromMillis(compiled.toMillis() + 2000));
+
+		assertNull(CountryDataImage.load(json.toString()));
+	}
+
+	@Test
+	void imageInAJarIsCheckedAgainstTheCrcOfTheJsonEntry() throws IOException {
+		Path json = bundledDataIn("countries.json");
+		Path image = directory.resolve("countries.bin");
+		CountryDataImage.compile(json.toString(), image);
+		byte[] bundled = Files.readAllBytes(json);
+
+		try (URLClassLoader classLoader = jar("current.jar", bundled, Files.readAllBytes(image))) {
+			CountryDataImage loaded = CountryDataImage.load("", classLoader);
+			assertNotNull(loaded);
+			assertEquals(new CountryDataReader().read(json.toString()).names(), loaded.getStore().names());
+		}
+		byte[] changed = new String(bundled, StandardCharsets.UTF_8).replaceFirst("Paris", "Lyons").getBytes(StandardCharsets.UTF_8);
+		try (URLClassLoader classLoader = jar("changed.jar", changed, Files.readAllBytes(image))) {
+			assertNull(CountryDataImage.load("", classLoader));
+		}
+	}
+
+	@Test
+	void damagedImageIsNotUsed() throws IOException {
+		Path json = bundledDataIn("countries.json");
+		Path image = directory.resolve("countries.bin");
+		CountryDataImage.compile(json.toString(), image);
+
+		byte[] bytes = Files.readAllBytes(image);
+		Files.write(image, Arrays.copyOf(bytes, bytes.length - 1));
+
+		assertNull(CountryDataImage.load(json.toString()));
+	}
+
+	@Test
+	void missingImageIsNotUsed() throws IOException {
+		Path json = bundledDataIn("countries.json");
+
+		assertNull(CountryDataImage.load(json.toString()));
+		assertNull(CountryDataImage.load(directory.toString()));
+	}
+
+	// A class loader which only sees a jar holding the bundled data and its image
+	private URLClassLoader jar(String name, byte[] json, byte[] image) throws IOException {
+		Path jar = directory.resolve(name);
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+			out.putNextEntry(new JarEntry(CountryDataReader.CLASSPATH_RESOURCE));
+			out.write(json);
+			out.putNextEntry(new JarEntry(CountryDataImage.CLASSPATH_RESOURCE));
+			out.write(image);
+		}
+		return new URLClassLoader(new URL[] {jar.toUri().toURL()}, null);
+	}
+
+	private Path bundledDataIn(String name) throws IOException {
+		Path json = directory.resolve(name);
+		try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(CountryDataReader.CLASSPATH_RESOURCE)) {
+			Files.write(json, inputStream.readAllBytes());
+		}
+		return json;
+	}
+}
@@ -0,0 +1,51 @@
+package com.ajsd.chatbot.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CountryDataLoaderTest {
+
+	private final CountryDataLoader loader = new CountryDataLoader("", false);
+
+	@Test
+	void listenerFailingLeavesWhatOtherListenersPreparedUncommitted() {
+		loader.loadCountryData();
+		List<Long> committed = new ArrayList<>();
+		AtomicBoolean failing = new AtomicBoolean(true);
+		loader.addSnapshotListener(snapshot -> () -> committed.add(snapshot.getGeneration()));
+		loader.addSnapshotListener(snapshot -> {
+			if (failing.get()) {
+				throw new IllegalStateException("cannot derive anything from generation " + snapshot.getGeneration());
+			}
+			return () -> committed.add(-snapshot.getGeneration());
+		});
+
+		assertThrows(RuntimeException.class, loader::reloadCountryData);
+		assertEquals(List.of(), committed);
+		assertEquals(1, loader.getSnapshot().getGeneration());
+		assertEquals(1L, loader.getReloadStatistics().get("failedReloads"));
+
+		failing.set(false);
+		loader.reloadCountryData();
+		assertEquals(List.of(2L, -2L), committed);
+		assertEquals(2, loader.getSnapshot().getGeneration());
+	}
+
+	@Test
+	void preparedStatesAreCommittedBeforeTheSnapshotIsPublished() {
+		loader.loadCountryData();
+		List<Long> publishedWhenCommitted = new ArrayList<>();
+		loader.addSnapshotListener(snapshot -> () -> publishedWhenCommitted.add(loader.getSnapshot().getGeneration()));
+
+		CountrySnapshot next = loader.reloadCountryData();
+
+		assertEquals(List.of(1L), publishedWhenCommitted);
+		assertEquals(next, loader.getSnapshot());
+	}
+}
@@ -0,0 +1,89 @@
+package com.ajsd.chatbot.config;
+
+import com.ajsd.chatbot.model.MedicalProperty;
+import com.ajsd.chatbot.model.MedicalStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MedicalDataImageTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void imageAnswersLikeTheJson() throws IOException {
+		Path json = bundledDataIn("medical.json");
+		MedicalDataImage.compile(json.toString(), directory.resolve("medical.bin"));
+
+		MedicalStore image = MedicalDataImage.load(json.toString());
+		assertNotNull(image);
+
+		MedicalStore store = new MedicalDataReader().read(json.toString());
+		assertEquals(store.names(), image.names());
+		assertEquals(store.termCount(), image.termCount());
+		for (int id = 0; id < store.size(); id++) {
+			assertEquals(id, image.idOf(store.name(id).toUpperCase()));
+			for (MedicalProperty property : MedicalProperty.values()) {
+				assertEquals(store.get(id, property), image.get(id, property));
+			}
+		}
+		for (String question : new String[] {"what causes headaches", "frequent urination and thirst", "chest pain",
+				"shortness of breath and wheezing", "fever", "I feel tired and dizzy", "nothing known"}) {
+			for (int limit = 1; limit <= 5; limit++) {
+				assertArrayEquals(store.search(question, limit), image.search(question, limit), question);
+			}
+		}
+	}
+
+	@Test
+	void imageOfChangedJsonIsNotUsed() throws IOException {
+		Path json = bundledDataIn("medical.json");
+		MedicalDataImage.compile(json.toString(), directory.resolve("medical.bin"));
+
+		Files.writeString(json, " " + Files.readString(json));
+
+		assertNull(MedicalDataImage.load(json.toString()));
+	}
+
+	@Test
+	void damagedImageIsNotUsed() throws IOException {
+		Path json = bundledDataIn("medical.json");
+		Path image = directory.resolve("medical.bin");
+		MedicalDataImage.compile(json.toString(), image);
+
+		byte[] bytes = Files.readAllBytes(image);
+		Files.write(image, Arrays.copyOf(bytes, bytes.length - 1));
+
+		assertNull(MedicalDataImage.load(json.toString()));
+	}
+
+	@Test
+	void countryImageIsNotTakenForAMedicalOne() throws IOException {
+		Path json = bundledDataIn("medical.json");
+		try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(CountryDataReader.CLASSPATH_RESOURCE)) {
+			Files.write(directory.resolve("countries.json"), inputStream.readAllBytes());
+		}
+		CountryDataImage.compile(directory.resolve("countries.json").toString(), directory.resolve("medical.bin"));
+
+		assertNull(MedicalDataImage.load(json.toString()));
+	}
+
+	private Path bundledDataIn(String name) throws IOException {
+		Path json = directory.resolve(name);
+		try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(MedicalDataReader.CLASSPATH_RESOURCE)) {
+			Files.write(json, inputStream.readAllBytes());
+		}
+		return json;
+	}
+}
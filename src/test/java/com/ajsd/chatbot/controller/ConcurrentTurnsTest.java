@@ -0,0 +1,143 @@
+package com.ajsd.chatbot.controller;
+
+import com.ajsd.chatbot.config.ConversationCookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+	Fires interleaved turns of one conversation from several threads, plus a second
+	conversation in parallel, and checks that no turn was lost or mixed with another:
+	every response carries exactly its own message and reply, and the history holds
+	every message once, in USER/BOT pairs with consecutive sequence numbers.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"chatbot.history.capacity=1000",
+		"chatbot.rate-limit.capacity=4000",
+		"chatbot.data.countries.watch=false"
+})
+class ConcurrentTurnsTest {
+
+	private static final int THREADS = 8;
+	private static final int TURNS_PER_THREAD = 25;
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Test
+	void turnsOfOneConversationAreAppliedOneAtATime() throws Exception {
+		String conversation = startConversation();
+		String other = startConversation();
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (int thread = 0; thread < THREADS; thread++) {
+			results.add(executor.submit(sender(conversation, "message " + thread, start)));
+			results.add(executor.submit(sender(other, "other " + thread, start)));
+		}
+		start.countDown();
+		for (Future<Integer> result : results) {
+			assertEquals(TURNS_PER_THREAD, result.get());
+		}
+		executor.shutdown();
+
+		assertConsistentHistory(conversation, "message ");
+		assertConsistentHistory(other, "other ");
+	}
+
+	// Sends its turns one after another, and checks each response only holds that turn
+	private Callable<Integer> sender(String conversation, String prefix, CountDownLatch start) {
+		return () -> {
+			start.await();
+			int applied = 0;
+			for (int turn = 0; turn < TURNS_PER_THREAD; turn++) {
+				String message = prefix + "-" + turn;
+				ResponseEntity<Map> response = restTemplate.exchange("/chat/delta", HttpMethod.POST,
+						new HttpEntity<>(Map.of("message", message), headers(conversation)), Map.class);
+				assertEquals(HttpStatus.OK, response.getStatusCode());
+
+				List<Map<String, Object>> messages = messages(response.getBody());
+				assertEquals(2, messages.size(), "a turn adds exactly two messages");
+				assertEquals("USER", messages.get(0).get("sender"));
+				assertEquals(message, messages.get(0).get("content"));
+				assertEquals("BOT", messages.get(1).get("sender"));
+				assertEquals(sequence(messages.get(0)) + 1, sequence(messages.get(1)));
+				applied++;
+			}
+			return applied;
+		};
+	}
+
+	private void assertConsistentHistory(String conversation, String prefix) {
+		ResponseEntity<Map> response = restTemplate.exchange("/chat/messages?since=0&limit=10000", HttpMethod.GET,
+				new HttpEntity<>(headers(conversation)), Map.class);
+		List<Map<String, Object>> messages = messages(response.getBody());
+
+		// The opening turn, then every turn of every thread
+		assertEquals(2 * (1 + THREADS * TURNS_PER_THREAD), messages.size());
+		assertEquals(sequence(messages.get(messages.size() - 1)), ((Number) response.getBody().get("sequence")).longValue());
+
+		Set<Object> userMessages = new HashSet<>();
+		for (int i = 0; i < messages.size(); i++) {
+			Map<String, Object> message = messages.get(i);
+			assertEquals(sequence(messages.get(0)) + i, sequence(message), "sequence numbers are consecutive");
+			assertEquals(i % 2 == 0 ? "USER" : "BOT", message.get("sender"), "turns are not interleaved");
+			if (i > 1 && i % 2 == 0) {
+				assertTrue(((String) message.get("content")).startsWith(prefix), "conversations are not mixed");
+				assertTrue(userMessages.add(message.get("content")), "every message is applied once");
+			}
+		}
+		assertEquals(THREADS * TURNS_PER_THREAD, userMessages.size());
+	}
+
+	private String startConversation() {
+		ResponseEntity<Map> response = restTemplate.postForEntity("/chat", Map.of("message", "start"), Map.class);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		for (String cookie : response.getHeaders().getOrEmpty(HttpHeaders.SET_COOKIE)) {
+			if (cookie.startsWith(ConversationCookie.NAME + "=")) {
+				return cookie.substring(0, cookie.indexOf(';'));
+			}
+		}
+		throw new AssertionError("No conversation cookie was set");
+	}
+
+	private static HttpHeaders headers(String conversation) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.add(HttpHeaders.COOKIE, conversation);
+		return headers;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> messages(Map<?, ?> body) {
+		assertNotNull(body);
+		return (List<Map<String, Object>>) body.get("messages");
+	}
+
+	private static long sequence(Map<String, Object> message) {
+		return ((Number) message.get("seq")).longValue();
+	}
+}
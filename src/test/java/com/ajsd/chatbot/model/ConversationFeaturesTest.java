@@ -0,0 +1,90 @@
+package com.ajsd.chatbot.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ConversationFeaturesTest {
+
+	private final ConversationContext context = new ConversationContext();
+
+	@Test
+	void recentCountriesKeepTheLastFewOldestFirst() {
+		context.setCurrentTopic(Topic.COUNTRIES);
+		assertEquals(ConversationContext.NO_COUNTRY, context.getFeatures().getPreviousCountry());
+
+		for (int countryId = 0; countryId < ConversationFeatures.RECENT_ENTITIES + 2; countryId++) {
+			select(countryId);
+			// Further replies about the same country do not count it again
+			select(countryId);
+		}
+
+		assertArrayEquals(new int[] {2, 3, 4, 5}, context.getFeatures().getRecentCountries());
+		assertEquals(4, context.getFeatures().getPreviousCountry());
+
+		select(3);
+		assertArrayEquals(new int[] {3, 4, 5, 3}, context.getFeatures().getRecentCountries());
+		assertEquals(5, context.getFeatures().getPreviousCountry());
+	}
+
+	@Test
+	void recentConditionsWrapAroundLikeTheCountries() {
+		context.setCurrentTopic(Topic.MEDICINE);
+		for (String condition : new String[] {"Asthma", "Asthma", "Diabetes", "Migraine", "Anemia", "Influenza", "Asthma"}) {
+			context.setSelectedCondition(condition);
+			context.addMessage("BOT", "About " + condition);
+		}
+
+		assertEquals(List.of("Migraine", "Anemia", "Influenza", "Asthma"), context.getFeatures().getRecentConditions());
+		assertEquals("Influenza", context.getFeatures().getPreviousCondition());
+		assertEquals(0, context.getFeatures().getRecentCountries().length);
+	}
+
+	@Test
+	void failureStreakCountsRepliesInARowWhichDidNotUnderstand() {
+		context.setCurrentTopic(Topic.COUNTRIES);
+		for (int i = 0; i < 3; i++) {
+			context.addMessage("USER", "what?");
+			context.addMessage("BOT", ConversationFeatures.NOT_UNDERSTOOD + " what you mean.");
+		}
+		assertEquals(3, context.getFeatures().getFailureStreak());
+
+		// User messages leave the streak alone, the next reply which understood ends it
+		context.addMessage("USER", "France");
+		assertEquals(3, context.getFeatures().getFailureStreak());
+		context.addMessage("BOT", "What do you want to learn about France?");
+		assertEquals(0, context.getFeatures().getFailureStreak());
+
+		context.addMessage("BOT", ConversationFeatures.NOT_UNDERSTOOD + " that.");
+		assertEquals(1, context.getFeatures().getFailureStreak());
+	}
+
+	@Test
+	void optionsAndTopicMessagesAreCountedFromUserMessages() {
+		context.addMessage("USER", "teach");
+		context.setCurrentTopic(Topic.COUNTRIES);
+		context.addMessage("USER", "A");
+		context.setCurrentStep(ConversationStep.CHOOSE_OPTION);
+		context.addMessage("USER", "B");
+		context.addMessage("USER", "bb");
+
+		assertEquals(3, context.getFeatures().getTopicMessages(Topic.COUNTRIES));
+		assertEquals(0, context.getFeatures().getTopicMessages(Topic.MEDICINE));
+		assertEquals('b', context.getFeatures().getLastOption());
+		assertEquals(Topic.COUNTRIES, context.getFeatures().getLastOptionTopic());
+
+		context.getFeatures().reset();
+		assertEquals(0, context.getFeatures().getLastOption());
+		assertNull(context.getFeatures().getLastOptionTopic());
+		assertEquals(0, context.getFeatures().getRecentCountries().length);
+	}
+
+	private void select(int countryId) {
+		context.setSelectedCountryId(countryId);
+		context.addMessage("BOT", "About country " + countryId);
+	}
+}
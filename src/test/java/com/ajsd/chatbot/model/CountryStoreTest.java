@@ -0,0 +1,119 @@
+package com.ajsd.chatbot.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountryStoreTest {
+
+	private final CountryStore first = CountryStore.builder()
+			.add("France", "Paris")
+			.add("Peru", "Lima")
+			.add("Chad", "N'Djamena")
+			.build();
+
+	@Test
+	void reloadKeepsIdsAndRetiresCountriesNotAddedAgain() {
+		CountryStore next = CountryStore.builder()
+				.keepIdsOf(first)
+				.add("Chad", "N'Djamena")
+				.add("Japan", "Tokyo")
+				.add("FRANCE", "Paris")
+				.build();
+
+		assertEquals(0, next.idOf("france"));
+		assertEquals("FRANCE", next.name(0));
+		assertEquals(2, next.idOf("Chad"));
+		assertEquals(3, next.idOf("Japan"));
+		assertEquals("Lima", next.get(1, CountryProperty.CAPITAL));
+		assertTrue(next.isRetired(1));
+		assertFalse(next.isRetired(3));
+		assertEquals(3, next.countryCount());
+	}
+
+	@Test
+	void reloadFailsOnTwoNamesOfOnePreviousCountry() {
+		assertThrows(IllegalArgumentException.class, () -> CountryStore.builder().add("Peru").add("PERU").build());
+		assertThrows(IllegalArgumentException.class,
+				() -> CountryStore.builder().keepIdsOf(first).add("Peru").add("PERU").build());
+		assertThrows(IllegalArgumentException.class,
+				() -> CountryStore.builder().keepIdsOf(first).add("Japan").add("japan").build());
+	}
+
+	@Test
+	void imageStoreAnswersLikeTheStoreWritten() throws IOException {
+		CountryStore next = CountryStore.builder().keepIdsOf(first).add("Chad", "N'Djamena").add("Japan", "Tokyo").build();
+		CountryStore read = CountryStore.read(ByteBuffer.wrap(image(next)));
+
+		assertEquals(List.of("Chad", "Japan"), read.names());
+		assertEquals(3, read.idOf("JAPAN"));
+		assertEquals(-1, read.idOf("Peru"));
+		assertEquals("Peru", read.name(1));
+		assertEquals("Lima", read.get(1, CountryProperty.CAPITAL));
+		assertTrue(read.isRetired(0));
+		assertEquals(2, read.countryCount());
+
+		// A store read from an image can be reloaded like any other
+		CountryStore reloaded = CountryStore.builder().keepIdsOf(read).add("Japan", "Tokyo").add("Peru", "Cusco").build();
+		assertEquals(3, reloaded.idOf("Japan"));
+		assertEquals(4, reloaded.idOf("Peru"));
+		assertEquals("Cusco", reloaded.get(4, CountryProperty.CAPITAL));
+		assertEquals("N'Djamena", reloaded.get(2, CountryProperty.CAPITAL));
+	}
+
+	@Test
+	void imageStoreDecodesValuesFromTheBufferWhenAskedFor() throws IOException {
+		byte[] image = image(first);
+		CountryStore read = CountryStore.read(ByteBuffer.wrap(image));
+
+		// Same length, so the offsets still hold
+		replace(image, "Lima", "Puno");
+		assertEquals("Puno", read.get(1, CountryProperty.CAPITAL));
+
+		// A name is kept once decoded, a value is not
+		assertEquals(2, read.idOf("Chad"));
+		replace(image, "Chad", "Chat");
+		assertEquals("Chad", read.name(2));
+		assertNotEquals(-1, read.idOf("chad"));
+	}
+
+	@Test
+	void damagedImageFailsWhenRead() throws IOException {
+		byte[] image = image(first);
+		// The length of the last national flower, the default one, which ends the image
+		int length = image.length - CountryProperty.NATIONAL_FLOWER.getDefaultValue().length() - Integer.BYTES;
+		image[length] = 0x7f;
+
+		assertThrows(IllegalArgumentException.class, () -> CountryStore.read(ByteBuffer.wrap(image)));
+	}
+
+	private static byte[] image(CountryStore store) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			store.write(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void replace(byte[] image, String value, String replacement) {
+		byte[] from = value.getBytes(StandardCharsets.UTF_8);
+		byte[] to = replacement.getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i + from.length <= image.length; i++) {
+			if (Arrays.equals(image, i, i + from.length, from, 0, from.length)) {
+				System.arraycopy(to, 0, image, i, to.length);
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.ajsd.chatbot.model;
+
+import com.ajsd.chatbot.config.MedicalDataReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MedicalStoreTest {
+
+	@Test
+	void termsAreLowerCaseSingularAndWithoutStopWords() {
+		assertEquals(List.of("headache", "allergy", "dizziness", "bus"),
+				new ArrayList<>(MedicalStore.terms("What causes HEADACHES, allergies and dizziness on a bus? Headache!")));
+		assertEquals(Set.of(), MedicalStore.terms(null));
+	}
+
+	@Test
+	void conditionsAreFoundByNameWhateverTheCase() {
+		MedicalStore store = MedicalStore.builder()
+				.add("Asthma", "wheezing")
+				.add("common cold", "sneezing")
+				.build();
+
+		assertEquals(0, store.idOf("ASTHMA"));
+		assertEquals(1, store.idOf("Common Cold"));
+		assertEquals(MedicalStore.NOT_FOUND, store.idOf("flu"));
+		assertThrows(IllegalArgumentException.class, () -> MedicalStore.builder().add("Flu").add("flu").build());
+	}
+
+	@Test
+	void bundledConditionsForKnownQuestions() throws IOException {
+		MedicalStore store = new MedicalDataReader().read("");
+
+		assertSearch(store, "what causes headaches", 3, "hypertension", "migraine", "depression");
+		assertSearch(store, "frequent urination and thirst", 3, "diabetes");
+		assertSearch(store, "shortness of breath and wheezing", 3, "asthma", "hypertension", "anemia");
+		assertSearch(store, "shortness of breath and wheezing", 1, "asthma");
+		assertSearch(store, "chest pain", 3, "hypertension", "asthma", "arthritis");
+		assertSearch(store, "fever", 3, "influenza");
+		assertSearch(store, "insulin", 3, "diabetes");
+		assertSearch(store, "I feel tired and dizzy", 3);
+		assertSearch(store, "headaches", 0);
+	}
+
+	@Test
+	void symptomsCountMoreThanTreatments() {
+		MedicalStore store = MedicalStore.builder()
+				.add("treated", "cough", "virus", "rest", "hygiene")
+				.add("symptom", "rest", "virus", "fluids", "hygiene")
+				.build();
+
+		assertSearch(store, "rest", 2, "symptom", "treated");
+	}
+
+	@Test
+	void conditionsNotMatchedYetStillWinTies() {
+		// alpha and beta are equally rare: once alpha matched arthritis, beta can only tie with
+		// it, and a tie goes to the lower id, so the search must not stop before beta
+		MedicalStore store = MedicalStore.builder()
+				.add("bronchitis", "beta")
+				.add("arthritis", "alpha")
+				.add("gastritis", "gamma")
+				.build();
+
+		assertSearch(store, "alpha beta", 1, "bronchitis");
+		assertSearch(store, "alpha beta", 2, "bronchitis", "arthritis");
+	}
+
+	@Test
+	void prunedSearchFindsWhatScoringEveryConditionFinds() {
+		Random random = new Random(42);
+		MedicalStore.Builder builder = MedicalStore.builder();
+		for (int id = 0; id < 300; id++) {
+			String[] values = new String[MedicalProperty.values().length];
+			for (int property = 0; property < values.length; property++) {
+				values[property] = randomText(random, 1 + random.nextInt(6));
+			}
+			builder.add("condition " + id, values);
+		}
+		MedicalStore store = builder.build();
+
+		for (int query = 0; query < 2000; query++) {
+			String text = randomText(random, 1 + random.nextInt(5));
+			int limit = 1 + random.nextInt(5);
+			assertArrayEquals(bruteForce(store, text, limit), store.search(text, limit), text + ", limit " + limit);
+		}
+	}
+
+	// Words from a vocabulary of 40 where the first ones are far more common, so questions
+	// mix rare words with words most conditions have, which is where the search stops early
+	private static String randomText(Random random, int words) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			double skew = random.nextDouble();
+			text.append(" w").append(10 + (int) (40 * skew * skew * skew));
+		}
+		return text.toString();
+	}
+
+	// Scores every condition the way the index does, in the same order, so the sums are the same floats
+	private static int[] bruteForce(MedicalStore store, String text, int limit) {
+		List<String> queryTerms = new ArrayList<>();
+		List<Integer> frequencies = new ArrayList<>();
+		for (String term : MedicalStore.terms(text)) {
+			int frequency = 0;
+			for (int id = 0; id < store.size(); id++) {
+				if (weight(store, id, term) > 0) {
+					frequency++;
+				}
+			}
+			if (frequency > 0) {
+				queryTerms.add(term);
+				frequencies.add(frequency);
+			}
+		}
+		Integer[] order = new Integer[queryTerms.size()];
+		Arrays.setAll(order, i -> i);
+		Arrays.sort(order, Comparator.comparing(frequencies::get));
+
+		float[] scores = new float[store.size()];
+		for (int i : order) {
+			float idf = (float) Math.log(1 + (double) store.size() / frequencies.get(i));
+			for (int id = 0; id < store.size(); id++) {
+				scores[id] += idf * weight(store, id, queryTerms.get(i));
+			}
+		}
+		Integer[] ids = new Integer[store.size()];
+		Arrays.setAll(ids, id -> id);
+		Arrays.sort(ids, (a, b) -> scores[a] != scores[b] ? Float.compare(scores[b], scores[a]) : Integer.compare(a, b));
+		return Arrays.stream(ids).filter(id -> scores[id] > 0).limit(limit).mapToInt(Integer::intValue).toArray();
+	}
+
+	private static float weight(MedicalStore store, int id, String term) {
+		float weight = 0;
+		for (MedicalProperty property : MedicalProperty.values()) {
+			if (MedicalStore.terms(store.get(id, property)).contains(term)) {
+				weight = Math.max(weight, property.getWeight());
+			}
+		}
+		return weight;
+	}
+
+	private static void assertSearch(MedicalStore store, String text, int limit, String... expected) {
+		int[] ids = store.search(text, limit);
+		String[] names = new String[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			names[i] = store.name(ids[i]);
+		}
+		assertArrayEquals(expected, names, text);
+	}
+}
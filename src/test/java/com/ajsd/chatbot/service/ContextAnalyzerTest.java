@@ -0,0 +1,144 @@
+package com.ajsd.chatbot.service;
+
+import com.ajsd.chatbot.config.CountryDataLoader;
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.ConversationFeatures;
+import com.ajsd.chatbot.model.ConversationStep;
+import com.ajsd.chatbot.model.Topic;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextAnalyzerTest {
+
+	private static final String FRANCE = "\"France\": {\"capital\": \"Paris\", \"nationalAnimal\": \"Gallic Rooster\", \"nationalFlower\": \"Iris\"}";
+	private static final String PERU = "\"Peru\": {\"capital\": \"Lima\", \"nationalAnimal\": \"Vicuna\", \"nationalFlower\": \"Cantua\"}";
+	private static final String CHAD = "\"Chad\": {\"capital\": \"N'Djamena\", \"nationalAnimal\": \"Goat\", \"nationalFlower\": \"Desert Rose\"}";
+
+	@TempDir
+	Path directory;
+
+	private final ConversationContext context = new ConversationContext();
+	private Path countries;
+	private ChatbotService chatbotService;
+	private ResponseRenderer responseRenderer;
+	private ContextAnalyzer analyzer;
+
+	@Test
+	void backSelectsTheCountryBeforeTheCurrentOne() throws IOException {
+		start();
+		talkAbout("France");
+		talkAbout("Peru");
+
+		String reply = analyzer.analyzeUserIntent("back", context);
+
+		assertTrue(reply.startsWith("Back to France.\n"), reply);
+		assertEquals(chatbotService.findCountryId("France"), context.getSelectedCountryId());
+		assertEquals(ConversationStep.CHOOSE_OPTION, context.getCurrentStep());
+	}
+
+	@Test
+	void backWithNothingBefore() throws IOException {
+		start();
+		context.setCurrentTopic(Topic.COUNTRIES);
+		assertTrue(analyzer.analyzeUserIntent("back", context).startsWith("There is nothing to go back to"));
+
+		talkAbout("Chad");
+		assertTrue(analyzer.analyzeUserIntent("back", context).startsWith("There is nothing to go back to"));
+		assertEquals(chatbotService.findCountryId("Chad"), context.getSelectedCountryId());
+	}
+
+	@Test
+	void againRepeatsTheAnswerToTheLastOption() throws IOException {
+		start();
+		assertTrue(analyzer.analyzeUserIntent("again", context).startsWith("There is nothing to repeat"));
+
+		talkAbout("Peru");
+		context.addMessage("USER", "B");
+		int peru = chatbotService.findCountryId("Peru");
+		context.addMessage("BOT", responseRenderer.countryReply(peru, 1));
+
+		assertEquals(responseRenderer.countryReply(peru, 1), analyzer.analyzeUserIntent("again", context));
+
+		// An option of the other topic is not repeated
+		context.setCurrentTopic(Topic.MEDICINE);
+		context.setSelectedCondition("asthma");
+		assertTrue(analyzer.analyzeUserIntent("again", context).startsWith("There is nothing to repeat"));
+	}
+
+	@Test
+	void summaryCountsMessagesAndListsRecentEntities() throws IOException {
+		start();
+		assertTrue(analyzer.analyzeUserIntent("summary", context).startsWith("We have not talked about anything yet"));
+
+		talkAbout("France");
+		talkAbout("Chad");
+		context.setCurrentTopic(Topic.MEDICINE);
+		context.addMessage("USER", "asthma");
+		context.setSelectedCondition("asthma");
+		context.addMessage("BOT", "What do you want to learn about it?");
+
+		assertEquals("So far we talked about:" +
+				"\n• " + Topic.COUNTRIES.getMenuLabel() + ": 2 messages" +
+				"\n• " + Topic.MEDICINE.getMenuLabel() + ": 1 message" +
+				"\nRecent countries: France, Chad" +
+				"\nRecent conditions: asthma", analyzer.analyzeUserIntent("summary", context));
+	}
+
+	@Test
+	void retiredCountriesAreNeitherGoneBackToNorSummarized() throws IOException {
+		start();
+		talkAbout("France");
+		talkAbout("Peru");
+		int france = chatbotService.findCountryId("France");
+
+		// A reload without France keeps its id, but retires it
+		Files.writeString(countries, "{" + PERU + ", " + CHAD + "}");
+		chatbotService.reloadCountryData();
+		assertTrue(chatbotService.getCountrySnapshot().getStore().isRetired(france));
+
+		assertTrue(analyzer.analyzeUserIntent("back", context).startsWith("There is nothing to go back to"));
+		assertEquals(chatbotService.findCountryId("Peru"), context.getSelectedCountryId());
+		assertTrue(analyzer.analyzeUserIntent("summary", context).endsWith("\nRecent countries: Peru"));
+	}
+
+	@Test
+	void hintAfterRepliesInARowWhichDidNotUnderstand() throws IOException {
+		start();
+		talkAbout("France");
+		for (int i = 0; i < ContextAnalyzer.STUCK_FAILURES; i++) {
+			assertNull(analyzer.analyzeUserIntent("tell me more", context));
+			context.addMessage("USER", "tell me more");
+			context.addMessage("BOT", ConversationFeatures.NOT_UNDERSTOOD + " what you mean.");
+		}
+
+		assertTrue(analyzer.analyzeUserIntent("tell me more", context).startsWith("It looks like we are stuck"));
+		// A letter goes to the engine, which may well understand it
+		assertNull(analyzer.analyzeUserIntent("a", context));
+	}
+
+	private void start() throws IOException {
+		countries = directory.resolve("countries.json");
+		Files.writeString(countries, "{" + FRANCE + ", " + PERU + ", " + CHAD + "}");
+		chatbotService = new ChatbotService(new CountryDataLoader(countries.toString(), false));
+		responseRenderer = new ResponseRenderer(chatbotService, new MedicalService(""));
+		analyzer = new ContextAnalyzer(chatbotService, responseRenderer);
+	}
+
+	// The user names a country, and the bot replies with the options for it
+	private void talkAbout(String country) {
+		context.setCurrentTopic(Topic.COUNTRIES);
+		context.setCurrentStep(ConversationStep.SELECT_COUNTRY);
+		context.addMessage("USER", country);
+		context.setSelectedCountryId(chatbotService.findCountryId(country));
+		context.setCurrentStep(ConversationStep.CHOOSE_OPTION);
+		context.addMessage("BOT", ResponseRenderer.COUNTRY_OPTIONS_STRING);
+	}
+}
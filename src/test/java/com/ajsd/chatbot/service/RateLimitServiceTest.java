@@ -0,0 +1,110 @@
+package com.ajsd.chatbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitServiceTest {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	void refillStopsAtTheCapacity() {
+		RateLimitService limiter = limiter(5, 1);
+		assertEquals(5, take("s", limiter));
+
+		clock.addAndGet(60 * 60 * 1000);
+		assertEquals(5, take("s", limiter));
+
+		clock.addAndGet(1500);
+		assertEquals(1, take("s", limiter));
+		// The half token earned in the 1500 ms was kept
+		clock.addAndGet(500);
+		assertEquals(1, take("s", limiter));
+	}
+
+	@Test
+	void fractionsOfATokenCarryOverToTheNextRefill() {
+		// 0.3 tokens a second is 0.3 thousandths a millisecond, so a refill every millisecond earns
+		// nothing. Room for two tokens, so the bucket never fills up and its refills are not capped
+		RateLimitService limiter = limiter(2, 0.3);
+		assertEquals(2, take("s", limiter));
+
+		assertEquals(3334, millisUntilAllowed("s", limiter));
+		// The refill only took 3333 of those 3334 ms, the rest counts towards the next token
+		assertEquals(3333, millisUntilAllowed("s", limiter));
+		assertEquals(3333, millisUntilAllowed("s", limiter));
+		assertEquals(10_000, clock.get());
+	}
+
+	@Test
+	void capacityMustFitTheTokenBits() {
+		RateLimitService largest = limiter(4194, 1);
+		assertEquals(4194, take("s", largest));
+		clock.addAndGet(10_000);
+		assertEquals(10, take("s", largest));
+
+		assertThrows(IllegalArgumentException.class, () -> limiter(4195, 1));
+		assertThrows(IllegalArgumentException.class, () -> limiter(0, 1));
+		assertThrows(IllegalArgumentException.class, () -> limiter(5, 0));
+	}
+
+	@Test
+	void bucketsFullAgainAreEvictedBySweep() {
+		// Full again 2000 ms after the last token was taken, which is also the sweep interval
+		RateLimitService limiter = limiter(2, 1);
+		assertTrue(limiter.isAllowed("idle"));
+		clock.set(1500);
+		assertTrue(limiter.isAllowed("recent"));
+		assertEquals(2, limiter.getBucketCount());
+
+		clock.set(1999);
+		assertTrue(limiter.isAllowed("other"));
+		assertEquals(3, limiter.getBucketCount());
+
+		clock.set(2000);
+		assertTrue(limiter.isAllowed("other"));
+		assertEquals(2, limiter.getBucketCount());
+
+		// An evicted bucket starts full, as it would have been
+		assertEquals(2, take("idle", limiter));
+	}
+
+	@Test
+	void clientAddressIsLimitedAcrossItsSessions() {
+		RateLimitService limiter = new RateLimitService(3, 1, true, clock::get);
+		assertTrue(limiter.isAllowed("a", "10.0.0.1"));
+		assertTrue(limiter.isAllowed("b", "10.0.0.1"));
+		assertTrue(limiter.isAllowed("c", "10.0.0.1"));
+		assertFalse(limiter.isAllowed("d", "10.0.0.1"));
+		assertTrue(limiter.isAllowed("d", "10.0.0.2"));
+	}
+
+	private RateLimitService limiter(int capacity, double refillPerSecond) {
+		return new RateLimitService(capacity, refillPerSecond, false, clock::get);
+	}
+
+	// Takes tokens until the bucket is empty, returns how many it had
+	private static int take(String key, RateLimitService limiter) {
+		int taken = 0;
+		while (limiter.isAllowed(key)) {
+			taken++;
+		}
+		return taken;
+	}
+
+	// Asks every millisecond until a request is allowed
+	private int millisUntilAllowed(String key, RateLimitService limiter) {
+		int millis = 0;
+		do {
+			clock.incrementAndGet();
+			millis++;
+		} while (!limiter.isAllowed(key));
+		return millis;
+	}
+}
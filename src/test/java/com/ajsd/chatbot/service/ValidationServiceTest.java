@@ -0,0 +1,64 @@
+package com.ajsd.chatbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidationServiceTest {
+
+	private final ValidationService validationService = new ValidationService(10);
+
+	@Test
+	void htmlIsKeptAsTyped() {
+		// Escaped by the page when it renders the message, not here
+		ValidationService.ValidatedInput input = new ValidationService(100).validate("<b onclick='x()'>A&B \"C\"</b>");
+
+		assertTrue(input.isValid());
+		assertEquals("<b onclick='x()'>A&B \"C\"</b>", input.getText());
+		assertEquals("<b onclick='x()'>a&b \"c\"</b>", input.getNormalized());
+	}
+
+	@Test
+	void fullWidthMarkupIsNormalized() {
+		ValidationService.ValidatedInput input = validationService.validate("＜i＞");
+
+		assertEquals("<i>", input.getText());
+		assertEquals("<i>", input.getNormalized());
+	}
+
+	@Test
+	void whitespaceIsCollapsedAndTrimmed() {
+		assertEquals("a b c", validationService.validate("  a \t\n b\u00A0\u2003 c  ").getText());
+		assertEquals("a b", validationService.validate("a\r\n\r\nb").getNormalized());
+	}
+
+	@Test
+	void invisibleCharactersAreRemoved() {
+		ValidationService.ValidatedInput input = validationService.validate("Fr\u200Ban\u0007ce\u202E");
+
+		assertEquals("France", input.getText());
+		assertEquals("france", input.getNormalized());
+	}
+
+	@Test
+	void lengthIsCheckedOnTheCleanedText() {
+		assertTrue(validationService.validate("abcdefghij").isValid());
+		assertEquals("Message too long.", validationService.validate("abcdefghijk").getError());
+		assertEquals("Message too long.", validationService.validate("abcde fghij").getError());
+
+		// Collapsed whitespace does not count, as long as the raw message is not over four times the limit
+		assertEquals("a b", validationService.validate("a" + " ".repeat(30) + "b").getText());
+		assertEquals("Message too long.", validationService.validate("a" + " ".repeat(40) + "b").getError());
+	}
+
+	@Test
+	void emptyMessages() {
+		for (String message : new String[] {null, "", "   ", "\u200B\u200B", "\t\n"}) {
+			ValidationService.ValidatedInput input = validationService.validate(message);
+			assertFalse(input.isValid());
+			assertEquals("Empty message.", input.getError());
+		}
+	}
+}
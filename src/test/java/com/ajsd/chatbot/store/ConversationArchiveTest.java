@@ -0,0 +1,123 @@
+package com.ajsd.chatbot.store;
+
+import com.ajsd.chatbot.model.ConversationContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationArchiveTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void contentWithTabsAndLineBreaksRoundTrips() {
+		ConversationArchive archive = new ConversationArchive(directory.toString());
+		archive.append("s", new ConversationContext.Message(1, "USER", "a\tb\nc\\n\r"));
+		archive.append("s", new ConversationContext.Message(2, "BOT", ""));
+
+		List<ConversationContext.Message> page = archive.readSince("s", 0, 10);
+		assertEquals(2, page.size());
+		assertEquals("a\tb\nc\\n\r", page.get(0).getContent());
+		assertEquals("USER", page.get(0).getSender());
+		assertEquals("", page.get(1).getContent());
+		assertEquals(2L, page.get(1).getSeq());
+		archive.close();
+	}
+
+	@Test
+	void pagesStartAfterTheGivenSequence() {
+		ConversationArchive archive = new ConversationArchive(directory.toString());
+		// Every other seq, as if the messages in between were never evicted
+		for (long seq = 2; seq <= 200; seq += 2) {
+			archive.append("s", new ConversationContext.Message(seq, "USER", "message " + seq));
+		}
+
+		assertEquals(List.of(2L, 4L, 6L), seqs(archive.readSince("s", 0, 3)));
+		assertEquals(List.of(52L, 54L), seqs(archive.readSince("s", 50, 2)));
+		assertEquals(List.of(52L, 54L), seqs(archive.readSince("s", 51, 2)));
+		assertEquals(List.of(198L, 200L), seqs(archive.readSince("s", 196, 10)));
+		assertEquals(List.of(), seqs(archive.readSince("s", 200, 10)));
+		assertEquals(List.of(), seqs(archive.readSince("unknown", 0, 10)));
+
+		// Paging through all of it reads every message once
+		List<Long> all = new ArrayList<>();
+		long since = 0;
+		List<ConversationContext.Message> page;
+		while (!(page = archive.readSince("s", since, 7)).isEmpty()) {
+			all.addAll(seqs(page));
+			since = page.get(page.size() - 1).getSeq();
+		}
+		assertEquals(100, all.size());
+		assertEquals("message 200", archive.readSince("s", 199, 1).get(0).getContent());
+		archive.close();
+	}
+
+	@Test
+	void appendingContinuesTheFilesOfAnEarlierRun() {
+		ConversationArchive first = new ConversationArchive(directory.toString());
+		first.append("s", new ConversationContext.Message(1, "USER", "before"));
+		first.close();
+
+		ConversationArchive second = new ConversationArchive(directory.toString());
+		second.append("s", new ConversationContext.Message(2, "BOT", "after"));
+
+		assertEquals(List.of(2L), seqs(second.readSince("s", 1, 10)));
+		assertEquals("after", second.readSince("s", 1, 10).get(0).getContent());
+		second.close();
+	}
+
+	@Test
+	void sessionsBeyondTheOpenLimitAreClosedAndReopened() {
+		ConversationArchive archive = new ConversationArchive(directory.toString());
+		int sessions = ConversationArchive.MAX_OPEN_SESSIONS + 10;
+		for (long seq = 1; seq <= 2; seq++) {
+			for (int session = 0; session < sessions; session++) {
+				archive.append("session-" + session, new ConversationContext.Message(seq, "USER", "m" + seq));
+			}
+		}
+
+		assertEquals(ConversationArchive.MAX_OPEN_SESSIONS, archive.getOpenSessions());
+		for (int session = 0; session < sessions; session++) {
+			assertEquals(List.of(1L, 2L), seqs(archive.readSince("session-" + session, 0, 10)), "session " + session);
+		}
+		archive.close();
+		assertEquals(0, archive.getOpenSessions());
+	}
+
+	@Test
+	void deleteRemovesTheLogAndItsIndex() {
+		ConversationArchive archive = new ConversationArchive(directory.toString());
+		archive.spillFor("s").spill(new ConversationContext.Message(1, "USER", "hello"));
+		assertTrue(Files.exists(directory.resolve("s.log")));
+		assertTrue(Files.exists(directory.resolve("s.idx")));
+
+		archive.spillFor("s").discard();
+
+		assertFalse(Files.exists(directory.resolve("s.log")));
+		assertFalse(Files.exists(directory.resolve("s.idx")));
+		assertEquals(0, archive.getOpenSessions());
+		assertEquals(List.of(), seqs(archive.readSince("s", 0, 10)));
+
+		// A conversation cleared and spilling again starts new files
+		archive.append("s", new ConversationContext.Message(5, "USER", "again"));
+		assertEquals(List.of(5L), seqs(archive.readSince("s", 0, 10)));
+		archive.close();
+	}
+
+	private static List<Long> seqs(List<ConversationContext.Message> messages) {
+		List<Long> seqs = new ArrayList<>();
+		for (ConversationContext.Message message : messages) {
+			seqs.add(message.getSeq());
+		}
+		return seqs;
+	}
+}
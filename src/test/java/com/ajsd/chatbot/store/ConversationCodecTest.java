@@ -0,0 +1,262 @@
+package com.ajsd.chatbot.store;
+
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.ConversationFeatures;
+import com.ajsd.chatbot.model.ConversationStep;
+import com.ajsd.chatbot.model.HistoryPolicy;
+import com.ajsd.chatbot.model.Topic;
+import com.ajsd.chatbot.service.ResponseRenderer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationCodecTest {
+
+	private final ConversationCodec plain = new ConversationCodec();
+	private final ConversationCodec compressed = new ConversationCodec(
+			ResponseRenderer.COUNTRY_OPTIONS_STRING,
+			ResponseRenderer.COUNTRY_LOOKUP_OPTIONS_STRING,
+			ResponseRenderer.MEDICAL_OPTIONS_STRING);
+
+	@Test
+	void emptyContextRoundTrips() {
+		ConversationContext context = new ConversationContext();
+
+		assertSameState(context, plain.decode(plain.encode(context), null));
+		assertSameState(context, compressed.decode(compressed.encode(context), null));
+	}
+
+	@Test
+	void fullContextRoundTrips() {
+		ConversationContext context = conversation(20, HistoryPolicy.DROP, 5);
+		context.setCurrentStep(ConversationStep.values()[ConversationStep.values().length - 1]);
+		context.setCurrentTopic(Topic.values()[0]);
+		context.setSelectedCountryId(42);
+		context.setSelectedCondition("diabetes");
+		context.setAvailableOptions(List.of("A", "B", "C"));
+
+		assertSameState(context, plain.decode(plain.encode(context), null));
+		assertSameState(context, compressed.decode(compressed.encode(context), null));
+	}
+
+	@Test
+	void evictedHistoryKeepsSequencesAndSummary() {
+		ConversationContext context = conversation(4, HistoryPolicy.SUMMARIZE, 30);
+
+		ConversationContext decoded = compressed.decode(compressed.encode(context), null);
+
+		assertSameState(context, decoded);
+		assertEquals(context.getEvictedMessages(), decoded.getEvictedMessages());
+		assertEquals(context.getHistorySummary().getCharacters(), decoded.getHistorySummary().getCharacters());
+		assertEquals(context.getHistorySummary().getFirstSequence(), decoded.getHistorySummary().getFirstSequence());
+	}
+
+	@Test
+	void unicodeAndUnknownSendersRoundTrip() {
+		ConversationContext context = new ConversationContext();
+		context.addMessage("USER", "Ñandú, 北京, 😀 & <b>");
+		context.addMessage("SYSTEM", "");
+		context.addMessage("BOT", "Great! I know about Côte d'Ivoire.\n" + ResponseRenderer.COUNTRY_OPTIONS_STRING);
+
+		assertSameState(context, plain.decode(plain.encode(context), null));
+		assertSameState(context, compressed.decode(compressed.encode(context), null));
+	}
+
+	@Test
+	void dictionaryShrinksRepeatedMenus() {
+		ConversationContext context = new ConversationContext();
+		for (int i = 0; i < 5; i++) {
+			context.addMessage("USER", "a");
+			context.addMessage("BOT", "The capital of France is Paris.\n\n" + ResponseRenderer.COUNTRY_OPTIONS_STRING);
+			context.addMessage("USER", "e");
+			context.addMessage("BOT", "What country do you want to learn about?\n" + ResponseRenderer.COUNTRY_LOOKUP_OPTIONS_STRING);
+		}
+
+		byte[] withDictionary = compressed.encode(context);
+		byte[] withoutDictionary = plain.encode(context);
+
+		assertSameState(context, compressed.decode(withDictionary, null));
+		assertTrue(withDictionary.length * 3 < withoutDictionary.length,
+				withDictionary.length + " bytes with the dictionary, " + withoutDictionary.length + " without");
+	}
+
+	@Test
+	void featuresRoundTrip() {
+		ConversationContext context = new ConversationContext();
+		context.setCurrentTopic(Topic.COUNTRIES);
+		context.setCurrentStep(ConversationStep.CHOOSE_OPTION);
+		for (int countryId = 0; countryId < 6; countryId++) {
+			context.setSelectedCountryId(countryId);
+			context.addMessage("USER", "b");
+			context.addMessage("BOT", "I do not understand. \nPlease choose one of the following:");
+		}
+		context.setCurrentTopic(Topic.MEDICINE);
+		context.setSelectedCondition("asthma");
+		context.addMessage("BOT", "I do not understand that condition.");
+
+		ConversationFeatures features = compressed.decode(compressed.encode(context), null).getFeatures();
+
+		assertArrayEquals(new int[] {2, 3, 4, 5}, features.getRecentCountries());
+		assertEquals(4, features.getPreviousCountry());
+		assertEquals(List.of("asthma"), features.getRecentConditions());
+		assertNull(features.getPreviousCondition());
+		assertEquals(6, features.getTopicMessages(Topic.COUNTRIES));
+		assertEquals(0, features.getTopicMessages(Topic.MEDICINE));
+		assertEquals(7, features.getFailureStreak());
+		assertEquals('b', features.getLastOption());
+		assertEquals(Topic.COUNTRIES, features.getLastOptionTopic());
+	}
+
+	@Test
+	void encodingIsStable() {
+		ConversationContext context = conversation(10, HistoryPolicy.DROP, 3);
+
+		assertArrayEquals(compressed.encode(context), compressed.encode(compressed.decode(compressed.encode(context), null)));
+	}
+
+	@Test
+	void rejectsDataOfAnotherDictionary() {
+		byte[] data = compressed.encode(conversation(10, HistoryPolicy.DROP, 3));
+
+		assertThrows(IllegalArgumentException.class, () -> plain.decode(data, null));
+		assertThrows(IllegalArgumentException.class,
+				() -> new ConversationCodec(ResponseRenderer.MEDICAL_OPTIONS_STRING).decode(data, null));
+	}
+
+	@Test
+	void rejectsTruncatedAndUnknownData() {
+		byte[] data = plain.encode(conversation(10, HistoryPolicy.DROP, 3));
+
+		assertThrows(IllegalArgumentException.class, () -> plain.decode(Arrays.copyOf(data, data.length - 1), null));
+		assertThrows(IllegalArgumentException.class, () -> plain.decode(new byte[] {99}, null));
+		assertThrows(IllegalArgumentException.class, () -> plain.decode(new byte[0], null));
+	}
+
+	@Test
+	void rejectsUnknownOrdinals() {
+		byte[] data = plain.encode(conversation(10, HistoryPolicy.DROP, 3));
+		// version, flags and the one byte capacity come first, then the policy and the step
+		byte[] badPolicy = data.clone();
+		badPolicy[3] = 99;
+		byte[] badStep = data.clone();
+		badStep[4] = 120;
+
+		assertThrows(IllegalArgumentException.class, () -> plain.decode(badPolicy, null));
+		assertThrows(IllegalArgumentException.class, () -> plain.decode(badStep, null));
+	}
+
+	@Test
+	void rejectsDamagedVersion1() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(ConversationCodec.VERSION_1);
+		out.writeInt(50);
+		out.writeByte(99);                // no such policy
+		byte[] badPolicy = bytes.toByteArray();
+
+		bytes.reset();
+		out.writeByte(ConversationCodec.VERSION_1);
+		out.writeInt(50);
+		out.writeByte(HistoryPolicy.DROP.ordinal());
+		out.writeByte(-1);
+		out.writeInt(7);
+		out.writeInt(1_000_000);          // condition longer than the data
+		byte[] badLength = bytes.toByteArray();
+
+		assertThrows(IllegalArgumentException.class, () -> plain.decode(badPolicy, null));
+		assertThrows(IllegalArgumentException.class, () -> plain.decode(badLength, null));
+		assertThrows(IllegalArgumentException.class, () -> plain.decode(Arrays.copyOf(badLength, 8), null));
+	}
+
+	@Test
+	void readsVersion1() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(ConversationCodec.VERSION_1);
+		out.writeInt(50);
+		out.writeByte(HistoryPolicy.DROP.ordinal());
+		out.writeByte(-1);                // no step
+		out.writeInt(7);
+		writeVersion1String(out, null);   // no condition
+		out.writeByte(-1);                // no topic
+		out.writeInt(1);
+		writeVersion1String(out, "A");
+		out.writeLong(1);
+		out.writeLong(2);
+		out.writeLong(0);
+		for (int i = 0; i < 5; i++) {
+			out.writeLong(0);
+		}
+		out.writeInt(2);
+		out.writeLong(1);
+		writeVersion1String(out, "USER");
+		writeVersion1String(out, "teach");
+		out.writeLong(2);
+		writeVersion1String(out, "BOT");
+		writeVersion1String(out, "What would you like to learn about?");
+
+		ConversationContext decoded = compressed.decode(bytes.toByteArray(), null);
+
+		assertEquals(50, decoded.getHistoryCapacity());
+		assertNull(decoded.getCurrentStep());
+		assertNull(decoded.getCurrentTopic());
+		assertEquals(7, decoded.getSelectedCountryId());
+		assertEquals(List.of("A"), decoded.getAvailableOptions());
+		assertEquals(2, decoded.getMessages().size());
+		assertEquals("What would you like to learn about?", decoded.getMessages().get(1).getContent());
+		assertEquals(2, decoded.getLastSequence());
+	}
+
+	private static ConversationContext conversation(int capacity, HistoryPolicy policy, int turns) {
+		ConversationContext context = new ConversationContext(capacity, policy, null);
+		for (int i = 0; i < turns; i++) {
+			context.addMessage("USER", "message " + i);
+			context.addMessage("BOT", "reply " + i + "\n" + ResponseRenderer.MEDICAL_OPTIONS_STRING);
+		}
+		return context;
+	}
+
+	private static void writeVersion1String(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void assertSameState(ConversationContext expected, ConversationContext actual) {
+		assertEquals(expected.getHistoryCapacity(), actual.getHistoryCapacity());
+		assertEquals(expected.getHistoryPolicy(), actual.getHistoryPolicy());
+		assertEquals(expected.getCurrentStep(), actual.getCurrentStep());
+		assertEquals(expected.getCurrentTopic(), actual.getCurrentTopic());
+		assertEquals(expected.getSelectedCountryId(), actual.getSelectedCountryId());
+		assertEquals(expected.getSelectedCondition(), actual.getSelectedCondition());
+		assertEquals(expected.getAvailableOptions(), actual.getAvailableOptions());
+		assertEquals(expected.getFirstSequence(), actual.getFirstSequence());
+		assertEquals(expected.getLastSequence(), actual.getLastSequence());
+		assertEquals(expected.getEvictedMessages(), actual.getEvictedMessages());
+		assertEquals(expected.getHistorySummary().getUserMessages(), actual.getHistorySummary().getUserMessages());
+		assertEquals(expected.getHistorySummary().getBotMessages(), actual.getHistorySummary().getBotMessages());
+		List<ConversationContext.Message> expectedMessages = expected.getMessages();
+		List<ConversationContext.Message> actualMessages = actual.getMessages();
+		assertEquals(expectedMessages.size(), actualMessages.size());
+		for (int i = 0; i < expectedMessages.size(); i++) {
+			assertEquals(expectedMessages.get(i).getSeq(), actualMessages.get(i).getSeq());
+			assertEquals(expectedMessages.get(i).getSender(), actualMessages.get(i).getSender());
+			assertEquals(expectedMessages.get(i).getContent(), actualMessages.get(i).getContent());
+		}
+	}
+}
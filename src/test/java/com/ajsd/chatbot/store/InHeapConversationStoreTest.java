@@ -0,0 +1,58 @@
+package com.ajsd.chatbot.store;
+
+import com.ajsd.chatbot.model.ConversationContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class InHeapConversationStoreTest {
+
+	private static final long TTL = 60_000;
+
+	private final AtomicLong clock = new AtomicLong(1_000_000);
+	private final InHeapConversationStore store = new InHeapConversationStore(TTL, clock::get);
+
+	@Test
+	void conversationsAreHeldAsTheyAre() {
+		ConversationContext context = new ConversationContext();
+		context.addMessage("USER", "teach");
+
+		store.save("a", context);
+
+		assertSame(context, store.load("a"));
+		assertNull(store.load("b"));
+		store.remove("a");
+		assertNull(store.load("a"));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	void conversationsExpire() {
+		List<String> expired = new ArrayList<>();
+		store.addExpiryListener(expired::add);
+		store.save("used", new ConversationContext());
+		store.save("idle", new ConversationContext());
+
+		// Loading renews the time-to-live
+		clock.addAndGet(TTL - 1);
+		assertNotNull(store.load("used"));
+		clock.addAndGet(TTL - 1);
+		assertNotNull(store.load("used"));
+		assertNull(store.load("idle"));
+		assertEquals(List.of("idle"), expired);
+
+		// A sweep on the next load or save removes what nobody asks for
+		clock.addAndGet(TTL);
+		store.save("new", new ConversationContext());
+		assertEquals(1, store.size());
+		assertEquals(List.of("idle", "used"), expired);
+		assertEquals(2, store.getExpiredCount());
+	}
+}
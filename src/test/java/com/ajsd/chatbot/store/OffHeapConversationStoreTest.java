@@ -0,0 +1,256 @@
+package com.ajsd.chatbot.store;
+
+import com.ajsd.chatbot.model.ConversationContext;
+import com.ajsd.chatbot.model.HistoryPolicy;
+import com.ajsd.chatbot.service.ResponseRenderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapConversationStoreTest {
+
+	private static final long TTL = 60_000;
+
+	@TempDir
+	Path directory;
+
+	private final AtomicLong clock = new AtomicLong(1_000_000);
+	private final ConversationCodec codec = new ConversationCodec(ResponseRenderer.COUNTRY_OPTIONS_STRING);
+
+	@Test
+	void conversationsRoundTrip() {
+		OffHeapConversationStore store = store(null);
+		ConversationContext first = conversation(3, "first");
+		ConversationContext second = conversation(5, "second");
+
+		store.save("a", first);
+		store.save("b", second);
+
+		assertSameMessages(first, store.load("a"));
+		assertSameMessages(second, store.load("b"));
+		assertNull(store.load("c"));
+		assertEquals(2, store.size());
+
+		store.remove("a");
+		assertNull(store.load("a"));
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	void growingConversationMovesUpTheSizeClasses() {
+		OffHeapConversationStore store = store(null);
+		ConversationContext context = new ConversationContext(10_000, HistoryPolicy.DROP, null);
+		long previousStored = 0;
+		for (int turn = 0; turn < 12; turn++) {
+			// Doubles the message added each turn, so the conversation climbs from the 512 byte class to the 512 KB one
+			int length = 64 << turn;
+			context.addMessage("USER", "x".repeat(length));
+			store.save("growing", context);
+
+			assertSameMessages(context, store.load("growing"));
+			assertEquals(1, store.size());
+			assertTrue(store.getStoredBytes() > previousStored, "stored bytes after turn " + turn);
+			previousStored = store.getStoredBytes();
+		}
+
+		// Only the chunk of the last save is held, the previous ones were freed
+		assertTrue(store.getStoredBytes() < 2 * (64 << 12), store.getStoredBytes() + " bytes stored");
+
+		context.addMessage("USER", "x".repeat(2 << 20));
+		assertThrows(IllegalArgumentException.class, () -> store.save("growing", context));
+	}
+
+	@Test
+	void manySmallConversationsAddSegments() {
+		OffHeapConversationStore store = store(null);
+		for (int i = 0; i < 10_000; i++) {
+			store.save("conversation-" + i, conversation(1, "c" + i));
+		}
+		long reserved = store.getReservedBytes();
+
+		// 8192 chunks of 512 bytes fit a segment of 4 MB
+		assertEquals(2L << 22, reserved);
+		assertSameMessages(conversation(1, "c9999"), store.load("conversation-9999"));
+
+		for (int i = 0; i < 10_000; i++) {
+			store.remove("conversation-" + i);
+		}
+		assertEquals(0, store.getStoredBytes());
+		for (int i = 0; i < 10_000; i++) {
+			store.save("again-" + i, conversation(1, "again"));
+		}
+		assertEquals(reserved, store.getReservedBytes());
+	}
+
+	@Test
+	void readersNeverSeeAChunkRewrittenUnderThem() throws InterruptedException {
+		OffHeapConversationStore store = store(null);
+		// Two sizes, so saves alternate between size classes and reuse the chunks they free
+		ConversationContext small = conversation(1, "small");
+		ConversationContext large = conversation(40, "large");
+		store.save("shared", small);
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> readers = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			readers.add(new Thread(() -> {
+				try {
+					while (running.get()) {
+						ConversationContext loaded = store.load("shared");
+						assertNotNull(loaded, "conversation lost while it was rewritten");
+						int messages = loaded.getMessages().size();
+						assertTrue(messages == small.getMessages().size() || messages == large.getMessages().size(),
+								messages + " messages");
+						assertSameMessages(messages == small.getMessages().size() ? small : large, loaded);
+					}
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+			}));
+		}
+		readers.forEach(Thread::start);
+		for (int i = 0; i < 20_000 && failure.get() == null; i++) {
+			store.save("shared", i % 2 == 0 ? large : small);
+			store.save("other-" + (i % 8), i % 3 == 0 ? large : small);
+		}
+		running.set(false);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		assertNull(failure.get());
+		assertEquals(9, store.size());
+	}
+
+	@Test
+	void conversationsExpire() {
+		OffHeapConversationStore store = store(null);
+		List<String> expired = new ArrayList<>();
+		store.addExpiryListener(expired::add);
+		store.save("used", conversation(1, "used"));
+		store.save("idle", conversation(1, "idle"));
+
+		// Loading renews the time-to-live
+		clock.addAndGet(TTL - 1);
+		assertNotNull(store.load("used"));
+		clock.addAndGet(TTL - 1);
+		assertNotNull(store.load("used"));
+		assertNull(store.load("idle"));
+		assertEquals(List.of("idle"), expired);
+
+		// A sweep on the next load or save removes what nobody asks for
+		clock.addAndGet(TTL);
+		store.save("new", conversation(1, "new"));
+		assertEquals(1, store.size());
+		assertEquals(List.of("idle", "used"), expired);
+		assertEquals(2, store.getExpiredCount());
+	}
+
+	@Test
+	void conversationsSurviveARestart() throws IOException {
+		ConversationContext kept = conversation(3, "kept");
+		try (OffHeapConversationStore store = store(directory.toString())) {
+			store.save("kept", conversation(1, "old version"));
+			store.save("kept", kept);
+			store.save("expiring", conversation(1, "expiring"));
+			clock.addAndGet(TTL / 2);
+			store.load("kept");
+		}
+
+		clock.addAndGet(TTL / 2 + 1);
+		try (OffHeapConversationStore store = store(directory.toString())) {
+			assertEquals(1, store.size());
+			assertSameMessages(kept, store.load("kept"));
+			assertNull(store.load("expiring"));
+		}
+	}
+
+	@Test
+	void conversationsExpiredWhileDownAreReportedOnce() throws IOException {
+		try (OffHeapConversationStore store = store(directory.toString())) {
+			store.save("expired", conversation(1, "expired"));
+			store.save("renewed", conversation(1, "old version"));
+			clock.addAndGet(TTL / 2);
+			store.save("renewed", conversation(2, "renewed"));
+		}
+
+		clock.addAndGet(TTL / 2 + 1);
+		try (OffHeapConversationStore store = store(directory.toString())) {
+			// Registered once the store is created, as the session metrics are
+			List<String> expired = new ArrayList<>();
+			store.addExpiryListener(expired::add);
+			assertEquals(1, store.size());
+
+			store.save("new", conversation(1, "new"));
+			assertEquals(List.of("expired"), expired);
+			assertEquals(1, store.getExpiredCount());
+			assertNotNull(store.load("renewed"));
+			assertEquals(List.of("expired"), expired);
+		}
+	}
+
+	@Test
+	void corruptChunkIsDroppedAndReused() throws IOException {
+		try (OffHeapConversationStore store = store(directory.toString())) {
+			store.save("damaged", conversation(1, "damaged"));
+		}
+		// The data of the first chunk starts after its 24 byte header and the key
+		try (FileChannel slab = FileChannel.open(directory.resolve("conversations-512.slab"), StandardOpenOption.WRITE)) {
+			slab.write(ByteBuffer.wrap(new byte[] {1, 0, 0, 0, 50, 99}), 24 + "damaged".getBytes(StandardCharsets.UTF_8).length);
+		}
+
+		try (OffHeapConversationStore store = store(directory.toString())) {
+			assertEquals(1, store.size());
+			assertNull(store.load("damaged"));
+			assertEquals(0, store.size());
+			assertEquals(0, store.getStoredBytes());
+
+			ConversationContext fresh = conversation(2, "fresh");
+			store.save("damaged", fresh);
+			assertSameMessages(fresh, store.load("damaged"));
+		}
+	}
+
+	private OffHeapConversationStore store(String directory) {
+		return new OffHeapConversationStore(TTL, directory, new ConversationArchive(this.directory.resolve("spill").toString()),
+				codec, clock::get);
+	}
+
+	private static ConversationContext conversation(int turns, String text) {
+		ConversationContext context = new ConversationContext();
+		for (int i = 0; i < turns; i++) {
+			context.addMessage("USER", text + " " + i);
+			context.addMessage("BOT", "reply " + i + "\n" + ResponseRenderer.COUNTRY_OPTIONS_STRING);
+		}
+		return context;
+	}
+
+	private static void assertSameMessages(ConversationContext expected, ConversationContext actual) {
+		assertNotNull(actual);
+		List<ConversationContext.Message> expectedMessages = expected.getMessages();
+		List<ConversationContext.Message> actualMessages = actual.getMessages();
+		assertEquals(expectedMessages.size(), actualMessages.size());
+		for (int i = 0; i < expectedMessages.size(); i++) {
+			assertEquals(expectedMessages.get(i).getSeq(), actualMessages.get(i).getSeq());
+			assertEquals(expectedMessages.get(i).getContent(), actualMessages.get(i).getContent());
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.ajsd.chatbot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+	@Test
+	void smallValuesHaveABucketEach() {
+		for (long value = 0; value < 16; value++) {
+			assertEquals(value, LatencyHistogram.bucketOf(value));
+			assertEquals(value, LatencyHistogram.highestValueOf((int) value));
+		}
+	}
+
+	@Test
+	void bucketsFollowEachOtherWithoutGaps() {
+		for (int bucket = 0; bucket < LatencyHistogram.BUCKETS - 1; bucket++) {
+			long highest = LatencyHistogram.highestValueOf(bucket);
+			assertEquals(bucket, LatencyHistogram.bucketOf(highest), "bucket " + bucket);
+			assertEquals(bucket + 1, LatencyHistogram.bucketOf(highest + 1), "bucket " + bucket);
+		}
+		assertEquals((1L << 40) - 1, LatencyHistogram.highestValueOf(LatencyHistogram.BUCKETS - 1));
+	}
+
+	@Test
+	void valuesAreKnownToWithinAnEighth() {
+		for (long value = 1; value < (1L << 40); value = value * 3 / 2 + 1) {
+			long highest = LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(value));
+			assertTrue(highest >= value && highest - value <= value / 8, "value " + value + " read as " + highest);
+		}
+	}
+
+	@Test
+	void quantilesOfUniformValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(500_500_000L, snapshot.getSum());
+		assertEquals(1_000_000, snapshot.getMax());
+		assertEquals(1_000_000, snapshot.getValueAtQuantile(1.0));
+		for (double quantile : new double[] {0.001, 0.5, 0.9, 0.99, 0.999}) {
+			long exact = (long) Math.ceil(quantile * 1000) * 1000;
+			long read = snapshot.getValueAtQuantile(quantile);
+			assertTrue(read >= exact && read - exact <= exact / 8, "quantile " + quantile + " read as " + read);
+		}
+	}
+
+	@Test
+	void emptyAndOutOfRangeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.snapshot().getValueAtQuantile(0.5));
+
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+		assertEquals(2, snapshot.getCount());
+		assertEquals(0, snapshot.getValueAtQuantile(0.5));
+		assertEquals((1L << 40) - 1, snapshot.getMax());
+		assertEquals((1L << 40) - 1, snapshot.getValueAtQuantile(1.0));
+	}
+
+	@Test
+	void threadIdsSpreadEvenlyOverTheStripes() {
+		for (int step : new int[] {1, 2, 8, 64}) {
+			int[] perStripe = new int[8];
+			for (long id = 1; id <= 8_000; id++) {
+				perStripe[LatencyHistogram.stripeOf(new IdThread(id * step))]++;
+			}
+			for (int stripe = 0; stripe < perStripe.length; stripe++) {
+				assertTrue(Math.abs(perStripe[stripe] - 1_000) <= 100, "ids in steps of " + step + ": " + Arrays.toString(perStripe));
+			}
+		}
+	}
+
+	@Test
+	void recordsOfEveryThreadAreCounted() throws InterruptedException {
+		LatencyHistogram histogram = new LatencyHistogram();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			threads.add(new Thread(() -> {
+				for (int value = 0; value < 10_000; value++) {
+					histogram.record(value);
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(160_000, snapshot.getCount());
+		assertEquals(16L * (9_999L * 10_000 / 2), snapshot.getSum());
+		assertEquals(9_999, snapshot.getMax());
+	}
+
+	// A thread which is never started, with the id given
+	private static final class IdThread extends Thread {
+		private final long id;
+
+		IdThread(long id) {
+			this.id = id;
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public long getId() {
+			return id;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.ajsd.chatbot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferTest {
+
+	@Test
+	void capacityIsRoundedUpToAPowerOfTwo() {
+		assertEquals(1, new RingBuffer<>(1).capacity());
+		assertEquals(8, new RingBuffer<>(5).capacity());
+		assertEquals(8, new RingBuffer<>(8).capacity());
+		assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(0));
+	}
+
+	@Test
+	void elementsComeOutInOrderOverManyLaps() {
+		RingBuffer<Integer> buffer = new RingBuffer<>(4);
+		int next = 0;
+		for (int lap = 0; lap < 10; lap++) {
+			for (int i = 0; i < 3; i++) {
+				assertTrue(buffer.offer(lap * 3 + i));
+			}
+			assertEquals(3, buffer.size());
+			for (int i = 0; i < 3; i++) {
+				assertEquals(Integer.valueOf(next++), buffer.poll());
+			}
+			assertNull(buffer.poll());
+		}
+	}
+
+	@Test
+	void fullBufferRefusesUntilTheConsumerTakesOne() {
+		RingBuffer<String> buffer = new RingBuffer<>(4);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer("e" + i));
+		}
+		assertFalse(buffer.offer("refused"));
+		assertEquals(4, buffer.size());
+
+		assertEquals("e0", buffer.poll());
+		assertTrue(buffer.offer("e4"));
+		assertFalse(buffer.offer("refused"));
+
+		List<String> drained = new ArrayList<>();
+		assertEquals(3, buffer.drain(drained::add, 3));
+		assertEquals(List.of("e1", "e2", "e3"), drained);
+		assertEquals(1, buffer.drain(drained::add, 10));
+		assertEquals("e4", drained.get(3));
+		assertEquals(0, buffer.size());
+	}
+
+	@Test
+	void everyAcceptedElementOfManyProducersIsTakenOnce() throws InterruptedException {
+		// Small enough that the producers keep finding it full while the consumer drains
+		RingBuffer<Long> buffer = new RingBuffer<>(64);
+		int producers = 8;
+		int perProducer = 100_000;
+		boolean[][] accepted = new boolean[producers][perProducer];
+		AtomicInteger refused = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(producers);
+
+		for (int p = 0; p < producers; p++) {
+			int producer = p;
+			new Thread(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < perProducer; i++) {
+						if (buffer.offer(((long) producer << 32) | i)) {
+							accepted[producer][i] = true;
+						} else {
+							refused.incrementAndGet();
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			}).start();
+		}
+
+		boolean[][] taken = new boolean[producers][perProducer];
+		int[] lastTaken = new int[producers];
+		Arrays.fill(lastTaken, -1);
+		boolean duplicate = false;
+		boolean outOfOrder = false;
+		int takenCount = 0;
+		start.countDown();
+		while (true) {
+			boolean finished = done.getCount() == 0;
+			Long element;
+			while ((element = buffer.poll()) != null) {
+				int producer = (int) (element >>> 32);
+				int i = (int) (long) element;
+				if (taken[producer][i]) {
+					duplicate = true;
+				}
+				// Each producer's elements keep the order they were offered in
+				if (i <= lastTaken[producer]) {
+					outOfOrder = true;
+				}
+				taken[producer][i] = true;
+				lastTaken[producer] = i;
+				takenCount++;
+			}
+			if (finished) {
+				break;
+			}
+			Thread.onSpinWait();
+		}
+
+		assertFalse(duplicate);
+		assertFalse(outOfOrder);
+		assertEquals(producers * perProducer, takenCount + refused.get());
+		for (int p = 0; p < producers; p++) {
+			for (int i = 0; i < perProducer; i++) {
+				assertEquals(accepted[p][i], taken[p][i], "element " + i + " of producer " + p);
+			}
+		}
+		assertNull(buffer.poll());
+		assertEquals(0, buffer.size());
+	}
+}
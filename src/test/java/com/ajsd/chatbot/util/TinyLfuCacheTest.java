@@ -0,0 +1,147 @@
+package com.ajsd.chatbot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TinyLfuCacheTest {
+
+	// Weight 1 per entry: below 200 the window holds a single entry, and the main space the other four
+	private final TinyLfuCache<String, String> cache = new TinyLfuCache<>(5, 1024, (key, value) -> 1);
+	private final List<String> loaded = new ArrayList<>();
+
+	@Test
+	void missesAreLoadedOnceAndThenHit() {
+		assertEquals("value of a", get("a"));
+		assertEquals("value of a", get("a"));
+
+		assertEquals(List.of("a"), loaded);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getWeight());
+	}
+
+	@Test
+	void keysAskedForOnceDoNotDisplacePopularOnes() {
+		for (String key : new String[] {"a", "b", "c", "d"}) {
+			askFor(key, 3);
+		}
+		for (int i = 0; i < 50; i++) {
+			get("scan-" + i);
+		}
+
+		// Each scan key pushed out of the window lost against the victim of the main space
+		assertEquals(49, cache.getRejections());
+		assertEquals(0, cache.getEvictions());
+		for (String key : new String[] {"a", "b", "c", "d", "scan-49"}) {
+			assertNotNull(cache.getIfPresent(key), key);
+		}
+		assertNull(cache.getIfPresent("scan-0"));
+		assertEquals(5, cache.size());
+		assertEquals(5, cache.getWeight());
+	}
+
+	@Test
+	void candidateAskedForMoreOftenThanTheVictimIsAdmitted() {
+		for (String key : new String[] {"a", "b", "c", "d"}) {
+			askFor(key, 3);
+		}
+		askFor("hot", 5);
+		// Pushes hot out of the window, and hot was asked for more often than a, the first victim
+		get("next");
+
+		assertEquals(1, cache.getEvictions());
+		assertNull(cache.getIfPresent("a"));
+		for (String key : new String[] {"b", "c", "d", "hot", "next"}) {
+			assertNotNull(cache.getIfPresent(key), key);
+		}
+	}
+
+	@Test
+	void victimsAreTakenInClockOrderSkippingReferencedEntries() {
+		for (String key : new String[] {"a", "b", "c", "d", "e"}) {
+			get(key);
+		}
+		// Main space a b c d, window e. A hit on b gives it a second chance
+		get("b");
+
+		// x is asked for 3 times and pushes e out, which loses to a; then y pushes x in, over a
+		askFor("x", 3);
+		get("y");
+		// z pushes y out, which loses to c since the sweep passed b; then w pushes z in, over c
+		askFor("z", 3);
+		get("w");
+
+		assertEquals(2, cache.getEvictions());
+		assertEquals(2, cache.getRejections());
+		for (String key : new String[] {"a", "c", "e", "y"}) {
+			assertNull(cache.getIfPresent(key), key);
+		}
+		for (String key : new String[] {"b", "d", "x", "z", "w"}) {
+			assertNotNull(cache.getIfPresent(key), key);
+		}
+	}
+
+	@Test
+	void valuesTooHeavyForTheMainSpaceAreNotKept() {
+		TinyLfuCache<String, String> weighed = new TinyLfuCache<>(100, 16, (key, value) -> value.length());
+
+		assertEquals("x".repeat(100), weighed.get("heavy", key -> "x".repeat(100)));
+
+		assertEquals(0, weighed.size());
+		assertEquals(0, weighed.getWeight());
+		assertEquals(1, weighed.getRejections());
+	}
+
+	@Test
+	void invalidateAllDropsTheValuesOfTheOldGeneration() {
+		// Like the enrichments, keyed by the generation of the data the values were computed from
+		for (String key : new String[] {"1:france", "1:peru", "1:chad"}) {
+			get(key);
+		}
+		cache.invalidateAll();
+
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+		assertNull(cache.getIfPresent("1:france"));
+		assertEquals("value of 2:france", get("2:france"));
+		assertEquals(List.of("1:france", "1:peru", "1:chad", "2:france"), loaded);
+	}
+
+	@Test
+	void frequenciesOutliveInvalidation() {
+		for (String key : new String[] {"a", "b", "c", "d"}) {
+			askFor(key, 3);
+		}
+		cache.invalidateAll();
+
+		// Refilled by keys asked for once, a key popular before the invalidation still gets in
+		for (String key : new String[] {"e", "f", "g", "h", "i"}) {
+			get(key);
+		}
+		get("a");
+		get("j");
+
+		assertEquals(1, cache.getEvictions());
+		assertNotNull(cache.getIfPresent("a"));
+		assertNull(cache.getIfPresent("e"));
+	}
+
+	private String get(String key) {
+		return cache.get(key, k -> {
+			loaded.add(k);
+			return "value of " + k;
+		});
+	}
+
+	private void askFor(String key, int times) {
+		for (int i = 0; i < times; i++) {
+			get(key);
+		}
+	}
+}